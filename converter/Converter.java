@@ -16,6 +16,7 @@ import datalog.Predicate;
 import datalog.PredicateElement;
 import datalog.StringConstant;
 import datalog.Variable;
+import statistics.JoinOrderOptimizer;
 
 /**
  * Class Converter contains methods to convert a Datalog query to an SQL query
@@ -29,6 +30,21 @@ import datalog.Variable;
  */
 public class Converter {
 
+	/** orders the relations of the from clause, null for the body order */
+	private JoinOrderOptimizer optimizer;
+
+	/**
+	 * Sets the optimizer ordering the relations of the from clause of the
+	 * SQL statements by their best join order (see JoinOrderOptimizer).
+	 * 
+	 * @param optimizer
+	 *            optimizer over the statistics of the views, null to keep the
+	 *            order of the rewriting
+	 */
+	public void setJoinOrderOptimizer(JoinOrderOptimizer optimizer) {
+		this.optimizer = optimizer;
+	}
+
 	/**
 	 * Converts an SQL query to a Datalog query. It takes as arguments a query
 	 * name which will be the head of the resulting query. Also, a database
@@ -87,6 +103,9 @@ public class Converter {
 	 * 
 	 * 3. add conditions to the where clause using method addWhereClause
 	 * 
+	 * With a JoinOrderOptimizer, the views of the rewriting are first
+	 * reordered by their best join order.
+	 * 
 	 * @param rw
 	 *            Rewriting object
 	 * @return SQLQuery object
@@ -94,6 +113,9 @@ public class Converter {
 	public SQLQuery convertToSQL(Rewriting rw) {
 		SQLQuery sqlQuery = new SQLQuery();
 		DatalogQuery datalogQuery = rw.getRewriting();
+		if (optimizer != null) {
+			datalogQuery = optimizer.reorder(datalogQuery);
+		}
 
 		addSelectClause(sqlQuery, datalogQuery);
 
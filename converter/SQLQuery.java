@@ -110,15 +110,45 @@ public class SQLQuery {
 	 * Overwrites object method. Returns string representation of the sql query.
 	 */
 	public String toString() {
-		String s;
+		StringBuilder s = new StringBuilder();
+		appendTo(s);
+		return s.toString();
+	}
+
+	/**
+	 * Appends the SQL statement to the given buffer, in the format of
+	 * toString: clauses on separate lines, elements separated by ", ".
+	 * 
+	 * @param s
+	 *            buffer the statement is appended to
+	 */
+	public void appendTo(StringBuilder s) {
+		s.append("\nSELECT");
+		appendList(s, select);
 		if (where.isEmpty()) {
-			s = "\nSELECT" + select + "\nFROM " + from;
+			s.append("\nFROM ");
+			appendList(s, from);
 		} else {
-			s = "\nSELECT" + select + "\nFROM  " + from + "\nWHERE " + where;
+			s.append("\nFROM  ");
+			appendList(s, from);
+			s.append("\nWHERE ");
+			appendList(s, where);
+		}
+	}
+
+	/**
+	 * Appends the elements of a clause, separated by ", " and surrounded by
+	 * spaces.
+	 */
+	private void appendList(StringBuilder s, List<?> list) {
+		s.append(' ');
+		for (int i = 0; i < list.size(); i++) {
+			if (i > 0) {
+				s.append(", ");
+			}
+			s.append(list.get(i));
 		}
-		s = s.replace('[', ' ');
-		s = s.replace(']', ' ');
-		return s;
+		s.append(' ');
 	}
 
 }
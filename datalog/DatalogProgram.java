@@ -0,0 +1,164 @@
+/*
+ *   Copyright 2015 Cheikh BA <cheikh.ba.sn@gmail.com>
+ *
+ *   This file is part of WALO.
+ *
+ *   WALO is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Lesser General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   WALO is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Lesser General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Lesser General Public License,
+ *   along with WALO.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package datalog;
+
+import java.util.ArrayList;
+import java.util.Hashtable;
+import java.util.List;
+
+/**
+ * Class DatalogProgram is a set of Datalog rules, each rule being a
+ * DatalogQuery whose name is the predicate of its head. The predicates
+ * defined by rules are intensional; the other predicates of the bodies are
+ * extensional (stored relations, e.g. the extensions of the views). Rules
+ * may be recursive: an intensional predicate may be used in the body of its
+ * own rules, directly or through other rules.
+ */
+public class DatalogProgram {
+
+	/** rules of the program, in the order they were added */
+	private List<DatalogQuery> rules = new ArrayList<DatalogQuery>();
+
+	/** arity of every intensional predicate */
+	private Hashtable<String, Integer> arities = new Hashtable<String, Integer>();
+
+	/** intensional predicates, in the order of their first rule */
+	private List<String> intensional = new ArrayList<String>();
+
+	/**
+	 * Adds a rule to the program.
+	 *
+	 * @param rule
+	 *            rule whose name is the predicate of its head
+	 * @throws IllegalArgumentException
+	 *             if another rule of the predicate has another arity
+	 */
+	public void addRule(DatalogQuery rule) {
+		int arity = rule.getHeadVariables().size();
+		Integer previous = arities.get(rule.getName());
+		if (previous == null) {
+			arities.put(rule.getName(), arity);
+			intensional.add(rule.getName());
+		} else if (previous != arity) {
+			throw new IllegalArgumentException("Rule " + rule + " defines "
+					+ rule.getName() + " with " + arity + " argument(s) instead of "
+					+ previous);
+		}
+		rules.add(rule);
+	}
+
+	/**
+	 * Returns the rules of the program.
+	 *
+	 * @return rules, in the order they were added
+	 */
+	public List<DatalogQuery> getRules() {
+		return rules;
+	}
+
+	/**
+	 * Returns the rules of an intensional predicate.
+	 *
+	 * @param name
+	 *            name of the predicate
+	 * @return rules whose head is the predicate
+	 */
+	public List<DatalogQuery> getRules(String name) {
+		List<DatalogQuery> result = new ArrayList<DatalogQuery>();
+		for (DatalogQuery rule : rules) {
+			if (rule.getName().equals(name)) {
+				result.add(rule);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the intensional predicates, i.e. the heads of the rules.
+	 *
+	 * @return names of the predicates, in the order of their first rule
+	 */
+	public List<String> getIntensionalPredicates() {
+		return intensional;
+	}
+
+	/**
+	 * Tests whether a predicate is defined by rules.
+	 *
+	 * @param name
+	 *            name of the predicate
+	 * @return true for an intensional predicate
+	 */
+	public boolean isIntensional(String name) {
+		return arities.containsKey(name);
+	}
+
+	/**
+	 * Returns the arity of an intensional predicate.
+	 *
+	 * @param name
+	 *            name of the predicate
+	 * @return number of head variables of its rules, -1 if it has no rule
+	 */
+	public int arity(String name) {
+		Integer arity = arities.get(name);
+		return arity == null ? -1 : arity;
+	}
+
+	/**
+	 * Tests whether a predicate depends on itself, i.e. whether it can be
+	 * reached again from the bodies of its rules.
+	 *
+	 * @param name
+	 *            name of an intensional predicate
+	 * @return true if the predicate is recursive
+	 */
+	public boolean isRecursive(String name) {
+		List<String> reached = new ArrayList<String>();
+		List<String> pending = new ArrayList<String>();
+		pending.add(name);
+		while (!pending.isEmpty()) {
+			for (DatalogQuery rule : getRules(pending.remove(pending.size() - 1))) {
+				for (Predicate atom : rule.getPredicates()) {
+					if (atom.name.equals(name)) {
+						return true;
+					}
+					if (isIntensional(atom.name) && !reached.contains(atom.name)) {
+						reached.add(atom.name);
+						pending.add(atom.name);
+					}
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the rules, one per line.
+	 */
+	public String toString() {
+		StringBuilder s = new StringBuilder();
+		for (DatalogQuery rule : rules) {
+			rule.appendTo(s);
+			s.append('\n');
+		}
+		return s.toString();
+	}
+}
@@ -213,31 +213,53 @@ public class DatalogQuery {
 	 * query.
 	 */
 	public String toString() {
-		String preds = printCollection(predicates);
-		String interpretedPreds = "";
-		if (printCollection(interpretedPredicates).length() > 0) {
-			interpretedPreds = "," + printCollection(interpretedPredicates);
+		StringBuilder val = new StringBuilder();
+		appendTo(val);
+		return val.toString();
+	}
+
+	/**
+	 * Appends the String representation of the Datalog query to the given
+	 * buffer, of the form "name(head variables) :- predicates,interpreted
+	 * predicates".
+	 * 
+	 * @param val
+	 *            buffer the query is appended to
+	 */
+	public void appendTo(StringBuilder val) {
+		val.append(name).append('(');
+		printCollection(val, headVariables);
+		val.append(") :- ");
+		for (int i = 0; i < predicates.size(); i++) {
+			if (i > 0) {
+				val.append(',');
+			}
+			predicates.get(i).appendTo(val);
+		}
+		if (!interpretedPredicates.isEmpty()) {
+			val.append(',');
+			printCollection(val, interpretedPredicates);
 		}
-		String val = name + "(" + printCollection(headVariables) + ") :- "
-				+ preds + interpretedPreds;
-		return val;
 	}
 
 	/**
 	 * String representation of either a list of head variables or a list of
-	 * predicates.
+	 * interpreted predicates, separated by ",".
 	 * 
-	 * @param coll
-	 *            list of head variables of predicates
-	 * @return String of the form "(list1Elem1,...)"
+	 * @param val
+	 *            buffer the elements are appended to
+	 * @param collect
+	 *            list of head variables or interpreted predicates
 	 */
-	private String printCollection(Collection collect) {
-		String val = "";
+	private void printCollection(StringBuilder val, Collection<?> collect) {
+		boolean first = true;
 		for (Object obj : collect) {
-			val = val + "," + obj.toString();
+			if (!first) {
+				val.append(',');
+			}
+			val.append(obj);
+			first = false;
 		}
-		val = val.replaceFirst(",", "");
-		return val;
 	}
 	
 	
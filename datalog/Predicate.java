@@ -23,6 +23,12 @@ public class Predicate {
 	/** predicate name */
 	public String name;
 
+	/** interned symbol of the name, see getSymbol */
+	private int symbol;
+
+	/** name the symbol has been computed for */
+	private String symbolName;
+
 	/** both, predicate variables and constants */
 	private List<PredicateElement> elements;
 
@@ -230,6 +236,20 @@ public class Predicate {
 		return elements.size();
 	}
 
+	/**
+	 * Returns the symbol of the predicate name in the SymbolTable. The symbol
+	 * is computed again only if the name has been changed.
+	 * 
+	 * @return interned symbol of the name
+	 */
+	public int getSymbol() {
+		if (symbolName != name) {
+			symbol = SymbolTable.intern(name);
+			symbolName = name;
+		}
+		return symbol;
+	}
+
 	/**
 	 * DO NOT overwrite this method MCD.findPreticates uses contains in order to
 	 * find same objects
@@ -243,23 +263,39 @@ public class Predicate {
 	 * predicate.
 	 */
 	public String toString() {
-		String val = name + "(" + printElements() + ")";
+		StringBuilder val = new StringBuilder();
+		appendTo(val);
 		//String val = name;
-		return val;
+		return val.toString();
 	}
 
 	/**
-	 * Returns a String representation of the predicate's elements
+	 * Appends the String representation of the predicate, of the form
+	 * "name(elements)", to the given buffer.
 	 * 
-	 * @return String of predicate elements
+	 * @param val
+	 *            buffer the predicate is appended to
 	 */
-	private String printElements() {
-		String val = "";
-		for (PredicateElement elem : elements) {
-			val = val + "," + elem.toString();
+	public void appendTo(StringBuilder val) {
+		val.append(name).append('(');
+		printElements(val);
+		val.append(')');
+	}
+
+	/**
+	 * Appends a String representation of the predicate's elements, separated
+	 * by ",".
+	 * 
+	 * @param val
+	 *            buffer the elements are appended to
+	 */
+	private void printElements(StringBuilder val) {
+		for (int i = 0; i < elements.size(); i++) {
+			if (i > 0) {
+				val.append(',');
+			}
+			val.append(elements.get(i));
 		}
-		val = val.replaceFirst(",", "");
-		return val;
 	}
 	
 	/** C.BA -  setter and getter of coverageDomain */
@@ -12,6 +12,12 @@ public class PredicateElement {
 	/** name (value) of predicate element */
 	public String name;
 
+	/** interned symbol of the name, see getSymbol */
+	private int symbol;
+
+	/** name the symbol has been computed for */
+	private String symbolName;
+
 	/**
 	 * PredicateElement constructor
 	 * 
@@ -22,6 +28,20 @@ public class PredicateElement {
 		this.name = name;
 	}
 
+	/**
+	 * Returns the symbol of the name of the element in the SymbolTable. The
+	 * symbol is computed again only if the name has been changed.
+	 * 
+	 * @return interned symbol of the name
+	 */
+	public int getSymbol() {
+		if (symbolName != name) {
+			symbol = SymbolTable.intern(name);
+			symbolName = name;
+		}
+		return symbol;
+	}
+
 	/**
 	 * Overwrites Object method. Returns name of predicate element.
 	 */
@@ -0,0 +1,79 @@
+/*
+ *   Copyright 2015 Cheikh BA <cheikh.ba.sn@gmail.com>
+ *
+ *   This file is part of WALO.
+ *
+ *   WALO is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Lesser General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   WALO is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Lesser General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Lesser General Public License,
+ *   along with WALO.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package datalog;
+
+import java.util.ArrayList;
+import java.util.Hashtable;
+import java.util.List;
+
+/**
+ * Class SymbolTable interns the names of predicates, variables and constants:
+ * every distinct name gets an int symbol, so that names can be compared and
+ * hashed as ints. Symbols are never released.
+ */
+public class SymbolTable {
+
+	/** symbol of every interned name */
+	private static Hashtable<String, Integer> symbols = new Hashtable<String, Integer>();
+
+	/** interned names, the position in the list is the symbol */
+	private static List<String> names = new ArrayList<String>();
+
+	/** symbol of the anonymous variable "_" */
+	public static final int UNDERSCORE = intern("_");
+
+	/**
+	 * Returns the symbol of the given name, a new symbol is created if the name
+	 * has not been interned yet.
+	 *
+	 * @param name
+	 *            name of a predicate, variable or constant
+	 * @return symbol of the name
+	 */
+	public static synchronized int intern(String name) {
+		Integer symbol = symbols.get(name);
+		if (symbol == null) {
+			symbol = names.size();
+			symbols.put(name, symbol);
+			names.add(name);
+		}
+		return symbol;
+	}
+
+	/**
+	 * Returns the name of the given symbol.
+	 *
+	 * @param symbol
+	 *            symbol returned by intern
+	 * @return interned name
+	 */
+	public static synchronized String getName(int symbol) {
+		return names.get(symbol);
+	}
+
+	/**
+	 * Returns the number of interned names.
+	 *
+	 * @return number of symbols
+	 */
+	public static synchronized int size() {
+		return names.size();
+	}
+}
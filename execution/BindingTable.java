@@ -0,0 +1,258 @@
+/*
+ *   Copyright 2015 Cheikh BA <cheikh.ba.sn@gmail.com>
+ *
+ *   This file is part of WALO.
+ *
+ *   WALO is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Lesser General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   WALO is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Lesser General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Lesser General Public License,
+ *   along with WALO.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package execution;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Class BindingTable is the result of a plan node: a table with one column per
+ * variable, each row binding the variables to encoded values (see Values).
+ * The table is stored by column.
+ */
+public class BindingTable {
+
+	/** variables of the columns */
+	private String[] variables;
+
+	/** values of every column */
+	private long[][] columns;
+
+	/** number of rows */
+	private int size;
+
+	/**
+	 * BindingTable constructor
+	 *
+	 * @param variables
+	 *            variables of the columns
+	 */
+	public BindingTable(List<String> variables) {
+		this(variables.toArray(new String[variables.size()]), 16);
+	}
+
+	/**
+	 * BindingTable constructor
+	 *
+	 * @param variables
+	 *            variables of the columns
+	 * @param capacity
+	 *            initial number of rows
+	 */
+	public BindingTable(String[] variables, int capacity) {
+		this.variables = variables;
+		this.columns = new long[variables.length][Math.max(capacity, 1)];
+	}
+
+	/**
+	 * Returns the variables of the columns.
+	 *
+	 * @return variables
+	 */
+	public String[] getVariables() {
+		return variables;
+	}
+
+	/**
+	 * Returns the position of the column of a variable.
+	 *
+	 * @param variable
+	 *            name of the variable
+	 * @return position of the column, -1 if the variable is not bound
+	 */
+	public int indexOf(String variable) {
+		for (int i = 0; i < variables.length; i++) {
+			if (variables[i].equals(variable)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the number of columns.
+	 *
+	 * @return number of variables
+	 */
+	public int arity() {
+		return variables.length;
+	}
+
+	/**
+	 * Returns the number of rows.
+	 *
+	 * @return number of rows
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns a value of the table.
+	 *
+	 * @param column
+	 *            position of the column
+	 * @param row
+	 *            position of the row
+	 * @return encoded value
+	 */
+	public long get(int column, int row) {
+		return columns[column][row];
+	}
+
+	/**
+	 * Returns the values of a column. The array may be longer than the number
+	 * of rows.
+	 *
+	 * @param column
+	 *            position of the column
+	 * @return encoded values
+	 */
+	public long[] getColumn(int column) {
+		return columns[column];
+	}
+
+	/**
+	 * Adds a row to the table.
+	 *
+	 * @param row
+	 *            encoded value of every column
+	 */
+	public void add(long[] row) {
+		ensureCapacity(size + 1);
+		for (int c = 0; c < columns.length; c++) {
+			columns[c][size] = row[c];
+		}
+		size++;
+	}
+
+	/**
+	 * Adds all the rows of a table with the same columns.
+	 *
+	 * @param table
+	 *            rows to add
+	 */
+	public void append(BindingTable table) {
+		ensureCapacity(size + table.size);
+		for (int c = 0; c < columns.length; c++) {
+			System.arraycopy(table.columns[c], 0, columns[c], size, table.size);
+		}
+		size += table.size;
+	}
+
+	/**
+	 * Adds an empty row to the table, its values are then set with set.
+	 *
+	 * @return position of the new row
+	 */
+	public int addRow() {
+		ensureCapacity(size + 1);
+		return size++;
+	}
+
+	/**
+	 * Sets a value of the table.
+	 *
+	 * @param column
+	 *            position of the column
+	 * @param row
+	 *            position of the row
+	 * @param value
+	 *            encoded value
+	 */
+	public void set(int column, int row, long value) {
+		columns[column][row] = value;
+	}
+
+	/**
+	 * Returns a copy of a row.
+	 *
+	 * @param row
+	 *            position of the row
+	 * @return encoded value of every column
+	 */
+	public long[] getRow(int row) {
+		long[] values = new long[columns.length];
+		for (int c = 0; c < columns.length; c++) {
+			values[c] = columns[c][row];
+		}
+		return values;
+	}
+
+	/**
+	 * Returns a table reading columns of this table under other variables.
+	 * The values are shared, not copied: neither table may be modified
+	 * afterwards.
+	 *
+	 * @param variables
+	 *            variables of the columns of the new table
+	 * @param positions
+	 *            column of this table read by every column of the new table
+	 * @return table of the same rows
+	 */
+	public BindingTable select(String[] variables, int[] positions) {
+		BindingTable table = new BindingTable(variables, 0);
+		for (int c = 0; c < positions.length; c++) {
+			table.columns[c] = columns[positions[c]];
+		}
+		table.size = size;
+		return table;
+	}
+
+	/**
+	 * Returns the size of the columns.
+	 *
+	 * @return bytes of the values, including the unused capacity
+	 */
+	public long memoryUsage() {
+		return columns.length == 0 ? 0 : 8L * columns.length
+				* columns[0].length;
+	}
+
+	/**
+	 * Grows the columns to hold the given number of rows.
+	 */
+	private void ensureCapacity(int rows) {
+		if (columns.length > 0 && rows > columns[0].length) {
+			int capacity = Math.max(rows, 2 * columns[0].length);
+			for (int c = 0; c < columns.length; c++) {
+				columns[c] = Arrays.copyOf(columns[c], capacity);
+			}
+		}
+	}
+
+	/**
+	 * Returns the decoded rows, one per line, of the form "(v1,v2,...)".
+	 */
+	public String toString() {
+		StringBuilder s = new StringBuilder();
+		for (int r = 0; r < size; r++) {
+			s.append('(');
+			for (int c = 0; c < columns.length; c++) {
+				if (c > 0) {
+					s.append(',');
+				}
+				s.append(Values.toString(columns[c][r]));
+			}
+			s.append(")\n");
+		}
+		return s.toString();
+	}
+}
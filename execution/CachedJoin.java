@@ -0,0 +1,287 @@
+/*
+ *   Copyright 2015 Cheikh BA <cheikh.ba.sn@gmail.com>
+ *
+ *   This file is part of WALO.
+ *
+ *   WALO is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Lesser General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   WALO is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Lesser General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Lesser General Public License,
+ *   along with WALO.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package execution;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Hashtable;
+import java.util.List;
+
+import datalog.Constant;
+import datalog.InterpretedPredicate;
+import datalog.Predicate;
+import datalog.PredicateElement;
+
+/**
+ * Class CachedJoin reads the result of a join from a JoinResultCache, and
+ * computes it only if it is not cached.
+ *
+ * A join of scans and selections computes a conjunctive query over the
+ * views: the key of its result is this query in a canonical form, so that
+ * queries naming their variables differently, or joining the same atoms in
+ * another order, share it. The scans are sorted by their atom, with its
+ * variables anonymised, and the variables are then renamed v0, v1, ... in
+ * the order of their first occurrence. The key holds the renamed atoms with
+ * the name, identifier and size of their extensions (see ViewExtension.getId),
+ * and the renamed interpreted predicates. A cached result binds the renamed
+ * variables.
+ *
+ * Scans of the same anonymised atom, e.g. V(x,y) and V(y,z), are tried in
+ * every order and the smallest key is kept, so that the key does not depend
+ * on their order in the plan. Beyond MAX_ORDERINGS orders, the tied scans
+ * keep the order of the plan: the key is still correct, but equivalent joins
+ * may then get different keys and not share their result.
+ */
+public class CachedJoin extends PlanNode {
+
+	/** maximum number of orders of the tied scans tried for the key */
+	private static final int MAX_ORDERINGS = 5040;
+
+	/** join whose result is cached */
+	private PlanNode child;
+
+	/** cache of the join results */
+	private JoinResultCache cache;
+
+	/** canonical form of the join */
+	private String key;
+
+	/** canonical name of every variable of the result */
+	private String[] canonical;
+
+	/** selections of the join */
+	private List<InterpretedPredicate> selections;
+
+	/** canonical name of every variable of the join, for the key */
+	private Hashtable<String, String> names;
+
+	/**
+	 * CachedJoin constructor
+	 *
+	 * @param child
+	 *            join of scans and selections
+	 * @param cache
+	 *            cache of the join results
+	 */
+	public CachedJoin(PlanNode child, JoinResultCache cache) {
+		this.child = child;
+		this.cache = cache;
+
+		List<Scan> scans = new ArrayList<Scan>();
+		selections = new ArrayList<InterpretedPredicate>();
+		collect(child, scans, selections);
+
+		final Hashtable<Scan, String> signatures = new Hashtable<Scan, String>();
+		for (Scan scan : scans) {
+			signatures.put(scan, describe(scan, new Hashtable<String, String>(), "#"));
+		}
+		// stable: scans of the same signature are then ordered by order()
+		Collections.sort(scans, new Comparator<Scan>() {
+			public int compare(Scan s1, Scan s2) {
+				return signatures.get(s1).compareTo(signatures.get(s2));
+			}
+		});
+
+		// tied scans: scans[ties[i]..ties[i+1][ have the same signature
+		List<Integer> ties = new ArrayList<Integer>();
+		long orderings = 1;
+		for (int start = 0, end; start < scans.size(); start = end) {
+			end = start + 1;
+			while (end < scans.size()
+					&& signatures.get(scans.get(end)).equals(
+							signatures.get(scans.get(start)))) {
+				end++;
+				orderings = Math.min(orderings * (end - start),
+						MAX_ORDERINGS + 1L);
+			}
+			if (end - start > 1) {
+				ties.add(start);
+				ties.add(end);
+			}
+		}
+		if (orderings > MAX_ORDERINGS) {
+			ties.clear();
+		}
+		order(scans.toArray(new Scan[scans.size()]), ties, 0,
+				ties.isEmpty() ? 0 : ties.get(0));
+
+		String[] vars = child.getVariables();
+		canonical = new String[vars.length];
+		for (int i = 0; i < vars.length; i++) {
+			canonical[i] = names.get(vars[i]);
+		}
+	}
+
+	/**
+	 * Tries every order of the tied scans from position to the end of the
+	 * tie, and of the following ties, keeping the smallest key and the names
+	 * of the variables giving it.
+	 *
+	 * @param scans
+	 *            sorted scans
+	 * @param ties
+	 *            start and end of every tie
+	 * @param tie
+	 *            index of the current tie in ties
+	 * @param position
+	 *            position of the next scan to choose in the current tie
+	 */
+	private void order(Scan[] scans, List<Integer> ties, int tie, int position) {
+		if (tie == ties.size()) {
+			Hashtable<String, String> names = new Hashtable<String, String>();
+			StringBuilder s = new StringBuilder();
+			for (Scan scan : scans) {
+				s.append(describe(scan, names, "v")).append(' ');
+			}
+			List<String> predicates = new ArrayList<String>();
+			for (InterpretedPredicate pred : selections) {
+				predicates.add(describe(pred, names));
+			}
+			Collections.sort(predicates);
+			s.append(predicates);
+			if (key == null || s.toString().compareTo(key) < 0) {
+				key = s.toString();
+				this.names = names;
+			}
+		} else if (position == ties.get(tie + 1) - 1) {
+			order(scans, ties, tie + 2, tie + 2 < ties.size() ? ties
+					.get(tie + 2) : 0);
+		} else {
+			for (int i = position; i < ties.get(tie + 1); i++) {
+				swap(scans, position, i);
+				order(scans, ties, tie, position + 1);
+				swap(scans, position, i);
+			}
+		}
+	}
+
+	private static void swap(Scan[] scans, int i, int j) {
+		Scan scan = scans[i];
+		scans[i] = scans[j];
+		scans[j] = scan;
+	}
+
+	/**
+	 * Returns the canonical form of the join.
+	 *
+	 * @return key of the result in the cache
+	 */
+	public String getKey() {
+		return key;
+	}
+
+	public BindingTable execute() {
+		BindingTable cached = cache.get(key);
+		if (cached != null) {
+			int[] positions = new int[canonical.length];
+			for (int i = 0; i < positions.length; i++) {
+				positions[i] = cached.indexOf(canonical[i]);
+			}
+			return cached.select(child.getVariables(), positions);
+		}
+		long start = System.nanoTime();
+		BindingTable result = child.execute();
+		int[] positions = new int[canonical.length];
+		for (int i = 0; i < positions.length; i++) {
+			positions[i] = i;
+		}
+		cache.put(key, result.select(canonical, positions), System.nanoTime()
+				- start);
+		return result;
+	}
+
+	/**
+	 * Finds the scans and the selections of a join.
+	 */
+	private static void collect(PlanNode node, List<Scan> scans,
+			List<InterpretedPredicate> selections) {
+		if (node instanceof Scan) {
+			scans.add((Scan) node);
+		} else if (node instanceof Selection) {
+			selections.addAll(((Selection) node).getPredicates());
+		}
+		for (PlanNode child : node.getChildren()) {
+			collect(child, scans, selections);
+		}
+	}
+
+	/**
+	 * Describes a scan, its variables being renamed with the prefix in the
+	 * order of their first occurrence; new variables are added to names.
+	 */
+	private static String describe(Scan scan, Hashtable<String, String> names,
+			String prefix) {
+		Predicate atom = scan.getAtom();
+		StringBuilder s = new StringBuilder(atom.name).append('(');
+		for (int i = 0; i < atom.numberOfElements(); i++) {
+			PredicateElement elem = atom.getElement(i);
+			if (i > 0) {
+				s.append(',');
+			}
+			if (elem instanceof Constant || elem.name.equals("_")) {
+				s.append(elem.name);
+			} else {
+				String name = names.get(elem.name);
+				if (name == null) {
+					name = prefix + names.size();
+					names.put(elem.name, name);
+				}
+				s.append(name);
+			}
+		}
+		ViewExtension extension = scan.getExtension();
+		s.append(")@").append(extension.getName()).append('#')
+				.append(extension.getId()).append(':').append(extension.size());
+		List<String> predicates = new ArrayList<String>();
+		for (InterpretedPredicate pred : scan.getPredicates()) {
+			predicates.add(describe(pred, names));
+		}
+		Collections.sort(predicates);
+		return s.append(predicates).toString();
+	}
+
+	/**
+	 * Describes an interpreted predicate as "variable comparator constant",
+	 * its variable being renamed.
+	 */
+	private static String describe(InterpretedPredicate pred,
+			Hashtable<String, String> names) {
+		String var = names.get(pred.getVariable().name);
+		if (pred.getLeft() == pred.getVariable()) {
+			return var + pred.getComparator() + pred.getRight();
+		}
+		return var + Selection.flip(pred.getComparator()) + pred.getLeft();
+	}
+
+	public List<PlanNode> getChildren() {
+		return Collections.singletonList(child);
+	}
+
+	public String[] getVariables() {
+		return child.getVariables();
+	}
+
+	public void explain(StringBuilder s, int indent) {
+		indent(s, indent);
+		s.append("CachedJoin\n");
+		child.explain(s, indent + 1);
+	}
+}
@@ -0,0 +1,76 @@
+/*
+ *   Copyright 2015 Cheikh BA <cheikh.ba.sn@gmail.com>
+ *
+ *   This file is part of WALO.
+ *
+ *   WALO is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Lesser General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   WALO is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Lesser General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Lesser General Public License,
+ *   along with WALO.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package execution;
+
+/**
+ * Class Column is a column of a ColumnarRelation. Whatever its storage, a
+ * column reads and writes cells encoded by Values.
+ */
+public abstract class Column {
+
+	/** initial number of values of a column */
+	protected static final int INITIAL_CAPACITY = 16;
+
+	/** number of values */
+	protected int size;
+
+	/**
+	 * Returns the number of values.
+	 *
+	 * @return number of values
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns a value of the column.
+	 *
+	 * @param row
+	 *            position of the value
+	 * @return encoded value
+	 */
+	public abstract long get(int row);
+
+	/**
+	 * Tests whether the column can store the value.
+	 *
+	 * @param cell
+	 *            encoded value
+	 * @return true if add accepts the value
+	 */
+	public abstract boolean accepts(long cell);
+
+	/**
+	 * Appends a value to the column. The value must be accepted by the
+	 * column (see accepts).
+	 *
+	 * @param cell
+	 *            encoded value
+	 */
+	public abstract void add(long cell);
+
+	/**
+	 * Returns the number of bytes used by the values.
+	 *
+	 * @return size of the storage in bytes
+	 */
+	public abstract long memoryUsage();
+}
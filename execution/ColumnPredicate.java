@@ -0,0 +1,226 @@
+/*
+ *   Copyright 2015 Cheikh BA <cheikh.ba.sn@gmail.com>
+ *
+ *   This file is part of WALO.
+ *
+ *   WALO is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Lesser General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   WALO is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Lesser General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Lesser General Public License,
+ *   along with WALO.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package execution;
+
+import datalog.InterpretedPredicate;
+import datalog.Variable;
+
+/**
+ * Class ColumnPredicate evaluates an interpreted predicate "variable
+ * comparator constant" on a column of a view, for a whole chunk of rows at
+ * once (see Values.compare for its semantics). The rows to test are given by
+ * a selection vector, an array of row positions, and the rows satisfying the
+ * predicate are compacted at its beginning; every kernel is a tight loop over
+ * the primitive array of the column.
+ *
+ * Comparisons with an integer constant are turned into an interval of cells:
+ * symbols are encoded below every integer, so they fall out of the interval
+ * as they should.
+ */
+public class ColumnPredicate {
+
+	/** interpreted predicate */
+	private InterpretedPredicate predicate;
+
+	/** column of the variable */
+	private int column;
+
+	/** comparator, with the variable on the left */
+	private String comparator;
+
+	/** encoded constant */
+	private long constant;
+
+	/** true for the comparators = and != (or <>) */
+	private boolean equality;
+
+	/** true if the comparator is != or <> */
+	private boolean negated;
+
+	/** smallest cell satisfying a comparison with an integer constant */
+	private long low;
+
+	/** largest cell satisfying a comparison with an integer constant */
+	private long high;
+
+	/**
+	 * ColumnPredicate constructor
+	 *
+	 * @param predicate
+	 *            interpreted predicate between a variable and a constant
+	 * @param column
+	 *            column of the view bound to the variable
+	 */
+	public ColumnPredicate(InterpretedPredicate predicate, int column) {
+		this.predicate = predicate;
+		this.column = column;
+		Variable var = predicate.getVariable();
+		if (predicate.getLeft() == var) {
+			comparator = predicate.getComparator();
+			constant = Values.encodeConstant(predicate.getRight());
+		} else {
+			comparator = Selection.flip(predicate.getComparator());
+			constant = Values.encodeConstant(predicate.getLeft());
+		}
+		negated = comparator.equals("!=") || comparator.equals("<>");
+		equality = negated || comparator.equals("=");
+
+		low = Values.SYMBOL_LIMIT;
+		high = Long.MAX_VALUE;
+		if (comparator.equals("<")) {
+			high = constant - 1;
+		} else if (comparator.equals("<=")) {
+			high = constant;
+		} else if (comparator.equals(">")) {
+			if (constant == Long.MAX_VALUE) {
+				high = low - 1;
+			} else {
+				low = constant + 1;
+			}
+		} else if (comparator.equals(">=")) {
+			low = constant;
+		} else {
+			low = constant;
+			high = constant;
+		}
+	}
+
+	/**
+	 * Returns the interpreted predicate.
+	 *
+	 * @return predicate between the variable and a constant
+	 */
+	public InterpretedPredicate getPredicate() {
+		return predicate;
+	}
+
+	/**
+	 * Returns the column of the variable.
+	 *
+	 * @return position of the column in the view
+	 */
+	public int getColumn() {
+		return column;
+	}
+
+	/**
+	 * Tests whether a single value satisfies the predicate.
+	 *
+	 * @param cell
+	 *            encoded value of the variable
+	 * @return true if the comparison holds
+	 */
+	public boolean test(long cell) {
+		return Values.compare(cell, comparator, constant);
+	}
+
+	/**
+	 * Keeps the rows satisfying the predicate.
+	 *
+	 * @param values
+	 *            column of the variable
+	 * @param rows
+	 *            rows to filter, the kept ones are moved to the beginning
+	 * @param count
+	 *            number of rows to filter
+	 * @return number of kept rows
+	 */
+	public int filter(Column values, int[] rows, int count) {
+		if (!Values.isSymbol(constant)) {
+			if (values instanceof NumericColumn) {
+				return filterRange(((NumericColumn) values).getValues(), rows,
+						count);
+			}
+			if (values instanceof SymbolColumn || values instanceof MappedSymbolColumn) {
+				// a symbol is only different from an integer
+				return negated ? count : 0;
+			}
+		} else if (equality && values instanceof SymbolColumn) {
+			return filterCodes(((SymbolColumn) values).getCodes(),
+					Values.symbolOf(constant), rows, count);
+		} else if (equality && values instanceof MappedSymbolColumn) {
+			MappedSymbolColumn mapped = (MappedSymbolColumn) values;
+			return filterLocalCodes(mapped, mapped.toLocalCode(Values
+					.symbolOf(constant)), rows, count);
+		}
+		int kept = 0;
+		for (int r = 0; r < count; r++) {
+			int row = rows[r];
+			rows[kept] = row;
+			kept += Values.compare(values.get(row), comparator, constant) ? 1 : 0;
+		}
+		return kept;
+	}
+
+	/**
+	 * Kernel of the comparisons with an integer constant: keeps the cells in
+	 * [low, high], or the cells different from the constant.
+	 */
+	private int filterRange(long[] cells, int[] rows, int count) {
+		int kept = 0;
+		if (negated) {
+			for (int r = 0; r < count; r++) {
+				int row = rows[r];
+				rows[kept] = row;
+				kept += cells[row] != constant ? 1 : 0;
+			}
+		} else {
+			for (int r = 0; r < count; r++) {
+				int row = rows[r];
+				long cell = cells[row];
+				rows[kept] = row;
+				kept += cell >= low && cell <= high ? 1 : 0;
+			}
+		}
+		return kept;
+	}
+
+	/**
+	 * Kernel of the (in)equalities with a symbol: compares the symbols.
+	 */
+	private int filterCodes(int[] codes, int code, int[] rows, int count) {
+		int kept = 0;
+		for (int r = 0; r < count; r++) {
+			int row = rows[r];
+			rows[kept] = row;
+			kept += (codes[row] == code) != negated ? 1 : 0;
+		}
+		return kept;
+	}
+
+	/**
+	 * Kernel of the (in)equalities with a symbol on a mapped column: compares
+	 * the codes of the dictionary of the segment, without decoding them.
+	 */
+	private int filterLocalCodes(MappedSymbolColumn codes, int code,
+			int[] rows, int count) {
+		int kept = 0;
+		for (int r = 0; r < count; r++) {
+			int row = rows[r];
+			rows[kept] = row;
+			kept += (codes.getLocalCode(row) == code) != negated ? 1 : 0;
+		}
+		return kept;
+	}
+
+	public String toString() {
+		return predicate.toString();
+	}
+}
@@ -0,0 +1,134 @@
+/*
+ *   Copyright 2015 Cheikh BA <cheikh.ba.sn@gmail.com>
+ *
+ *   This file is part of WALO.
+ *
+ *   WALO is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Lesser General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   WALO is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Lesser General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Lesser General Public License,
+ *   along with WALO.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package execution;
+
+/**
+ * Class ColumnarRelation stores tuples by column. A column starts as a
+ * SymbolColumn (int symbols, see Values) and becomes a NumericColumn
+ * (long values) as soon as an integer is added to it, so that a column of
+ * strings takes 4 bytes per value and any other column 8 bytes per value.
+ * A read-only column (see MappedSymbolColumn) is likewise copied into a
+ * NumericColumn when a tuple is added.
+ */
+public class ColumnarRelation {
+
+	/** every column */
+	private Column[] columns;
+
+	/** number of tuples */
+	private int size;
+
+	/**
+	 * ColumnarRelation constructor
+	 *
+	 * @param arity
+	 *            number of columns
+	 */
+	public ColumnarRelation(int arity) {
+		columns = new Column[arity];
+		for (int c = 0; c < arity; c++) {
+			columns[c] = new SymbolColumn();
+		}
+	}
+
+	/**
+	 * Builds a relation from existing columns of the same size.
+	 *
+	 * @param columns
+	 *            every column
+	 * @param size
+	 *            number of tuples
+	 */
+	public ColumnarRelation(Column[] columns, int size) {
+		this.columns = columns;
+		this.size = size;
+	}
+
+	/**
+	 * Returns the number of columns.
+	 *
+	 * @return arity
+	 */
+	public int arity() {
+		return columns.length;
+	}
+
+	/**
+	 * Returns the number of tuples.
+	 *
+	 * @return number of tuples
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns a column.
+	 *
+	 * @param column
+	 *            position of the column
+	 * @return values of the column
+	 */
+	public Column getColumn(int column) {
+		return columns[column];
+	}
+
+	/**
+	 * Returns a value of the relation.
+	 *
+	 * @param row
+	 *            position of the tuple
+	 * @param column
+	 *            position of the column
+	 * @return encoded value
+	 */
+	public long get(int row, int column) {
+		return columns[column].get(row);
+	}
+
+	/**
+	 * Adds a tuple to the relation.
+	 *
+	 * @param tuple
+	 *            encoded value of every column
+	 */
+	public void add(long[] tuple) {
+		for (int c = 0; c < columns.length; c++) {
+			if (!columns[c].accepts(tuple[c])) {
+				columns[c] = new NumericColumn(columns[c]);
+			}
+			columns[c].add(tuple[c]);
+		}
+		size++;
+	}
+
+	/**
+	 * Returns the number of bytes used by the columns.
+	 *
+	 * @return size of the storage in bytes
+	 */
+	public long memoryUsage() {
+		long bytes = 0;
+		for (Column column : columns) {
+			bytes += column.memoryUsage();
+		}
+		return bytes;
+	}
+}
@@ -0,0 +1,76 @@
+/*
+ *   Copyright 2015 Cheikh BA <cheikh.ba.sn@gmail.com>
+ *
+ *   This file is part of WALO.
+ *
+ *   WALO is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Lesser General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   WALO is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Lesser General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Lesser General Public License,
+ *   along with WALO.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package execution;
+
+/**
+ * Class Cursor iterates over the result of an operator one row at a time.
+ * Rows are computed when they are pulled, so that a consumer needing only
+ * the first rows stops the work of the operators below it. A consumer
+ * abandoning a cursor before its last row closes it.
+ */
+public abstract class Cursor {
+
+	/**
+	 * Moves to the next row.
+	 *
+	 * @return false if there is no more row
+	 */
+	public abstract boolean next();
+
+	/**
+	 * Returns a value of the current row.
+	 *
+	 * @param column
+	 *            position of the column, in the order of the variables of the
+	 *            operator
+	 * @return encoded value
+	 */
+	public abstract long get(int column);
+
+	/**
+	 * Releases the resources held by the cursor and by the cursors it reads,
+	 * e.g. the temporary files of a spilled operator. A cursor read to its
+	 * end has already released them; closing a cursor twice has no effect.
+	 */
+	public void close() {
+	}
+
+	/**
+	 * Returns a cursor over the rows of a table.
+	 *
+	 * @param table
+	 *            computed result
+	 * @return cursor over the rows of the table
+	 */
+	public static Cursor over(final BindingTable table) {
+		return new Cursor() {
+
+			private int row = -1;
+
+			public boolean next() {
+				return ++row < table.size();
+			}
+
+			public long get(int column) {
+				return table.get(column, row);
+			}
+		};
+	}
+}
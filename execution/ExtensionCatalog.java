@@ -0,0 +1,216 @@
+/*
+ *   Copyright 2015 Cheikh BA <cheikh.ba.sn@gmail.com>
+ *
+ *   This file is part of WALO.
+ *
+ *   WALO is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Lesser General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   WALO is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Lesser General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Lesser General Public License,
+ *   along with WALO.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package execution;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.Hashtable;
+
+/**
+ * Class ExtensionCatalog holds the extensions of the views, by view name.
+ *
+ * Extensions are read from a directory with one file per view: V.tsv (values
+ * separated by tabulations) or V.csv (values separated by commas), one tuple
+ * per line. Empty lines and lines starting with # are ignored. A file without
+ * tuple is an empty extension, whose arity is the one of the view definition
+ * (see getExtension).
+ *
+ * A directory may also hold segments written by SegmentLoader (V.seg and the
+ * dictionary). Segments are memory-mapped instead of being parsed, and take
+ * precedence over the .tsv and .csv files of the same view.
+ */
+public class ExtensionCatalog {
+
+	/** extension of every view */
+	private Hashtable<String, ViewExtension> extensions = new Hashtable<String, ViewExtension>();
+
+	/**
+	 * Adds (or replaces) the extension of a view.
+	 *
+	 * @param extension
+	 *            extension of the view
+	 */
+	public void addExtension(ViewExtension extension) {
+		extensions.put(extension.getName(), extension);
+	}
+
+	/**
+	 * Returns the extension of the view with the given name. A view without
+	 * extension is empty.
+	 *
+	 * @param viewName
+	 *            name of the view
+	 * @param arity
+	 *            number of columns of the view
+	 * @return extension of the view
+	 */
+	public ViewExtension getExtension(String viewName, int arity) {
+		ViewExtension extension = extensions.get(viewName);
+		if (extension == null) {
+			return new ViewExtension(viewName, arity);
+		}
+		if (extension.arity() != arity) {
+			throw new IllegalArgumentException("View " + viewName + " has "
+					+ extension.arity() + " columns, not " + arity);
+		}
+		return extension;
+	}
+
+	/**
+	 * Tests whether an extension is known for the view.
+	 *
+	 * @param viewName
+	 *            name of the view
+	 * @return true if the extension of the view has been added
+	 */
+	public boolean hasExtension(String viewName) {
+		return extensions.containsKey(viewName);
+	}
+
+	/**
+	 * Returns the number of views with an extension.
+	 *
+	 * @return number of views
+	 */
+	public int size() {
+		return extensions.size();
+	}
+
+	/**
+	 * Maps the segments of a directory and reads the extensions of the other
+	 * views from its .tsv and .csv files.
+	 *
+	 * @param directory
+	 *            name of the directory
+	 * @return extensions of the views
+	 * @throws IOException
+	 *             if a file cannot be read
+	 */
+	public static ExtensionCatalog load(String directory) throws IOException {
+		File dir = new File(directory);
+		File[] files = dir.listFiles();
+		if (files == null) {
+			throw new IOException(directory + " is not a directory");
+		}
+
+		ExtensionCatalog catalog = new ExtensionCatalog();
+		File dictionary = new File(dir, SegmentFile.DICTIONARY_FILE);
+		if (dictionary.isFile()) {
+			MappedDictionary mapped = SegmentFile.mapDictionary(dictionary);
+			for (File file : files) {
+				if (file.getName().endsWith(SegmentFile.SEGMENT_EXTENSION)) {
+					catalog.addExtension(SegmentFile.mapSegment(file, mapped));
+				}
+			}
+		}
+
+		for (File file : files) {
+			String fileName = file.getName();
+			if (catalog.hasExtension(fileName.substring(0,
+					Math.max(fileName.lastIndexOf('.'), 0)))) {
+				continue;
+			}
+			ViewExtension extension = null;
+			if (fileName.endsWith(".tsv")) {
+				extension = readExtension(file, '\t');
+			} else if (fileName.endsWith(".csv")) {
+				extension = readExtension(file, ',');
+			}
+			if (extension != null) {
+				catalog.addExtension(extension);
+			}
+		}
+		return catalog;
+	}
+
+	/**
+	 * Reads the extension of a view from a file named after the view.
+	 *
+	 * @param file
+	 *            file of the view
+	 * @param separator
+	 *            separator of the values
+	 * @return extension of the view, null if the file holds no tuple (its
+	 *         arity is then unknown)
+	 * @throws IOException
+	 *             if the file cannot be read
+	 */
+	public static ViewExtension readExtension(File file, char separator)
+			throws IOException {
+		String fileName = file.getName();
+		String viewName = fileName.substring(0, fileName.lastIndexOf('.'));
+		ViewExtension extension = null;
+
+		BufferedReader reader = new BufferedReader(new InputStreamReader(
+				new FileInputStream(file), "UTF-8"));
+		try {
+			String line;
+			int lineNumber = 0;
+			while ((line = reader.readLine()) != null) {
+				lineNumber++;
+				if (line.trim().length() == 0 || line.startsWith("#")) {
+					continue;
+				}
+				String[] values = split(line, separator);
+				if (extension == null) {
+					extension = new ViewExtension(viewName, values.length);
+				} else if (values.length != extension.arity()) {
+					throw new IOException(fileName + ":" + lineNumber + ": "
+							+ values.length + " values instead of "
+							+ extension.arity());
+				}
+				long[] tuple = new long[values.length];
+				for (int i = 0; i < values.length; i++) {
+					tuple[i] = Values.encode(values[i].trim());
+				}
+				extension.add(tuple);
+			}
+		} finally {
+			reader.close();
+		}
+		return extension;
+	}
+
+	/**
+	 * Splits a line at every separator, keeping empty values.
+	 */
+	static String[] split(String line, char separator) {
+		int count = 1;
+		for (int i = 0; i < line.length(); i++) {
+			if (line.charAt(i) == separator) {
+				count++;
+			}
+		}
+		String[] values = new String[count];
+		int start = 0;
+		for (int v = 0; v < count; v++) {
+			int end = line.indexOf(separator, start);
+			if (end < 0) {
+				end = line.length();
+			}
+			values[v] = line.substring(start, end);
+			start = end + 1;
+		}
+		return values;
+	}
+}
@@ -0,0 +1,328 @@
+/*
+ *   Copyright 2015 Cheikh BA <cheikh.ba.sn@gmail.com>
+ *
+ *   This file is part of WALO.
+ *
+ *   WALO is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Lesser General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   WALO is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Lesser General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Lesser General Public License,
+ *   along with WALO.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package execution;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Class ExternalDistinct removes the duplicates of rows of encoded values
+ * (see Values) whose number may exceed a memory budget, by external sorting:
+ *
+ * 1. the rows are buffered in memory; when the buffer exceeds half of the
+ * budget (sorting it takes as much memory again), it is sorted, and its
+ * distinct rows are written to a SpillFile (a run). A run holds at least
+ * MIN_RUN_ROWS rows, so that a tiny budget does not write a file per row
+ *
+ * 2. the runs are merged: the current rows of the runs are kept in a
+ * priority queue, and a row equal to the last row returned is skipped. At
+ * most MERGE_FAN_IN runs are read at once, since each one holds a file open:
+ * with more runs, groups of runs are first merged into longer runs. The
+ * buffers of the runs read at once take half of the budget
+ *
+ * The distinct rows are returned in increasing order, column by column. If
+ * no run was written, the buffer is sorted in memory. Closing the cursor of
+ * the rows (see Cursor.close), or closing the ExternalDistinct before asking
+ * for its rows, deletes the runs.
+ */
+public class ExternalDistinct {
+
+	/** maximum number of runs merged at once */
+	public static final int MERGE_FAN_IN = 64;
+
+	/** least number of rows buffered before a run is written */
+	public static final int MIN_RUN_ROWS = 1 << 12;
+
+	/** number of values of every row */
+	private final int arity;
+
+	/** maximum size of the buffer, in bytes */
+	private final long budget;
+
+	/** variables of the buffer (see BindingTable), named after their column */
+	private final String[] columns;
+
+	/** rows not written to a run yet */
+	private BindingTable buffer;
+
+	/** sorted runs of distinct rows */
+	private List<SpillFile> runs = new ArrayList<SpillFile>();
+
+	/**
+	 * ExternalDistinct constructor
+	 *
+	 * @param arity
+	 *            number of values of every row
+	 * @param budget
+	 *            maximum size of the rows kept in memory, in bytes
+	 */
+	public ExternalDistinct(int arity, long budget) {
+		this.arity = arity;
+		this.budget = budget;
+		this.columns = new String[arity];
+		for (int c = 0; c < arity; c++) {
+			columns[c] = "C" + c;
+		}
+		this.buffer = new BindingTable(columns, 16);
+	}
+
+	/**
+	 * Adds a row, writing the buffer to a run when it exceeds the budget.
+	 *
+	 * @param row
+	 *            encoded value of every column, read but not kept
+	 */
+	public void add(long[] row) {
+		buffer.add(row);
+		if (buffer.size() >= MIN_RUN_ROWS
+				&& 2 * buffer.memoryUsage() > budget) {
+			SpillFile run = newRun();
+			Cursor sorted = sortedDistinct(buffer);
+			long[] values = new long[arity];
+			while (sorted.next()) {
+				for (int c = 0; c < arity; c++) {
+					values[c] = sorted.get(c);
+				}
+				run.write(values);
+			}
+			run.close();
+			runs.add(run);
+			buffer = new BindingTable(columns, 16);
+		}
+	}
+
+	/**
+	 * Deletes the runs written so far, when the rows added are abandoned
+	 * before distinct is called.
+	 */
+	public void close() {
+		if (runs != null) {
+			for (SpillFile run : runs) {
+				run.delete();
+			}
+			runs.clear();
+			buffer = new BindingTable(columns, 16);
+		}
+	}
+
+	/**
+	 * Returns the number of runs written to disk so far.
+	 *
+	 * @return number of sorted runs
+	 */
+	public int numberOfRuns() {
+		return runs.size();
+	}
+
+	/**
+	 * Returns a cursor over the distinct rows added, in increasing order. No
+	 * row may be added afterwards.
+	 *
+	 * @return cursor over the distinct rows
+	 */
+	public Cursor distinct() {
+		if (runs.isEmpty()) {
+			return sortedDistinct(buffer);
+		}
+		List<SpillFile> pending = runs;
+		runs = null;
+		while (pending.size() > MERGE_FAN_IN) {
+			List<Cursor> inputs = new ArrayList<Cursor>();
+			for (SpillFile run : pending.subList(0, MERGE_FAN_IN)) {
+				inputs.add(run.read());
+			}
+			pending = new ArrayList<SpillFile>(pending.subList(MERGE_FAN_IN,
+					pending.size()));
+			SpillFile merged = newRun();
+			Cursor rows = merge(inputs);
+			long[] values = new long[arity];
+			while (rows.next()) {
+				for (int c = 0; c < arity; c++) {
+					values[c] = rows.get(c);
+				}
+				merged.write(values);
+			}
+			merged.close();
+			pending.add(merged);
+		}
+
+		List<Cursor> inputs = new ArrayList<Cursor>();
+		for (SpillFile run : pending) {
+			inputs.add(run.read());
+		}
+		if (buffer.size() > 0) {
+			inputs.add(sortedDistinct(buffer));
+		}
+		buffer = null;
+		return merge(inputs);
+	}
+
+	/**
+	 * Creates a run, its buffer being one of those of the MERGE_FAN_IN runs
+	 * read at once.
+	 */
+	private SpillFile newRun() {
+		return new SpillFile(arity, budget / (2 * MERGE_FAN_IN));
+	}
+
+	/**
+	 * Returns a cursor over the distinct rows of sorted inputs, in increasing
+	 * order.
+	 *
+	 * @param inputs
+	 *            cursors over sorted rows
+	 * @return cursor over the merged rows
+	 */
+	private Cursor merge(List<Cursor> inputs) {
+		final PriorityQueue<Run> queue = new PriorityQueue<Run>();
+		for (Cursor input : inputs) {
+			Run run = new Run(input);
+			if (run.advance()) {
+				queue.add(run);
+			}
+		}
+
+		return new Cursor() {
+
+			/** current row, null before the first one */
+			private long[] values;
+
+			public boolean next() {
+				while (!queue.isEmpty()) {
+					Run run = queue.poll();
+					boolean duplicate = values != null
+							&& compare(run.values, values) == 0;
+					if (!duplicate) {
+						if (values == null) {
+							values = new long[arity];
+						}
+						System.arraycopy(run.values, 0, values, 0, arity);
+					}
+					if (run.advance()) {
+						queue.add(run);
+					}
+					if (!duplicate) {
+						return true;
+					}
+				}
+				return false;
+			}
+
+			public long get(int column) {
+				return values[column];
+			}
+
+			public void close() {
+				while (!queue.isEmpty()) {
+					queue.poll().cursor.close();
+				}
+			}
+		};
+	}
+
+	/**
+	 * Returns a cursor over the distinct rows of a table, in increasing
+	 * order.
+	 */
+	private Cursor sortedDistinct(BindingTable table) {
+		int[] all = new int[arity];
+		for (int c = 0; c < arity; c++) {
+			all[c] = c;
+		}
+		final long[][] sorted = GenericJoin.sort(table, all);
+		final int size = table.size();
+
+		return new Cursor() {
+
+			/** current row */
+			private int row = -1;
+
+			public boolean next() {
+				while (++row < size) {
+					if (row == 0 || !equalsPrevious(row)) {
+						return true;
+					}
+				}
+				return false;
+			}
+
+			private boolean equalsPrevious(int row) {
+				for (long[] column : sorted) {
+					if (column[row] != column[row - 1]) {
+						return false;
+					}
+				}
+				return true;
+			}
+
+			public long get(int column) {
+				return sorted[column][row];
+			}
+		};
+	}
+
+	/**
+	 * Compares two rows column by column.
+	 */
+	private static int compare(long[] row1, long[] row2) {
+		for (int c = 0; c < row1.length; c++) {
+			if (row1[c] != row2[c]) {
+				return row1[c] < row2[c] ? -1 : 1;
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Sorted input of the merge, ordered by its current row.
+	 */
+	private class Run implements Comparable<Run> {
+
+		/** sorted distinct rows */
+		private final Cursor cursor;
+
+		/** current row */
+		private final long[] values = new long[arity];
+
+		Run(Cursor cursor) {
+			this.cursor = cursor;
+		}
+
+		/**
+		 * Moves to the next row of the run.
+		 *
+		 * @return false at the end of the run
+		 */
+		boolean advance() {
+			if (!cursor.next()) {
+				return false;
+			}
+			for (int c = 0; c < arity; c++) {
+				values[c] = cursor.get(c);
+			}
+			return true;
+		}
+
+		public int compareTo(Run other) {
+			return compare(values, other.values);
+		}
+	}
+}
@@ -0,0 +1,324 @@
+/*
+ *   Copyright 2015 Cheikh BA <cheikh.ba.sn@gmail.com>
+ *
+ *   This file is part of WALO.
+ *
+ *   WALO is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Lesser General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   WALO is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Lesser General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Lesser General Public License,
+ *   along with WALO.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package execution;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Class GenericJoin is the worst-case optimal natural join of several
+ * operators (leapfrog triejoin). Rather than joining the operators two by
+ * two, it binds the variables one after the other in a global order:
+ *
+ * 1. the result of every operator is sorted on its variables in the global
+ * order, so that the rows binding the same values to the variables already
+ * bound form a range, i.e. a node of a trie
+ *
+ * 2. the values of the next variable are the intersection of the values of
+ * the ranges of the operators binding it, found by leapfrogging: the
+ * operator with the smallest value seeks the greatest value of the others
+ *
+ * No intermediate result is built, so the join of cyclic queries like
+ * R(x,y),S(y,z),T(z,x) takes time bounded by the largest possible output
+ * instead of the size of a pairwise join.
+ *
+ * The result binds all the variables of the operators in the global order:
+ * variables joining more operators first, then by first occurrence. Every
+ * binding is returned once, even if an operator returns duplicate rows.
+ */
+public class GenericJoin extends PlanNode {
+
+	/** operators to join */
+	private List<PlanNode> inputs;
+
+	/** variables of the result, in the global order */
+	private String[] variables;
+
+	/**
+	 * GenericJoin constructor
+	 *
+	 * @param inputs
+	 *            operators to join
+	 */
+	public GenericJoin(List<PlanNode> inputs) {
+		this.inputs = inputs;
+
+		// variables by decreasing number of operators binding them
+		List<String> vars = new ArrayList<String>();
+		List<Integer> degrees = new ArrayList<Integer>();
+		for (PlanNode input : inputs) {
+			for (String var : input.getVariables()) {
+				int position = vars.indexOf(var);
+				if (position < 0) {
+					vars.add(var);
+					degrees.add(1);
+				} else {
+					degrees.set(position, degrees.get(position) + 1);
+				}
+			}
+		}
+		variables = new String[vars.size()];
+		for (int v = 0; v < variables.length; v++) {
+			int best = 0;
+			for (int w = 1; w < vars.size(); w++) {
+				if (degrees.get(w) > degrees.get(best)) {
+					best = w;
+				}
+			}
+			variables[v] = vars.remove(best);
+			degrees.remove(best);
+		}
+	}
+
+	public BindingTable execute() {
+		int n = inputs.size();
+		BindingTable result = new BindingTable(variables, 16);
+
+		// values of every input, sorted on its variables in the global order
+		long[][][] keys = new long[n][][];
+		int[][] levels = new int[n][variables.length];
+		int[] lo = new int[n];
+		int[] hi = new int[n];
+		for (int i = 0; i < n; i++) {
+			BindingTable table = inputs.get(i).execute();
+			if (table.size() == 0) {
+				return result;
+			}
+			List<Integer> columns = new ArrayList<Integer>();
+			for (int d = 0; d < variables.length; d++) {
+				int column = table.indexOf(variables[d]);
+				levels[i][d] = column < 0 ? -1 : columns.size();
+				if (column >= 0) {
+					columns.add(column);
+				}
+			}
+			keys[i] = sort(table, Scan.toArray(columns));
+			hi[i] = table.size();
+		}
+
+		// inputs binding every variable
+		int[][] participants = new int[variables.length][];
+		for (int d = 0; d < variables.length; d++) {
+			List<Integer> binding = new ArrayList<Integer>();
+			for (int i = 0; i < n; i++) {
+				if (levels[i][d] >= 0) {
+					binding.add(i);
+				}
+			}
+			participants[d] = Scan.toArray(binding);
+		}
+
+		join(0, participants, levels, keys, lo, hi, new long[variables.length],
+				result);
+		return result;
+	}
+
+	/**
+	 * Binds the variables from the given depth on, within the current ranges
+	 * of the inputs, and adds the complete bindings to the result.
+	 */
+	private void join(int depth, int[][] participants, int[][] levels,
+			long[][][] keys, int[] lo, int[] hi, long[] binding,
+			BindingTable result) {
+		if (depth == variables.length) {
+			int row = result.addRow();
+			for (int d = 0; d < binding.length; d++) {
+				result.set(d, row, binding[d]);
+			}
+			return;
+		}
+
+		int[] binders = participants[depth];
+		int m = binders.length;
+		long[][] columns = new long[m][];
+		int[] positions = new int[m];
+		int[] ends = new int[m];
+		int[] savedLo = new int[m];
+		int[] savedHi = new int[m];
+		for (int p = 0; p < m; p++) {
+			int i = binders[p];
+			columns[p] = keys[i][levels[i][depth]];
+			positions[p] = lo[i];
+			savedLo[p] = lo[i];
+			savedHi[p] = hi[i];
+		}
+
+		while (true) {
+			long max = Long.MIN_VALUE;
+			for (int p = 0; p < m; p++) {
+				if (positions[p] >= savedHi[p]) {
+					restore(binders, savedLo, savedHi, lo, hi);
+					return;
+				}
+				max = Math.max(max, columns[p][positions[p]]);
+			}
+
+			// leapfrog: every input seeks the greatest value
+			boolean aligned = true;
+			for (int p = 0; p < m; p++) {
+				if (columns[p][positions[p]] < max) {
+					positions[p] = seek(columns[p], max, positions[p],
+							savedHi[p]);
+					aligned = false;
+				}
+			}
+			if (!aligned) {
+				continue;
+			}
+
+			// all the inputs have the value: open the trie nodes
+			for (int p = 0; p < m; p++) {
+				ends[p] = seek(columns[p], max + 1, positions[p], savedHi[p]);
+				if (max == Long.MAX_VALUE) {
+					ends[p] = savedHi[p];
+				}
+				lo[binders[p]] = positions[p];
+				hi[binders[p]] = ends[p];
+			}
+			binding[depth] = max;
+			join(depth + 1, participants, levels, keys, lo, hi, binding, result);
+			for (int p = 0; p < m; p++) {
+				positions[p] = ends[p];
+			}
+		}
+	}
+
+	/**
+	 * Restores the ranges of the inputs of a depth.
+	 */
+	private static void restore(int[] binders, int[] savedLo, int[] savedHi,
+			int[] lo, int[] hi) {
+		for (int p = 0; p < binders.length; p++) {
+			lo[binders[p]] = savedLo[p];
+			hi[binders[p]] = savedHi[p];
+		}
+	}
+
+	/**
+	 * Returns the first position of [from, to[ whose value is at least the
+	 * given one, to if there is none. The range is sorted; the search gallops
+	 * from the start so that close values are found in few steps.
+	 */
+	static int seek(long[] column, long value, int from, int to) {
+		int step = 1;
+		int low = from;
+		int high = from;
+		while (high < to && column[high] < value) {
+			low = high + 1;
+			high = from + step;
+			step <<= 1;
+		}
+		if (high > to) {
+			high = to;
+		}
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (column[middle] < value) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Returns the given columns of a table, the rows being sorted on the
+	 * values of the first column, then of the second one, and so on.
+	 */
+	static long[][] sort(BindingTable table, int[] columns) {
+		int size = table.size();
+		int[] rows = new int[size];
+		for (int r = 0; r < size; r++) {
+			rows[r] = r;
+		}
+		long[][] values = new long[columns.length][];
+		for (int c = 0; c < columns.length; c++) {
+			values[c] = table.getColumn(columns[c]);
+		}
+		mergeSort(rows, new int[size], 0, size, values);
+
+		long[][] sorted = new long[columns.length][size];
+		for (int c = 0; c < columns.length; c++) {
+			for (int r = 0; r < size; r++) {
+				sorted[c][r] = values[c][rows[r]];
+			}
+		}
+		return sorted;
+	}
+
+	/**
+	 * Sorts rows[from, to[ on the values of the columns.
+	 */
+	private static void mergeSort(int[] rows, int[] buffer, int from, int to,
+			long[][] values) {
+		if (to - from < 2) {
+			return;
+		}
+		int middle = (from + to) >>> 1;
+		mergeSort(rows, buffer, from, middle, values);
+		mergeSort(rows, buffer, middle, to, values);
+		if (compare(values, rows[middle - 1], rows[middle]) <= 0) {
+			return;
+		}
+		System.arraycopy(rows, from, buffer, from, to - from);
+		int left = from;
+		int right = middle;
+		for (int r = from; r < to; r++) {
+			if (right >= to
+					|| (left < middle && compare(values, buffer[left],
+							buffer[right]) <= 0)) {
+				rows[r] = buffer[left++];
+			} else {
+				rows[r] = buffer[right++];
+			}
+		}
+	}
+
+	/**
+	 * Compares two rows on the values of the columns.
+	 */
+	private static int compare(long[][] values, int row1, int row2) {
+		for (long[] column : values) {
+			if (column[row1] != column[row2]) {
+				return column[row1] < column[row2] ? -1 : 1;
+			}
+		}
+		return 0;
+	}
+
+	public List<PlanNode> getChildren() {
+		return inputs;
+	}
+
+	public String[] getVariables() {
+		return variables;
+	}
+
+	public void explain(StringBuilder s, int indent) {
+		indent(s, indent);
+		s.append("GenericJoin ");
+		appendVariables(s, variables);
+		s.append('\n');
+		for (PlanNode input : inputs) {
+			input.explain(s, indent + 1);
+		}
+	}
+}
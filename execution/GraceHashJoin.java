@@ -0,0 +1,273 @@
+/*
+ *   Copyright 2015 Cheikh BA <cheikh.ba.sn@gmail.com>
+ *
+ *   This file is part of WALO.
+ *
+ *   WALO is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Lesser General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   WALO is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Lesser General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Lesser General Public License,
+ *   along with WALO.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package execution;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Class GraceHashJoin is a natural join whose hash table is bounded by a
+ * memory budget. The rows of the right operator (the build side) are loaded
+ * into a table, as by HashJoin; if the table exceeds the budget, the join
+ * spills to disk (grace hash join):
+ *
+ * 1. the rows of both operators are split into PARTITIONS partitions on the
+ * hash code of their shared variables, each partition being written to a
+ * SpillFile, so that matching rows fall into the same partition. The loaded
+ * table is released once written, and the buffers of the 2 * PARTITIONS
+ * files are sized so that together they fit in the budget
+ *
+ * 2. the partitions are joined one after the other, the build partition
+ * being loaded into a hash table probed by the rows of the probe partition
+ *
+ * A build partition still exceeding the budget is split again with another
+ * hash function, at most MAX_DEPTH times: beyond, or for a cross product
+ * whose rows all fall into the same partition, it is loaded whatever its
+ * size. A table of less than MIN_SPILL_ROWS rows is never split, so that a
+ * tiny budget does not write files of a few rows. The left operator is streamed (see PlanNode.open), so that neither
+ * side is materialised in memory. The files of the partitions not joined yet
+ * are deleted when the cursor of the join is closed.
+ */
+public class GraceHashJoin extends PlanNode {
+
+	/** number of partitions of a spilled join */
+	public static final int PARTITIONS = 16;
+
+	/** maximum number of times a partition is split again */
+	public static final int MAX_DEPTH = 3;
+
+	/** least number of rows of a table split into partitions */
+	public static final int MIN_SPILL_ROWS = 1 << 12;
+
+	/** probe side */
+	private PlanNode left;
+
+	/** build side */
+	private PlanNode right;
+
+	/** maximum size of the hash table, in bytes */
+	private long budget;
+
+	/** variables of the result */
+	private String[] variables;
+
+	/** positions of the shared variables in left (first) and right (second) */
+	private int[][] keys;
+
+	/**
+	 * GraceHashJoin constructor
+	 *
+	 * @param left
+	 *            probe side
+	 * @param right
+	 *            build side
+	 * @param budget
+	 *            maximum size of the hash table, in bytes
+	 */
+	public GraceHashJoin(PlanNode left, PlanNode right, long budget) {
+		this.left = left;
+		this.right = right;
+		this.budget = budget;
+		this.variables = HashJoin.joinVariables(left.getVariables(),
+				right.getVariables());
+		this.keys = HashJoin.sharedColumns(left.getVariables(),
+				right.getVariables());
+	}
+
+	public BindingTable execute() {
+		BindingTable result = new BindingTable(variables, 16);
+		Cursor rows = open();
+		while (rows.next()) {
+			int row = result.addRow();
+			for (int c = 0; c < variables.length; c++) {
+				result.set(c, row, rows.get(c));
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Returns a cursor over the join, spilling both sides to disk if the
+	 * build side exceeds the budget.
+	 */
+	public Cursor open() {
+		return join(left.open(), right.open(), 0);
+	}
+
+	/**
+	 * Returns a cursor over the join of the rows of two cursors.
+	 *
+	 * @param probe
+	 *            rows of the left operator
+	 * @param build
+	 *            rows of the right operator
+	 * @param depth
+	 *            number of times the rows have been partitioned
+	 * @return cursor over the join
+	 */
+	private Cursor join(Cursor probe, Cursor build, int depth) {
+		String[] rightVars = right.getVariables();
+		BindingTable table = new BindingTable(rightVars, 16);
+		boolean split = keys[0].length > 0 && depth < MAX_DEPTH;
+		while (build.next()) {
+			int row = table.addRow();
+			for (int c = 0; c < rightVars.length; c++) {
+				table.set(c, row, build.get(c));
+			}
+			if (split && table.size() >= MIN_SPILL_ROWS
+					&& table.memoryUsage() > budget) {
+				SpillFile[] buildParts = partitions(rightVars.length);
+				Cursor loaded = Cursor.over(table);
+				table = null; // released once written
+				while (loaded.next()) {
+					buildParts[partition(loaded, keys[1], depth)].write(loaded);
+				}
+				return partition(probe, build, buildParts, depth);
+			}
+		}
+		if (table.size() == 0) {
+			probe.close();
+			return Cursor.over(new BindingTable(variables, 0));
+		}
+		return HashJoin.probe(probe, left.getVariables(), table);
+	}
+
+	/**
+	 * Splits the rows of both sides into partitions written to disk, and
+	 * returns a cursor joining the partitions one after the other.
+	 *
+	 * @param probe
+	 *            rows of the left operator
+	 * @param build
+	 *            rows of the right operator not read yet
+	 * @param buildParts
+	 *            partitions of the rows of the right operator already read
+	 * @param depth
+	 *            number of times the rows have been partitioned
+	 * @return cursor over the join
+	 */
+	private Cursor partition(Cursor probe, Cursor build,
+			final SpillFile[] buildParts, int depth) {
+		while (build.next()) {
+			buildParts[partition(build, keys[1], depth)].write(build);
+		}
+		final SpillFile[] probeParts = partitions(left.getVariables().length);
+		while (probe.next()) {
+			probeParts[partition(probe, keys[0], depth)].write(probe);
+		}
+		for (int p = 0; p < PARTITIONS; p++) {
+			buildParts[p].close();
+			probeParts[p].close();
+		}
+
+		final int next = depth + 1;
+		return new Cursor() {
+
+			/** partition being joined */
+			private int current = -1;
+
+			/** join of the current partition, null before the first one */
+			private Cursor rows;
+
+			public boolean next() {
+				while (rows == null || !rows.next()) {
+					if (++current >= PARTITIONS) {
+						return false;
+					}
+					if (buildParts[current].size() == 0
+							|| probeParts[current].size() == 0) {
+						buildParts[current].delete();
+						probeParts[current].delete();
+						rows = null;
+					} else {
+						rows = join(probeParts[current].read(),
+								buildParts[current].read(), next);
+					}
+				}
+				return true;
+			}
+
+			public long get(int column) {
+				return rows.get(column);
+			}
+
+			public void close() {
+				if (rows != null) {
+					rows.close();
+					rows = null;
+				}
+				while (++current < PARTITIONS) {
+					buildParts[current].delete();
+					probeParts[current].delete();
+				}
+			}
+		};
+	}
+
+	/**
+	 * Creates the files of the partitions of one side, their buffers taking
+	 * half of the budget.
+	 */
+	private SpillFile[] partitions(int arity) {
+		SpillFile[] parts = new SpillFile[PARTITIONS];
+		for (int p = 0; p < PARTITIONS; p++) {
+			parts[p] = new SpillFile(arity, budget / (2 * PARTITIONS));
+		}
+		return parts;
+	}
+
+	/**
+	 * Returns the partition of the current row of a cursor: the hash code of
+	 * its shared variables, salted by the depth so that a partition split
+	 * again is spread over all the new partitions.
+	 */
+	private static int partition(Cursor cursor, int[] keys, int depth) {
+		long h = depth + 1;
+		for (int key : keys) {
+			h = HashJoin.combine(h, cursor.get(key));
+		}
+		return (HashJoin.finish(h) & 0x7FFFFFFF) % PARTITIONS;
+	}
+
+	public List<PlanNode> getChildren() {
+		return Arrays.asList(left, right);
+	}
+
+	public String[] getVariables() {
+		return variables;
+	}
+
+	public void explain(StringBuilder s, int indent) {
+		indent(s, indent);
+		s.append("GraceHashJoin ");
+		if (keys[1].length == 0) {
+			s.append("(cross product)");
+		} else {
+			String[] shared = new String[keys[1].length];
+			for (int k = 0; k < shared.length; k++) {
+				shared[k] = right.getVariables()[keys[1][k]];
+			}
+			appendVariables(s, shared);
+		}
+		s.append(" [budget ").append(budget).append(" bytes]\n");
+		left.explain(s, indent + 1);
+		right.explain(s, indent + 1);
+	}
+}
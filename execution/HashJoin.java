@@ -0,0 +1,408 @@
+/*
+ *   Copyright 2015 Cheikh BA <cheikh.ba.sn@gmail.com>
+ *
+ *   This file is part of WALO.
+ *
+ *   WALO is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Lesser General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   WALO is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Lesser General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Lesser General Public License,
+ *   along with WALO.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package execution;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Class HashJoin is the natural join of two operators on their shared
+ * variables. The result of the right operator is loaded into a hash table,
+ * which is then probed with every binding of the left operator. Without
+ * shared variable, the join is a cross product.
+ *
+ * The result binds the variables of the left operator followed by the other
+ * variables of the right operator.
+ */
+public class HashJoin extends PlanNode {
+
+	/** probe side */
+	private PlanNode left;
+
+	/** build side */
+	private PlanNode right;
+
+	/** variables of the result */
+	private String[] variables;
+
+	/**
+	 * HashJoin constructor
+	 *
+	 * @param left
+	 *            probe side
+	 * @param right
+	 *            build side
+	 */
+	public HashJoin(PlanNode left, PlanNode right) {
+		this.left = left;
+		this.right = right;
+		this.variables = joinVariables(left.getVariables(),
+				right.getVariables());
+	}
+
+	public BindingTable execute() {
+		BindingTable build = right.execute();
+		if (build.size() == 0) {
+			return new BindingTable(variables, 0);
+		}
+		return join(left.execute(), build);
+	}
+
+	/**
+	 * Returns a cursor probing the hash table of the right result with the
+	 * rows of the left operator as they are pulled: the left operator is only
+	 * read as far as the consumer needs.
+	 */
+	public Cursor open() {
+		BindingTable build = right.execute();
+		if (build.size() == 0) {
+			return Cursor.over(new BindingTable(variables, 0));
+		}
+		return probe(left.open(), left.getVariables(), build);
+	}
+
+	/**
+	 * Returns a cursor over the natural join of the rows of a cursor with a
+	 * table, probing the hash table of the table with every row as it is
+	 * pulled.
+	 *
+	 * @param probe
+	 *            rows probing the hash table
+	 * @param probeVariables
+	 *            variables of the rows of probe
+	 * @param build
+	 *            table loaded into the hash table
+	 * @return bindings of the variables of probe followed by the other
+	 *         variables of build
+	 */
+	static Cursor probe(final Cursor probe, String[] probeVariables,
+			final BindingTable build) {
+		final int[][] keys = sharedColumns(probeVariables, build.getVariables());
+		final int[] rightColumns = otherColumns(probeVariables,
+				build.getVariables());
+		final int leftArity = probeVariables.length;
+		final HashIndex index = new HashIndex(build, keys[1]);
+
+		return new Cursor() {
+
+			/** matching row of build, -1 before the first match */
+			private int match = -1;
+
+			public boolean next() {
+				if (match >= 0) {
+					match = nextMatch(index.next(match));
+				}
+				while (match < 0) {
+					if (!probe.next()) {
+						return false;
+					}
+					match = nextMatch(index.first(hash(probe, keys[0])));
+				}
+				return true;
+			}
+
+			/**
+			 * Skips the rows of the chain whose keys differ from the probe.
+			 */
+			private int nextMatch(int row) {
+				while (row >= 0 && !keysEqual(row)) {
+					row = index.next(row);
+				}
+				return row;
+			}
+
+			private boolean keysEqual(int row) {
+				for (int k = 0; k < keys[0].length; k++) {
+					if (probe.get(keys[0][k]) != build.get(keys[1][k], row)) {
+						return false;
+					}
+				}
+				return true;
+			}
+
+			public long get(int column) {
+				if (column < leftArity) {
+					return probe.get(column);
+				}
+				return build.get(rightColumns[column - leftArity], match);
+			}
+
+			public void close() {
+				probe.close();
+			}
+		};
+	}
+
+	/**
+	 * Returns the natural join of two tables.
+	 *
+	 * @param probe
+	 *            table probing the hash table
+	 * @param build
+	 *            table loaded into the hash table
+	 * @return bindings of the variables of probe followed by the other
+	 *         variables of build
+	 */
+	public static BindingTable join(BindingTable probe, BindingTable build) {
+		String[] variables = joinVariables(probe.getVariables(),
+				build.getVariables());
+		BindingTable result = new BindingTable(variables, Math.max(
+				probe.size(), build.size()));
+		if (probe.size() == 0 || build.size() == 0) {
+			return result;
+		}
+
+		int[][] keys = sharedColumns(probe, build);
+		int[] rightColumns = otherColumns(probe, build);
+		HashIndex index = new HashIndex(build, keys[1]);
+
+		int leftArity = probe.arity();
+		for (int row = 0; row < probe.size(); row++) {
+			int hash = hash(probe, keys[0], row);
+			for (int match = index.first(hash); match >= 0; match = index
+					.next(match)) {
+				if (keysEqual(probe, row, keys[0], build, match, keys[1])) {
+					int out = result.addRow();
+					for (int c = 0; c < leftArity; c++) {
+						result.set(c, out, probe.get(c, row));
+					}
+					for (int c = 0; c < rightColumns.length; c++) {
+						result.set(leftArity + c, out,
+								build.get(rightColumns[c], match));
+					}
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the semi-join of two tables: the rows of the first table
+	 * joining at least one row of the second one.
+	 *
+	 * @param table
+	 *            table to reduce
+	 * @param filter
+	 *            table loaded into the hash table
+	 * @return rows of table with a match in filter
+	 */
+	public static BindingTable semiJoin(BindingTable table, BindingTable filter) {
+		BindingTable result = new BindingTable(table.getVariables(),
+				table.size());
+		if (filter.size() == 0) {
+			return result;
+		}
+
+		int[][] keys = sharedColumns(table, filter);
+		HashIndex index = new HashIndex(filter, keys[1]);
+		for (int row = 0; row < table.size(); row++) {
+			int hash = hash(table, keys[0], row);
+			for (int match = index.first(hash); match >= 0; match = index
+					.next(match)) {
+				if (keysEqual(table, row, keys[0], filter, match, keys[1])) {
+					int out = result.addRow();
+					for (int c = 0; c < table.arity(); c++) {
+						result.set(c, out, table.get(c, row));
+					}
+					break;
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the variables of the join of two operators.
+	 */
+	static String[] joinVariables(String[] leftVars, String[] rightVars) {
+		List<String> vars = new ArrayList<String>(Arrays.asList(leftVars));
+		for (String var : rightVars) {
+			if (Selection.indexOf(leftVars, var) < 0) {
+				vars.add(var);
+			}
+		}
+		return vars.toArray(new String[vars.size()]);
+	}
+
+	/**
+	 * Returns the columns of the shared variables in the left table (first
+	 * array) and in the right table (second array).
+	 */
+	static int[][] sharedColumns(BindingTable left, BindingTable right) {
+		return sharedColumns(left.getVariables(), right.getVariables());
+	}
+
+	/**
+	 * Returns the positions of the shared variables in the left variables
+	 * (first array) and in the right variables (second array).
+	 */
+	static int[][] sharedColumns(String[] leftVars, String[] rightVars) {
+		List<Integer> leftKeys = new ArrayList<Integer>();
+		List<Integer> rightKeys = new ArrayList<Integer>();
+		for (int i = 0; i < rightVars.length; i++) {
+			int l = Selection.indexOf(leftVars, rightVars[i]);
+			if (l >= 0) {
+				leftKeys.add(l);
+				rightKeys.add(i);
+			}
+		}
+		return new int[][] { Scan.toArray(leftKeys), Scan.toArray(rightKeys) };
+	}
+
+	/**
+	 * Returns the columns of the right table whose variable is not bound by
+	 * the left table.
+	 */
+	static int[] otherColumns(BindingTable left, BindingTable right) {
+		return otherColumns(left.getVariables(), right.getVariables());
+	}
+
+	/**
+	 * Returns the positions of the right variables not among the left ones.
+	 */
+	static int[] otherColumns(String[] leftVars, String[] rightVars) {
+		List<Integer> columns = new ArrayList<Integer>();
+		for (int i = 0; i < rightVars.length; i++) {
+			if (Selection.indexOf(leftVars, rightVars[i]) < 0) {
+				columns.add(i);
+			}
+		}
+		return Scan.toArray(columns);
+	}
+
+	/**
+	 * Tests whether two rows have the same values at the given columns.
+	 */
+	static boolean keysEqual(BindingTable left, int leftRow,
+			int[] leftKeys, BindingTable right, int rightRow, int[] rightKeys) {
+		for (int k = 0; k < leftKeys.length; k++) {
+			if (left.get(leftKeys[k], leftRow) != right.get(rightKeys[k],
+					rightRow)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Hash code of the values of the given columns of a row.
+	 */
+	static int hash(BindingTable table, int[] keys, int row) {
+		long h = 0;
+		for (int key : keys) {
+			h = combine(h, table.get(key, row));
+		}
+		return finish(h);
+	}
+
+	/**
+	 * Hash code of the values of the given columns of the current row of a
+	 * cursor, equal to the hash code of the same values in a table.
+	 */
+	static int hash(Cursor cursor, int[] keys) {
+		long h = 0;
+		for (int key : keys) {
+			h = combine(h, cursor.get(key));
+		}
+		return finish(h);
+	}
+
+	/**
+	 * Adds a value to a partial hash code.
+	 */
+	static long combine(long h, long value) {
+		return h * 0x9E3779B97F4A7C15L + value;
+	}
+
+	/**
+	 * Mixes the bits of a partial hash code.
+	 */
+	static int finish(long h) {
+		h ^= (h >>> 33);
+		h *= 0xFF51AFD7ED558CCDL;
+		h ^= (h >>> 33);
+		return (int) h;
+	}
+
+	public List<PlanNode> getChildren() {
+		return Arrays.asList(left, right);
+	}
+
+	public String[] getVariables() {
+		return variables;
+	}
+
+	public void explain(StringBuilder s, int indent) {
+		indent(s, indent);
+		s.append("HashJoin ");
+		List<String> keys = new ArrayList<String>();
+		for (String var : right.getVariables()) {
+			if (Selection.indexOf(left.getVariables(), var) >= 0) {
+				keys.add(var);
+			}
+		}
+		if (keys.isEmpty()) {
+			s.append("(cross product)");
+		} else {
+			appendVariables(s, keys.toArray(new String[keys.size()]));
+		}
+		s.append('\n');
+		left.explain(s, indent + 1);
+		right.explain(s, indent + 1);
+	}
+
+	/**
+	 * Chained hash table over the rows of a table: rows with the same hash
+	 * code are linked from their bucket.
+	 */
+	private static class HashIndex {
+
+		/** first row of every bucket, -1 if empty */
+		private final int[] buckets;
+
+		/** next row of the same bucket, -1 at the end */
+		private final int[] next;
+
+		/** number of buckets - 1 */
+		private final int mask;
+
+		HashIndex(BindingTable table, int[] keys) {
+			int capacity = Integer.highestOneBit(Math.max(table.size(), 1)) << 1;
+			mask = capacity - 1;
+			buckets = new int[capacity];
+			next = new int[table.size()];
+			Arrays.fill(buckets, -1);
+			for (int row = table.size() - 1; row >= 0; row--) {
+				int bucket = hash(table, keys, row) & mask;
+				next[row] = buckets[bucket];
+				buckets[bucket] = row;
+			}
+		}
+
+		int first(int hash) {
+			return buckets[hash & mask];
+		}
+
+		int next(int row) {
+			return next[row];
+		}
+	}
+}
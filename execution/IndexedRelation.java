@@ -0,0 +1,271 @@
+/*
+ *   Copyright 2015 Cheikh BA <cheikh.ba.sn@gmail.com>
+ *
+ *   This file is part of WALO.
+ *
+ *   WALO is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Lesser General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   WALO is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Lesser General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Lesser General Public License,
+ *   along with WALO.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package execution;
+
+import java.util.Arrays;
+import java.util.Hashtable;
+
+/**
+ * Class IndexedRelation is a growing relation with hash indexes on sets of
+ * its columns. An index is built the first time it is asked for, then kept
+ * up to date: the tuples added since its last use are inserted when it is
+ * asked for again, so it is never rebuilt from scratch.
+ *
+ * Tuples are only appended, so a range of rows [from, to) is a state of the
+ * relation: [0, n) is the relation when it had n tuples. In the chain of a
+ * bucket, rows are linked by decreasing position, so that a lookup in a
+ * range stops at the first row before it.
+ */
+public class IndexedRelation {
+
+	/** tuples of the relation */
+	private ViewExtension tuples;
+
+	/** index of every set of columns, by description of the columns */
+	private Hashtable<String, Index> indexes = new Hashtable<String, Index>();
+
+	/** all the columns, to look tuples up */
+	private int[] allColumns;
+
+	/**
+	 * IndexedRelation constructor
+	 *
+	 * @param tuples
+	 *            initial tuples, more tuples may be added
+	 */
+	public IndexedRelation(ViewExtension tuples) {
+		this.tuples = tuples;
+		this.allColumns = new int[tuples.arity()];
+		for (int c = 0; c < allColumns.length; c++) {
+			allColumns[c] = c;
+		}
+	}
+
+	/**
+	 * Returns the tuples of the relation.
+	 *
+	 * @return extension of the relation
+	 */
+	public ViewExtension getTuples() {
+		return tuples;
+	}
+
+	/**
+	 * Returns the number of tuples.
+	 *
+	 * @return number of tuples
+	 */
+	public int size() {
+		return tuples.size();
+	}
+
+	/**
+	 * Returns a value of a tuple.
+	 *
+	 * @param row
+	 *            position of the tuple
+	 * @param column
+	 *            position of the value
+	 * @return encoded value
+	 */
+	public long get(int row, int column) {
+		return tuples.get(row, column);
+	}
+
+	/**
+	 * Appends a tuple.
+	 *
+	 * @param tuple
+	 *            encoded value of every column
+	 */
+	public void add(long[] tuple) {
+		tuples.add(tuple);
+	}
+
+	/**
+	 * Tests whether the relation contains a tuple.
+	 *
+	 * @param tuple
+	 *            encoded value of every column
+	 * @return true if a row has these values
+	 */
+	public boolean contains(long[] tuple) {
+		return find(allColumns, tuple, 0, size()) >= 0;
+	}
+
+	/**
+	 * Returns the index on a set of columns, up to date with all the tuples.
+	 *
+	 * @param columns
+	 *            indexed columns
+	 * @return index of the columns
+	 */
+	public Index index(int[] columns) {
+		String key = Arrays.toString(columns);
+		Index index = indexes.get(key);
+		if (index == null) {
+			index = new Index(columns);
+			indexes.put(key, index);
+		}
+		index.update();
+		return index;
+	}
+
+	/**
+	 * Returns the last row of a range having the given values at the given
+	 * columns.
+	 *
+	 * @param columns
+	 *            compared columns
+	 * @param values
+	 *            value of every compared column
+	 * @param from
+	 *            first row of the range
+	 * @param to
+	 *            row following the range
+	 * @return position of the row, -1 if there is none
+	 */
+	public int find(int[] columns, long[] values, int from, int to) {
+		Index index = index(columns);
+		return index.next(index.first(values, to), values, from);
+	}
+
+	/**
+	 * Hash index of the rows of the relation on a set of columns.
+	 */
+	public class Index {
+
+		/** indexed columns */
+		private final int[] columns;
+
+		/** last row of every bucket, -1 if empty */
+		private int[] buckets = new int[16];
+
+		/** previous row of the same bucket, -1 at the end */
+		private int[] previous = new int[16];
+
+		/** number of indexed rows */
+		private int indexed = 0;
+
+		Index(int[] columns) {
+			this.columns = columns;
+			Arrays.fill(buckets, -1);
+		}
+
+		/**
+		 * Inserts the rows added since the last update.
+		 */
+		void update() {
+			int size = tuples.size();
+			if (indexed == size) {
+				return;
+			}
+			if (size > buckets.length) {
+				// load factor at most 1: relinks all the rows
+				buckets = new int[Integer.highestOneBit(size) << 1];
+				Arrays.fill(buckets, -1);
+				indexed = 0;
+			}
+			if (size > previous.length) {
+				previous = Arrays.copyOf(previous,
+						Math.max(size, 2 * previous.length));
+			}
+			int mask = buckets.length - 1;
+			for (int row = indexed; row < size; row++) {
+				int bucket = hash(row) & mask;
+				previous[row] = buckets[bucket];
+				buckets[bucket] = row;
+			}
+			indexed = size;
+		}
+
+		/**
+		 * Returns the last row before a position in the bucket of the given
+		 * values, whose values may be different.
+		 *
+		 * @param values
+		 *            value of every indexed column
+		 * @param to
+		 *            row following the range
+		 * @return position of the row, -1 if there is none
+		 */
+		public int first(long[] values, int to) {
+			long h = 0;
+			for (long value : values) {
+				h = HashJoin.combine(h, value);
+			}
+			int row = buckets[HashJoin.finish(h) & (buckets.length - 1)];
+			while (row >= to) {
+				row = previous[row];
+			}
+			return row;
+		}
+
+		/**
+		 * Returns the first row of a chain, from a row of a bucket down to
+		 * the beginning of a range, having the given values.
+		 *
+		 * @param row
+		 *            row of the bucket, or -1
+		 * @param values
+		 *            value of every indexed column
+		 * @param from
+		 *            first row of the range
+		 * @return position of the row, -1 if there is none
+		 */
+		public int next(int row, long[] values, int from) {
+			while (row >= from) {
+				if (matches(row, values)) {
+					return row;
+				}
+				row = previous[row];
+			}
+			return -1;
+		}
+
+		/**
+		 * Returns the row before a row in its bucket.
+		 *
+		 * @param row
+		 *            indexed row
+		 * @return previous row of the bucket, -1 at the end
+		 */
+		public int previous(int row) {
+			return previous[row];
+		}
+
+		private boolean matches(int row, long[] values) {
+			for (int k = 0; k < columns.length; k++) {
+				if (tuples.get(row, columns[k]) != values[k]) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		private int hash(int row) {
+			long h = 0;
+			for (int column : columns) {
+				h = HashJoin.combine(h, tuples.get(row, column));
+			}
+			return HashJoin.finish(h);
+		}
+	}
+}
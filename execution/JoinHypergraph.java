@@ -0,0 +1,219 @@
+/*
+ *   Copyright 2015 Cheikh BA <cheikh.ba.sn@gmail.com>
+ *
+ *   This file is part of WALO.
+ *
+ *   WALO is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Lesser General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   WALO is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Lesser General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Lesser General Public License,
+ *   along with WALO.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package execution;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import datalog.Constant;
+import datalog.DatalogQuery;
+import datalog.Predicate;
+import datalog.PredicateElement;
+
+/**
+ * Class JoinHypergraph is the hypergraph of the joins of a conjunctive query:
+ * its vertices are the variables of the body, and every view atom is the
+ * edge made of its variables (constants and "_" are not vertices).
+ *
+ * Acyclicity is tested with the GYO reduction, which repeatedly
+ *
+ * 1. removes a variable that belongs to a single edge
+ *
+ * 2. removes an edge contained in another edge
+ *
+ * The query is (alpha-)acyclic if and only if at most one edge is left.
+ */
+public class JoinHypergraph {
+
+	/** view atoms of the query */
+	private List<Predicate> atoms;
+
+	/** variables of every atom */
+	private List<Set<String>> edges = new ArrayList<Set<String>>();
+
+	/** variables of the body, in the order of their first occurrence */
+	private List<String> variables = new ArrayList<String>();
+
+	/**
+	 * JoinHypergraph constructor
+	 *
+	 * @param query
+	 *            query whose body predicates are views
+	 */
+	public JoinHypergraph(DatalogQuery query) {
+		this.atoms = query.getPredicates();
+		for (Predicate atom : atoms) {
+			Set<String> edge = new HashSet<String>();
+			for (PredicateElement elem : atom.getElements()) {
+				if (!(elem instanceof Constant) && !elem.name.equals("_")) {
+					edge.add(elem.name);
+					if (!variables.contains(elem.name)) {
+						variables.add(elem.name);
+					}
+				}
+			}
+			edges.add(edge);
+		}
+	}
+
+	/**
+	 * Returns the number of edges, i.e. of view atoms.
+	 *
+	 * @return number of edges
+	 */
+	public int numberOfEdges() {
+		return edges.size();
+	}
+
+	/**
+	 * Returns the atom of an edge.
+	 *
+	 * @param edge
+	 *            position of the edge, i.e. of the atom in the body
+	 * @return view atom
+	 */
+	public Predicate getAtom(int edge) {
+		return atoms.get(edge);
+	}
+
+	/**
+	 * Returns the variables of an edge.
+	 *
+	 * @param edge
+	 *            position of the edge, i.e. of the atom in the body
+	 * @return variables of the atom
+	 */
+	public Set<String> getEdge(int edge) {
+		return edges.get(edge);
+	}
+
+	/**
+	 * Returns the variables of the body.
+	 *
+	 * @return variables, in the order of their first occurrence
+	 */
+	public List<String> getVariables() {
+		return variables;
+	}
+
+	/**
+	 * Returns the number of edges containing a variable.
+	 *
+	 * @param variable
+	 *            name of the variable
+	 * @return number of atoms joined on the variable
+	 */
+	public int degree(String variable) {
+		int degree = 0;
+		for (Set<String> edge : edges) {
+			if (edge.contains(variable)) {
+				degree++;
+			}
+		}
+		return degree;
+	}
+
+	/**
+	 * Tests whether the hypergraph is acyclic (GYO reduction).
+	 *
+	 * @return true if the query is acyclic
+	 */
+	public boolean isAcyclic() {
+		return reduce(new int[edges.size()]);
+	}
+
+	/**
+	 * Returns a join tree of an acyclic hypergraph: every edge, but the root,
+	 * has a parent containing all its variables shared with the edges outside
+	 * its subtree. The parent of an edge is the edge it was found to be
+	 * contained in by the GYO reduction.
+	 *
+	 * @return position of the parent of every edge, -1 for the root; null if
+	 *         the hypergraph is cyclic
+	 */
+	public int[] getJoinTree() {
+		int[] parent = new int[edges.size()];
+		return reduce(parent) ? parent : null;
+	}
+
+	/**
+	 * GYO reduction of the hypergraph.
+	 *
+	 * @param parent
+	 *            filled with the edge every removed edge is contained in, -1
+	 *            for the edges left
+	 * @return true if at most one edge is left, i.e. the hypergraph is
+	 *         acyclic
+	 */
+	private boolean reduce(int[] parent) {
+		List<Set<String>> left = new ArrayList<Set<String>>();
+		List<Integer> ids = new ArrayList<Integer>();
+		for (int e = 0; e < edges.size(); e++) {
+			left.add(new HashSet<String>(edges.get(e)));
+			ids.add(e);
+			parent[e] = -1;
+		}
+
+		boolean changed = true;
+		while (changed && left.size() > 1) {
+			changed = false;
+
+			// variables of a single edge
+			for (Set<String> edge : left) {
+				List<String> isolated = new ArrayList<String>();
+				for (String var : edge) {
+					if (countContaining(left, var) == 1) {
+						isolated.add(var);
+					}
+				}
+				changed |= edge.removeAll(isolated);
+			}
+
+			// edges contained in another edge
+			for (int e = 0; e < left.size(); e++) {
+				for (int f = 0; f < left.size(); f++) {
+					if (e != f && left.get(f).containsAll(left.get(e))) {
+						parent[ids.get(e)] = ids.get(f);
+						left.remove(e);
+						ids.remove(e--);
+						changed = true;
+						break;
+					}
+				}
+			}
+		}
+		return left.size() <= 1;
+	}
+
+	/**
+	 * Returns the number of edges of a list containing a variable.
+	 */
+	private static int countContaining(List<Set<String>> edges, String variable) {
+		int count = 0;
+		for (Set<String> edge : edges) {
+			if (edge.contains(variable)) {
+				count++;
+			}
+		}
+		return count;
+	}
+}
@@ -0,0 +1,230 @@
+/*
+ *   Copyright 2015 Cheikh BA <cheikh.ba.sn@gmail.com>
+ *
+ *   This file is part of WALO.
+ *
+ *   WALO is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Lesser General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   WALO is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Lesser General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Lesser General Public License,
+ *   along with WALO.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package execution;
+
+import java.util.Hashtable;
+import java.util.TreeSet;
+
+/**
+ * Class JoinResultCache keeps the results of joins of view extensions across
+ * queries (see CachedJoin), within a memory budget. When the budget is
+ * exceeded, results are evicted by the GreedyDual-Size policy: every result
+ * has a priority L + cost / size, where cost is the time it took to compute,
+ * size its memory and L the priority of the last evicted result; the result
+ * of least priority is evicted first. Results that were expensive to compute
+ * for their size are kept longer, and L makes results that are not read
+ * again age.
+ *
+ * The cache may be shared by the compilers of several threads.
+ */
+public class JoinResultCache {
+
+	/** memory budget in bytes */
+	private long capacity;
+
+	/** memory of the cached results */
+	private long used = 0;
+
+	/** priority of the last evicted result (L) */
+	private double inflation = 0;
+
+	/** cached result of every key */
+	private Hashtable<String, Entry> entries = new Hashtable<String, Entry>();
+
+	/** cached results by increasing priority */
+	private TreeSet<Entry> queue = new TreeSet<Entry>();
+
+	/** number of priority updates, to order the entries of equal priority */
+	private long sequence = 0;
+
+	/** number of results found */
+	private long hits = 0;
+
+	/** number of results not found */
+	private long misses = 0;
+
+	/** number of evicted results */
+	private long evictions = 0;
+
+	/**
+	 * JoinResultCache constructor
+	 *
+	 * @param capacity
+	 *            memory budget in bytes
+	 */
+	public JoinResultCache(long capacity) {
+		this.capacity = capacity;
+	}
+
+	/**
+	 * Returns a cached result, and renews its priority.
+	 *
+	 * @param key
+	 *            canonical form of the join
+	 * @return result, with the canonical variables, null if it is not cached
+	 */
+	public synchronized BindingTable get(String key) {
+		Entry entry = entries.get(key);
+		if (entry == null) {
+			misses++;
+			return null;
+		}
+		hits++;
+		queue.remove(entry);
+		prioritise(entry);
+		return entry.table;
+	}
+
+	/**
+	 * Caches a result, evicting the results of least priority if the budget
+	 * is exceeded. A result larger than the budget is not cached.
+	 *
+	 * @param key
+	 *            canonical form of the join
+	 * @param table
+	 *            result, with the canonical variables; it must not be
+	 *            modified afterwards
+	 * @param cost
+	 *            time taken to compute the result, in nanoseconds
+	 */
+	public synchronized void put(String key, BindingTable table, double cost) {
+		long bytes = Math.max(table.memoryUsage(), 1);
+		if (bytes > capacity) {
+			return;
+		}
+		Entry previous = entries.remove(key);
+		if (previous != null) {
+			queue.remove(previous);
+			used -= previous.bytes;
+		}
+		while (used + bytes > capacity) {
+			Entry victim = queue.pollFirst();
+			entries.remove(victim.key);
+			used -= victim.bytes;
+			inflation = victim.priority;
+			evictions++;
+		}
+		Entry entry = new Entry(key, table, Math.max(cost, 1), bytes);
+		prioritise(entry);
+		entries.put(key, entry);
+		used += bytes;
+	}
+
+	/**
+	 * Sets the priority of an entry to L + cost / size, and queues it.
+	 */
+	private void prioritise(Entry entry) {
+		entry.priority = inflation + entry.cost / entry.bytes;
+		entry.sequence = sequence++;
+		queue.add(entry);
+	}
+
+	/**
+	 * Removes all the results.
+	 */
+	public synchronized void clear() {
+		entries.clear();
+		queue.clear();
+		used = 0;
+		inflation = 0;
+	}
+
+	/**
+	 * Returns the number of cached results.
+	 *
+	 * @return number of results
+	 */
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Returns the memory of the cached results.
+	 *
+	 * @return bytes of the results
+	 */
+	public synchronized long memoryUsage() {
+		return used;
+	}
+
+	/**
+	 * Returns the number of lookups that found their result.
+	 *
+	 * @return number of hits
+	 */
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	/**
+	 * Returns the number of lookups that did not find their result.
+	 *
+	 * @return number of misses
+	 */
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * Returns the number of results evicted to respect the budget.
+	 *
+	 * @return number of evictions
+	 */
+	public synchronized long getEvictions() {
+		return evictions;
+	}
+
+	/**
+	 * Cached result with its priority.
+	 */
+	private static class Entry implements Comparable<Entry> {
+
+		final String key;
+
+		final BindingTable table;
+
+		/** time taken to compute the result */
+		final double cost;
+
+		/** memory of the result */
+		final long bytes;
+
+		/** GreedyDual-Size priority */
+		double priority;
+
+		/** order of the last priority update */
+		long sequence;
+
+		Entry(String key, BindingTable table, double cost, long bytes) {
+			this.key = key;
+			this.table = table;
+			this.cost = cost;
+			this.bytes = bytes;
+		}
+
+		public int compareTo(Entry other) {
+			if (priority != other.priority) {
+				return priority < other.priority ? -1 : 1;
+			}
+			return sequence < other.sequence ? -1
+					: (sequence == other.sequence ? 0 : 1);
+		}
+	}
+}
@@ -0,0 +1,415 @@
+/*
+ *   Copyright 2015 Cheikh BA <cheikh.ba.sn@gmail.com>
+ *
+ *   This file is part of WALO.
+ *
+ *   WALO is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Lesser General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   WALO is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Lesser General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Lesser General Public License,
+ *   along with WALO.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package execution;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import datalog.SymbolTable;
+
+/**
+ * Class MappedDictionary is the dictionary of a directory of segments (see
+ * SegmentFile), read in place from the mapped file: its symbols are not
+ * decoded when the directory is mapped, but when their text is needed, i.e.
+ * when a value is printed or compared with < or >. Texts are found in the
+ * dictionary through an open-addressing hash table of the codes, hashed on
+ * the UTF-8 bytes of their symbols, built when the file is mapped.
+ *
+ * The code of the dictionary of a value is turned into a symbol (see Values)
+ * by adding the first symbol of the dictionary: every mapped dictionary has
+ * its own range of symbols, from Values.DICTIONARY_SYMBOLS. A value keeps a
+ * single cell whatever the extension it comes from, so that cells are still
+ * compared as before:
+ *
+ * 1. a text is encoded with the symbol of the first mapped dictionary holding
+ * it, before being interned in the SymbolTable (see Values.encode)
+ *
+ * 2. a text of the dictionary that already had a symbol when the dictionary
+ * was mapped, in the SymbolTable or in another dictionary, keeps it: its code
+ * is an alias of the existing symbol
+ */
+public class MappedDictionary {
+
+	/** dictionaries mapped so far, in the order of their symbols */
+	private static volatile MappedDictionary[] dictionaries = new MappedDictionary[0];
+
+	/** first symbol of the next mapped dictionary */
+	private static long nextSymbol = Values.DICTIONARY_SYMBOLS;
+
+	/** file, size and modification time of the mapped file */
+	private String key;
+
+	/** mapped file, as chunks of 1 << SegmentFile.CHUNK_SHIFT bytes */
+	private ByteBuffer[] chunks;
+
+	/** position of the UTF-8 bytes of every symbol, after its length */
+	private long[] offsets;
+
+	/** code + 1 of the symbol of every slot, 0 for an empty slot */
+	private int[] slots;
+
+	/** symbol of the code 0 */
+	private int firstSymbol;
+
+	/** one bit per code, set if the code is an alias */
+	private long[] aliased;
+
+	/** existing symbol of every alias */
+	private IntMap aliases = new IntMap();
+
+	/** code of every existing symbol having an alias */
+	private IntMap inverse = new IntMap();
+
+	/**
+	 * Maps the dictionary of a directory of segments. A file that has not
+	 * changed since it was mapped is not mapped again.
+	 *
+	 * @param file
+	 *            dictionary file
+	 * @return mapped dictionary
+	 * @throws IOException
+	 *             if the file cannot be read or is not a dictionary
+	 */
+	public static synchronized MappedDictionary map(File file)
+			throws IOException {
+		String key = file.getCanonicalPath() + ':' + file.length() + ':'
+				+ file.lastModified();
+		for (MappedDictionary dictionary : dictionaries) {
+			if (dictionary.key.equals(key)) {
+				return dictionary;
+			}
+		}
+
+		MappedDictionary dictionary = new MappedDictionary();
+		dictionary.key = key;
+		FileChannel channel = FileChannel.open(file.toPath(),
+				StandardOpenOption.READ);
+		try {
+			// the mappings stay valid once the channel is closed
+			dictionary.chunks = SegmentFile.map(channel, 0, channel.size());
+		} finally {
+			channel.close();
+		}
+		long length = file.length();
+		if (length < 8 || dictionary.getInt(0) != SegmentFile.MAGIC) {
+			throw new IOException(file + " is not a dictionary");
+		}
+		int size = dictionary.getInt(4);
+		if (size < 0 || nextSymbol + size > Integer.MAX_VALUE + 1L) {
+			throw new IOException(file + " has too many symbols");
+		}
+
+		dictionary.offsets = new long[size];
+		long position = 8;
+		for (int code = 0; code < size; code++) {
+			if (position + 4 > length) {
+				throw new IOException(file + " is truncated");
+			}
+			dictionary.offsets[code] = position + 4;
+			position += 4 + dictionary.getInt(position);
+		}
+		if (position > length) {
+			throw new IOException(file + " is truncated");
+		}
+		dictionary.index();
+
+		dictionary.firstSymbol = (int) nextSymbol;
+		dictionary.aliased = new long[(size + 63) >>> 6];
+		dictionary.alias();
+		nextSymbol += size;
+
+		MappedDictionary[] mapped = Arrays.copyOf(dictionaries,
+				dictionaries.length + 1);
+		mapped[dictionaries.length] = dictionary;
+		dictionaries = mapped;
+		return dictionary;
+	}
+
+	/**
+	 * Returns the symbol of a text in the mapped dictionaries.
+	 *
+	 * @param text
+	 *            text of a value
+	 * @return symbol of the text, -1 if no mapped dictionary holds it
+	 */
+	static int find(String text) {
+		return find(text, dictionaries);
+	}
+
+	/**
+	 * Returns the text of a symbol of a mapped dictionary.
+	 *
+	 * @param symbol
+	 *            symbol, at least Values.DICTIONARY_SYMBOLS
+	 * @return text of the symbol
+	 */
+	static String getName(int symbol) {
+		for (MappedDictionary dictionary : dictionaries) {
+			int code = symbol - dictionary.firstSymbol;
+			if (code >= 0 && code < dictionary.size()) {
+				return dictionary.decode(code);
+			}
+		}
+		throw new IllegalArgumentException("Unknown symbol " + symbol);
+	}
+
+	/**
+	 * Returns the number of symbols.
+	 *
+	 * @return size of the dictionary
+	 */
+	public int size() {
+		return offsets.length;
+	}
+
+	/**
+	 * Returns the symbol of a code of the dictionary.
+	 *
+	 * @param code
+	 *            code of the dictionary
+	 * @return symbol of the value (see Values)
+	 */
+	public int symbol(int code) {
+		if ((aliased[code >>> 6] & (1L << code)) != 0) {
+			return aliases.get(code);
+		}
+		return firstSymbol + code;
+	}
+
+	/**
+	 * Returns the code of the dictionary of a symbol.
+	 *
+	 * @param symbol
+	 *            symbol of a value
+	 * @return code of the dictionary, -1 if the dictionary does not hold the
+	 *         value
+	 */
+	public int toCode(int symbol) {
+		int code = symbol - firstSymbol;
+		if (code >= 0 && code < size()) {
+			return code;
+		}
+		return inverse.get(symbol);
+	}
+
+	/**
+	 * Decodes a symbol of the dictionary.
+	 *
+	 * @param code
+	 *            code of the dictionary
+	 * @return text of the symbol
+	 */
+	public String decode(int code) {
+		return new String(decodeBytes(code), SegmentFile.UTF8);
+	}
+
+	/**
+	 * Returns the code of a text.
+	 *
+	 * @param bytes
+	 *            UTF-8 bytes of the text
+	 * @return code of the dictionary, -1 if the dictionary does not hold the
+	 *         text
+	 */
+	private int lookup(byte[] bytes) {
+		long h = 0;
+		for (int i = 0; i < bytes.length; i++) {
+			h = HashJoin.combine(h, bytes[i]);
+		}
+		int mask = slots.length - 1;
+		for (int slot = HashJoin.finish(h) & mask;; slot = (slot + 1) & mask) {
+			int code = slots[slot] - 1;
+			if (code < 0) {
+				return -1;
+			}
+			if (equals(code, bytes)) {
+				return code;
+			}
+		}
+	}
+
+	/**
+	 * Builds the hash table of the codes.
+	 */
+	private void index() {
+		int capacity = 2;
+		while (capacity < 2 * size()) {
+			capacity <<= 1;
+		}
+		slots = new int[capacity];
+		int mask = capacity - 1;
+		for (int code = 0; code < size(); code++) {
+			long offset = offsets[code];
+			long end = offset + getInt(offset - 4);
+			long h = 0;
+			for (long position = offset; position < end; position++) {
+				h = HashJoin.combine(h, get(position));
+			}
+			int slot = HashJoin.finish(h) & mask;
+			while (slots[slot] != 0) {
+				slot = (slot + 1) & mask;
+			}
+			slots[slot] = code + 1;
+		}
+	}
+
+	/**
+	 * Finds the texts of the dictionary having a symbol already: those of the
+	 * previous dictionaries, then those of the SymbolTable that are not in a
+	 * previous dictionary.
+	 */
+	private void alias() {
+		MappedDictionary[] previous = dictionaries;
+		if (previous.length > 0) {
+			for (int code = 0; code < size(); code++) {
+				int symbol = find(decodeBytes(code), previous);
+				if (symbol >= 0) {
+					alias(code, symbol);
+				}
+			}
+		}
+		int interned = SymbolTable.size();
+		for (int symbol = 0; symbol < interned; symbol++) {
+			byte[] bytes = SymbolTable.getName(symbol).getBytes(SegmentFile.UTF8);
+			int code = lookup(bytes);
+			if (code >= 0 && find(bytes, previous) < 0) {
+				alias(code, symbol);
+			}
+		}
+	}
+
+	private void alias(int code, int symbol) {
+		aliased[code >>> 6] |= 1L << code;
+		aliases.put(code, symbol);
+		inverse.put(symbol, code);
+	}
+
+	private static int find(String text, MappedDictionary[] dictionaries) {
+		if (dictionaries.length == 0) {
+			return -1;
+		}
+		return find(text.getBytes(SegmentFile.UTF8), dictionaries);
+	}
+
+	private static int find(byte[] bytes, MappedDictionary[] dictionaries) {
+		for (MappedDictionary dictionary : dictionaries) {
+			int code = dictionary.lookup(bytes);
+			if (code >= 0) {
+				return dictionary.symbol(code);
+			}
+		}
+		return -1;
+	}
+
+	private byte[] decodeBytes(int code) {
+		long offset = offsets[code];
+		byte[] bytes = new byte[getInt(offset - 4)];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = get(offset + i);
+		}
+		return bytes;
+	}
+
+	private boolean equals(int code, byte[] bytes) {
+		long offset = offsets[code];
+		if (getInt(offset - 4) != bytes.length) {
+			return false;
+		}
+		for (int i = 0; i < bytes.length; i++) {
+			if (get(offset + i) != bytes[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private byte get(long position) {
+		return chunks[(int) (position >>> SegmentFile.CHUNK_SHIFT)]
+				.get((int) (position & SegmentFile.CHUNK_MASK));
+	}
+
+	/**
+	 * Reads a big-endian int, which may span two chunks.
+	 */
+	private int getInt(long position) {
+		return (get(position) & 0xFF) << 24 | (get(position + 1) & 0xFF) << 16
+				| (get(position + 2) & 0xFF) << 8 | (get(position + 3) & 0xFF);
+	}
+
+	/**
+	 * Map of non-negative ints to ints, by open addressing with linear
+	 * probing.
+	 */
+	private static class IntMap {
+
+		/** key + 1 of every slot, 0 for an empty slot */
+		private int[] keys = new int[16];
+
+		/** value of every slot */
+		private int[] values = new int[16];
+
+		/** number of keys */
+		private int size = 0;
+
+		/**
+		 * Returns the value of a key, -1 if the key is absent.
+		 */
+		int get(int key) {
+			int mask = keys.length - 1;
+			for (int slot = HashJoin.finish(key) & mask;; slot = (slot + 1) & mask) {
+				if (keys[slot] == 0) {
+					return -1;
+				}
+				if (keys[slot] == key + 1) {
+					return values[slot];
+				}
+			}
+		}
+
+		void put(int key, int value) {
+			if (2 * (size + 1) > keys.length) {
+				int[] oldKeys = keys;
+				int[] oldValues = values;
+				keys = new int[2 * oldKeys.length];
+				values = new int[2 * oldKeys.length];
+				size = 0;
+				for (int slot = 0; slot < oldKeys.length; slot++) {
+					if (oldKeys[slot] != 0) {
+						put(oldKeys[slot] - 1, oldValues[slot]);
+					}
+				}
+			}
+			int mask = keys.length - 1;
+			int slot = HashJoin.finish(key) & mask;
+			while (keys[slot] != 0 && keys[slot] != key + 1) {
+				slot = (slot + 1) & mask;
+			}
+			if (keys[slot] == 0) {
+				size++;
+			}
+			keys[slot] = key + 1;
+			values[slot] = value;
+		}
+	}
+}
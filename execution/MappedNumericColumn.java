@@ -0,0 +1,85 @@
+/*
+ *   Copyright 2015 Cheikh BA <cheikh.ba.sn@gmail.com>
+ *
+ *   This file is part of WALO.
+ *
+ *   WALO is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Lesser General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   WALO is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Lesser General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Lesser General Public License,
+ *   along with WALO.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package execution;
+
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+
+/**
+ * Class MappedNumericColumn is a column of integers, or of integers and
+ * symbols, read in place from a memory-mapped segment (see SegmentFile). A
+ * symbol is stored as the cell of its code in the dictionary of the segment
+ * and turned into a symbol by the dictionary when read. The column is
+ * read-only: adding a value to its relation copies it into a NumericColumn.
+ */
+public class MappedNumericColumn extends Column {
+
+	/** log2 of the number of values of a chunk */
+	private static final int CHUNK_SHIFT = SegmentFile.CHUNK_SHIFT - 3;
+
+	/** position in its chunk of a value */
+	private static final int CHUNK_MASK = (1 << CHUNK_SHIFT) - 1;
+
+	/** every value, symbols encoded with their local code, by chunk */
+	private LongBuffer[] values;
+
+	/** dictionary of the segment */
+	private MappedDictionary dictionary;
+
+	/**
+	 * MappedNumericColumn constructor
+	 *
+	 * @param chunks
+	 *            mapped values of the segment (see SegmentFile.map)
+	 * @param size
+	 *            number of values
+	 * @param dictionary
+	 *            dictionary of the segment
+	 */
+	public MappedNumericColumn(ByteBuffer[] chunks, int size,
+			MappedDictionary dictionary) {
+		this.values = new LongBuffer[chunks.length];
+		for (int i = 0; i < chunks.length; i++) {
+			this.values[i] = chunks[i].asLongBuffer();
+		}
+		this.dictionary = dictionary;
+		this.size = size;
+	}
+
+	public long get(int row) {
+		long cell = values[row >>> CHUNK_SHIFT].get(row & CHUNK_MASK);
+		if (Values.isSymbol(cell)) {
+			return Values.symbol(dictionary.symbol(Values.symbolOf(cell)));
+		}
+		return cell;
+	}
+
+	public boolean accepts(long cell) {
+		return false;
+	}
+
+	public void add(long cell) {
+		throw new UnsupportedOperationException("Mapped column is read-only");
+	}
+
+	public long memoryUsage() {
+		return 8L * size;
+	}
+}
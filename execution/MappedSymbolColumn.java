@@ -0,0 +1,104 @@
+/*
+ *   Copyright 2015 Cheikh BA <cheikh.ba.sn@gmail.com>
+ *
+ *   This file is part of WALO.
+ *
+ *   WALO is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Lesser General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   WALO is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Lesser General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Lesser General Public License,
+ *   along with WALO.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package execution;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+
+/**
+ * Class MappedSymbolColumn is a column of symbols read in place from a
+ * memory-mapped segment (see SegmentFile). The segment stores the codes of
+ * its dictionary; they are turned into symbols by the dictionary when read.
+ * The column is read-only: adding a value to its relation copies it into a
+ * NumericColumn.
+ */
+public class MappedSymbolColumn extends Column {
+
+	/** log2 of the number of values of a chunk */
+	private static final int CHUNK_SHIFT = SegmentFile.CHUNK_SHIFT - 2;
+
+	/** position in its chunk of a value */
+	private static final int CHUNK_MASK = (1 << CHUNK_SHIFT) - 1;
+
+	/** code of every value in the dictionary of the segment, by chunk */
+	private IntBuffer[] codes;
+
+	/** dictionary of the segment */
+	private MappedDictionary dictionary;
+
+	/**
+	 * MappedSymbolColumn constructor
+	 *
+	 * @param chunks
+	 *            mapped codes of the dictionary of the segment (see
+	 *            SegmentFile.map)
+	 * @param size
+	 *            number of values
+	 * @param dictionary
+	 *            dictionary of the segment
+	 */
+	public MappedSymbolColumn(ByteBuffer[] chunks, int size,
+			MappedDictionary dictionary) {
+		this.codes = new IntBuffer[chunks.length];
+		for (int i = 0; i < chunks.length; i++) {
+			this.codes[i] = chunks[i].asIntBuffer();
+		}
+		this.dictionary = dictionary;
+		this.size = size;
+	}
+
+	/**
+	 * Returns the code of a value in the dictionary of the segment.
+	 *
+	 * @param row
+	 *            position of the value
+	 * @return local code
+	 */
+	public int getLocalCode(int row) {
+		return codes[row >>> CHUNK_SHIFT].get(row & CHUNK_MASK);
+	}
+
+	/**
+	 * Returns the code in the dictionary of the segment of a symbol.
+	 *
+	 * @param symbol
+	 *            symbol of a value (see Values)
+	 * @return local code, -1 if the symbol is not in the dictionary
+	 */
+	public int toLocalCode(int symbol) {
+		return dictionary.toCode(symbol);
+	}
+
+	public long get(int row) {
+		return Values.symbol(dictionary.symbol(getLocalCode(row)));
+	}
+
+	public boolean accepts(long cell) {
+		return false;
+	}
+
+	public void add(long cell) {
+		throw new UnsupportedOperationException("Mapped column is read-only");
+	}
+
+	public long memoryUsage() {
+		return 4L * size;
+	}
+}
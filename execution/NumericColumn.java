@@ -0,0 +1,83 @@
+/*
+ *   Copyright 2015 Cheikh BA <cheikh.ba.sn@gmail.com>
+ *
+ *   This file is part of WALO.
+ *
+ *   WALO is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Lesser General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   WALO is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Lesser General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Lesser General Public License,
+ *   along with WALO.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package execution;
+
+import java.util.Arrays;
+
+/**
+ * Class NumericColumn is a column of integers, stored in a long[]. A column
+ * mixing integers and symbols is stored the same way, a symbol taking its
+ * encoded cell (see Values).
+ */
+public class NumericColumn extends Column {
+
+	/** every value */
+	private long[] values;
+
+	/**
+	 * NumericColumn constructor
+	 */
+	public NumericColumn() {
+		values = new long[INITIAL_CAPACITY];
+	}
+
+	/**
+	 * Builds a column holding the values of another column.
+	 *
+	 * @param column
+	 *            column to copy
+	 */
+	public NumericColumn(Column column) {
+		values = new long[Math.max(2 * column.size(), INITIAL_CAPACITY)];
+		for (int row = 0; row < column.size(); row++) {
+			values[row] = column.get(row);
+		}
+		size = column.size();
+	}
+
+	/**
+	 * Returns the values of the column. The array may be longer than the
+	 * number of values.
+	 *
+	 * @return every value
+	 */
+	public long[] getValues() {
+		return values;
+	}
+
+	public long get(int row) {
+		return values[row];
+	}
+
+	public boolean accepts(long cell) {
+		return true;
+	}
+
+	public void add(long cell) {
+		if (size == values.length) {
+			values = Arrays.copyOf(values, 2 * size);
+		}
+		values[size++] = cell;
+	}
+
+	public long memoryUsage() {
+		return 8L * values.length;
+	}
+}
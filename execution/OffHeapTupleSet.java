@@ -0,0 +1,228 @@
+/*
+ *   Copyright 2015 Cheikh BA <cheikh.ba.sn@gmail.com>
+ *
+ *   This file is part of WALO.
+ *
+ *   WALO is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Lesser General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   WALO is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Lesser General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Lesser General Public License,
+ *   along with WALO.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package execution;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Class OffHeapTupleSet is a set of tuples of encoded values (see Values)
+ * stored outside of the Java heap, in direct buffers: adding a tuple creates
+ * no object, so that sets of hundreds of millions of tuples cause no
+ * garbage collection work.
+ *
+ * The set is an open-addressing hash table with linear probing. Every slot
+ * holds the hash code of its tuple (0 for an empty slot) followed by its
+ * values; the hash codes are compared before the values, and are reused when
+ * the table grows. The table is split into segments of at most
+ * SEGMENT_BYTES bytes, since a buffer is indexed by an int.
+ *
+ * The direct buffers are released when the set is garbage collected; their
+ * total size is bounded by the -XX:MaxDirectMemorySize option of the JVM.
+ */
+public class OffHeapTupleSet {
+
+	/** maximum size of a segment */
+	public static final int SEGMENT_BYTES = 1 << 30;
+
+	/** initial number of slots */
+	private static final long INITIAL_CAPACITY = 1 << 10;
+
+	/** number of values of every tuple */
+	private final int arity;
+
+	/** bytes of a slot: the hash code, padded to 8 bytes, and the values */
+	private final int slotBytes;
+
+	/** segments of the table */
+	private ByteBuffer[] segments;
+
+	/** log2 of the number of slots of a segment */
+	private int segmentShift;
+
+	/** number of slots - 1 */
+	private long mask;
+
+	/** number of tuples */
+	private long size = 0;
+
+	/**
+	 * OffHeapTupleSet constructor
+	 *
+	 * @param arity
+	 *            number of values of every tuple
+	 */
+	public OffHeapTupleSet(int arity) {
+		this.arity = arity;
+		this.slotBytes = 8 * (arity + 1);
+		allocate(INITIAL_CAPACITY);
+	}
+
+	/**
+	 * Returns the number of tuples of the set.
+	 *
+	 * @return number of tuples
+	 */
+	public long size() {
+		return size;
+	}
+
+	/**
+	 * Returns the size of the table.
+	 *
+	 * @return bytes allocated outside of the heap
+	 */
+	public long memoryUsage() {
+		return (mask + 1) * slotBytes;
+	}
+
+	/**
+	 * Adds a tuple to the set.
+	 *
+	 * @param tuple
+	 *            encoded value of every column, read but not kept
+	 * @return true if the tuple was not in the set
+	 */
+	public boolean add(long[] tuple) {
+		int hash = hash(tuple);
+		for (long slot = hash & 0xFFFFFFFFL & mask;; slot = (slot + 1) & mask) {
+			ByteBuffer segment = segments[(int) (slot >>> segmentShift)];
+			int offset = offset(slot);
+			int stored = segment.getInt(offset);
+			if (stored == 0) {
+				segment.putInt(offset, hash);
+				for (int c = 0; c < arity; c++) {
+					segment.putLong(offset + 8 * (c + 1), tuple[c]);
+				}
+				if (++size * 4 > (mask + 1) * 3) {
+					grow();
+				}
+				return true;
+			}
+			if (stored == hash && equals(segment, offset, tuple)) {
+				return false;
+			}
+		}
+	}
+
+	/**
+	 * Tests whether a tuple is in the set.
+	 *
+	 * @param tuple
+	 *            encoded value of every column
+	 * @return true if the tuple was added to the set
+	 */
+	public boolean contains(long[] tuple) {
+		int hash = hash(tuple);
+		for (long slot = hash & 0xFFFFFFFFL & mask;; slot = (slot + 1) & mask) {
+			ByteBuffer segment = segments[(int) (slot >>> segmentShift)];
+			int offset = offset(slot);
+			int stored = segment.getInt(offset);
+			if (stored == 0) {
+				return false;
+			}
+			if (stored == hash && equals(segment, offset, tuple)) {
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Returns the hash code of a tuple, never 0 (the code of an empty slot).
+	 */
+	private int hash(long[] tuple) {
+		long h = 0;
+		for (int c = 0; c < arity; c++) {
+			h = HashJoin.combine(h, tuple[c]);
+		}
+		int hash = HashJoin.finish(h);
+		return hash == 0 ? 1 : hash;
+	}
+
+	/**
+	 * Tests whether the slot at the offset of a segment holds the tuple.
+	 */
+	private boolean equals(ByteBuffer segment, int offset, long[] tuple) {
+		for (int c = 0; c < arity; c++) {
+			if (segment.getLong(offset + 8 * (c + 1)) != tuple[c]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the offset of a slot in its segment.
+	 */
+	private int offset(long slot) {
+		return (int) (slot & ((1L << segmentShift) - 1)) * slotBytes;
+	}
+
+	/**
+	 * Allocates an empty table.
+	 *
+	 * @param capacity
+	 *            number of slots, a power of 2
+	 */
+	private void allocate(long capacity) {
+		int shift = 63 - Long.numberOfLeadingZeros(SEGMENT_BYTES / slotBytes);
+		segmentShift = Math.min(shift,
+				63 - Long.numberOfLeadingZeros(capacity));
+		long segmentSlots = 1L << segmentShift;
+		segments = new ByteBuffer[(int) (capacity / segmentSlots)];
+		for (int s = 0; s < segments.length; s++) {
+			segments[s] = ByteBuffer.allocateDirect(
+					(int) (segmentSlots * slotBytes)).order(
+					ByteOrder.nativeOrder());
+		}
+		mask = capacity - 1;
+	}
+
+	/**
+	 * Doubles the number of slots, and moves the tuples to their new slots.
+	 */
+	private void grow() {
+		ByteBuffer[] old = segments;
+		int oldShift = segmentShift;
+		allocate(2 * (mask + 1));
+		for (ByteBuffer from : old) {
+			int slots = 1 << oldShift;
+			for (int s = 0; s < slots; s++) {
+				int offset = s * slotBytes;
+				int hash = from.getInt(offset);
+				if (hash == 0) {
+					continue;
+				}
+				long slot = hash & 0xFFFFFFFFL & mask;
+				while (true) {
+					ByteBuffer segment = segments[(int) (slot >>> segmentShift)];
+					int to = offset(slot);
+					if (segment.getInt(to) == 0) {
+						for (int b = 0; b < slotBytes; b += 8) {
+							segment.putLong(to + b, from.getLong(offset + b));
+						}
+						break;
+					}
+					slot = (slot + 1) & mask;
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,324 @@
+/*
+ *   Copyright 2015 Cheikh BA <cheikh.ba.sn@gmail.com>
+ *
+ *   This file is part of WALO.
+ *
+ *   WALO is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Lesser General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   WALO is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Lesser General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Lesser General Public License,
+ *   along with WALO.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package execution;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * Class ParallelHashJoin is the natural join of two operators computed by
+ * several threads (radix hash join):
+ *
+ * 1. the rows of both inputs are partitioned on the high bits of the hash
+ * code of their shared variables, so that matching rows fall into the same
+ * partition and every hash table is small enough to stay in cache
+ *
+ * 2. every worker builds and probes its own partitions, and writes its
+ * answers to its own output buffer; no lock is taken while joining
+ *
+ * 3. the buffers of the workers are concatenated
+ *
+ * Small inputs (less than PARALLEL_THRESHOLD rows) are joined by HashJoin in
+ * the calling thread. The result binds the same variables, in the same
+ * order, as HashJoin.
+ */
+public class ParallelHashJoin extends PlanNode {
+
+	/** least number of rows of both inputs joined in parallel */
+	public static final int PARALLEL_THRESHOLD = 1 << 15;
+
+	/** desired number of build rows per partition */
+	public static final int PARTITION_ROWS = 1 << 12;
+
+	/** greatest number of partitions */
+	public static final int MAX_PARTITIONS = 1 << 10;
+
+	/** threads of the joins, created when first needed and never shut down */
+	private static ThreadPoolExecutor workers;
+
+	/** probe side */
+	private PlanNode left;
+
+	/** build side */
+	private PlanNode right;
+
+	/** number of workers */
+	private int threads;
+
+	/** variables of the result */
+	private String[] variables;
+
+	/**
+	 * ParallelHashJoin constructor
+	 *
+	 * @param left
+	 *            probe side
+	 * @param right
+	 *            build side
+	 * @param threads
+	 *            number of workers
+	 */
+	public ParallelHashJoin(PlanNode left, PlanNode right, int threads) {
+		this.left = left;
+		this.right = right;
+		this.threads = Math.max(threads, 1);
+		this.variables = HashJoin.joinVariables(left.getVariables(),
+				right.getVariables());
+	}
+
+	public BindingTable execute() {
+		BindingTable build = right.execute();
+		if (build.size() == 0) {
+			return new BindingTable(variables, 0);
+		}
+		return join(left.execute(), build, threads);
+	}
+
+	/**
+	 * Returns the natural join of two tables, computed by several threads.
+	 *
+	 * @param probe
+	 *            table probing the hash tables
+	 * @param build
+	 *            table loaded into the hash tables
+	 * @param threads
+	 *            number of workers
+	 * @return bindings of the variables of probe followed by the other
+	 *         variables of build
+	 */
+	public static BindingTable join(final BindingTable probe,
+			final BindingTable build, int threads) {
+		if (threads < 2 || probe.size() + build.size() < PARALLEL_THRESHOLD) {
+			return HashJoin.join(probe, build);
+		}
+
+		final int[][] keys = HashJoin.sharedColumns(probe, build);
+		final int[] rightColumns = HashJoin.otherColumns(probe, build);
+		final String[] variables = HashJoin.joinVariables(
+				probe.getVariables(), build.getVariables());
+
+		int partitions = Integer.highestOneBit(Math.max(build.size()
+				/ PARTITION_ROWS, 1)) << 1;
+		partitions = Math.min(Math.max(partitions, threads), MAX_PARTITIONS);
+		final int bits = Integer.numberOfTrailingZeros(partitions);
+
+		final Partitioning probeParts = new Partitioning(probe, keys[0], bits);
+		final Partitioning buildParts = new Partitioning(build, keys[1], bits);
+
+		// worker w joins the partitions w, w + threads, w + 2 * threads, ...
+		final int workersCount = Math.min(threads, partitions);
+		List<Future<BindingTable>> results = new ArrayList<Future<BindingTable>>();
+		ExecutorService pool = pool(workersCount);
+		for (int w = 0; w < workersCount; w++) {
+			final int worker = w;
+			results.add(pool.submit(new Callable<BindingTable>() {
+				public BindingTable call() {
+					BindingTable output = new BindingTable(variables, 16);
+					for (int p = worker; p < probeParts.numberOfPartitions(); p += workersCount) {
+						joinPartition(probe, probeParts, build, buildParts, p,
+								keys, rightColumns, output);
+					}
+					return output;
+				}
+			}));
+		}
+
+		int size = 0;
+		BindingTable[] outputs = new BindingTable[workersCount];
+		try {
+			for (int w = 0; w < workersCount; w++) {
+				outputs[w] = results.get(w).get();
+				size += outputs[w].size();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Join interrupted", e);
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("Join failed", e.getCause());
+		}
+
+		BindingTable result = new BindingTable(variables, size);
+		for (BindingTable output : outputs) {
+			result.append(output);
+		}
+		return result;
+	}
+
+	/**
+	 * Joins the rows of a partition of both inputs.
+	 */
+	private static void joinPartition(BindingTable probe,
+			Partitioning probeParts, BindingTable build,
+			Partitioning buildParts, int partition, int[][] keys,
+			int[] rightColumns, BindingTable output) {
+		int buildFrom = buildParts.start(partition);
+		int buildTo = buildParts.start(partition + 1);
+		int probeFrom = probeParts.start(partition);
+		int probeTo = probeParts.start(partition + 1);
+		if (buildFrom == buildTo || probeFrom == probeTo) {
+			return;
+		}
+
+		// chained hash table over the build rows of the partition
+		int[] buildRows = buildParts.rows;
+		int capacity = Integer.highestOneBit(buildTo - buildFrom) << 1;
+		int mask = capacity - 1;
+		int[] buckets = new int[capacity];
+		int[] next = new int[buildTo - buildFrom];
+		Arrays.fill(buckets, -1);
+		for (int i = buildTo - 1; i >= buildFrom; i--) {
+			int bucket = buildParts.hashes[buildRows[i]] & mask;
+			next[i - buildFrom] = buckets[bucket];
+			buckets[bucket] = i - buildFrom;
+		}
+
+		int leftArity = probe.arity();
+		for (int i = probeFrom; i < probeTo; i++) {
+			int row = probeParts.rows[i];
+			int hash = probeParts.hashes[row];
+			for (int m = buckets[hash & mask]; m >= 0; m = next[m]) {
+				int match = buildRows[buildFrom + m];
+				if (buildParts.hashes[match] == hash
+						&& HashJoin.keysEqual(probe, row, keys[0], build,
+								match, keys[1])) {
+					int out = output.addRow();
+					for (int c = 0; c < leftArity; c++) {
+						output.set(c, out, probe.get(c, row));
+					}
+					for (int c = 0; c < rightColumns.length; c++) {
+						output.set(leftArity + c, out,
+								build.get(rightColumns[c], match));
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the pool of workers, with at least the given number of threads.
+	 * The pool is shared by the joins of all the threads: a join asking for
+	 * more threads grows it in place, since another join may still be
+	 * submitting tasks to it.
+	 */
+	private static synchronized ExecutorService pool(int threads) {
+		if (workers == null) {
+			workers = (ThreadPoolExecutor) Executors.newFixedThreadPool(
+					threads, new ThreadFactory() {
+						public Thread newThread(Runnable task) {
+							Thread thread = new Thread(task, "join-worker");
+							thread.setDaemon(true);
+							return thread;
+						}
+					});
+		} else if (workers.getMaximumPoolSize() < threads) {
+			workers.setMaximumPoolSize(threads);
+			workers.setCorePoolSize(threads);
+		}
+		return workers;
+	}
+
+	public List<PlanNode> getChildren() {
+		return Arrays.asList(left, right);
+	}
+
+	public String[] getVariables() {
+		return variables;
+	}
+
+	public void explain(StringBuilder s, int indent) {
+		indent(s, indent);
+		s.append("ParallelHashJoin [").append(threads).append(" threads] ");
+		List<String> keys = new ArrayList<String>();
+		for (String var : right.getVariables()) {
+			if (Selection.indexOf(left.getVariables(), var) >= 0) {
+				keys.add(var);
+			}
+		}
+		if (keys.isEmpty()) {
+			s.append("(cross product)");
+		} else {
+			appendVariables(s, keys.toArray(new String[keys.size()]));
+		}
+		s.append('\n');
+		left.explain(s, indent + 1);
+		right.explain(s, indent + 1);
+	}
+
+	/**
+	 * Radix partitioning of the rows of a table on the high bits of the hash
+	 * code of the key columns: the rows of partition p are
+	 * rows[start(p), start(p + 1)[.
+	 */
+	private static class Partitioning {
+
+		/** hash code of every row */
+		final int[] hashes;
+
+		/** rows grouped by partition */
+		final int[] rows;
+
+		/** first position in rows of every partition, plus the end */
+		final int[] starts;
+
+		Partitioning(BindingTable table, int[] keys, int bits) {
+			int size = table.size();
+			int partitions = 1 << bits;
+			hashes = new int[size];
+			int[] counts = new int[partitions + 1];
+			for (int row = 0; row < size; row++) {
+				hashes[row] = HashJoin.hash(table, keys, row);
+				counts[partition(hashes[row], bits) + 1]++;
+			}
+			starts = new int[partitions + 1];
+			for (int p = 0; p < partitions; p++) {
+				starts[p + 1] = starts[p] + counts[p + 1];
+			}
+			int[] positions = Arrays.copyOf(starts, partitions);
+			rows = new int[size];
+			for (int row = 0; row < size; row++) {
+				rows[positions[partition(hashes[row], bits)]++] = row;
+			}
+		}
+
+		int numberOfPartitions() {
+			return starts.length - 1;
+		}
+
+		int start(int partition) {
+			return starts[partition];
+		}
+
+		/**
+		 * Partition of a hash code: its high bits, the low bits being used
+		 * by the hash tables.
+		 */
+		static int partition(int hash, int bits) {
+			return bits == 0 ? 0 : hash >>> (32 - bits);
+		}
+	}
+}
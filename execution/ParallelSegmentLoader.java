@@ -0,0 +1,802 @@
+/*
+ *   Copyright 2015 Cheikh BA <cheikh.ba.sn@gmail.com>
+ *
+ *   This file is part of WALO.
+ *
+ *   WALO is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Lesser General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   WALO is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Lesser General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Lesser General Public License,
+ *   along with WALO.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package execution;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Class ParallelSegmentLoader converts the .tsv and .csv extension files of
+ * a directory into segments, like SegmentLoader, with several threads. Every
+ * file is split into byte ranges starting at the beginning of a line, one per
+ * thread, and every range is read twice through a FileChannel:
+ *
+ * 1. the first pass counts the tuples of the range, finds the types of its
+ * columns and dictionary-encodes its symbols in a dictionary of the thread;
+ * the dictionaries of the ranges are then merged, in the order of the
+ * ranges, into the dictionary of the directory
+ *
+ * 2. the second pass writes the values of the range at their position in
+ * the columns of the segment, which follows from the number of tuples of
+ * the previous ranges
+ *
+ * Lines are parsed in the bytes read from the file: no String is created
+ * per line or per value, symbols being compared and stored as UTF-8 bytes.
+ * The segments and the dictionary are those SegmentLoader would write.
+ *
+ * Usage: java execution.ParallelSegmentLoader SOURCE_DIR TARGET_DIR [THREADS]
+ */
+public class ParallelSegmentLoader {
+
+	/** bytes read from the file at once */
+	private static final int READ_SIZE = 1 << 20;
+
+	/** bytes buffered per column before being written */
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	/** minimum length of a byte range */
+	private static final long MIN_RANGE = 1 << 22;
+
+	/** dictionary of the directory */
+	private Dictionary dictionary = new Dictionary();
+
+	/** number of threads */
+	private int threads;
+
+	/** threads reading the ranges */
+	private ExecutorService pool;
+
+	/**
+	 * ParallelSegmentLoader constructor
+	 *
+	 * @param threads
+	 *            number of threads reading every file
+	 */
+	private ParallelSegmentLoader(int threads) {
+		this.threads = Math.max(threads, 1);
+		this.pool = Executors.newFixedThreadPool(this.threads,
+				new ThreadFactory() {
+					public Thread newThread(Runnable task) {
+						Thread thread = new Thread(task, "loader-worker");
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+	}
+
+	/**
+	 * Converts the extension files of a directory into segments, written with
+	 * their dictionary to another directory.
+	 *
+	 * @param sourceDirectory
+	 *            directory of the .tsv and .csv files
+	 * @param targetDirectory
+	 *            directory of the segments, created if needed
+	 * @param threads
+	 *            number of threads reading every file
+	 * @return number of written segments
+	 * @throws IOException
+	 *             if a file cannot be read or written
+	 */
+	public static int convert(String sourceDirectory, String targetDirectory,
+			int threads) throws IOException {
+		File[] files = new File(sourceDirectory).listFiles();
+		if (files == null) {
+			throw new IOException(sourceDirectory + " is not a directory");
+		}
+		File target = new File(targetDirectory);
+		if (!target.isDirectory() && !target.mkdirs()) {
+			throw new IOException(targetDirectory + " cannot be created");
+		}
+
+		ParallelSegmentLoader loader = new ParallelSegmentLoader(threads);
+		try {
+			int segments = 0;
+			for (File file : files) {
+				String fileName = file.getName();
+				byte separator;
+				if (fileName.endsWith(".tsv")) {
+					separator = '\t';
+				} else if (fileName.endsWith(".csv")) {
+					separator = ',';
+				} else {
+					continue;
+				}
+				String viewName = fileName.substring(0,
+						fileName.lastIndexOf('.'));
+				if (loader.writeSegment(file, separator, new File(target,
+						viewName + SegmentFile.SEGMENT_EXTENSION))) {
+					segments++;
+				}
+			}
+			loader.writeDictionary(new File(target,
+					SegmentFile.DICTIONARY_FILE));
+			return segments;
+		} finally {
+			loader.pool.shutdown();
+		}
+	}
+
+	/**
+	 * Converts an extension file into a segment.
+	 *
+	 * @param source
+	 *            extension file
+	 * @param separator
+	 *            separator of the values
+	 * @param segment
+	 *            segment file
+	 * @return false if the file holds no tuple, in which case no segment is
+	 *         written (and a previous one is removed)
+	 * @throws IOException
+	 *             if a file cannot be read or written
+	 */
+	private boolean writeSegment(final File source, byte separator,
+			File segment) throws IOException {
+		final FileChannel input = FileChannel.open(source.toPath(),
+				StandardOpenOption.READ);
+		try {
+			long[] starts = split(input);
+			final Range[] ranges = new Range[starts.length - 1];
+			for (int r = 0; r < ranges.length; r++) {
+				ranges[r] = new Range(source.getName(), input, starts[r],
+						starts[r + 1], separator);
+			}
+
+			// first pass: number of tuples, column types and dictionaries
+			List<Callable<Void>> scans = new ArrayList<Callable<Void>>();
+			for (final Range range : ranges) {
+				scans.add(new Callable<Void>() {
+					public Void call() throws IOException {
+						range.scan();
+						return null;
+					}
+				});
+			}
+			run(scans);
+
+			int arity = -1;
+			long size = 0;
+			boolean[] numeric = null;
+			for (Range range : ranges) {
+				if (range.arity < 0) {
+					continue;
+				}
+				if (arity < 0) {
+					arity = range.arity;
+					numeric = new boolean[arity];
+				} else if (range.arity != arity) {
+					throw new IOException(source.getName() + ": tuple at byte "
+							+ range.firstOffset + " has " + range.arity
+							+ " values instead of " + arity);
+				}
+				for (int c = 0; c < arity; c++) {
+					numeric[c] |= range.numeric[c];
+				}
+				range.firstTuple = size;
+				size += range.count;
+				range.remap = dictionary.merge(range.dictionary);
+			}
+			if (arity < 0) {
+				segment.delete();
+				return false;
+			}
+			if (size > Integer.MAX_VALUE) {
+				throw new IOException(source.getName() + " has more than "
+						+ Integer.MAX_VALUE + " tuples");
+			}
+
+			final FileChannel output = FileChannel.open(segment.toPath(),
+					StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+					StandardOpenOption.TRUNCATE_EXISTING);
+			try {
+				final long[] positions = SegmentLoader.writeHeader(output,
+						(int) size, numeric);
+				final boolean[] types = numeric;
+
+				// second pass: values of every range at their position
+				List<Callable<Void>> writes = new ArrayList<Callable<Void>>();
+				for (final Range range : ranges) {
+					if (range.count == 0) {
+						continue;
+					}
+					writes.add(new Callable<Void>() {
+						public Void call() throws IOException {
+							range.write(output, positions, types);
+							return null;
+						}
+					});
+				}
+				run(writes);
+				SegmentLoader.pad(output, positions[arity]);
+			} finally {
+				output.close();
+			}
+			return true;
+		} finally {
+			input.close();
+		}
+	}
+
+	/**
+	 * Splits a file into byte ranges of about the same length, every range
+	 * but the first one starting after a line terminator.
+	 *
+	 * @param channel
+	 *            file to split
+	 * @return start of every range, followed by the length of the file
+	 * @throws IOException
+	 *             if the file cannot be read
+	 */
+	private long[] split(FileChannel channel) throws IOException {
+		long length = channel.size();
+		int count = (int) Math.max(1, Math.min(threads, length / MIN_RANGE));
+		long[] starts = new long[count + 1];
+		starts[count] = length;
+		ByteBuffer buffer = ByteBuffer.allocate(4096);
+		for (int r = 1; r < count; r++) {
+			long position = Math.max(length * r / count, starts[r - 1]);
+			// the range starts after the first terminator from the previous byte
+			long start = length;
+			for (long p = position - 1; p < length && start == length;) {
+				buffer.clear();
+				int read = channel.read(buffer, p);
+				if (read <= 0) {
+					break;
+				}
+				for (int i = 0; i < read; i++) {
+					byte b = buffer.get(i);
+					if (b == '\n' || b == '\r') {
+						start = p + i + 1;
+						break;
+					}
+				}
+				p += read;
+			}
+			starts[r] = start;
+		}
+		return starts;
+	}
+
+	/**
+	 * Runs tasks on the threads of the loader and waits for their end.
+	 *
+	 * @throws IOException
+	 *             if a task failed to read or write a file
+	 */
+	private void run(List<Callable<Void>> tasks) throws IOException {
+		List<Future<Void>> results = new ArrayList<Future<Void>>();
+		for (Callable<Void> task : tasks) {
+			results.add(pool.submit(task));
+		}
+		try {
+			for (Future<Void> result : results) {
+				result.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Loading interrupted", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new IllegalStateException("Loading failed", e.getCause());
+		}
+	}
+
+	/**
+	 * Writes the dictionary of the converted files (see SegmentFile).
+	 *
+	 * @param file
+	 *            dictionary file
+	 * @throws IOException
+	 *             if the file cannot be written
+	 */
+	private void writeDictionary(File file) throws IOException {
+		FileChannel channel = FileChannel.open(file.toPath(),
+				StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING);
+		try {
+			ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+			buffer.putInt(SegmentFile.MAGIC).putInt(dictionary.size());
+			long position = 0;
+			for (int code = 0; code < dictionary.size(); code++) {
+				int length = dictionary.length(code);
+				if (buffer.remaining() < 4 + length) {
+					position = SegmentLoader.flush(channel, buffer, position);
+					if (buffer.capacity() < 4 + length) {
+						buffer = ByteBuffer.allocate(4 + length);
+					}
+				}
+				buffer.putInt(length).put(dictionary.bytes,
+						dictionary.offset(code), length);
+			}
+			SegmentLoader.flush(channel, buffer, position);
+		} finally {
+			channel.close();
+		}
+	}
+
+	/**
+	 * Byte range of an extension file read by one thread, with the state of
+	 * its first pass.
+	 */
+	private static class Range {
+
+		/** name of the file, for the errors */
+		private final String fileName;
+
+		/** extension file */
+		private final FileChannel channel;
+
+		/** first byte of the range */
+		private final long from;
+
+		/** byte following the range */
+		private final long to;
+
+		/** separator of the values */
+		private final byte separator;
+
+		/** number of values of the tuples, -1 if the range has none */
+		int arity = -1;
+
+		/** offset in the file of the first tuple of the range */
+		long firstOffset;
+
+		/** number of tuples */
+		long count = 0;
+
+		/** true for every column with an integer */
+		boolean[] numeric;
+
+		/** symbols of the range */
+		Dictionary dictionary = new Dictionary();
+
+		/** number of tuples of the previous ranges */
+		long firstTuple;
+
+		/** code in the dictionary of the directory of every local code */
+		int[] remap;
+
+		/** first byte of every value of the current line, trimmed */
+		private int[] starts = new int[16];
+
+		/** byte following every value of the current line, trimmed */
+		private int[] ends = new int[16];
+
+		/** integer parsed by parseInteger */
+		private long number;
+
+		Range(String fileName, FileChannel channel, long from, long to,
+				byte separator) {
+			this.fileName = fileName;
+			this.channel = channel;
+			this.from = from;
+			this.to = to;
+			this.separator = separator;
+		}
+
+		/**
+		 * First pass: counts the tuples and finds the types of the columns,
+		 * adding the symbols to the dictionary of the range.
+		 */
+		void scan() throws IOException {
+			LineReader lines = new LineReader(channel, from, to);
+			while (lines.next()) {
+				byte[] line = lines.buffer;
+				int values = split(line, lines.start, lines.end);
+				if (values == 0) {
+					continue;
+				}
+				if (arity < 0) {
+					arity = values;
+					numeric = new boolean[arity];
+					firstOffset = lines.offset;
+				} else if (values != arity) {
+					throw new IOException(fileName + ": tuple at byte "
+							+ lines.offset + " has " + values
+							+ " values instead of " + arity);
+				}
+				for (int c = 0; c < arity; c++) {
+					if (parseInteger(line, starts[c], ends[c])) {
+						numeric[c] = true;
+					} else {
+						dictionary.code(line, starts[c], ends[c]);
+					}
+				}
+				count++;
+			}
+		}
+
+		/**
+		 * Second pass: writes the values of the range at their position in
+		 * the columns of the segment.
+		 *
+		 * @param output
+		 *            segment file
+		 * @param columns
+		 *            position of every column of the segment
+		 * @param types
+		 *            true for every column of longs
+		 */
+		void write(FileChannel output, long[] columns, boolean[] types)
+				throws IOException {
+			long[] positions = new long[arity];
+			ByteBuffer[] buffers = new ByteBuffer[arity];
+			for (int c = 0; c < arity; c++) {
+				positions[c] = columns[c] + firstTuple
+						* (types[c] ? 8 : 4);
+				buffers[c] = ByteBuffer.allocate(BUFFER_SIZE);
+			}
+			LineReader lines = new LineReader(channel, from, to);
+			while (lines.next()) {
+				byte[] line = lines.buffer;
+				if (split(line, lines.start, lines.end) == 0) {
+					continue;
+				}
+				for (int c = 0; c < arity; c++) {
+					if (buffers[c].remaining() < 8) {
+						positions[c] = SegmentLoader.flush(output, buffers[c],
+								positions[c]);
+					}
+					if (!types[c]) {
+						buffers[c].putInt(remap[dictionary.code(line,
+								starts[c], ends[c])]);
+					} else if (parseInteger(line, starts[c], ends[c])) {
+						buffers[c].putLong(number);
+					} else {
+						buffers[c].putLong(Values.symbol(remap[dictionary
+								.code(line, starts[c], ends[c])]));
+					}
+				}
+			}
+			for (int c = 0; c < arity; c++) {
+				SegmentLoader.flush(output, buffers[c], positions[c]);
+			}
+			// the dictionary of the range is not needed anymore
+			dictionary = null;
+		}
+
+		/**
+		 * Finds the values of a line, trimmed like String.trim.
+		 *
+		 * @return number of values, 0 if the line holds no tuple (blank, or
+		 *         starting with #)
+		 */
+		private int split(byte[] line, int start, int end) {
+			if (start < end && line[start] == '#') {
+				return 0;
+			}
+			boolean blank = true;
+			int values = 0;
+			int valueStart = start;
+			for (int i = start; i <= end; i++) {
+				if (i < end) {
+					blank &= (line[i] & 0xFF) <= ' ';
+					if (line[i] != separator) {
+						continue;
+					}
+				}
+				if (values == starts.length) {
+					starts = Arrays.copyOf(starts, 2 * values);
+					ends = Arrays.copyOf(ends, 2 * values);
+				}
+				int s = valueStart;
+				int e = i;
+				while (s < e && (line[s] & 0xFF) <= ' ') {
+					s++;
+				}
+				while (e > s && (line[e - 1] & 0xFF) <= ' ') {
+					e--;
+				}
+				starts[values] = s;
+				ends[values] = e;
+				values++;
+				valueStart = i + 1;
+			}
+			return blank ? 0 : values;
+		}
+
+		/**
+		 * Parses a value encoded as an integer (see
+		 * Values.isEncodedAsInteger) into number.
+		 *
+		 * @return false if the value is encoded as a symbol
+		 */
+		private boolean parseInteger(byte[] line, int start, int end) {
+			boolean negative = start < end && line[start] == '-';
+			int first = negative ? start + 1 : start;
+			int digits = end - first;
+			if (digits < 1 || digits > 19
+					|| (line[first] == '0' && (digits > 1 || negative))) {
+				return false;
+			}
+			// accumulated negatively, since Long.MIN_VALUE has no opposite
+			long value = 0;
+			for (int i = first; i < end; i++) {
+				int digit = line[i] - '0';
+				if (digit < 0 || digit > 9
+						|| value < Long.MIN_VALUE / 10
+						|| (value == Long.MIN_VALUE / 10 && digit > 8)) {
+					return false;
+				}
+				value = value * 10 - digit;
+			}
+			if (!negative) {
+				if (value == Long.MIN_VALUE) {
+					return false;
+				}
+				value = -value;
+			}
+			if (value < Values.SYMBOL_LIMIT) {
+				return false;
+			}
+			number = value;
+			return true;
+		}
+	}
+
+	/**
+	 * Reads the lines of a byte range of a file into a buffer. A line ends
+	 * at "\n", at "\r" or at the end of the range (an empty line follows the
+	 * "\r" of "\r\n", and holds no tuple).
+	 */
+	private static class LineReader {
+
+		/** file being read */
+		private final FileChannel channel;
+
+		/** position in the file of the byte following the buffered ones */
+		private long position;
+
+		/** byte following the range */
+		private final long rangeEnd;
+
+		/** bytes read */
+		byte[] buffer = new byte[READ_SIZE];
+
+		/** number of bytes of the buffer read from the file */
+		private int limit = 0;
+
+		/** first byte of the buffer not returned yet */
+		private int next = 0;
+
+		/** first byte of the buffer not searched for a terminator yet */
+		private int searched = 0;
+
+		/** current line: buffer[start, end[ */
+		int start;
+
+		/** byte following the current line in the buffer */
+		int end;
+
+		/** position in the file of the current line */
+		long offset;
+
+		LineReader(FileChannel channel, long from, long to) {
+			this.channel = channel;
+			this.position = from;
+			this.rangeEnd = to;
+		}
+
+		/**
+		 * Moves to the next line.
+		 *
+		 * @return false at the end of the range
+		 */
+		boolean next() throws IOException {
+			while (true) {
+				for (int i = searched; i < limit; i++) {
+					if (buffer[i] == '\n' || buffer[i] == '\r') {
+						return line(i, i + 1);
+					}
+				}
+				searched = limit;
+				if (position >= rangeEnd) {
+					return next < limit && line(limit, limit);
+				}
+				fill();
+			}
+		}
+
+		/**
+		 * Sets the current line, ending before the given byte.
+		 */
+		private boolean line(int terminator, int following) {
+			start = next;
+			end = terminator;
+			offset = position - (limit - next);
+			next = following;
+			searched = following;
+			return true;
+		}
+
+		/**
+		 * Reads the next bytes of the range after the current partial line,
+		 * growing the buffer if the line fills it.
+		 */
+		private void fill() throws IOException {
+			if (next > 0) {
+				System.arraycopy(buffer, next, buffer, 0, limit - next);
+				limit -= next;
+				searched -= next;
+				next = 0;
+			} else if (limit == buffer.length) {
+				buffer = Arrays.copyOf(buffer, 2 * buffer.length);
+			}
+			int length = (int) Math.min(buffer.length - limit, rangeEnd
+					- position);
+			ByteBuffer target = ByteBuffer.wrap(buffer, limit, length);
+			while (target.hasRemaining()) {
+				int read = channel.read(target, position);
+				if (read < 0) {
+					throw new IOException("Unexpected end of file");
+				}
+				position += read;
+				limit += read;
+			}
+		}
+	}
+
+	/**
+	 * Dictionary of symbols stored as UTF-8 bytes: the code of a symbol is
+	 * the order of its first addition. Symbols are found by an
+	 * open-addressing hash table of their codes, with linear probing.
+	 */
+	private static class Dictionary {
+
+		/** bytes of the symbols, one after the other */
+		byte[] bytes = new byte[1 << 12];
+
+		/** start of every symbol in bytes, followed by the end of the last */
+		private int[] offsets = new int[64];
+
+		/** hash code of every symbol */
+		private int[] hashes = new int[64];
+
+		/** code + 1 of the symbol of every slot, 0 for an empty slot */
+		private int[] slots = new int[128];
+
+		/** number of symbols */
+		private int size = 0;
+
+		int size() {
+			return size;
+		}
+
+		int offset(int code) {
+			return offsets[code];
+		}
+
+		int length(int code) {
+			return offsets[code + 1] - offsets[code];
+		}
+
+		/**
+		 * Returns the code of a symbol, adding it if needed.
+		 *
+		 * @param symbol
+		 *            bytes of the symbol: symbol[from, to[
+		 */
+		int code(byte[] symbol, int from, int to) {
+			long h = 0;
+			for (int i = from; i < to; i++) {
+				h = HashJoin.combine(h, symbol[i]);
+			}
+			int hash = HashJoin.finish(h);
+			int mask = slots.length - 1;
+			for (int slot = hash & mask;; slot = (slot + 1) & mask) {
+				int code = slots[slot] - 1;
+				if (code < 0) {
+					code = add(symbol, from, to, hash);
+					slots[slot] = code + 1;
+					if (2 * size > slots.length) {
+						rehash();
+					}
+					return code;
+				}
+				if (hashes[code] == hash && equals(code, symbol, from, to)) {
+					return code;
+				}
+			}
+		}
+
+		/**
+		 * Adds the symbols of another dictionary.
+		 *
+		 * @param other
+		 *            dictionary of a range
+		 * @return code in this dictionary of every code of other
+		 */
+		int[] merge(Dictionary other) {
+			int[] remap = new int[other.size];
+			for (int code = 0; code < other.size; code++) {
+				remap[code] = code(other.bytes, other.offsets[code],
+						other.offsets[code + 1]);
+			}
+			return remap;
+		}
+
+		private boolean equals(int code, byte[] symbol, int from, int to) {
+			int offset = offsets[code];
+			if (offsets[code + 1] - offset != to - from) {
+				return false;
+			}
+			for (int i = from; i < to; i++) {
+				if (bytes[offset++] != symbol[i]) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		private int add(byte[] symbol, int from, int to, int hash) {
+			int offset = offsets[size];
+			if (offset + to - from > bytes.length) {
+				bytes = Arrays.copyOf(bytes, Math.max(2 * bytes.length, offset
+						+ to - from));
+			}
+			System.arraycopy(symbol, from, bytes, offset, to - from);
+			if (size + 1 == offsets.length) {
+				offsets = Arrays.copyOf(offsets, 2 * offsets.length);
+				hashes = Arrays.copyOf(hashes, 2 * hashes.length);
+			}
+			hashes[size] = hash;
+			offsets[size + 1] = offset + to - from;
+			return size++;
+		}
+
+		private void rehash() {
+			slots = new int[2 * slots.length];
+			int mask = slots.length - 1;
+			for (int code = 0; code < size; code++) {
+				int slot = hashes[code] & mask;
+				while (slots[slot] != 0) {
+					slot = (slot + 1) & mask;
+				}
+				slots[slot] = code + 1;
+			}
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length != 2 && args.length != 3) {
+			System.out.println("USAGE: java execution.ParallelSegmentLoader sourceDir targetDir [threads]");
+			System.exit(1);
+		}
+		int threads = args.length == 3 ? Integer.parseInt(args[2]) : Runtime
+				.getRuntime().availableProcessors();
+		int segments = convert(args[0], args[1], threads);
+		System.out.println(segments + " segment(s) written to " + args[1]);
+	}
+}
@@ -0,0 +1,462 @@
+/*
+ *   Copyright 2015 Cheikh BA <cheikh.ba.sn@gmail.com>
+ *
+ *   This file is part of WALO.
+ *
+ *   WALO is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Lesser General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   WALO is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Lesser General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Lesser General Public License,
+ *   along with WALO.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package execution;
+
+import java.util.ArrayList;
+import java.util.Hashtable;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+import datalog.DatalogQuery;
+import datalog.InterpretedPredicate;
+import datalog.Predicate;
+import datalog.PredicateElement;
+import datalog.Variable;
+import statistics.JoinOrderOptimizer;
+import statistics.JoinTree;
+
+/**
+ * Class PlanCompiler compiles a rewriting into a physical plan over the
+ * extensions of its views:
+ *
+ * 1. every view atom is scanned, and the scans are joined from left to right
+ * in the order of the body (left-deep hash joins)
+ *
+ * 2. every interpreted predicate is pushed into the first scan binding its
+ * variable, and evaluated there on the columns of the view (see
+ * ColumnPredicate), so that the tuples it rejects are not joined at all; a
+ * predicate whose variable only a join binds would be evaluated by a
+ * selection right above it
+ *
+ * 3. the head variables are finally projected; a head variable that the
+ * rewriting equates with a constant is projected as the constant
+ *
+ * If the joins of the rewriting are cyclic (see JoinHypergraph), pairwise
+ * joins may build intermediate results much larger than the answers: the
+ * scans, each filtering the interpreted predicates on its variables, are
+ * then joined at once by a GenericJoin.
+ *
+ * With the semi-join reduction mode, an acyclic rewriting of several views
+ * is evaluated by the Yannakakis algorithm along a join tree of its atoms
+ * instead, the filtered scans being reduced by semi-joins before they are
+ * joined.
+ *
+ * With a JoinOrderOptimizer, an acyclic rewriting is instead joined along
+ * the plan of least estimated cost found from the statistics of the views
+ * (possibly bushy, the smaller side of every join being loaded into the hash
+ * table), the scans being filtered by the interpreted predicates on their
+ * variables.
+ *
+ * With a JoinResultCache, every join of these plans reads its result from
+ * the cache when an earlier query computed the same join (see CachedJoin).
+ *
+ * With several threads, the joins of the left-deep plans, and the final
+ * joins of the Yannakakis algorithm, are computed by ParallelHashJoin.
+ *
+ * With a memory budget, the joins of the left-deep and optimized plans are
+ * computed by GraceHashJoin instead, spilling to disk the build sides that
+ * exceed the budget, and the union deduplicates its answers within the
+ * budget (see UnionCursor).
+ *
+ * The rewritings of a union are compiled together into a DAG (see
+ * compileUnion): rewritings of the same query share the names of their
+ * variables, so equal operators (a scan, or a join of the same atoms in the
+ * same order, with the same selections) are compiled once into a SharedNode,
+ * whose result is computed once and read by all the plans using it.
+ */
+public class PlanCompiler {
+
+	/** extensions of the views */
+	private ExtensionCatalog catalog;
+
+	/** true to evaluate acyclic queries by the Yannakakis algorithm */
+	private boolean semiJoinReduction = false;
+
+	/** number of threads of the joins */
+	private int threads = 1;
+
+	/** chooses the join order of acyclic queries, null for the body order */
+	private JoinOrderOptimizer optimizer;
+
+	/** results of the joins of earlier queries, null not to cache joins */
+	private JoinResultCache cache;
+
+	/** memory budget of a join or of the union in bytes, 0 for no budget */
+	private long memoryBudget = 0;
+
+	/**
+	 * shared operators of the union being compiled by description, null not
+	 * to share operators
+	 */
+	private Hashtable<String, SharedNode> memo;
+
+	/**
+	 * PlanCompiler constructor
+	 *
+	 * @param catalog
+	 *            extensions of the views
+	 */
+	public PlanCompiler(ExtensionCatalog catalog) {
+		this.catalog = catalog;
+	}
+
+	/**
+	 * Sets the plan mode of acyclic queries.
+	 *
+	 * @param reduce
+	 *            true to evaluate acyclic queries by the Yannakakis algorithm,
+	 *            false for left-deep hash joins
+	 */
+	public void setSemiJoinReduction(boolean reduce) {
+		this.semiJoinReduction = reduce;
+	}
+
+	/**
+	 * Sets the number of threads of the joins.
+	 *
+	 * @param threads
+	 *            number of workers of every join, 1 for sequential joins
+	 */
+	public void setThreads(int threads) {
+		this.threads = Math.max(threads, 1);
+	}
+
+	/**
+	 * Sets the optimizer choosing the join order of acyclic queries.
+	 *
+	 * @param optimizer
+	 *            optimizer over the statistics of the views, null to join
+	 *            the views in the order of the body
+	 */
+	public void setJoinOrderOptimizer(JoinOrderOptimizer optimizer) {
+		this.optimizer = optimizer;
+	}
+
+	/**
+	 * Sets the cache of the results of the joins, shared by the queries
+	 * compiled afterwards.
+	 *
+	 * @param cache
+	 *            cache of the join results, null not to cache joins
+	 */
+	public void setJoinCache(JoinResultCache cache) {
+		this.cache = cache;
+	}
+
+	/**
+	 * Sets the memory budget of the hash table of every join, and of the
+	 * duplicate elimination of the unions. Below a few thousand rows (see
+	 * GraceHashJoin.MIN_SPILL_ROWS and ExternalDistinct.MIN_RUN_ROWS), the
+	 * rows are kept in memory whatever the budget.
+	 *
+	 * @param bytes
+	 *            maximum size in bytes, 0 for no budget
+	 */
+	public void setMemoryBudget(long bytes) {
+		this.memoryBudget = Math.max(bytes, 0);
+	}
+
+	/**
+	 * Compiles a conjunctive query over the views into a physical plan.
+	 *
+	 * @param query
+	 *            query whose body predicates are views
+	 * @return root of the plan
+	 */
+	public PlanNode compile(DatalogQuery query) {
+		memo = null;
+		return compilePlan(query);
+	}
+
+	/**
+	 * Compiles the union of conjunctive queries over the views into a DAG of
+	 * operators, the operators common to several queries being shared.
+	 *
+	 * @param queries
+	 *            rewritings of the same query, at least one
+	 * @return union of the plans, with duplicate elimination
+	 */
+	public UnionPlan compileUnion(List<DatalogQuery> queries) {
+		memo = new Hashtable<String, SharedNode>();
+		List<PlanNode> plans = new ArrayList<PlanNode>();
+		try {
+			for (DatalogQuery query : queries) {
+				plans.add(compilePlan(query));
+			}
+		} finally {
+			memo = null;
+		}
+		UnionPlan union = new UnionPlan(plans, memoryBudget);
+		countConsumers(union, new IdentityHashMap<PlanNode, Boolean>());
+		return union;
+	}
+
+	/**
+	 * Compiles a conjunctive query over the views into a physical plan,
+	 * sharing its operators through the memo if there is one.
+	 *
+	 * @param query
+	 *            query whose body predicates are views
+	 * @return root of the plan
+	 */
+	private PlanNode compilePlan(DatalogQuery query) {
+		if (query.getPredicates().isEmpty()) {
+			throw new IllegalArgumentException("Query " + query.getName()
+					+ " has no view in its body");
+		}
+
+		List<InterpretedPredicate> pending = new ArrayList<InterpretedPredicate>(
+				query.getInterpretedPredicates());
+		PlanNode plan = null;
+
+		JoinHypergraph graph = new JoinHypergraph(query);
+		int[] joinTree = graph.getJoinTree();
+		if (joinTree == null) {
+			plan = share(new GenericJoin(filteredScans(query, pending)));
+		} else if (semiJoinReduction && graph.numberOfEdges() > 1) {
+			plan = share(new Yannakakis(filteredScans(query, pending),
+					joinTree, threads));
+		} else if (optimizer != null && graph.numberOfEdges() > 1) {
+			plan = compileTree(optimizer.optimize(query),
+					filteredScans(query, pending));
+		} else {
+			for (Predicate atom : query.getPredicates()) {
+				PlanNode scan = scan(atom, pending);
+				plan = plan == null ? scan : share(cache(join(plan, scan)));
+				plan = addSelections(plan, pending);
+			}
+		}
+
+		List<Variable> head = query.getHeadVariables();
+		String[] headVars = new String[head.size()];
+		for (int i = 0; i < headVars.length; i++) {
+			headVars[i] = head.get(i).name;
+		}
+		Hashtable<String, Long> fixed = fixedHeadVariables(head, plan, pending);
+
+		if (!pending.isEmpty()) {
+			throw new IllegalArgumentException("Variable of " + pending.get(0)
+					+ " is not bound by the body of " + query.getName());
+		}
+		return new Projection(plan, headVars, fixed);
+	}
+
+	/**
+	 * Returns the constant of every head variable not bound by the plan that
+	 * a pending predicate equates with a constant, e.g. X in the rewriting
+	 * Q(X) :- V1('c'), X = 'c' (see Rewriting). These predicates are removed
+	 * from the pending ones.
+	 *
+	 * @param head
+	 *            head variables of the query
+	 * @param plan
+	 *            plan of the body
+	 * @param pending
+	 *            interpreted predicates not placed yet
+	 * @return encoded constant of every such variable
+	 */
+	private static Hashtable<String, Long> fixedHeadVariables(
+			List<Variable> head, PlanNode plan,
+			List<InterpretedPredicate> pending) {
+		Hashtable<String, Long> fixed = new Hashtable<String, Long>();
+		List<InterpretedPredicate> placed = new ArrayList<InterpretedPredicate>();
+		for (InterpretedPredicate pred : pending) {
+			Variable var = pred.getVariable();
+			if (pred.getComparator().equals("=") && head.contains(var)
+					&& Selection.indexOf(plan.getVariables(), var.name) < 0) {
+				PredicateElement constant = pred.getLeft() == var ? pred
+						.getRight() : pred.getLeft();
+				fixed.put(var.name, Values.encodeConstant(constant));
+				placed.add(pred);
+			}
+		}
+		pending.removeAll(placed);
+		return fixed;
+	}
+
+	/**
+	 * Compiles a join plan of the optimizer.
+	 *
+	 * @param tree
+	 *            join plan of the atoms of the query
+	 * @param scans
+	 *            scan of every atom, in the order of the body
+	 * @return root of the plan
+	 */
+	private PlanNode compileTree(JoinTree tree, List<PlanNode> scans) {
+		if (tree.isLeaf()) {
+			return scans.get(tree.getAtom());
+		}
+		return share(cache(join(compileTree(tree.getLeft(), scans),
+				compileTree(tree.getRight(), scans))));
+	}
+
+	/**
+	 * Returns the join operator of two plans.
+	 *
+	 * @param left
+	 *            probe side
+	 * @param right
+	 *            build side
+	 * @return GraceHashJoin with a memory budget, ParallelHashJoin with
+	 *         several threads, HashJoin otherwise
+	 */
+	private PlanNode join(PlanNode left, PlanNode right) {
+		if (memoryBudget > 0) {
+			return new GraceHashJoin(left, right, memoryBudget);
+		}
+		if (threads > 1) {
+			return new ParallelHashJoin(left, right, threads);
+		}
+		return new HashJoin(left, right);
+	}
+
+	/**
+	 * Returns a join reading its result from the cache if there is one.
+	 *
+	 * @param join
+	 *            join of scans and selections
+	 * @return CachedJoin, or the join itself without cache
+	 */
+	private PlanNode cache(PlanNode join) {
+		return cache == null ? join : new CachedJoin(join, cache);
+	}
+
+	/**
+	 * Returns the scans of the atoms of a query, every scan being filtered by
+	 * the pending interpreted predicates whose variable it binds. The placed
+	 * predicates are removed from the pending ones.
+	 *
+	 * @param query
+	 *            query whose body predicates are views
+	 * @param pending
+	 *            interpreted predicates not placed yet
+	 * @return filtered scan of every atom, in the order of the body
+	 */
+	private List<PlanNode> filteredScans(DatalogQuery query,
+			List<InterpretedPredicate> pending) {
+		List<PlanNode> inputs = new ArrayList<PlanNode>();
+		List<InterpretedPredicate> placed = new ArrayList<InterpretedPredicate>();
+		for (Predicate atom : query.getPredicates()) {
+			List<InterpretedPredicate> predicates = new ArrayList<InterpretedPredicate>(
+					pending);
+			inputs.add(scan(atom, predicates));
+			for (InterpretedPredicate pred : pending) {
+				if (!predicates.contains(pred) && !placed.contains(pred)) {
+					placed.add(pred);
+				}
+			}
+		}
+		pending.removeAll(placed);
+		return inputs;
+	}
+
+	/**
+	 * Returns the scan of the extension of the view of an atom, evaluating
+	 * the pending interpreted predicates whose variable it binds. They are
+	 * removed from the pending ones.
+	 *
+	 * @param atom
+	 *            view atom of the query
+	 * @param pending
+	 *            interpreted predicates not placed yet
+	 * @return scan of the atom
+	 */
+	private PlanNode scan(Predicate atom, List<InterpretedPredicate> pending) {
+		List<InterpretedPredicate> bound = new ArrayList<InterpretedPredicate>();
+		for (InterpretedPredicate pred : pending) {
+			if (atom.getVariables().contains(pred.getVariable())) {
+				bound.add(pred);
+			}
+		}
+		pending.removeAll(bound);
+		return share(new Scan(catalog.getExtension(atom.name,
+				atom.numberOfElements()), atom, bound));
+	}
+
+	/**
+	 * Places above the plan a selection with the pending interpreted
+	 * predicates whose variable it binds, and removes them from the pending
+	 * ones.
+	 *
+	 * @param plan
+	 *            plan built so far
+	 * @param pending
+	 *            interpreted predicates not placed yet
+	 * @return plan with the selection, or the same plan
+	 */
+	private PlanNode addSelections(PlanNode plan,
+			List<InterpretedPredicate> pending) {
+		List<InterpretedPredicate> bound = new ArrayList<InterpretedPredicate>();
+		for (InterpretedPredicate pred : pending) {
+			if (Selection.indexOf(plan.getVariables(), pred.getVariable().name) >= 0) {
+				bound.add(pred);
+			}
+		}
+		if (bound.isEmpty()) {
+			return plan;
+		}
+		pending.removeAll(bound);
+		return share(new Selection(plan, bound));
+	}
+
+	/**
+	 * Returns the shared operator equal to an operator, i.e. with the same
+	 * description, registering it if it is the first one.
+	 *
+	 * @param node
+	 *            compiled operator
+	 * @return shared operator, or node itself when operators are not shared
+	 */
+	private PlanNode share(PlanNode node) {
+		if (memo == null) {
+			return node;
+		}
+		String key = node.toString();
+		SharedNode shared = memo.get(key);
+		if (shared == null) {
+			shared = new SharedNode(node, memo.size() + 1);
+			memo.put(key, shared);
+		}
+		return shared;
+	}
+
+	/**
+	 * Registers every operator reading a shared operator of the DAG as one of
+	 * its consumers.
+	 *
+	 * @param node
+	 *            operator of the DAG
+	 * @param visited
+	 *            shared operators already visited
+	 */
+	private static void countConsumers(PlanNode node,
+			IdentityHashMap<PlanNode, Boolean> visited) {
+		for (PlanNode child : node.getChildren()) {
+			if (child instanceof SharedNode) {
+				((SharedNode) child).addConsumer();
+				if (visited.put(child, Boolean.TRUE) != null) {
+					continue;
+				}
+			}
+			countConsumers(child, visited);
+		}
+	}
+}
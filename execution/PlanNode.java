@@ -0,0 +1,118 @@
+/*
+ *   Copyright 2015 Cheikh BA <cheikh.ba.sn@gmail.com>
+ *
+ *   This file is part of WALO.
+ *
+ *   WALO is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Lesser General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   WALO is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Lesser General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Lesser General Public License,
+ *   along with WALO.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package execution;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Class PlanNode is an operator of a physical plan. Executing a node executes
+ * its children and returns the bindings of its variables.
+ */
+public abstract class PlanNode {
+
+	/**
+	 * Executes the operator.
+	 *
+	 * @return bindings of the variables of the node
+	 */
+	public abstract BindingTable execute();
+
+	/**
+	 * Opens a cursor over the result of the operator. By default the result
+	 * is computed at once; operators able to produce their rows one at a time
+	 * override this method.
+	 *
+	 * @return cursor over the bindings of the variables of the node
+	 */
+	public Cursor open() {
+		return Cursor.over(execute());
+	}
+
+	/**
+	 * Returns the variables bound by the operator, in the order of the columns
+	 * of its result.
+	 *
+	 * @return variables
+	 */
+	public abstract String[] getVariables();
+
+	/**
+	 * Returns the operators whose results are read by this node.
+	 *
+	 * @return children of the node, empty for a leaf
+	 */
+	public List<PlanNode> getChildren() {
+		return Collections.emptyList();
+	}
+
+	/**
+	 * Appends a description of the plan rooted at this node, one operator per
+	 * line, children indented below their parent.
+	 *
+	 * @param s
+	 *            description being built
+	 * @param indent
+	 *            depth of the node
+	 */
+	public abstract void explain(StringBuilder s, int indent);
+
+	/**
+	 * Returns the description of the plan rooted at this node.
+	 */
+	public String toString() {
+		StringBuilder s = new StringBuilder();
+		explain(s, 0);
+		return s.toString();
+	}
+
+	/**
+	 * Appends the indentation of a node of the given depth.
+	 *
+	 * @param s
+	 *            description being built
+	 * @param indent
+	 *            depth of the node
+	 */
+	protected static void indent(StringBuilder s, int indent) {
+		for (int i = 0; i < indent; i++) {
+			s.append("  ");
+		}
+	}
+
+	/**
+	 * Appends the variables of a node in the form "(x,y,z)".
+	 *
+	 * @param s
+	 *            description being built
+	 * @param variables
+	 *            variables of the node
+	 */
+	protected static void appendVariables(StringBuilder s, String[] variables) {
+		s.append('(');
+		for (int i = 0; i < variables.length; i++) {
+			if (i > 0) {
+				s.append(',');
+			}
+			s.append(variables[i]);
+		}
+		s.append(')');
+	}
+}
@@ -0,0 +1,135 @@
+/*
+ *   Copyright 2015 Cheikh BA <cheikh.ba.sn@gmail.com>
+ *
+ *   This file is part of WALO.
+ *
+ *   WALO is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Lesser General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   WALO is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Lesser General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Lesser General Public License,
+ *   along with WALO.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package execution;
+
+import java.util.Collections;
+import java.util.Hashtable;
+import java.util.List;
+
+/**
+ * Class Projection keeps the columns of the head variables of a rewriting,
+ * in the order of the head. A head variable equated with a constant of the
+ * query is not bound by the body: its column holds the constant. Duplicate
+ * answers are kept (bag semantics); they are removed by UnionPlan.
+ */
+public class Projection extends PlanNode {
+
+	/** operator whose result is projected */
+	private PlanNode child;
+
+	/** variables of the result */
+	private String[] variables;
+
+	/** column of the child result of every variable, -1 for a constant */
+	private int[] columns;
+
+	/** encoded value of every variable of the result bound to a constant */
+	private long[] constants;
+
+	/**
+	 * Projection constructor
+	 *
+	 * @param child
+	 *            operator whose result is projected
+	 * @param variables
+	 *            variables to keep, all bound by the child
+	 */
+	public Projection(PlanNode child, String[] variables) {
+		this(child, variables, new Hashtable<String, Long>());
+	}
+
+	/**
+	 * Projection constructor
+	 *
+	 * @param child
+	 *            operator whose result is projected
+	 * @param variables
+	 *            variables to keep
+	 * @param fixed
+	 *            encoded constant of every variable not bound by the child
+	 */
+	public Projection(PlanNode child, String[] variables,
+			Hashtable<String, Long> fixed) {
+		this.child = child;
+		this.variables = variables;
+		this.columns = new int[variables.length];
+		this.constants = new long[variables.length];
+		String[] childVars = child.getVariables();
+		for (int i = 0; i < variables.length; i++) {
+			columns[i] = Selection.indexOf(childVars, variables[i]);
+			if (columns[i] < 0) {
+				Long constant = fixed.get(variables[i]);
+				if (constant == null) {
+					throw new IllegalArgumentException("Head variable "
+							+ variables[i] + " is not bound by the body");
+				}
+				constants[i] = constant;
+			}
+		}
+	}
+
+	public BindingTable execute() {
+		BindingTable input = child.execute();
+		BindingTable result = new BindingTable(variables, input.size());
+		for (int row = 0; row < input.size(); row++) {
+			int out = result.addRow();
+			for (int c = 0; c < columns.length; c++) {
+				result.set(c, out, columns[c] < 0 ? constants[c] : input.get(
+						columns[c], row));
+			}
+		}
+		return result;
+	}
+
+	public Cursor open() {
+		final Cursor input = child.open();
+		return new Cursor() {
+
+			public boolean next() {
+				return input.next();
+			}
+
+			public long get(int column) {
+				return columns[column] < 0 ? constants[column] : input
+						.get(columns[column]);
+			}
+
+			public void close() {
+				input.close();
+			}
+		};
+	}
+
+	public List<PlanNode> getChildren() {
+		return Collections.singletonList(child);
+	}
+
+	public String[] getVariables() {
+		return variables;
+	}
+
+	public void explain(StringBuilder s, int indent) {
+		indent(s, indent);
+		s.append("Projection ");
+		appendVariables(s, variables);
+		s.append('\n');
+		child.explain(s, indent + 1);
+	}
+}
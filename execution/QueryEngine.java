@@ -0,0 +1,254 @@
+/*
+ *   Copyright 2015 Cheikh BA <cheikh.ba.sn@gmail.com>
+ *
+ *   This file is part of WALO.
+ *
+ *   WALO is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Lesser General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   WALO is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Lesser General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Lesser General Public License,
+ *   along with WALO.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package execution;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import minicon.Rewriting;
+import datalog.DatalogQuery;
+import datalog.Variable;
+import statistics.JoinOrderOptimizer;
+
+/**
+ * Class QueryEngine evaluates rewritings over the extensions of the views.
+ * Answers follow the set semantics: the answers of a rewriting, and of a
+ * union of rewritings, are returned without duplicates.
+ */
+public class QueryEngine {
+
+	/** compiler of the plans over the extensions of the views */
+	private PlanCompiler compiler;
+
+	/** memory budget of the joins and of the unions in bytes, 0 for none */
+	private long memoryBudget = 0;
+
+	/**
+	 * QueryEngine constructor
+	 *
+	 * @param catalog
+	 *            extensions of the views
+	 */
+	public QueryEngine(ExtensionCatalog catalog) {
+		this.compiler = new PlanCompiler(catalog);
+	}
+
+	/**
+	 * Sets the plan mode of acyclic rewritings (see PlanCompiler).
+	 *
+	 * @param reduce
+	 *            true to reduce the views by semi-joins before joining them,
+	 *            false for left-deep hash joins
+	 */
+	public void setSemiJoinReduction(boolean reduce) {
+		compiler.setSemiJoinReduction(reduce);
+	}
+
+	/**
+	 * Sets the number of threads of the joins (see ParallelHashJoin).
+	 *
+	 * @param threads
+	 *            number of workers of every join, 1 for sequential joins
+	 */
+	public void setThreads(int threads) {
+		compiler.setThreads(threads);
+	}
+
+	/**
+	 * Sets the optimizer choosing the join order of acyclic rewritings (see
+	 * PlanCompiler).
+	 *
+	 * @param optimizer
+	 *            optimizer over the statistics of the views, null to join
+	 *            the views in the order of the body
+	 */
+	public void setJoinOrderOptimizer(JoinOrderOptimizer optimizer) {
+		compiler.setJoinOrderOptimizer(optimizer);
+	}
+
+	/**
+	 * Sets the cache of the join results, kept across the rewritings
+	 * executed afterwards (see JoinResultCache).
+	 *
+	 * @param cache
+	 *            cache of the join results, null not to cache joins
+	 */
+	public void setJoinCache(JoinResultCache cache) {
+		compiler.setJoinCache(cache);
+	}
+
+	/**
+	 * Sets the memory budget of the hash table of every join and of the
+	 * duplicate elimination of the answers: beyond it, they spill to
+	 * temporary files (see GraceHashJoin and UnionCursor).
+	 *
+	 * @param bytes
+	 *            maximum size in bytes, 0 for no budget
+	 */
+	public void setMemoryBudget(long bytes) {
+		memoryBudget = Math.max(bytes, 0);
+		compiler.setMemoryBudget(memoryBudget);
+	}
+
+	/**
+	 * Compiles a rewriting into a physical plan (see PlanCompiler).
+	 *
+	 * @param rewriting
+	 *            rewriting of the query
+	 * @return root of the plan
+	 */
+	public PlanNode compile(Rewriting rewriting) {
+		return compiler.compile(rewriting.getRewriting());
+	}
+
+	/**
+	 * Compiles a union of rewritings into a DAG of operators, the operators
+	 * common to several rewritings being computed once (see PlanCompiler).
+	 *
+	 * @param rewritings
+	 *            rewritings of the query, at least one
+	 * @return root of the plan
+	 */
+	public UnionPlan compileUnion(List<Rewriting> rewritings) {
+		List<DatalogQuery> queries = new ArrayList<DatalogQuery>();
+		for (Rewriting rewriting : rewritings) {
+			queries.add(rewriting.getRewriting());
+		}
+		return compiler.compileUnion(queries);
+	}
+
+	/**
+	 * Returns the answers of a rewriting.
+	 *
+	 * @param rewriting
+	 *            rewriting of the query
+	 * @return answers, one column per head variable
+	 */
+	public BindingTable execute(Rewriting rewriting) {
+		return new UnionPlan(Collections.singletonList(compile(rewriting)))
+				.execute();
+	}
+
+	/**
+	 * Returns the answers of a union of rewritings of the same query. With a
+	 * memory budget, the rewritings are executed one at a time, their answers
+	 * being pulled through their plans, since the results of the operators
+	 * shared by a DAG are kept in memory.
+	 *
+	 * @param rewritings
+	 *            rewritings of the query
+	 * @return answers, one column per head variable, null if there is no
+	 *         rewriting
+	 */
+	public BindingTable executeUnion(List<Rewriting> rewritings) {
+		if (rewritings.isEmpty()) {
+			return null;
+		}
+		if (memoryBudget > 0) {
+			return executeUnion(rewritings, Long.MAX_VALUE);
+		}
+		return compileUnion(rewritings).execute();
+	}
+
+	/**
+	 * Opens a cursor over the distinct answers of a union of rewritings of
+	 * the same query, so that the answers are consumed one at a time instead
+	 * of being copied into a table. With a memory budget, or if asked to, the
+	 * rewritings are compiled and executed one at a time, in their order, and
+	 * their answers are pulled through the plans (see
+	 * executeUnion(rewritings, limit)); otherwise the union is executed as a
+	 * DAG (see compileUnion) and its answers are read from its result.
+	 *
+	 * @param rewritings
+	 *            rewritings of the query
+	 * @param incremental
+	 *            true to execute the rewritings one at a time even without a
+	 *            memory budget, e.g. when only the first answers are read
+	 * @return cursor over the answers, null if there is no rewriting
+	 */
+	public Cursor openUnion(final List<Rewriting> rewritings,
+			boolean incremental) {
+		if (rewritings.isEmpty()) {
+			return null;
+		}
+		if (memoryBudget == 0 && !incremental) {
+			return Cursor.over(compileUnion(rewritings).execute());
+		}
+		int arity = rewritings.get(0).getRewriting().getHeadVariables()
+				.size();
+		return new UnionCursor(new Iterator<PlanNode>() {
+
+			private Iterator<Rewriting> next = rewritings.iterator();
+
+			public boolean hasNext() {
+				return next.hasNext();
+			}
+
+			public PlanNode next() {
+				return compile(next.next());
+			}
+
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		}, arity, memoryBudget);
+	}
+
+	/**
+	 * Returns the first distinct answers of a union of rewritings of the same
+	 * query. The rewritings are materialised, compiled and executed one at a
+	 * time, in their order, and their answers are pulled through the plans
+	 * (see PlanNode.open): evaluation stops as soon as limit answers are found,
+	 * the remaining rewritings being neither compiled nor executed.
+	 *
+	 * @param rewritings
+	 *            rewritings of the query
+	 * @param limit
+	 *            maximum number of answers
+	 * @return at most limit answers, one column per head variable, null if
+	 *         there is no rewriting
+	 */
+	public BindingTable executeUnion(List<Rewriting> rewritings, long limit) {
+		if (rewritings.isEmpty()) {
+			return null;
+		}
+		List<String> head = new ArrayList<String>();
+		for (Variable var : rewritings.get(0).getRewriting()
+				.getHeadVariables()) {
+			head.add(var.name);
+		}
+		BindingTable result = new BindingTable(head);
+
+		Cursor answers = openUnion(rewritings, true);
+		try {
+			while (result.size() < limit && answers.next()) {
+				int row = result.addRow();
+				for (int c = 0; c < head.size(); c++) {
+					result.set(c, row, answers.get(c));
+				}
+			}
+		} finally {
+			answers.close();
+		}
+		return result;
+	}
+}
@@ -0,0 +1,344 @@
+/*
+ *   Copyright 2015 Cheikh BA <cheikh.ba.sn@gmail.com>
+ *
+ *   This file is part of WALO.
+ *
+ *   WALO is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Lesser General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   WALO is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Lesser General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Lesser General Public License,
+ *   along with WALO.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package execution;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import datalog.Constant;
+import datalog.InterpretedPredicate;
+import datalog.Predicate;
+import datalog.PredicateElement;
+
+/**
+ * Class Scan reads the tuples of a view matching an atom of a rewriting. A
+ * constant of the atom keeps the tuples with this value at its column, a
+ * variable repeated in the atom keeps the tuples with equal values at its
+ * columns and "_" matches any value. The result binds the distinct variables
+ * of the atom, in the order of their first occurrence.
+ *
+ * Interpreted predicates on the variables of the atom may be pushed into the
+ * scan: they are evaluated chunk by chunk on the columns of the view (see
+ * ColumnPredicate), before any tuple is copied out of the extension.
+ */
+public class Scan extends PlanNode {
+
+	/** number of tuples filtered at once */
+	public static final int CHUNK_SIZE = 1024;
+
+	/** tuples of the view */
+	private ViewExtension extension;
+
+	/** atom of the rewriting */
+	private Predicate atom;
+
+	/** variables of the result */
+	private String[] variables;
+
+	/** column of the first occurrence of every variable of the result */
+	private int[] outputColumns;
+
+	/** columns compared to a constant */
+	private int[] constantColumns;
+
+	/** encoded constant of every column of constantColumns */
+	private long[] constants;
+
+	/** pairs of columns (equalColumns[2i], equalColumns[2i+1]) that must be equal */
+	private int[] equalColumns;
+
+	/** interpreted predicates evaluated on the columns of the view */
+	private ColumnPredicate[] filters;
+
+	/**
+	 * Scan constructor
+	 *
+	 * @param extension
+	 *            tuples of the view
+	 * @param atom
+	 *            atom of the rewriting over the view
+	 */
+	public Scan(ViewExtension extension, Predicate atom) {
+		this(extension, atom, new ArrayList<InterpretedPredicate>());
+	}
+
+	/**
+	 * Scan constructor
+	 *
+	 * @param extension
+	 *            tuples of the view
+	 * @param atom
+	 *            atom of the rewriting over the view
+	 * @param predicates
+	 *            interpreted predicates over variables of the atom
+	 */
+	public Scan(ViewExtension extension, Predicate atom,
+			List<InterpretedPredicate> predicates) {
+		this.extension = extension;
+		this.atom = atom;
+
+		List<String> vars = new ArrayList<String>();
+		List<Integer> output = new ArrayList<Integer>();
+		List<Integer> constantCols = new ArrayList<Integer>();
+		List<Long> constantValues = new ArrayList<Long>();
+		List<Integer> equal = new ArrayList<Integer>();
+
+		for (int i = 0; i < atom.numberOfElements(); i++) {
+			PredicateElement elem = atom.getElement(i);
+			if (elem instanceof Constant) {
+				constantCols.add(i);
+				constantValues.add(Values.encodeConstant(elem));
+			} else if (!elem.name.equals("_")) {
+				int first = vars.indexOf(elem.name);
+				if (first < 0) {
+					vars.add(elem.name);
+					output.add(i);
+				} else {
+					equal.add(output.get(first));
+					equal.add(i);
+				}
+			}
+		}
+
+		variables = vars.toArray(new String[vars.size()]);
+		outputColumns = toArray(output);
+		constantColumns = toArray(constantCols);
+		equalColumns = toArray(equal);
+		constants = new long[constantValues.size()];
+		for (int i = 0; i < constants.length; i++) {
+			constants[i] = constantValues.get(i);
+		}
+		filters = new ColumnPredicate[predicates.size()];
+		for (int p = 0; p < filters.length; p++) {
+			InterpretedPredicate pred = predicates.get(p);
+			int var = vars.indexOf(pred.getVariable().name);
+			if (var < 0) {
+				throw new IllegalArgumentException("Variable of " + pred
+						+ " is not bound by " + atom);
+			}
+			filters[p] = new ColumnPredicate(pred, outputColumns[var]);
+		}
+	}
+
+	public BindingTable execute() {
+		int[] rows = new int[Math.min(extension.size(), CHUNK_SIZE)];
+		BindingTable result = new BindingTable(variables, 16);
+		for (int from = 0; from < extension.size(); from += CHUNK_SIZE) {
+			int count = filter(from, Math.min(from + CHUNK_SIZE,
+					extension.size()), rows);
+			int first = result.size();
+			for (int r = 0; r < count; r++) {
+				result.addRow();
+			}
+			for (int c = 0; c < outputColumns.length; c++) {
+				Column column = extension.getColumn(outputColumns[c]);
+				for (int r = 0; r < count; r++) {
+					result.set(c, first + r, column.get(rows[r]));
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Returns a cursor reading the matching tuples chunk by chunk, so that
+	 * the scan stops with its consumer.
+	 */
+	public Cursor open() {
+		return new Cursor() {
+
+			/** matching rows of the current chunk */
+			private int[] rows = new int[Math.min(extension.size(), CHUNK_SIZE)];
+
+			/** number of matching rows of the current chunk */
+			private int count = 0;
+
+			/** position of the current row in rows */
+			private int position = -1;
+
+			/** first row of the next chunk */
+			private int next = 0;
+
+			public boolean next() {
+				while (++position >= count) {
+					if (next >= extension.size()) {
+						return false;
+					}
+					int to = Math.min(next + CHUNK_SIZE, extension.size());
+					count = filter(next, to, rows);
+					next = to;
+					position = -1;
+				}
+				return true;
+			}
+
+			public long get(int column) {
+				return extension.get(rows[position], outputColumns[column]);
+			}
+		};
+	}
+
+	/**
+	 * Finds the tuples of a chunk matching the constants, the repeated
+	 * variables and the interpreted predicates of the atom. The chunk is filtered column by column, the rows
+	 * left being kept at the beginning of rows.
+	 *
+	 * @param from
+	 *            first row of the chunk
+	 * @param to
+	 *            row following the chunk
+	 * @param rows
+	 *            filled with the matching rows
+	 * @return number of matching rows
+	 */
+	private int filter(int from, int to, int[] rows) {
+		int count = to - from;
+		for (int r = 0; r < count; r++) {
+			rows[r] = from + r;
+		}
+		for (int i = 0; i < constantColumns.length && count > 0; i++) {
+			count = filterConstant(extension.getColumn(constantColumns[i]),
+					constants[i], rows, count);
+		}
+		for (int i = 0; i < equalColumns.length && count > 0; i += 2) {
+			Column first = extension.getColumn(equalColumns[i]);
+			Column second = extension.getColumn(equalColumns[i + 1]);
+			int kept = 0;
+			for (int r = 0; r < count; r++) {
+				if (first.get(rows[r]) == second.get(rows[r])) {
+					rows[kept++] = rows[r];
+				}
+			}
+			count = kept;
+		}
+		for (int i = 0; i < filters.length && count > 0; i++) {
+			count = filters[i].filter(extension.getColumn(filters[i].getColumn()),
+					rows, count);
+		}
+		return count;
+	}
+
+	/**
+	 * Keeps the rows whose value at the column is the constant. A column of
+	 * symbols is compared on its int symbols, a mapped column
+	 * of symbols on the codes of its dictionary.
+	 *
+	 * @param column
+	 *            column compared to the constant
+	 * @param constant
+	 *            encoded constant
+	 * @param rows
+	 *            rows to filter, the kept ones are moved to the beginning
+	 * @param count
+	 *            number of rows to filter
+	 * @return number of kept rows
+	 */
+	private static int filterConstant(Column column, long constant, int[] rows,
+			int count) {
+		int kept = 0;
+		if (column instanceof SymbolColumn) {
+			if (!Values.isSymbol(constant)) {
+				return 0;
+			}
+			int[] codes = ((SymbolColumn) column).getCodes();
+			int code = Values.symbolOf(constant);
+			for (int r = 0; r < count; r++) {
+				if (codes[rows[r]] == code) {
+					rows[kept++] = rows[r];
+				}
+			}
+		} else if (column instanceof MappedSymbolColumn) {
+			MappedSymbolColumn mapped = (MappedSymbolColumn) column;
+			int code = Values.isSymbol(constant) ? mapped
+					.toLocalCode(Values.symbolOf(constant)) : -1;
+			if (code < 0) {
+				return 0;
+			}
+			for (int r = 0; r < count; r++) {
+				if (mapped.getLocalCode(rows[r]) == code) {
+					rows[kept++] = rows[r];
+				}
+			}
+		} else {
+			for (int r = 0; r < count; r++) {
+				if (column.get(rows[r]) == constant) {
+					rows[kept++] = rows[r];
+				}
+			}
+		}
+		return kept;
+	}
+
+	/**
+	 * Returns the atom of the rewriting read by the scan.
+	 *
+	 * @return view atom
+	 */
+	public Predicate getAtom() {
+		return atom;
+	}
+
+	/**
+	 * Returns the extension read by the scan.
+	 *
+	 * @return tuples of the view
+	 */
+	public ViewExtension getExtension() {
+		return extension;
+	}
+
+	/**
+	 * Returns the interpreted predicates evaluated by the scan.
+	 *
+	 * @return predicates over variables of the atom
+	 */
+	public List<InterpretedPredicate> getPredicates() {
+		List<InterpretedPredicate> predicates = new ArrayList<InterpretedPredicate>();
+		for (ColumnPredicate filter : filters) {
+			predicates.add(filter.getPredicate());
+		}
+		return predicates;
+	}
+
+	public String[] getVariables() {
+		return variables;
+	}
+
+	public void explain(StringBuilder s, int indent) {
+		indent(s, indent);
+		s.append("Scan ").append(atom);
+		if (filters.length > 0) {
+			s.append(" where ").append(Arrays.toString(filters));
+		}
+		s.append(" [").append(extension.size()).append(" tuples]\n");
+	}
+
+	/**
+	 * Copies a list of integers into an array.
+	 */
+	static int[] toArray(List<Integer> list) {
+		int[] array = new int[list.size()];
+		for (int i = 0; i < array.length; i++) {
+			array[i] = list.get(i);
+		}
+		return array;
+	}
+}
@@ -0,0 +1,208 @@
+/*
+ *   Copyright 2015 Cheikh BA <cheikh.ba.sn@gmail.com>
+ *
+ *   This file is part of WALO.
+ *
+ *   WALO is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Lesser General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   WALO is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Lesser General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Lesser General Public License,
+ *   along with WALO.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package execution;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Class SegmentFile maps view extensions stored on disk, so that the tuples
+ * are scanned in place instead of being parsed into the heap. A directory of
+ * segments holds:
+ *
+ * 1. the dictionary (DICTIONARY_FILE) shared by the segments of the
+ * directory: MAGIC, the number of symbols, then every symbol as its length
+ * in bytes followed by its UTF-8 bytes; the code of a symbol is its position
+ * in the dictionary
+ *
+ * 2. one segment V.seg per view V: MAGIC, VERSION, arity, number of tuples,
+ * the type of every column (SYMBOL_COLUMN or NUMERIC_COLUMN), then every
+ * column as fixed-width values. A symbol column is an int per value, the
+ * code of the dictionary; a numeric column is a long per value, a symbol
+ * being stored as the cell (see Values) of its code of the dictionary.
+ *
+ * Headers and columns start at multiples of 8 bytes. Numbers are big-endian.
+ * When a directory is mapped, the dictionary stays on disk (see
+ * MappedDictionary) and the codes of the dictionary are turned into symbols
+ * when read, the segments themselves are never rewritten. Files are mapped
+ * as chunks of 1 << CHUNK_SHIFT bytes, a single mapping being limited to
+ * 2 GB. Segments are written by SegmentLoader.
+ */
+public class SegmentFile {
+
+	/** first int of every file: "WALO" */
+	public static final int MAGIC = 0x57414C4F;
+
+	/** version of the segment format */
+	public static final int VERSION = 1;
+
+	/** name of the dictionary of a directory of segments */
+	public static final String DICTIONARY_FILE = "dictionary.dict";
+
+	/** extension of the segment files */
+	public static final String SEGMENT_EXTENSION = ".seg";
+
+	/** type of a column of dictionary codes */
+	public static final byte SYMBOL_COLUMN = 0;
+
+	/** type of a column of longs */
+	public static final byte NUMERIC_COLUMN = 1;
+
+	/** charset of the symbols */
+	static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/** log2 of the number of bytes of a mapped chunk */
+	static final int CHUNK_SHIFT = 30;
+
+	/** position in its chunk of a byte of a mapped file */
+	static final long CHUNK_MASK = (1L << CHUNK_SHIFT) - 1;
+
+	/**
+	 * Maps the dictionary of a directory of segments. Its symbols are decoded
+	 * on demand.
+	 *
+	 * @param file
+	 *            dictionary file
+	 * @return mapped dictionary
+	 * @throws IOException
+	 *             if the file cannot be read or is not a dictionary
+	 */
+	public static MappedDictionary mapDictionary(File file) throws IOException {
+		return MappedDictionary.map(file);
+	}
+
+	/**
+	 * Maps the segment of a view. Its columns are read in place.
+	 *
+	 * @param file
+	 *            segment file, named after the view
+	 * @param dictionary
+	 *            dictionary of the directory of the segment
+	 * @return extension of the view
+	 * @throws IOException
+	 *             if the file cannot be read or is not a segment
+	 */
+	public static ViewExtension mapSegment(File file,
+			MappedDictionary dictionary) throws IOException {
+		String fileName = file.getName();
+		String viewName = fileName.substring(0, fileName.length()
+				- SEGMENT_EXTENSION.length());
+
+		FileChannel channel = FileChannel.open(file.toPath(),
+				StandardOpenOption.READ);
+		try {
+			ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+					Math.min(channel.size(), 16));
+			if (header.remaining() < 16 || header.getInt() != MAGIC) {
+				throw new IOException(file + " is not a segment");
+			}
+			if (header.getInt() != VERSION) {
+				throw new IOException(file + " has an unknown version");
+			}
+			int arity = header.getInt();
+			int size = header.getInt();
+
+			ByteBuffer types = channel.map(FileChannel.MapMode.READ_ONLY, 16,
+					arity);
+			Column[] columns = new Column[arity];
+			long position = headerLength(arity);
+			for (int c = 0; c < arity; c++) {
+				byte type = types.get(c);
+				long length = columnLength(type, size);
+				if (position + length > channel.size()) {
+					throw new IOException(file + " is truncated");
+				}
+				ByteBuffer[] data = map(channel, position, length);
+				if (type == SYMBOL_COLUMN) {
+					columns[c] = new MappedSymbolColumn(data, size, dictionary);
+				} else {
+					columns[c] = new MappedNumericColumn(data, size, dictionary);
+				}
+				position += align(length);
+			}
+			// the mappings stay valid once the channel is closed
+			return new ViewExtension(viewName, new ColumnarRelation(columns,
+					size));
+		} finally {
+			channel.close();
+		}
+	}
+
+	/**
+	 * Maps a region of a file as read-only chunks of 1 << CHUNK_SHIFT bytes,
+	 * the last one being shorter.
+	 *
+	 * @param channel
+	 *            file to map
+	 * @param position
+	 *            start of the region
+	 * @param length
+	 *            number of bytes of the region
+	 * @return chunks of the region
+	 * @throws IOException
+	 *             if the file cannot be mapped
+	 */
+	static ByteBuffer[] map(FileChannel channel, long position, long length)
+			throws IOException {
+		ByteBuffer[] chunks = new ByteBuffer[(int) Math.max(1,
+				(length + CHUNK_MASK) >>> CHUNK_SHIFT)];
+		for (int i = 0; i < chunks.length; i++) {
+			long start = (long) i << CHUNK_SHIFT;
+			chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, position
+					+ start, Math.min(length - start, CHUNK_MASK + 1));
+		}
+		return chunks;
+	}
+
+	/**
+	 * Returns the number of bytes of the header of a segment.
+	 *
+	 * @param arity
+	 *            number of columns
+	 * @return offset of the first column
+	 */
+	static long headerLength(int arity) {
+		return align(16 + arity);
+	}
+
+	/**
+	 * Returns the number of bytes of the values of a column.
+	 *
+	 * @param type
+	 *            SYMBOL_COLUMN or NUMERIC_COLUMN
+	 * @param size
+	 *            number of values
+	 * @return length of the column
+	 */
+	static long columnLength(byte type, int size) {
+		return (type == SYMBOL_COLUMN ? 4L : 8L) * size;
+	}
+
+	/**
+	 * Rounds a length up to a multiple of 8.
+	 */
+	static long align(long length) {
+		return (length + 7) & ~7L;
+	}
+}
@@ -0,0 +1,356 @@
+/*
+ *   Copyright 2015 Cheikh BA <cheikh.ba.sn@gmail.com>
+ *
+ *   This file is part of WALO.
+ *
+ *   WALO is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Lesser General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   WALO is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Lesser General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Lesser General Public License,
+ *   along with WALO.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package execution;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Hashtable;
+import java.util.List;
+
+/**
+ * Class SegmentLoader converts the .tsv and .csv extension files of a
+ * directory (see ExtensionCatalog) into segments (see SegmentFile). Each
+ * file is read twice, so that the tuples never have to fit in memory: the
+ * first pass counts the tuples, finds the type of every column and builds
+ * the dictionary, the second pass writes the values at their position in
+ * the segment. Only the dictionary is kept in memory. A file without tuple
+ * gets no segment, its view having an empty extension.
+ *
+ * Usage: java execution.SegmentLoader SOURCE_DIR TARGET_DIR
+ */
+public class SegmentLoader {
+
+	/** bytes buffered per column before being written */
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	/** code of every symbol of the dictionary */
+	private Hashtable<String, Integer> codes = new Hashtable<String, Integer>();
+
+	/** symbol of every code of the dictionary */
+	private List<String> symbols = new ArrayList<String>();
+
+	/**
+	 * Converts the extension files of a directory into segments, written with
+	 * their dictionary to another directory.
+	 *
+	 * @param sourceDirectory
+	 *            directory of the .tsv and .csv files
+	 * @param targetDirectory
+	 *            directory of the segments, created if needed
+	 * @return number of written segments
+	 * @throws IOException
+	 *             if a file cannot be read or written
+	 */
+	public static int convert(String sourceDirectory, String targetDirectory)
+			throws IOException {
+		File[] files = new File(sourceDirectory).listFiles();
+		if (files == null) {
+			throw new IOException(sourceDirectory + " is not a directory");
+		}
+		File target = new File(targetDirectory);
+		if (!target.isDirectory() && !target.mkdirs()) {
+			throw new IOException(targetDirectory + " cannot be created");
+		}
+
+		SegmentLoader loader = new SegmentLoader();
+		int segments = 0;
+		for (File file : files) {
+			String fileName = file.getName();
+			char separator;
+			if (fileName.endsWith(".tsv")) {
+				separator = '\t';
+			} else if (fileName.endsWith(".csv")) {
+				separator = ',';
+			} else {
+				continue;
+			}
+			String viewName = fileName.substring(0, fileName.lastIndexOf('.'));
+			if (loader.writeSegment(file, separator, new File(target, viewName
+					+ SegmentFile.SEGMENT_EXTENSION))) {
+				segments++;
+			}
+		}
+		loader.writeDictionary(new File(target, SegmentFile.DICTIONARY_FILE));
+		return segments;
+	}
+
+	/**
+	 * Converts an extension file into a segment.
+	 *
+	 * @param source
+	 *            extension file
+	 * @param separator
+	 *            separator of the values
+	 * @param segment
+	 *            segment file
+	 * @return false if the file holds no tuple, in which case no segment is
+	 *         written (and a previous one is removed)
+	 * @throws IOException
+	 *             if a file cannot be read or written
+	 */
+	private boolean writeSegment(File source, char separator, File segment)
+			throws IOException {
+
+		// first pass: number of tuples, column types and dictionary
+		int arity = -1;
+		int size = 0;
+		boolean[] numeric = null;
+		BufferedReader reader = open(source);
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (isIgnored(line)) {
+					continue;
+				}
+				String[] values = ExtensionCatalog.split(line, separator);
+				if (arity < 0) {
+					arity = values.length;
+					numeric = new boolean[arity];
+				} else if (values.length != arity) {
+					throw new IOException(source.getName() + ": tuple "
+							+ (size + 1) + " has " + values.length
+							+ " values instead of " + arity);
+				}
+				for (int c = 0; c < arity; c++) {
+					String value = values[c].trim();
+					if (Values.isEncodedAsInteger(value)) {
+						numeric[c] = true;
+					} else {
+						code(value);
+					}
+				}
+				size++;
+			}
+		} finally {
+			reader.close();
+		}
+		if (arity < 0) {
+			segment.delete();
+			return false;
+		}
+
+		FileChannel channel = FileChannel.open(segment.toPath(),
+				StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING);
+		try {
+			long[] positions = writeHeader(channel, size, numeric);
+
+			// second pass: values of every column at their position
+			ByteBuffer[] buffers = new ByteBuffer[arity];
+			for (int c = 0; c < arity; c++) {
+				buffers[c] = ByteBuffer.allocate(BUFFER_SIZE);
+			}
+			reader = open(source);
+			try {
+				String line;
+				while ((line = reader.readLine()) != null) {
+					if (isIgnored(line)) {
+						continue;
+					}
+					String[] values = ExtensionCatalog.split(line, separator);
+					for (int c = 0; c < arity; c++) {
+						if (buffers[c].remaining() < 8) {
+							positions[c] = flush(channel, buffers[c],
+									positions[c]);
+						}
+						String value = values[c].trim();
+						if (!numeric[c]) {
+							buffers[c].putInt(code(value));
+						} else if (Values.isEncodedAsInteger(value)) {
+							buffers[c].putLong(Long.parseLong(value));
+						} else {
+							buffers[c].putLong(Values.symbol(code(value)));
+						}
+					}
+				}
+			} finally {
+				reader.close();
+			}
+			for (int c = 0; c < arity; c++) {
+				flush(channel, buffers[c], positions[c]);
+			}
+			pad(channel, positions[arity]);
+		} finally {
+			channel.close();
+		}
+		return true;
+	}
+
+	/**
+	 * Writes the header of a segment.
+	 *
+	 * @param channel
+	 *            segment file
+	 * @param size
+	 *            number of tuples
+	 * @param numeric
+	 *            true for every column of longs, false for a column of codes
+	 * @return position of every column, followed by the end of the segment
+	 * @throws IOException
+	 *             if the file cannot be written
+	 */
+	static long[] writeHeader(FileChannel channel, int size, boolean[] numeric)
+			throws IOException {
+		int arity = numeric.length;
+		long[] positions = new long[arity + 1];
+		positions[0] = SegmentFile.headerLength(arity);
+		for (int c = 0; c < arity; c++) {
+			positions[c + 1] = positions[c]
+					+ SegmentFile.align(SegmentFile.columnLength(
+							type(numeric[c]), size));
+		}
+
+		ByteBuffer header = ByteBuffer.allocate((int) SegmentFile
+				.headerLength(arity));
+		header.putInt(SegmentFile.MAGIC).putInt(SegmentFile.VERSION)
+				.putInt(arity).putInt(size);
+		for (int c = 0; c < arity; c++) {
+			header.put(type(numeric[c]));
+		}
+		header.clear();
+		write(channel, header, 0);
+		return positions;
+	}
+
+	/**
+	 * Pads a segment with zeros up to its end, the last column being padded
+	 * as well.
+	 *
+	 * @param channel
+	 *            segment file
+	 * @param end
+	 *            length of the segment
+	 * @throws IOException
+	 *             if the file cannot be written
+	 */
+	static void pad(FileChannel channel, long end) throws IOException {
+		if (channel.size() < end) {
+			write(channel, ByteBuffer.allocate((int) (end - channel.size())),
+					channel.size());
+		}
+	}
+
+	/**
+	 * Writes the dictionary of the converted files.
+	 *
+	 * @param file
+	 *            dictionary file
+	 * @throws IOException
+	 *             if the file cannot be written
+	 */
+	private void writeDictionary(File file) throws IOException {
+		FileChannel channel = FileChannel.open(file.toPath(),
+				StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING);
+		try {
+			ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+			buffer.putInt(SegmentFile.MAGIC).putInt(symbols.size());
+			long position = 0;
+			for (String symbol : symbols) {
+				byte[] bytes = symbol.getBytes(SegmentFile.UTF8);
+				if (buffer.remaining() < 4 + bytes.length) {
+					position = flush(channel, buffer, position);
+					if (buffer.capacity() < 4 + bytes.length) {
+						buffer = ByteBuffer.allocate(4 + bytes.length);
+					}
+				}
+				buffer.putInt(bytes.length).put(bytes);
+			}
+			flush(channel, buffer, position);
+		} finally {
+			channel.close();
+		}
+	}
+
+	/**
+	 * Returns the code of a symbol in the dictionary, adding it if needed.
+	 */
+	private int code(String symbol) {
+		Integer code = codes.get(symbol);
+		if (code == null) {
+			code = symbols.size();
+			codes.put(symbol, code);
+			symbols.add(symbol);
+		}
+		return code;
+	}
+
+	/**
+	 * Writes the content of a buffer at a position and empties the buffer.
+	 *
+	 * @return position following the written bytes
+	 */
+	static long flush(FileChannel channel, ByteBuffer buffer,
+			long position) throws IOException {
+		buffer.flip();
+		long next = position + buffer.remaining();
+		write(channel, buffer, position);
+		buffer.clear();
+		return next;
+	}
+
+	/**
+	 * Writes all the remaining bytes of a buffer at a position.
+	 */
+	static void write(FileChannel channel, ByteBuffer buffer,
+			long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			position += channel.write(buffer, position);
+		}
+	}
+
+	/**
+	 * Returns the type of a column.
+	 */
+	static byte type(boolean numeric) {
+		return numeric ? SegmentFile.NUMERIC_COLUMN : SegmentFile.SYMBOL_COLUMN;
+	}
+
+	/**
+	 * Tests whether a line holds no tuple (see ExtensionCatalog).
+	 */
+	private static boolean isIgnored(String line) {
+		return line.trim().length() == 0 || line.startsWith("#");
+	}
+
+	/**
+	 * Opens an extension file.
+	 */
+	private static BufferedReader open(File file) throws IOException {
+		return new BufferedReader(new InputStreamReader(new FileInputStream(
+				file), "UTF-8"));
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length != 2) {
+			System.out.println("USAGE: java execution.SegmentLoader sourceDir targetDir");
+			System.exit(1);
+		}
+		int segments = convert(args[0], args[1]);
+		System.out.println(segments + " segment(s) written to " + args[1]);
+	}
+}
@@ -0,0 +1,199 @@
+/*
+ *   Copyright 2015 Cheikh BA <cheikh.ba.sn@gmail.com>
+ *
+ *   This file is part of WALO.
+ *
+ *   WALO is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Lesser General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   WALO is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Lesser General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Lesser General Public License,
+ *   along with WALO.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package execution;
+
+import java.util.Collections;
+import java.util.List;
+
+import datalog.InterpretedPredicate;
+import datalog.Variable;
+
+/**
+ * Class Selection keeps the bindings of its child satisfying interpreted
+ * predicates of the form "variable comparator constant" or "constant
+ * comparator variable" (see Values.compare).
+ */
+public class Selection extends PlanNode {
+
+	/** operator whose result is filtered */
+	private PlanNode child;
+
+	/** interpreted predicates to satisfy */
+	private List<InterpretedPredicate> predicates;
+
+	/** column of the variable of every predicate */
+	private int[] columns;
+
+	/** comparator of every predicate, with the variable on the left */
+	private String[] comparators;
+
+	/** encoded constant of every predicate */
+	private long[] constants;
+
+	/**
+	 * Selection constructor
+	 *
+	 * @param child
+	 *            operator whose result is filtered
+	 * @param predicates
+	 *            interpreted predicates over variables bound by the child
+	 */
+	public Selection(PlanNode child, List<InterpretedPredicate> predicates) {
+		this.child = child;
+		this.predicates = predicates;
+
+		String[] vars = child.getVariables();
+		columns = new int[predicates.size()];
+		comparators = new String[predicates.size()];
+		constants = new long[predicates.size()];
+
+		for (int p = 0; p < predicates.size(); p++) {
+			InterpretedPredicate pred = predicates.get(p);
+			Variable var = pred.getVariable();
+			columns[p] = indexOf(vars, var.name);
+			if (columns[p] < 0) {
+				throw new IllegalArgumentException("Variable " + var
+						+ " of " + pred + " is not bound");
+			}
+			if (pred.getLeft() == var) {
+				comparators[p] = pred.getComparator();
+				constants[p] = Values.encodeConstant(pred.getRight());
+			} else {
+				// constant on the left: "c < x" is "x > c"
+				comparators[p] = flip(pred.getComparator());
+				constants[p] = Values.encodeConstant(pred.getLeft());
+			}
+		}
+	}
+
+	public BindingTable execute() {
+		BindingTable input = child.execute();
+		BindingTable result = new BindingTable(input.getVariables(),
+				input.size());
+		for (int row = 0; row < input.size(); row++) {
+			if (satisfies(input, row)) {
+				int out = result.addRow();
+				for (int c = 0; c < input.arity(); c++) {
+					result.set(c, out, input.get(c, row));
+				}
+			}
+		}
+		return result;
+	}
+
+	public Cursor open() {
+		final Cursor input = child.open();
+		return new Cursor() {
+
+			public boolean next() {
+				while (input.next()) {
+					if (satisfies(input)) {
+						return true;
+					}
+				}
+				return false;
+			}
+
+			public long get(int column) {
+				return input.get(column);
+			}
+
+			public void close() {
+				input.close();
+			}
+		};
+	}
+
+	/**
+	 * Tests whether the current row of a cursor satisfies all the predicates.
+	 */
+	private boolean satisfies(Cursor input) {
+		for (int p = 0; p < columns.length; p++) {
+			if (!Values.compare(input.get(columns[p]), comparators[p],
+					constants[p])) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Tests whether a row satisfies all the predicates.
+	 */
+	private boolean satisfies(BindingTable input, int row) {
+		for (int p = 0; p < columns.length; p++) {
+			if (!Values.compare(input.get(columns[p], row), comparators[p],
+					constants[p])) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the interpreted predicates of the selection.
+	 *
+	 * @return predicates over variables bound by the child
+	 */
+	public List<InterpretedPredicate> getPredicates() {
+		return predicates;
+	}
+
+	public List<PlanNode> getChildren() {
+		return Collections.singletonList(child);
+	}
+
+	public String[] getVariables() {
+		return child.getVariables();
+	}
+
+	public void explain(StringBuilder s, int indent) {
+		indent(s, indent);
+		s.append("Selection ").append(predicates).append('\n');
+		child.explain(s, indent + 1);
+	}
+
+	/**
+	 * Returns the position of a variable, -1 if it is absent.
+	 */
+	static int indexOf(String[] variables, String variable) {
+		for (int i = 0; i < variables.length; i++) {
+			if (variables[i].equals(variable)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the comparator obtained by exchanging both sides.
+	 */
+	static String flip(String comparator) {
+		if (comparator.equals("<"))
+			return ">";
+		if (comparator.equals(">"))
+			return "<";
+		if (comparator.equals("<="))
+			return ">=";
+		if (comparator.equals(">="))
+			return "<=";
+		return comparator;
+	}
+}
@@ -0,0 +1,636 @@
+/*
+ *   Copyright 2015 Cheikh BA <cheikh.ba.sn@gmail.com>
+ *
+ *   This file is part of WALO.
+ *
+ *   WALO is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Lesser General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   WALO is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Lesser General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Lesser General Public License,
+ *   along with WALO.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package execution;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Hashtable;
+import java.util.List;
+
+import minicon.InputHandlerPref;
+import datalog.Constant;
+import datalog.DatalogProgram;
+import datalog.DatalogQuery;
+import datalog.InterpretedPredicate;
+import datalog.Predicate;
+import datalog.PredicateElement;
+
+/**
+ * Class SemiNaiveEvaluator computes the intensional relations of a Datalog
+ * program, possibly recursive, bottom-up: the rules are applied until no new
+ * tuple is derived (fixpoint). The extensional predicates are read from an
+ * ExtensionCatalog; an intensional predicate with an extension starts with
+ * its tuples.
+ *
+ * Evaluation is semi-naive: a round only joins the tuples derived by the
+ * previous round (the delta of every intensional relation) instead of
+ * re-evaluating the rules over whole relations. A rule with k intensional
+ * atoms is evaluated k times per round, its i-th intensional atom reading
+ * the delta, the atoms before it the tuples known before the previous round
+ * and the atoms after it all the tuples known, so that a derivation is only
+ * found once. Rules without intensional atom are evaluated in the first
+ * round only.
+ *
+ * Relations only grow, so the delta and the older tuples are ranges of rows
+ * of the same relation (see IndexedRelation). Atoms are joined by nested
+ * lookups in hash indexes on their bound columns; the indexes are created
+ * once and extended with the new tuples of every round. The delta atom is
+ * joined first, being the smallest relation of its rule.
+ */
+public class SemiNaiveEvaluator {
+
+	/** the range of an atom is all the tuples known */
+	private static final int FULL = 0;
+
+	/** the range of an atom is the tuples known before the previous round */
+	private static final int OLD = 1;
+
+	/** the range of an atom is the tuples derived by the previous round */
+	private static final int DELTA = 2;
+
+	/** program to evaluate */
+	private DatalogProgram program;
+
+	/** extensions of the extensional predicates */
+	private ExtensionCatalog catalog;
+
+	/** relation of every predicate used by the program */
+	private Hashtable<String, IndexedRelation> relations;
+
+	/** state of every intensional predicate */
+	private Hashtable<String, Derived> derived;
+
+	/** number of rounds of the last evaluation */
+	private int rounds;
+
+	/**
+	 * SemiNaiveEvaluator constructor
+	 *
+	 * @param program
+	 *            rules to evaluate
+	 * @param catalog
+	 *            extensions of the extensional predicates
+	 */
+	public SemiNaiveEvaluator(DatalogProgram program, ExtensionCatalog catalog) {
+		this.program = program;
+		this.catalog = catalog;
+	}
+
+	/**
+	 * Computes the intensional relations of the program.
+	 *
+	 * @return extension of every intensional predicate
+	 * @throws IllegalArgumentException
+	 *             if a rule is not safe, or if a predicate is used with
+	 *             several arities
+	 */
+	public ExtensionCatalog evaluate() {
+		relations = new Hashtable<String, IndexedRelation>();
+		derived = new Hashtable<String, Derived>();
+		for (String name : program.getIntensionalPredicates()) {
+			int arity = program.arity(name);
+			ViewExtension tuples = new ViewExtension(name, arity);
+			if (catalog.hasExtension(name)) {
+				ViewExtension facts = catalog.getExtension(name, arity);
+				long[] tuple = new long[arity];
+				for (int row = 0; row < facts.size(); row++) {
+					for (int c = 0; c < arity; c++) {
+						tuple[c] = facts.get(row, c);
+					}
+					tuples.add(tuple.clone());
+				}
+			}
+			Derived state = new Derived(name, new IndexedRelation(tuples));
+			state.deltaEnd = state.relation.size();
+			derived.put(name, state);
+			relations.put(name, state.relation);
+		}
+
+		List<Step[]> exitRules = new ArrayList<Step[]>();
+		List<Step[]> recursiveRules = new ArrayList<Step[]>();
+		List<Derived> targets = new ArrayList<Derived>();
+		List<Derived> exitTargets = new ArrayList<Derived>();
+		for (DatalogQuery rule : program.getRules()) {
+			compile(rule, exitRules, exitTargets, recursiveRules, targets);
+		}
+
+		rounds = 0;
+		boolean changed = true;
+		while (changed) {
+			if (rounds == 0) {
+				for (int r = 0; r < exitRules.size(); r++) {
+					evaluate(exitRules.get(r), exitTargets.get(r));
+				}
+			}
+			for (int r = 0; r < recursiveRules.size(); r++) {
+				evaluate(recursiveRules.get(r), targets.get(r));
+			}
+			rounds++;
+
+			changed = false;
+			for (Derived state : derived.values()) {
+				changed |= state.merge();
+			}
+		}
+
+		ExtensionCatalog result = new ExtensionCatalog();
+		for (Derived state : derived.values()) {
+			result.addExtension(state.relation.getTuples());
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the number of rounds of the last evaluation, the last one
+	 * deriving no new tuple.
+	 *
+	 * @return number of rounds
+	 */
+	public int getRounds() {
+		return rounds;
+	}
+
+	/**
+	 * Compiles the join plans of a rule: a single plan if its body has no
+	 * intensional atom, else one plan per intensional atom, reading the
+	 * delta of this atom.
+	 */
+	private void compile(DatalogQuery rule, List<Step[]> exitRules,
+			List<Derived> exitTargets, List<Step[]> recursiveRules,
+			List<Derived> targets) {
+		List<Predicate> atoms = rule.getPredicates();
+		if (atoms.isEmpty()) {
+			throw new IllegalArgumentException("Rule " + rule
+					+ " has no atom in its body");
+		}
+		Derived target = derived.get(rule.getName());
+		List<Integer> intensional = new ArrayList<Integer>();
+		for (int i = 0; i < atoms.size(); i++) {
+			if (program.isIntensional(atoms.get(i).name)) {
+				intensional.add(i);
+			}
+		}
+
+		if (intensional.isEmpty()) {
+			int[] ranges = new int[atoms.size()];
+			exitRules.add(plan(rule, -1, ranges));
+			exitTargets.add(target);
+			return;
+		}
+		for (int delta : intensional) {
+			int[] ranges = new int[atoms.size()];
+			for (int i : intensional) {
+				ranges[i] = i < delta ? OLD : (i == delta ? DELTA : FULL);
+			}
+			recursiveRules.add(plan(rule, delta, ranges));
+			targets.add(target);
+		}
+	}
+
+	/**
+	 * Returns the steps joining the atoms of a rule, the delta atom first,
+	 * followed by a last step producing the head.
+	 *
+	 * @param rule
+	 *            rule to evaluate
+	 * @param delta
+	 *            position of the delta atom, -1 if there is none
+	 * @param ranges
+	 *            range of every atom: FULL, OLD or DELTA
+	 * @return steps of the join
+	 */
+	private Step[] plan(DatalogQuery rule, int delta, int[] ranges) {
+		List<Predicate> atoms = rule.getPredicates();
+		List<Integer> order = new ArrayList<Integer>();
+		if (delta >= 0) {
+			order.add(delta);
+		}
+		for (int i = 0; i < atoms.size(); i++) {
+			if (i != delta) {
+				order.add(i);
+			}
+		}
+
+		List<String> variables = new ArrayList<String>();
+		List<InterpretedPredicate> pending = new ArrayList<InterpretedPredicate>(
+				rule.getInterpretedPredicates());
+		Step[] steps = new Step[atoms.size() + 1];
+		for (int s = 0; s < order.size(); s++) {
+			Predicate atom = atoms.get(order.get(s));
+			steps[s] = new Step(relation(atom), derived.get(atom.name),
+					ranges[order.get(s)], atom, variables, pending);
+		}
+		if (!pending.isEmpty()) {
+			throw new IllegalArgumentException("Variable of " + pending.get(0)
+					+ " is not bound by the body of " + rule);
+		}
+
+		int[] head = new int[rule.getHeadVariables().size()];
+		for (int i = 0; i < head.length; i++) {
+			head[i] = variables.indexOf(rule.getHeadVariables().get(i).name);
+			if (head[i] < 0) {
+				throw new IllegalArgumentException("Head variable "
+						+ rule.getHeadVariables().get(i) + " is not bound by the body of "
+						+ rule);
+			}
+		}
+		steps[atoms.size()] = new Step(head, variables.size());
+		return steps;
+	}
+
+	/**
+	 * Returns the relation of a predicate of a body.
+	 */
+	private IndexedRelation relation(Predicate atom) {
+		IndexedRelation relation = relations.get(atom.name);
+		if (relation == null) {
+			relation = new IndexedRelation(catalog.getExtension(atom.name,
+					atom.numberOfElements()));
+			relations.put(atom.name, relation);
+		} else if (relation.getTuples().arity() != atom.numberOfElements()) {
+			throw new IllegalArgumentException("Predicate " + atom.name
+					+ " is used with " + atom.numberOfElements()
+					+ " argument(s) instead of " + relation.getTuples().arity());
+		}
+		return relation;
+	}
+
+	/**
+	 * Evaluates the plan of a rule, adding the derived tuples to the new
+	 * tuples of its head.
+	 */
+	private void evaluate(Step[] steps, Derived target) {
+		if (steps[0].isEmpty()) {
+			return;
+		}
+		join(steps, 0, new long[steps[steps.length - 1].numberOfVariables],
+				target);
+	}
+
+	/**
+	 * Joins the atoms of the steps from the given one, extending the bindings
+	 * of the previous steps.
+	 */
+	private void join(Step[] steps, int s, long[] binding, Derived target) {
+		Step step = steps[s];
+		if (step.head != null) {
+			long[] tuple = new long[step.head.length];
+			for (int c = 0; c < tuple.length; c++) {
+				tuple[c] = binding[step.head[c]];
+			}
+			target.derive(tuple);
+			return;
+		}
+
+		int from = step.from();
+		int to = step.to();
+		if (step.keyColumns.length == 0) {
+			for (int row = from; row < to; row++) {
+				if (step.bind(row, binding)) {
+					join(steps, s + 1, binding, target);
+				}
+			}
+			return;
+		}
+
+		long[] key = step.key;
+		for (int k = 0; k < key.length; k++) {
+			key[k] = step.keyVariables[k] < 0 ? step.keyConstants[k]
+					: binding[step.keyVariables[k]];
+		}
+		IndexedRelation.Index index = step.relation.index(step.keyColumns);
+		for (int row = index.next(index.first(key, to), key, from); row >= 0; row = index
+				.next(index.previous(row), key, from)) {
+			if (step.bind(row, binding)) {
+				join(steps, s + 1, binding, target);
+			}
+		}
+	}
+
+	/**
+	 * Runs a Datalog program over the extensions of a directory and prints
+	 * its intensional relations. The program file holds one rule per line,
+	 * in the syntax of the queries of testcases.xml; empty lines and lines
+	 * starting with % are ignored.
+	 *
+	 * Usage: java execution.SemiNaiveEvaluator PROGRAM_FILE EXTENSION_DIR
+	 * [PREDICATE]
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2 || args.length > 3) {
+			System.out.println("USAGE: java execution.SemiNaiveEvaluator programFile extensionDir [predicate]");
+			System.exit(1);
+		}
+		DatalogProgram program = new DatalogProgram();
+		BufferedReader reader = new BufferedReader(new FileReader(args[0]));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				line = line.trim();
+				if (line.length() == 0 || line.startsWith("%")) {
+					continue;
+				}
+				DatalogQuery rule = InputHandlerPref.parse(line);
+				if (rule == null) {
+					System.out.println("Rule cannot be parsed: " + line);
+					System.exit(1);
+				}
+				program.addRule(rule);
+			}
+		} finally {
+			reader.close();
+		}
+
+		long start = System.currentTimeMillis();
+		SemiNaiveEvaluator evaluator = new SemiNaiveEvaluator(program,
+				ExtensionCatalog.load(args[1]));
+		ExtensionCatalog result = evaluator.evaluate();
+		long time = System.currentTimeMillis() - start;
+
+		for (String name : program.getIntensionalPredicates()) {
+			if (args.length == 3 && !args[2].equals(name)) {
+				continue;
+			}
+			ViewExtension tuples = result.getExtension(name,
+					program.arity(name));
+			System.out.println("\n" + name + " (" + tuples.size() + "):");
+			StringBuilder s = new StringBuilder();
+			for (int row = 0; row < tuples.size(); row++) {
+				s.append('(');
+				for (int c = 0; c < tuples.arity(); c++) {
+					if (c > 0) {
+						s.append(',');
+					}
+					s.append(Values.toString(tuples.get(row, c)));
+				}
+				s.append(")\n");
+			}
+			System.out.print(s);
+		}
+		System.out.println("\n" + evaluator.getRounds() + " round(s) in "
+				+ time + " ms");
+	}
+
+	/**
+	 * Relation of an intensional predicate with its delta, and the tuples
+	 * derived by the current round.
+	 */
+	private static class Derived {
+
+		/** tuples derived so far */
+		final IndexedRelation relation;
+
+		/** first row of the delta */
+		int deltaStart = 0;
+
+		/** row following the delta */
+		int deltaEnd = 0;
+
+		/** new tuples of the current round */
+		IndexedRelation next;
+
+		Derived(String name, IndexedRelation relation) {
+			this.relation = relation;
+			this.next = new IndexedRelation(new ViewExtension(name, relation
+					.getTuples().arity()));
+		}
+
+		/**
+		 * Adds a derived tuple to the new tuples, unless it is known.
+		 */
+		void derive(long[] tuple) {
+			if (!relation.contains(tuple) && !next.contains(tuple)) {
+				next.add(tuple);
+			}
+		}
+
+		/**
+		 * Appends the new tuples to the relation, where they become the
+		 * delta.
+		 *
+		 * @return true if there was a new tuple
+		 */
+		boolean merge() {
+			ViewExtension tuples = next.getTuples();
+			deltaStart = relation.size();
+			long[] tuple = new long[tuples.arity()];
+			for (int row = 0; row < tuples.size(); row++) {
+				for (int c = 0; c < tuple.length; c++) {
+					tuple[c] = tuples.get(row, c);
+				}
+				relation.add(tuple);
+			}
+			deltaEnd = relation.size();
+			if (tuples.size() > 0) {
+				next = new IndexedRelation(new ViewExtension(tuples.getName(),
+						tuples.arity()));
+				return true;
+			}
+			return false;
+		}
+	}
+
+	/**
+	 * Step of the join of a rule: lookup of the tuples of an atom matching
+	 * the values bound by the previous steps, or production of the head.
+	 */
+	private static class Step {
+
+		/** relation of the atom */
+		IndexedRelation relation;
+
+		/** state of the predicate of the atom, null if it is extensional */
+		Derived derived;
+
+		/** range of the atom: FULL, OLD or DELTA */
+		int range;
+
+		/** columns whose value is known before the lookup */
+		int[] keyColumns;
+
+		/** variable of every key column, -1 for a constant */
+		int[] keyVariables;
+
+		/** constant of every key column without variable */
+		long[] keyConstants;
+
+		/** values of the key columns of the current lookup */
+		long[] key;
+
+		/** columns binding a new variable */
+		int[] bindColumns;
+
+		/** variable bound by every column of bindColumns */
+		int[] bindVariables;
+
+		/** columns of a variable already bound by the same atom */
+		int[] equalColumns;
+
+		/** variable of every column of equalColumns */
+		int[] equalVariables;
+
+		/** interpreted predicates checked after the step, on variables */
+		ColumnPredicate[] filters;
+
+		/** variables of the head, only for the last step */
+		int[] head;
+
+		/** number of variables of the rule, only for the last step */
+		int numberOfVariables;
+
+		/**
+		 * Step constructor of an atom
+		 *
+		 * @param variables
+		 *            variables bound by the previous steps, extended with the
+		 *            variables of the atom
+		 * @param pending
+		 *            interpreted predicates not placed yet, those bound by
+		 *            the step are removed
+		 */
+		Step(IndexedRelation relation, Derived derived, int range,
+				Predicate atom, List<String> variables,
+				List<InterpretedPredicate> pending) {
+			this.relation = relation;
+			this.derived = derived;
+			this.range = derived == null ? FULL : range;
+
+			List<Integer> keyCols = new ArrayList<Integer>();
+			List<Integer> keyVars = new ArrayList<Integer>();
+			List<Long> keyConsts = new ArrayList<Long>();
+			List<Integer> bindCols = new ArrayList<Integer>();
+			List<Integer> bindVars = new ArrayList<Integer>();
+			List<Integer> equalCols = new ArrayList<Integer>();
+			List<Integer> equalVars = new ArrayList<Integer>();
+			int bound = variables.size();
+
+			for (int i = 0; i < atom.numberOfElements(); i++) {
+				PredicateElement elem = atom.getElement(i);
+				if (elem instanceof Constant) {
+					keyCols.add(i);
+					keyVars.add(-1);
+					keyConsts.add(Values.encodeConstant(elem));
+					continue;
+				}
+				if (elem.name.equals("_")) {
+					continue;
+				}
+				int var = variables.indexOf(elem.name);
+				if (var >= 0 && var < bound) {
+					keyCols.add(i);
+					keyVars.add(var);
+					keyConsts.add(0L);
+				} else if (var >= 0) {
+					equalCols.add(i);
+					equalVars.add(var);
+				} else {
+					variables.add(elem.name);
+					bindCols.add(i);
+					bindVars.add(variables.size() - 1);
+				}
+			}
+
+			keyColumns = Scan.toArray(keyCols);
+			keyVariables = Scan.toArray(keyVars);
+			keyConstants = new long[keyConsts.size()];
+			for (int k = 0; k < keyConstants.length; k++) {
+				keyConstants[k] = keyConsts.get(k);
+			}
+			key = new long[keyColumns.length];
+			bindColumns = Scan.toArray(bindCols);
+			bindVariables = Scan.toArray(bindVars);
+			equalColumns = Scan.toArray(equalCols);
+			equalVariables = Scan.toArray(equalVars);
+
+			List<ColumnPredicate> placed = new ArrayList<ColumnPredicate>();
+			for (InterpretedPredicate pred : new ArrayList<InterpretedPredicate>(
+					pending)) {
+				int var = variables.indexOf(pred.getVariable().name);
+				if (var >= bound) {
+					placed.add(new ColumnPredicate(pred, var));
+					pending.remove(pred);
+				}
+			}
+			filters = placed.toArray(new ColumnPredicate[placed.size()]);
+		}
+
+		/**
+		 * Step constructor of the head
+		 *
+		 * @param head
+		 *            variable of every column of the head
+		 * @param numberOfVariables
+		 *            number of variables of the rule
+		 */
+		Step(int[] head, int numberOfVariables) {
+			this.head = head;
+			this.numberOfVariables = numberOfVariables;
+		}
+
+		/**
+		 * Tests whether the range of the atom is empty.
+		 */
+		boolean isEmpty() {
+			return from() >= to();
+		}
+
+		/**
+		 * First row of the range of the atom.
+		 */
+		int from() {
+			return range == DELTA ? derived.deltaStart : 0;
+		}
+
+		/**
+		 * Row following the range of the atom.
+		 */
+		int to() {
+			if (range == FULL) {
+				return derived == null ? relation.size() : derived.deltaEnd;
+			}
+			return range == OLD ? derived.deltaStart : derived.deltaEnd;
+		}
+
+		/**
+		 * Binds the new variables of the atom to the values of a row, and
+		 * checks its repeated variables and the interpreted predicates.
+		 *
+		 * @return false if the row does not match
+		 */
+		boolean bind(int row, long[] binding) {
+			for (int b = 0; b < bindColumns.length; b++) {
+				binding[bindVariables[b]] = relation.get(row, bindColumns[b]);
+			}
+			for (int e = 0; e < equalColumns.length; e++) {
+				if (relation.get(row, equalColumns[e]) != binding[equalVariables[e]]) {
+					return false;
+				}
+			}
+			for (ColumnPredicate filter : filters) {
+				if (!filter.test(binding[filter.getColumn()])) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+}
@@ -0,0 +1,104 @@
+/*
+ *   Copyright 2015 Cheikh BA <cheikh.ba.sn@gmail.com>
+ *
+ *   This file is part of WALO.
+ *
+ *   WALO is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Lesser General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   WALO is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Lesser General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Lesser General Public License,
+ *   along with WALO.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package execution;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Class SharedNode is an operator used by several plans of a union (see
+ * PlanCompiler.compileUnion). Its child is executed once, and its result is
+ * returned to every consumer; the result is released after the last
+ * consumer has read it.
+ */
+public class SharedNode extends PlanNode {
+
+	/** shared operator */
+	private PlanNode child;
+
+	/** number of the node in its union, for explain */
+	private int id;
+
+	/** number of operators consuming the result */
+	private int consumers;
+
+	/** consumers that have not read the current result yet */
+	private int remaining;
+
+	/** result of the child, null when not computed */
+	private BindingTable result;
+
+	/**
+	 * SharedNode constructor
+	 *
+	 * @param child
+	 *            shared operator
+	 * @param id
+	 *            number of the node in its union
+	 */
+	public SharedNode(PlanNode child, int id) {
+		this.child = child;
+		this.id = id;
+	}
+
+	/**
+	 * Registers an operator consuming the result.
+	 */
+	public void addConsumer() {
+		consumers++;
+		remaining++;
+	}
+
+	/**
+	 * Returns the number of operators consuming the result.
+	 *
+	 * @return number of consumers
+	 */
+	public int numberOfConsumers() {
+		return consumers;
+	}
+
+	public synchronized BindingTable execute() {
+		if (result == null) {
+			result = child.execute();
+		}
+		BindingTable shared = result;
+		if (--remaining <= 0) {
+			// every consumer has read the result: ready for a new execution
+			result = null;
+			remaining = consumers;
+		}
+		return shared;
+	}
+
+	public List<PlanNode> getChildren() {
+		return Collections.singletonList(child);
+	}
+
+	public String[] getVariables() {
+		return child.getVariables();
+	}
+
+	public void explain(StringBuilder s, int indent) {
+		indent(s, indent);
+		s.append("Shared #").append(id).append('\n');
+		child.explain(s, indent + 1);
+	}
+}
@@ -0,0 +1,246 @@
+/*
+ *   Copyright 2015 Cheikh BA <cheikh.ba.sn@gmail.com>
+ *
+ *   This file is part of WALO.
+ *
+ *   WALO is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Lesser General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   WALO is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Lesser General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Lesser General Public License,
+ *   along with WALO.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package execution;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Class SpillFile is a temporary file of rows of encoded values (see Values),
+ * written by an operator whose state exceeds its memory budget and read back
+ * once. The rows are written one after the other, each value as 8 bytes; the
+ * file is deleted when it has been read, when its cursor is closed (see
+ * Cursor.close), or else by a shutdown hook when the JVM exits.
+ *
+ * The files are created in the directory of the java.io.tmpdir property. An
+ * error writing or reading a file is thrown as an UncheckedIOException, since
+ * it occurs while rows are pulled through a plan.
+ */
+public class SpillFile {
+
+	/** maximum size of the buffer of a file */
+	public static final int MAX_BUFFER_SIZE = 1 << 16;
+
+	/** minimum size of the buffer of a file */
+	public static final int MIN_BUFFER_SIZE = 1 << 9;
+
+	/** files not deleted yet */
+	private static final Set<File> live = Collections
+			.synchronizedSet(new HashSet<File>());
+
+	static {
+		Runtime.getRuntime().addShutdownHook(new Thread("spill-cleaner") {
+			public void run() {
+				for (File file : live.toArray(new File[0])) {
+					file.delete();
+				}
+			}
+		});
+	}
+
+	/** number of values of every row */
+	private final int arity;
+
+	/** temporary file */
+	private final File file;
+
+	/** size of the buffer of the stream writing or reading the file */
+	private final int bufferSize;
+
+	/** stream writing the rows, null once the file is closed */
+	private DataOutputStream out;
+
+	/** number of rows */
+	private long size = 0;
+
+	/**
+	 * SpillFile constructor
+	 *
+	 * @param arity
+	 *            number of values of every row
+	 */
+	public SpillFile(int arity) {
+		this(arity, MAX_BUFFER_SIZE);
+	}
+
+	/**
+	 * SpillFile constructor
+	 *
+	 * @param arity
+	 *            number of values of every row
+	 * @param bufferSize
+	 *            size in bytes of the buffer of the file, bounded by
+	 *            MIN_BUFFER_SIZE and MAX_BUFFER_SIZE
+	 */
+	public SpillFile(int arity, long bufferSize) {
+		this.arity = arity;
+		this.bufferSize = (int) Math.max(MIN_BUFFER_SIZE, Math.min(
+				bufferSize, MAX_BUFFER_SIZE));
+		try {
+			file = File.createTempFile("walo", ".spill");
+			live.add(file);
+			out = new DataOutputStream(new BufferedOutputStream(
+					new FileOutputStream(file), this.bufferSize));
+		} catch (IOException e) {
+			throw new UncheckedIOException("Cannot create spill file", e);
+		}
+	}
+
+	/**
+	 * Returns the number of rows written.
+	 *
+	 * @return number of rows
+	 */
+	public long size() {
+		return size;
+	}
+
+	/**
+	 * Appends a row to the file.
+	 *
+	 * @param row
+	 *            encoded value of every column
+	 */
+	public void write(long[] row) {
+		try {
+			for (int c = 0; c < arity; c++) {
+				out.writeLong(row[c]);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException("Cannot write " + file, e);
+		}
+		size++;
+	}
+
+	/**
+	 * Appends the current row of a cursor to the file.
+	 *
+	 * @param cursor
+	 *            cursor with at least arity columns
+	 */
+	public void write(Cursor cursor) {
+		try {
+			for (int c = 0; c < arity; c++) {
+				out.writeLong(cursor.get(c));
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException("Cannot write " + file, e);
+		}
+		size++;
+	}
+
+	/**
+	 * Closes the file for writing, releasing its file descriptor until it is
+	 * read.
+	 */
+	public void close() {
+		try {
+			if (out != null) {
+				out.close();
+				out = null;
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException("Cannot write " + file, e);
+		}
+	}
+
+	/**
+	 * Closes the file for writing and returns a cursor reading its rows in
+	 * the order they were written. The file is deleted when the last row has
+	 * been read, or when the cursor is closed.
+	 *
+	 * @return cursor over the rows
+	 */
+	public Cursor read() {
+		close();
+		final DataInputStream in;
+		try {
+			in = new DataInputStream(new BufferedInputStream(
+					new FileInputStream(file), bufferSize));
+		} catch (IOException e) {
+			throw new UncheckedIOException("Cannot read " + file, e);
+		}
+
+		return new Cursor() {
+
+			/** rows not read yet */
+			private long remaining = size;
+
+			/** current row */
+			private final long[] values = new long[arity];
+
+			public boolean next() {
+				if (remaining == 0) {
+					close();
+					return false;
+				}
+				try {
+					for (int c = 0; c < arity; c++) {
+						values[c] = in.readLong();
+					}
+				} catch (IOException e) {
+					throw new UncheckedIOException("Cannot read " + file, e);
+				}
+				remaining--;
+				return true;
+			}
+
+			public long get(int column) {
+				return values[column];
+			}
+
+			public void close() {
+				remaining = 0;
+				try {
+					in.close();
+				} catch (IOException e) {
+					// the file is deleted anyway
+				}
+				delete();
+			}
+		};
+	}
+
+	/**
+	 * Deletes the file, read or not.
+	 */
+	public void delete() {
+		try {
+			if (out != null) {
+				out.close();
+				out = null;
+			}
+		} catch (IOException e) {
+			// the file is deleted anyway
+		}
+		file.delete();
+		live.remove(file);
+	}
+}
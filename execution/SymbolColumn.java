@@ -0,0 +1,72 @@
+/*
+ *   Copyright 2015 Cheikh BA <cheikh.ba.sn@gmail.com>
+ *
+ *   This file is part of WALO.
+ *
+ *   WALO is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Lesser General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   WALO is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Lesser General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Lesser General Public License,
+ *   along with WALO.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package execution;
+
+import java.util.Arrays;
+
+/**
+ * Class SymbolColumn is a column of symbols only. Every value is stored as its
+ * symbol (see Values), e.g. its code in the SymbolTable, in an int[].
+ */
+public class SymbolColumn extends Column {
+
+	/** code of every value */
+	private int[] codes = new int[INITIAL_CAPACITY];
+
+	/**
+	 * Returns the symbol of a value.
+	 *
+	 * @param row
+	 *            position of the value
+	 * @return code of the symbol
+	 */
+	public int getCode(int row) {
+		return codes[row];
+	}
+
+	/**
+	 * Returns the codes of the column. The array may be longer than the
+	 * number of values.
+	 *
+	 * @return code of every value
+	 */
+	public int[] getCodes() {
+		return codes;
+	}
+
+	public long get(int row) {
+		return Values.symbol(codes[row]);
+	}
+
+	public boolean accepts(long cell) {
+		return Values.isSymbol(cell);
+	}
+
+	public void add(long cell) {
+		if (size == codes.length) {
+			codes = Arrays.copyOf(codes, 2 * size);
+		}
+		codes[size++] = Values.symbolOf(cell);
+	}
+
+	public long memoryUsage() {
+		return 4L * codes.length;
+	}
+}
@@ -0,0 +1,161 @@
+/*
+ *   Copyright 2015 Cheikh BA <cheikh.ba.sn@gmail.com>
+ *
+ *   This file is part of WALO.
+ *
+ *   WALO is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Lesser General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   WALO is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Lesser General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Lesser General Public License,
+ *   along with WALO.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package execution;
+
+import java.util.Iterator;
+
+/**
+ * Class UnionCursor pulls the distinct answers of a union of plans. The plans
+ * are opened one after the other, when the answers of the previous ones are
+ * exhausted, so that a consumer stopping after its first answers neither
+ * opens the remaining plans nor reads the remaining rows of the current one.
+ * The plans may be produced lazily by the iterator, e.g. compiled only when
+ * they are reached.
+ *
+ * With a memory budget, answers are returned as they are found only while
+ * the set of the answers returned fits in the budget. The set is then frozen,
+ * and the answers not in it are deduplicated by an ExternalDistinct, which
+ * spills sorted runs to disk: they are returned, in increasing order, once
+ * all the plans have been read.
+ */
+public class UnionCursor extends Cursor {
+
+	/** plans not opened yet */
+	private Iterator<PlanNode> plans;
+
+	/** cursor of the current plan, null before the first one */
+	private Cursor current;
+
+	/** number of columns of the answers */
+	private int arity;
+
+	/** answers returned so far */
+	private OffHeapTupleSet seen;
+
+	/** current answer */
+	private long[] values;
+
+	/** maximum size of the set of the answers returned, 0 for no budget */
+	private long budget;
+
+	/** answers not in the frozen set, null while the set fits in the budget */
+	private ExternalDistinct overflow;
+
+	/** distinct answers of overflow, null before all the plans are read */
+	private Cursor spilled;
+
+	/**
+	 * UnionCursor constructor
+	 *
+	 * @param plans
+	 *            plans binding the same variables
+	 * @param arity
+	 *            number of variables of the plans
+	 */
+	public UnionCursor(Iterator<PlanNode> plans, int arity) {
+		this(plans, arity, 0);
+	}
+
+	/**
+	 * UnionCursor constructor
+	 *
+	 * @param plans
+	 *            plans binding the same variables
+	 * @param arity
+	 *            number of variables of the plans
+	 * @param budget
+	 *            maximum size in bytes of the set of the answers returned,
+	 *            and of the answers buffered once it is reached, 0 for no
+	 *            budget
+	 */
+	public UnionCursor(Iterator<PlanNode> plans, int arity, long budget) {
+		this.plans = plans;
+		this.arity = arity;
+		this.budget = budget;
+		this.seen = new OffHeapTupleSet(arity);
+		this.values = new long[arity];
+	}
+
+	public boolean next() {
+		while (spilled == null) {
+			if (current != null && current.next()) {
+				if (addAnswer()) {
+					return true;
+				}
+			} else if (plans.hasNext()) {
+				current = plans.next().open();
+			} else if (overflow != null) {
+				spilled = overflow.distinct();
+				overflow = null;
+			} else {
+				return false;
+			}
+		}
+		if (!spilled.next()) {
+			return false;
+		}
+		for (int c = 0; c < arity; c++) {
+			values[c] = spilled.get(c);
+		}
+		return true;
+	}
+
+	/**
+	 * Reads the current row of the current plan.
+	 *
+	 * @return true if it is a new answer to return now, false if it was
+	 *         returned before or is deferred to the overflow
+	 */
+	private boolean addAnswer() {
+		for (int c = 0; c < arity; c++) {
+			values[c] = current.get(c);
+		}
+		if (overflow != null) {
+			if (!seen.contains(values)) {
+				overflow.add(values);
+			}
+			return false;
+		}
+		if (!seen.add(values)) {
+			return false;
+		}
+		if (budget > 0 && seen.memoryUsage() > budget) {
+			overflow = new ExternalDistinct(arity, budget);
+		}
+		return true;
+	}
+
+	public long get(int column) {
+		return values[column];
+	}
+
+	public void close() {
+		if (current != null) {
+			current.close();
+		}
+		if (overflow != null) {
+			overflow.close();
+			overflow = null;
+		}
+		if (spilled != null) {
+			spilled.close();
+		}
+	}
+}
@@ -0,0 +1,130 @@
+/*
+ *   Copyright 2015 Cheikh BA <cheikh.ba.sn@gmail.com>
+ *
+ *   This file is part of WALO.
+ *
+ *   WALO is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Lesser General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   WALO is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Lesser General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Lesser General Public License,
+ *   along with WALO.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package execution;
+
+import java.util.List;
+
+/**
+ * Class UnionPlan is the union of the plans of several rewritings of a
+ * query. Answers are returned once, in the order they are first found; the
+ * answers already found are kept in an OffHeapTupleSet, out of the heap.
+ *
+ * With a memory budget, the plans are pulled one row at a time, and the
+ * answers beyond the budget are deduplicated on disk (see UnionCursor).
+ */
+public class UnionPlan extends PlanNode {
+
+	/** plan of every rewriting */
+	private List<PlanNode> plans;
+
+	/** head variables of the query */
+	private String[] variables;
+
+	/** maximum size of the deduplication state in bytes, 0 for no budget */
+	private long budget;
+
+	/**
+	 * UnionPlan constructor
+	 *
+	 * @param plans
+	 *            plan of every rewriting, binding the same variables
+	 */
+	public UnionPlan(List<PlanNode> plans) {
+		this(plans, 0);
+	}
+
+	/**
+	 * UnionPlan constructor
+	 *
+	 * @param plans
+	 *            plan of every rewriting, binding the same variables
+	 * @param budget
+	 *            maximum size of the deduplication state in bytes, 0 for no
+	 *            budget
+	 */
+	public UnionPlan(List<PlanNode> plans, long budget) {
+		this.plans = plans;
+		this.variables = plans.get(0).getVariables();
+		this.budget = budget;
+	}
+
+	public BindingTable execute() {
+		BindingTable result = new BindingTable(variables, 16);
+		if (budget > 0) {
+			Cursor answers = open();
+			while (answers.next()) {
+				int row = result.addRow();
+				for (int c = 0; c < variables.length; c++) {
+					result.set(c, row, answers.get(c));
+				}
+			}
+			return result;
+		}
+		OffHeapTupleSet seen = new OffHeapTupleSet(variables.length);
+		for (PlanNode plan : plans) {
+			addDistinct(plan.execute(), result, seen);
+		}
+		return result;
+	}
+
+	public Cursor open() {
+		return new UnionCursor(plans.iterator(), variables.length, budget);
+	}
+
+	/**
+	 * Adds to the result the rows of the answers that have not been seen.
+	 *
+	 * @param answers
+	 *            answers of a plan
+	 * @param result
+	 *            distinct answers found so far
+	 * @param seen
+	 *            rows of the result
+	 */
+	static void addDistinct(BindingTable answers, BindingTable result,
+			OffHeapTupleSet seen) {
+		long[] values = new long[answers.arity()];
+		for (int row = 0; row < answers.size(); row++) {
+			for (int c = 0; c < values.length; c++) {
+				values[c] = answers.get(c, row);
+			}
+			if (seen.add(values)) {
+				result.add(values);
+			}
+		}
+	}
+
+	public List<PlanNode> getChildren() {
+		return plans;
+	}
+
+	public String[] getVariables() {
+		return variables;
+	}
+
+	public void explain(StringBuilder s, int indent) {
+		indent(s, indent);
+		s.append("Union (distinct) of ").append(plans.size())
+				.append(" plan(s)\n");
+		for (PlanNode plan : plans) {
+			plan.explain(s, indent + 1);
+		}
+	}
+}
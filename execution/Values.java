@@ -0,0 +1,208 @@
+/*
+ *   Copyright 2015 Cheikh BA <cheikh.ba.sn@gmail.com>
+ *
+ *   This file is part of WALO.
+ *
+ *   WALO is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Lesser General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   WALO is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Lesser General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Lesser General Public License,
+ *   along with WALO.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package execution;
+
+import datalog.PredicateElement;
+import datalog.StringConstant;
+import datalog.SymbolTable;
+
+/**
+ * Class Values encodes the values of the view extensions as long cells, so
+ * that the execution engine compares and hashes primitive values only:
+ *
+ * 1. an integer is stored as itself
+ *
+ * 2. any other value is a symbol, stored as SYMBOL_BASE + its symbol: its
+ * code in the SymbolTable (the dictionary shared with the names of the
+ * Datalog queries), or, from DICTIONARY_SYMBOLS, its code in the dictionary
+ * of a directory of segments (see MappedDictionary)
+ *
+ * Every value has a single cell, so that values are equal if and only if
+ * their cells are equal.
+ *
+ * Integers smaller than SYMBOL_LIMIT, or not written in their canonical form
+ * (e.g. "007"), are encoded as symbols so that decoding gives back the text.
+ */
+public class Values {
+
+	/** cell of the symbol 0 */
+	public static final long SYMBOL_BASE = Long.MIN_VALUE;
+
+	/** cells below this limit are symbols */
+	public static final long SYMBOL_LIMIT = Long.MIN_VALUE + Integer.MAX_VALUE + 1L;
+
+	/** first symbol of the mapped dictionaries, the SymbolTable being below */
+	public static final int DICTIONARY_SYMBOLS = 1 << 30;
+
+	/**
+	 * Encodes a value read from an extension file.
+	 *
+	 * @param value
+	 *            text of the value
+	 * @return cell of the value
+	 */
+	public static long encode(String value) {
+		if (isEncodedAsInteger(value)) {
+			return Long.parseLong(value);
+		}
+		int symbol = MappedDictionary.find(value);
+		return symbol(symbol >= 0 ? symbol : SymbolTable.intern(value));
+	}
+
+	/**
+	 * Tests whether a value is encoded as an integer or as a symbol.
+	 *
+	 * @param value
+	 *            text of the value
+	 * @return true if the value is stored as itself
+	 */
+	public static boolean isEncodedAsInteger(String value) {
+		if (isInteger(value)) {
+			try {
+				long number = Long.parseLong(value);
+				// "007" or "-0" would not be decoded to the same text
+				return number >= SYMBOL_LIMIT && Long.toString(number).equals(value);
+			} catch (NumberFormatException e) {
+				// too large, encoded as a symbol
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Encodes a constant of a Datalog query. The quotes of a string constant
+	 * are not part of the value.
+	 *
+	 * @param constant
+	 *            numerical or string constant
+	 * @return cell of the value
+	 */
+	public static long encodeConstant(PredicateElement constant) {
+		String value = constant.name;
+		if (constant instanceof StringConstant && value.length() >= 2) {
+			value = value.substring(1, value.length() - 1);
+		}
+		return encode(value);
+	}
+
+	/**
+	 * Returns the cell of a symbol.
+	 *
+	 * @param symbol
+	 *            symbol in the SymbolTable or in a mapped dictionary
+	 * @return cell of the symbol
+	 */
+	public static long symbol(int symbol) {
+		return SYMBOL_BASE + symbol;
+	}
+
+	/**
+	 * Tests whether a cell holds a symbol.
+	 *
+	 * @param cell
+	 *            encoded value
+	 * @return true for a symbol, false for an integer
+	 */
+	public static boolean isSymbol(long cell) {
+		return cell < SYMBOL_LIMIT;
+	}
+
+	/**
+	 * Returns the symbol held by a cell.
+	 *
+	 * @param cell
+	 *            encoded symbol
+	 * @return symbol in the SymbolTable or in a mapped dictionary
+	 */
+	public static int symbolOf(long cell) {
+		return (int) (cell - SYMBOL_BASE);
+	}
+
+	/**
+	 * Decodes a cell.
+	 *
+	 * @param cell
+	 *            encoded value
+	 * @return text of the value
+	 */
+	public static String toString(long cell) {
+		if (!isSymbol(cell)) {
+			return Long.toString(cell);
+		}
+		int symbol = symbolOf(cell);
+		return symbol >= DICTIONARY_SYMBOLS ? MappedDictionary.getName(symbol)
+				: SymbolTable.getName(symbol);
+	}
+
+	/**
+	 * Evaluates "left comparator right". Integers are compared numerically,
+	 * symbols by their text; an integer and a symbol are only different.
+	 *
+	 * @param left
+	 *            encoded left value
+	 * @param comparator
+	 *            one of =, !=, <>, <, <=, >, >=
+	 * @param right
+	 *            encoded right value
+	 * @return true if the comparison holds
+	 */
+	public static boolean compare(long left, String comparator, long right) {
+		int order;
+		if (isSymbol(left) != isSymbol(right)) {
+			return comparator.equals("!=") || comparator.equals("<>");
+		} else if (isSymbol(left)) {
+			// equal symbols have equal cells, only an order decodes them
+			order = left == right ? 0 : (comparator.equals("=")
+					|| comparator.equals("!=") || comparator.equals("<>")) ? 1
+					: toString(left).compareTo(toString(right));
+		} else {
+			order = left < right ? -1 : (left == right ? 0 : 1);
+		}
+
+		if (comparator.equals("<"))
+			return order < 0;
+		if (comparator.equals("<="))
+			return order <= 0;
+		if (comparator.equals(">"))
+			return order > 0;
+		if (comparator.equals(">="))
+			return order >= 0;
+		if (comparator.equals("="))
+			return order == 0;
+		return order != 0;
+	}
+
+	/**
+	 * Tests whether the text is an optional minus followed by digits.
+	 */
+	private static boolean isInteger(String value) {
+		int start = value.startsWith("-") ? 1 : 0;
+		if (value.length() == start || value.length() > start + 19) {
+			return false;
+		}
+		for (int i = start; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c < '0' || c > '9') {
+				return false;
+			}
+		}
+		return true;
+	}
+}
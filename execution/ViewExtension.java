@@ -0,0 +1,154 @@
+/*
+ *   Copyright 2015 Cheikh BA <cheikh.ba.sn@gmail.com>
+ *
+ *   This file is part of WALO.
+ *
+ *   WALO is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Lesser General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   WALO is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Lesser General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Lesser General Public License,
+ *   along with WALO.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package execution;
+
+/**
+ * Class ViewExtension holds the tuples of a view, stored by column (see
+ * ColumnarRelation).
+ */
+public class ViewExtension {
+
+	/** number of extensions created so far */
+	private static long created = 0;
+
+	/** identifier of the extension, unique in the process */
+	private long id = nextId();
+
+	/** name of the view */
+	private String name;
+
+	/** tuples of the view */
+	private ColumnarRelation tuples;
+
+	/**
+	 * ViewExtension constructor
+	 *
+	 * @param name
+	 *            name of the view
+	 * @param arity
+	 *            number of columns
+	 */
+	public ViewExtension(String name, int arity) {
+		this.name = name;
+		this.tuples = new ColumnarRelation(arity);
+	}
+
+	/**
+	 * Builds the extension of a view from its tuples.
+	 *
+	 * @param name
+	 *            name of the view
+	 * @param tuples
+	 *            tuples of the view
+	 */
+	public ViewExtension(String name, ColumnarRelation tuples) {
+		this.name = name;
+		this.tuples = tuples;
+	}
+
+	/**
+	 * Returns the name of the view.
+	 *
+	 * @return name
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Returns the identifier of the extension, unique in the process. As
+	 * tuples are only added to an extension, its identifier and its size
+	 * identify its tuples.
+	 *
+	 * @return identifier
+	 */
+	public long getId() {
+		return id;
+	}
+
+	/**
+	 * Returns the number of columns.
+	 *
+	 * @return arity
+	 */
+	public int arity() {
+		return tuples.arity();
+	}
+
+	/**
+	 * Adds a tuple to the extension.
+	 *
+	 * @param tuple
+	 *            encoded value of every column
+	 */
+	public void add(long[] tuple) {
+		if (tuple.length != tuples.arity()) {
+			throw new IllegalArgumentException("Tuple of " + tuple.length
+					+ " values added to " + name + "/" + tuples.arity());
+		}
+		tuples.add(tuple);
+	}
+
+	/**
+	 * Returns the number of tuples.
+	 *
+	 * @return number of tuples
+	 */
+	public int size() {
+		return tuples.size();
+	}
+
+	/**
+	 * Returns a value of the extension.
+	 *
+	 * @param row
+	 *            position of the tuple
+	 * @param column
+	 *            position of the column
+	 * @return encoded value
+	 */
+	public long get(int row, int column) {
+		return tuples.get(row, column);
+	}
+
+	/**
+	 * Returns a column of the extension.
+	 *
+	 * @param column
+	 *            position of the column
+	 * @return values of the column
+	 */
+	public Column getColumn(int column) {
+		return tuples.getColumn(column);
+	}
+
+	/**
+	 * Returns the number of bytes used by the tuples.
+	 *
+	 * @return size of the storage in bytes
+	 */
+	public long memoryUsage() {
+		return tuples.memoryUsage();
+	}
+
+	private static synchronized long nextId() {
+		return created++;
+	}
+}
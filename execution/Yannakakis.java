@@ -0,0 +1,168 @@
+/*
+ *   Copyright 2015 Cheikh BA <cheikh.ba.sn@gmail.com>
+ *
+ *   This file is part of WALO.
+ *
+ *   WALO is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Lesser General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   WALO is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Lesser General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Lesser General Public License,
+ *   along with WALO.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package execution;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Class Yannakakis joins the operators of an acyclic query along a join tree
+ * (see JoinHypergraph.getJoinTree) in three passes:
+ *
+ * 1. bottom-up: every parent is reduced by a semi-join with each of its
+ * children
+ *
+ * 2. top-down: every child is reduced by a semi-join with its parent
+ *
+ * 3. the reduced results are joined from the root down, every operator being
+ * joined after its parent
+ *
+ * After both semi-join passes, every remaining row takes part in at least one
+ * answer, so no intermediate result of the final joins holds dangling rows
+ * and the evaluation takes time linear in the size of the input plus the size
+ * of the output.
+ */
+public class Yannakakis extends PlanNode {
+
+	/** operators to join, one per edge of the join tree */
+	private List<PlanNode> inputs;
+
+	/** parent of every operator in the join tree, -1 for the root */
+	private int[] parent;
+
+	/** operators from the root down: every operator follows its parent */
+	private int[] order;
+
+	/** variables of the result */
+	private String[] variables;
+
+	/** number of threads of the final joins */
+	private int threads;
+
+	/**
+	 * Yannakakis constructor
+	 *
+	 * @param inputs
+	 *            operators to join
+	 * @param parent
+	 *            parent of every operator in the join tree, -1 for the root
+	 *            (a single root)
+	 * @param threads
+	 *            number of threads of the final joins (see ParallelHashJoin)
+	 */
+	public Yannakakis(List<PlanNode> inputs, int[] parent, int threads) {
+		this.inputs = inputs;
+		this.parent = parent;
+		this.threads = threads;
+
+		// breadth-first order of the tree
+		order = new int[inputs.size()];
+		int count = 0;
+		for (int i = 0; i < parent.length && count == 0; i++) {
+			if (parent[i] < 0) {
+				order[count++] = i;
+			}
+		}
+		for (int next = 0; next < count; next++) {
+			for (int i = 0; i < parent.length; i++) {
+				if (parent[i] == order[next]) {
+					order[count++] = i;
+				}
+			}
+		}
+
+		// variables of the joins from the root down
+		String[] vars = new String[0];
+		for (int i : order) {
+			vars = HashJoin.joinVariables(vars, inputs.get(i).getVariables());
+		}
+		variables = vars;
+	}
+
+	public BindingTable execute() {
+		int n = inputs.size();
+		BindingTable[] tables = new BindingTable[n];
+		for (int i = 0; i < n; i++) {
+			tables[i] = inputs.get(i).execute();
+			if (tables[i].size() == 0) {
+				return new BindingTable(variables, 0);
+			}
+		}
+
+		// bottom-up semi-joins: children are reduced before their parent
+		for (int k = n - 1; k >= 0; k--) {
+			int child = order[k];
+			if (parent[child] >= 0) {
+				tables[parent[child]] = HashJoin.semiJoin(
+						tables[parent[child]], tables[child]);
+			}
+		}
+		if (tables[order[0]].size() == 0) {
+			return new BindingTable(variables, 0);
+		}
+
+		// top-down semi-joins: parents are reduced before their children
+		for (int k = 0; k < n; k++) {
+			int child = order[k];
+			if (parent[child] >= 0) {
+				tables[child] = HashJoin.semiJoin(tables[child],
+						tables[parent[child]]);
+			}
+		}
+
+		BindingTable result = tables[order[0]];
+		for (int k = 1; k < n; k++) {
+			result = ParallelHashJoin.join(result, tables[order[k]], threads);
+		}
+		return result;
+	}
+
+	public List<PlanNode> getChildren() {
+		return inputs;
+	}
+
+	public String[] getVariables() {
+		return variables;
+	}
+
+	public void explain(StringBuilder s, int indent) {
+		indent(s, indent);
+		s.append("Yannakakis\n");
+		explainSubtree(s, indent + 1, order[0]);
+	}
+
+	/**
+	 * Appends the operators of a subtree of the join tree.
+	 */
+	private void explainSubtree(StringBuilder s, int indent, int node) {
+		inputs.get(node).explain(s, indent);
+		List<Integer> children = new ArrayList<Integer>();
+		for (int i = 0; i < parent.length; i++) {
+			if (parent[i] == node) {
+				children.add(i);
+			}
+		}
+		for (int child : children) {
+			indent(s, indent + 1);
+			s.append("semi-join with parent\n");
+			explainSubtree(s, indent + 2, child);
+		}
+	}
+}
@@ -0,0 +1,365 @@
+/*
+ *   Copyright 2015 Cheikh BA <cheikh.ba.sn@gmail.com>
+ *
+ *   This file is part of WALO.
+ *
+ *   WALO is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Lesser General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   WALO is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Lesser General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Lesser General Public License,
+ *   along with WALO.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package minicon;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Hashtable;
+import java.util.List;
+
+import datalog.Constant;
+import datalog.DatalogQuery;
+import datalog.InterpretedPredicate;
+import datalog.Predicate;
+import datalog.PredicateElement;
+import datalog.Variable;
+
+/**
+ * Class ContainmentMinimiser removes from a union of rewritings every
+ * rewriting that is contained in another rewriting of the union. The answers
+ * of a contained rewriting are already returned by the rewriting containing
+ * it, so it does not need to be executed.
+ *
+ * Rewriting R1 is contained in rewriting R2 if there is a homomorphism from R2
+ * to R1: a mapping of the variables of R2 such that the head variables are
+ * kept, every view atom of R2 is mapped to a view atom of R1 and every
+ * interpreted predicate of R2 is mapped to an interpreted predicate of R1.
+ * Every "_" is a distinct variable. Variables used in interpreted predicates
+ * are required to be mapped to themselves, so the test may miss a containment
+ * but never reports a wrong one.
+ *
+ * The homomorphism search only considers the atoms of R1 with the same
+ * predicate name and arity, and is skipped when a 64 bits signature of the
+ * predicates and constants of R2 is not included in the signature of R1.
+ */
+public class ContainmentMinimiser {
+
+	/** value of a variable that is not mapped yet */
+	private static final int UNMAPPED = Integer.MIN_VALUE;
+
+	/** id of every predicate name and arity */
+	private Hashtable<String, Integer> predicateIds = new Hashtable<String, Integer>();
+
+	/**
+	 * id of every term that is mapped to itself: constants, head variables
+	 * and variables of interpreted predicates
+	 */
+	private Hashtable<String, Integer> rigidIds = new Hashtable<String, Integer>();
+
+	/**
+	 * Returns the rewritings of the union that are not contained in another
+	 * rewriting of the union, in their original order. Of several equivalent
+	 * rewritings, only the first one is kept.
+	 *
+	 * @param rewritings
+	 *            union of rewritings
+	 * @return rewritings that are not redundant
+	 */
+	public static List<Rewriting> removeContainedRewritings(
+			List<Rewriting> rewritings) {
+		return new ContainmentMinimiser().minimise(rewritings);
+	}
+
+	/**
+	 * Called by removeContainedRewritings.
+	 *
+	 * @param rewritings
+	 *            union of rewritings
+	 * @return rewritings that are not redundant
+	 */
+	private List<Rewriting> minimise(List<Rewriting> rewritings) {
+		int n = rewritings.size();
+		CompiledRewriting[] compiled = new CompiledRewriting[n];
+		for (int i = 0; i < n; i++) {
+			compiled[i] = new CompiledRewriting(rewritings.get(i)
+					.getRewriting());
+		}
+		for (int i = 0; i < n; i++) {
+			compiled[i].index(predicateIds.size());
+		}
+
+		List<Rewriting> result = new ArrayList<Rewriting>();
+		for (int i = 0; i < n; i++) {
+			boolean contained = false;
+			for (int j = 0; j < n && !contained; j++) {
+				if (i != j && isContainedIn(compiled[i], compiled[j])) {
+					// of two equivalent rewritings the first one is kept
+					contained = j < i || !isContainedIn(compiled[j], compiled[i]);
+				}
+			}
+			if (!contained) {
+				result.add(rewritings.get(i));
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Tests whether rewriting r1 is contained in rewriting r2, i.e. whether
+	 * there is a homomorphism from r2 to r1.
+	 *
+	 * @param r1
+	 *            contained rewriting
+	 * @param r2
+	 *            containing rewriting
+	 * @return true if a homomorphism has been found
+	 */
+	private boolean isContainedIn(CompiledRewriting r1, CompiledRewriting r2) {
+		if ((r2.signature & ~r1.signature) != 0) {
+			return false; // a predicate or a constant of r2 is missing in r1
+		}
+		if (!r1.comparisons.containsAll(r2.comparisons)) {
+			return false; // terms of interpreted predicates are mapped to themselves
+		}
+
+		// candidate atoms of r1 for every atom of r2
+		int[][] candidates = new int[r2.atoms.length][];
+		Integer[] order = new Integer[r2.atoms.length];
+		for (int a = 0; a < r2.atoms.length; a++) {
+			candidates[a] = r1.candidates(r2.predicates[a], r2.atoms[a]);
+			if (candidates[a].length == 0) {
+				return false;
+			}
+			order[a] = a;
+		}
+
+		// the atoms with the fewest candidates are mapped first
+		final int[][] cand = candidates;
+		Arrays.sort(order, new Comparator<Integer>() {
+			public int compare(Integer a1, Integer a2) {
+				return cand[a1].length - cand[a2].length;
+			}
+		});
+
+		int[] mapping = new int[r2.numberOfLocals];
+		Arrays.fill(mapping, UNMAPPED);
+		return extend(r1, r2, candidates, order, 0, mapping);
+	}
+
+	/**
+	 * Maps the atom at the given position of the search order to each of its
+	 * candidates in turn and continues with the next atom.
+	 *
+	 * @return true if the mapping could be completed to a homomorphism
+	 */
+	private boolean extend(CompiledRewriting r1, CompiledRewriting r2,
+			int[][] candidates, Integer[] order, int position, int[] mapping) {
+		if (position == order.length) {
+			return true;
+		}
+
+		int[] atom = r2.atoms[order[position]];
+		int[] assigned = new int[atom.length];
+		for (int candidate : candidates[order[position]]) {
+			int[] target = r1.atoms[candidate];
+			int numberAssigned = 0;
+			boolean consistent = true;
+
+			for (int p = 0; p < atom.length && consistent; p++) {
+				if (atom[p] < 0) {
+					int local = -atom[p] - 1;
+					if (mapping[local] == UNMAPPED) {
+						mapping[local] = target[p];
+						assigned[numberAssigned++] = local;
+					} else {
+						consistent = mapping[local] == target[p];
+					}
+				}
+			}
+
+			if (consistent
+					&& extend(r1, r2, candidates, order, position + 1, mapping)) {
+				return true;
+			}
+			for (int i = 0; i < numberAssigned; i++) {
+				mapping[assigned[i]] = UNMAPPED;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the id of a predicate name and arity.
+	 */
+	private int predicateId(String name, int arity) {
+		String key = name + "/" + arity;
+		Integer id = predicateIds.get(key);
+		if (id == null) {
+			id = predicateIds.size();
+			predicateIds.put(key, id);
+		}
+		return id;
+	}
+
+	/**
+	 * Returns the id of a term that is mapped to itself.
+	 */
+	private int rigidId(String key) {
+		Integer id = rigidIds.get(key);
+		if (id == null) {
+			id = rigidIds.size();
+			rigidIds.put(key, id);
+		}
+		return id;
+	}
+
+	/**
+	 * Returns the bit of the signature for the given id.
+	 */
+	private static long bit(int id, int salt) {
+		return 1L << ((id * 31 + salt) & 63);
+	}
+
+	/**
+	 * A rewriting compiled for the containment tests. Terms are encoded as
+	 * integers: the terms that are mapped to themselves have an id >= 0
+	 * shared by all the rewritings, the other variables are numbered per
+	 * rewriting and encoded as -(number + 1).
+	 */
+	private class CompiledRewriting {
+
+		/** predicate id of every view atom */
+		private int[] predicates;
+
+		/** encoded terms of every view atom */
+		private int[][] atoms;
+
+		/** encoded interpreted predicates, as "left comparator right" */
+		private HashSet<String> comparisons = new HashSet<String>();
+
+		/** number of variables that are not mapped to themselves */
+		private int numberOfLocals;
+
+		/** bits of the predicates and of the constants of the rewriting */
+		private long signature;
+
+		/** positions of the atoms of each predicate id */
+		private int[][] atomsByPredicate;
+
+		private CompiledRewriting(DatalogQuery rewriting) {
+			HashSet<String> rigidVariables = new HashSet<String>();
+			for (Variable headVar : rewriting.getHeadVariables()) {
+				rigidVariables.add(headVar.name);
+			}
+			for (InterpretedPredicate pred : rewriting
+					.getInterpretedPredicates()) {
+				rigidVariables.add(pred.getLeft().name);
+				rigidVariables.add(pred.getRight().name);
+			}
+
+			Hashtable<String, Integer> locals = new Hashtable<String, Integer>();
+			List<Predicate> preds = rewriting.getPredicates();
+			predicates = new int[preds.size()];
+			atoms = new int[preds.size()][];
+			for (int a = 0; a < preds.size(); a++) {
+				Predicate pred = preds.get(a);
+				predicates[a] = predicateId(pred.name, pred.numberOfElements());
+				signature |= bit(predicates[a], 0);
+
+				atoms[a] = new int[pred.numberOfElements()];
+				for (int p = 0; p < atoms[a].length; p++) {
+					atoms[a][p] = encode(pred.getElement(p), rigidVariables,
+							locals);
+				}
+			}
+
+			for (InterpretedPredicate pred : rewriting
+					.getInterpretedPredicates()) {
+				int left = encode(pred.getLeft(), rigidVariables, locals);
+				int right = encode(pred.getRight(), rigidVariables, locals);
+				comparisons.add(left + pred.getComparator() + right);
+			}
+		}
+
+		/**
+		 * Encodes a term of the rewriting.
+		 */
+		private int encode(PredicateElement elem, HashSet<String> rigidVariables,
+				Hashtable<String, Integer> locals) {
+			if (elem instanceof Constant) {
+				int id = rigidId("c:" + elem.name);
+				signature |= bit(id, 1);
+				return id;
+			}
+			if (rigidVariables.contains(elem.name)) {
+				return rigidId("v:" + elem.name);
+			}
+			if (elem.name.equals("_")) {
+				return -(++numberOfLocals);
+			}
+			Integer local = locals.get(elem.name);
+			if (local == null) {
+				local = numberOfLocals++;
+				locals.put(elem.name, local);
+			}
+			return -local - 1;
+		}
+
+		/**
+		 * Builds the index of the atoms by predicate id.
+		 *
+		 * @param numberOfPredicates
+		 *            number of predicate ids of all the rewritings
+		 */
+		private void index(int numberOfPredicates) {
+			int[] counts = new int[numberOfPredicates];
+			for (int pred : predicates) {
+				counts[pred]++;
+			}
+			atomsByPredicate = new int[numberOfPredicates][];
+			for (int pred = 0; pred < numberOfPredicates; pred++) {
+				atomsByPredicate[pred] = new int[counts[pred]];
+			}
+			Arrays.fill(counts, 0);
+			for (int a = 0; a < predicates.length; a++) {
+				atomsByPredicate[predicates[a]][counts[predicates[a]]++] = a;
+			}
+		}
+
+		/**
+		 * Returns the atoms of this rewriting an atom of another rewriting can
+		 * be mapped to: same predicate and same terms where the terms of the
+		 * atom are mapped to themselves.
+		 *
+		 * @param pred
+		 *            predicate id of the atom
+		 * @param atom
+		 *            encoded terms of the atom
+		 * @return positions of the candidate atoms
+		 */
+		private int[] candidates(int pred, int[] atom) {
+			int[] sameName = atomsByPredicate[pred];
+			int[] result = new int[sameName.length];
+			int size = 0;
+			for (int candidate : sameName) {
+				boolean matches = true;
+				for (int p = 0; p < atom.length && matches; p++) {
+					matches = atom[p] < 0 || atoms[candidate][p] == atom[p];
+				}
+				if (matches) {
+					result[size++] = candidate;
+				}
+			}
+			return Arrays.copyOf(result, size);
+		}
+	}
+}
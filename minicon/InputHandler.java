@@ -68,6 +68,9 @@ public class InputHandler {
 	/** remove redundandies from rewriting */
 	public static boolean removeRedundant = false;
 
+	/** remove rewritings contained in another rewriting of the union */
+	public static boolean minimiseUnion = false;
+
 	/** used to convert Datalog to SQL and v.v. */
 	private static Converter convert = new Converter();
 
@@ -110,6 +113,10 @@ public class InputHandler {
 			if ((args[i].equals(("-r")) || (args[i].equals("remove")))) {
 				removeRedundant = true;
 			}
+			// remove contained rewritings
+			if (args[i].equals("-u")) {
+				minimiseUnion = true;
+			}
 		}
 
 		if (verbose) {
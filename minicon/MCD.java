@@ -1,6 +1,7 @@
 package minicon;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.List;
 
 import datalog.Constant;
@@ -22,13 +23,11 @@ import datalog.Variable;
  * 
  * The object 'mappings' of class MCDMappings contains the mapping from query
  * variables or constants to variables of the view -> variable mapping; mapping
- * from query variable or constant to constants of the view -> constant mapping;
- * mapping from head variables of the view to variables or constants of the
- * query -> rewriting mapping
+ * from query variable or constant to constants of the view -> constant mapping
  */
 public class MCD {
 
-	/** variable, constant and rewriting mapping */
+	/** variable and constant mapping */
 	//protected MCDMappings mappings;
 	public MCDMappings mappings; /* C.BA */
 	/** query object */
@@ -65,6 +64,35 @@ public class MCD {
 		return view;
 	}
 
+	/**
+	 * Subgoals covered by the MCD as a bitmask: bit i is set if the MCD covers
+	 * the ith subgoal of the query. It is computed by the Organiser together
+	 * with the coverage domains.
+	 */
+	protected long subgoalMask;
+
+	public void setSubgoalMask(long subgoalMask){
+		this.subgoalMask = subgoalMask;
+	}
+
+	public long getSubgoalMask(){
+		return subgoalMask;
+	}
+
+	/**
+	 * Subgoals covered by the MCD as a BitSet, set instead of the bitmask
+	 * when the query has more than 64 subgoals, null otherwise.
+	 */
+	protected BitSet subgoalSet;
+
+	public void setSubgoalSet(BitSet subgoalSet){
+		this.subgoalSet = subgoalSet;
+	}
+
+	public BitSet getSubgoalSet(){
+		return subgoalSet;
+	}
+
 	/**
 	 * MCD constructor
 	 * 
@@ -77,9 +105,8 @@ public class MCD {
 	 *            that is currently considered by the time when creating the MCD
 	 *            object
 	 * @param map
-	 *            variables or constant mapping; rewriting mapping will be empty
-	 *            (note that by the time the MCD is created the mapping is not
-	 *            necessarily valid)
+	 *            variables or constant mapping (note that by the time the
+	 *            MCD is created the mapping is not necessarily valid)
 	 */
 	public MCD(Predicate subgoal, DatalogQuery query, DatalogQuery view,
 			MCDMappings map) {
@@ -92,6 +119,25 @@ public class MCD {
 		this.coveredSubgoals.add(subgoal);
 	}
 
+	/**
+	 * MCD copy constructor: the copy can be ranked independently of the
+	 * original, the mappings and the query and view objects are shared
+	 * 
+	 * @param mcd
+	 *            MCD to copy
+	 */
+	public MCD(MCD mcd) {
+		this.mappings = mcd.mappings;
+		this.query = mcd.query;
+		this.view = mcd.view;
+		this.coveredSubgoals = new ArrayList<Predicate>(mcd.coveredSubgoals);
+		this.coveredInterpretedPredicates = new ArrayList<InterpretedPredicate>(
+				mcd.coveredInterpretedPredicates);
+		this.rank = mcd.rank;
+		this.subgoalMask = mcd.subgoalMask;
+		this.subgoalSet = mcd.subgoalSet;
+	}
+
 	/**
 	 * The method will enforce the MiniCon property. Four checks will be
 	 * performed:
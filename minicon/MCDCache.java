@@ -0,0 +1,204 @@
+/*
+ *   Copyright 2015 Cheikh BA <cheikh.ba.sn@gmail.com>
+ *
+ *   This file is part of WALO.
+ *
+ *   WALO is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Lesser General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   WALO is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Lesser General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Lesser General Public License,
+ *   along with WALO.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package minicon;
+
+import java.util.ArrayList;
+import java.util.Hashtable;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import datalog.DatalogQuery;
+import datalog.Predicate;
+
+/**
+ * Class MCDCache keeps the result of the MCD formation step, i.e. the list of
+ * MCDs and the coverage domain of every query subgoal, for a given query and
+ * catalog.
+ *
+ * The formation of the MCDs only depends on the query and on the views, not
+ * on the user preferences. When only the ranks of the views change, the cached
+ * MCDs can be ranked again without running the formation a second time.
+ *
+ * The catalog is identified by a string: the definitions of the views, or an
+ * explicit version (see MiniConPref.setCatalogVersion). The cache keeps the
+ * MAX_ENTRIES entries used last. The MCDs are copied when they are stored and
+ * when they are looked up, so that ranking the MCDs of a lookup never changes
+ * the cached ones.
+ *
+ * The MCDs refer to the Predicate objects of the query they were formed for
+ * (subgoals are compared by reference), so the cached query object is kept as
+ * well and must be used instead of a freshly parsed one.
+ */
+public class MCDCache {
+
+	/** maximum number of cached entries */
+	public static final int MAX_ENTRIES = 64;
+
+	/** cached entries by catalog and query, in the order of their last use */
+	private static LinkedHashMap<Key, MCDCache> cache = new LinkedHashMap<Key, MCDCache>(
+			16, 0.75f, true) {
+
+		private static final long serialVersionUID = 1L;
+
+		protected boolean removeEldestEntry(Map.Entry<Key, MCDCache> eldest) {
+			return size() > MAX_ENTRIES;
+		}
+	};
+
+	/** query the MCDs were formed for */
+	private DatalogQuery query;
+
+	/** MCDs formed for the query */
+	private List<MCD> mcds;
+
+	/** coverage domain (unranked) of every subgoal of the query */
+	private Hashtable<Predicate, List<MCD>> coverageDomains;
+
+	/**
+	 * MCDCache constructor: copies the MCDs and the coverage domains.
+	 *
+	 * @param query
+	 *            query the MCDs were formed for
+	 * @param mcds
+	 *            MCDs formed for the query
+	 * @param coverageDomains
+	 *            coverage domain of every subgoal of the query
+	 */
+	private MCDCache(DatalogQuery query, List<MCD> mcds,
+			Hashtable<Predicate, List<MCD>> coverageDomains) {
+		this.query = query;
+		this.mcds = new ArrayList<MCD>(mcds.size());
+		IdentityHashMap<MCD, MCD> copies = new IdentityHashMap<MCD, MCD>();
+		for (MCD mcd : mcds) {
+			MCD copy = new MCD(mcd);
+			copies.put(mcd, copy);
+			this.mcds.add(copy);
+		}
+		this.coverageDomains = new Hashtable<Predicate, List<MCD>>();
+		for (Map.Entry<Predicate, List<MCD>> domain : coverageDomains
+				.entrySet()) {
+			List<MCD> copied = new ArrayList<MCD>(domain.getValue().size());
+			for (MCD mcd : domain.getValue()) {
+				copied.add(copies.get(mcd));
+			}
+			this.coverageDomains.put(domain.getKey(), copied);
+		}
+	}
+
+	/**
+	 * Returns a copy of the cached entry for the given query and catalog.
+	 *
+	 * @param query
+	 *            query provided by the user
+	 * @param catalog
+	 *            identifier of the set of views
+	 * @return copy of the cached entry, null if the MCDs have not been formed
+	 *         yet
+	 */
+	public static synchronized MCDCache lookup(DatalogQuery query,
+			String catalog) {
+		MCDCache entry = cache.get(new Key(catalog, query));
+		return entry == null ? null : new MCDCache(entry.query, entry.mcds,
+				entry.coverageDomains);
+	}
+
+	/**
+	 * Stores a copy of the result of the MCD formation for the given query
+	 * and catalog.
+	 *
+	 * @param query
+	 *            query the MCDs were formed for
+	 * @param catalog
+	 *            identifier of the set of views
+	 * @param mcds
+	 *            MCDs formed for the query
+	 * @param coverageDomains
+	 *            coverage domain of every subgoal of the query
+	 */
+	public static synchronized void store(DatalogQuery query, String catalog,
+			List<MCD> mcds, Hashtable<Predicate, List<MCD>> coverageDomains) {
+		cache.put(new Key(catalog, query), new MCDCache(query, mcds,
+				coverageDomains));
+	}
+
+	/**
+	 * Removes every cached entry.
+	 */
+	public static synchronized void invalidate() {
+		cache.clear();
+	}
+
+	/**
+	 * Returns the query the MCDs were formed for.
+	 *
+	 * @return query object
+	 */
+	public DatalogQuery getQuery() {
+		return query;
+	}
+
+	/**
+	 * Returns the cached MCDs.
+	 *
+	 * @return list of MCDs
+	 */
+	public List<MCD> getMCDs() {
+		return mcds;
+	}
+
+	/**
+	 * Returns the cached coverage domains.
+	 *
+	 * @return coverage domain of every subgoal of the query
+	 */
+	public Hashtable<Predicate, List<MCD>> getCoverageDomains() {
+		return coverageDomains;
+	}
+
+	/**
+	 * Key of a cache entry: the catalog and the text of the query.
+	 */
+	private static class Key {
+
+		/** identifier of the set of views */
+		private final String catalog;
+
+		/** text of the query */
+		private final String query;
+
+		Key(String catalog, DatalogQuery query) {
+			this.catalog = catalog;
+			this.query = query.toString();
+		}
+
+		public boolean equals(Object other) {
+			if (!(other instanceof Key)) {
+				return false;
+			}
+			Key key = (Key) other;
+			return catalog.equals(key.catalog) && query.equals(key.query);
+		}
+
+		public int hashCode() {
+			return 31 * catalog.hashCode() + query.hashCode();
+		}
+	}
+}
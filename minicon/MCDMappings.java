@@ -9,7 +9,7 @@ import datalog.PredicateElement;
 import datalog.Variable;
 
 /**
- * Class MCDMappings comprises the three Mapping objects that are used by the
+ * Class MCDMappings comprises the two Mapping objects that are used by the
  * algorithm.
  * 
  * Object varMap of class Mapping is the mapping from variables or constants of
@@ -18,9 +18,9 @@ import datalog.Variable;
  * Object constMap is the mapping from variables or constants of the query to
  * constants of a view.
  * 
- * Object rewritingMap is the mapping from head variables of the view to
- * variables or constants in the query. It is formed and used when rewritings
- * are created.
+ * The mapping from head variables of the view to variables or constants in
+ * the query is not part of the MCD: it depends on the other MCDs of a
+ * rewriting and is computed by class Rewriting for each rewriting.
  * 
  * This class also contains methods that access both variable and constant
  * mappings.
@@ -36,9 +36,6 @@ public class MCDMappings {
 	//Mapping constMap;
 	public Mapping constMap; /* C.BA */
 
-	/** rewriting mapping - view head variables to query variabe or constant */
-	Mapping rewritingMap;
-
 	/**
 	 * MCDMappings constructor
 	 * 
@@ -50,7 +47,6 @@ public class MCDMappings {
 	public MCDMappings(Predicate querySubgoal, Predicate viewPred) {
 		varMap = new Mapping();
 		constMap = new Mapping();
-		rewritingMap = new Mapping();
 		mapPredicates(querySubgoal, viewPred);
 	}
 
@@ -60,7 +56,6 @@ public class MCDMappings {
 	public MCDMappings() {
 		varMap = new Mapping();
 		constMap = new Mapping();
-		rewritingMap = new Mapping();
 	}
 
 	/**
@@ -0,0 +1,303 @@
+/*
+ *   Copyright 2015 Cheikh BA <cheikh.ba.sn@gmail.com>
+ *
+ *   This file is part of WALO.
+ *
+ *   WALO is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Lesser General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   WALO is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Lesser General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Lesser General Public License,
+ *   along with WALO.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package minicon;
+
+import java.util.ArrayList;
+import java.util.Hashtable;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+import datalog.Constant;
+import datalog.DatalogQuery;
+import datalog.Predicate;
+import datalog.PredicateElement;
+import datalog.Variable;
+
+/**
+ * Class MCDTable is shared by all the rewritings built from the same set of
+ * MCDs. It holds the information of the MCDs that every rewriting needs, in a
+ * form that is computed once:
+ *
+ * 1. every element (variable or constant) of the query gets an id; the
+ * constants of the body are numbered first, then the head variables, then
+ * the variables of the body in order of appearance (see VariableUnionFind)
+ *
+ * 2. for every MCD, the variable mapping is compiled into two arrays: the id of
+ * the query element of each pair and the slot of the view variable, i.e. the
+ * position of the first pair mapping to the same view variable
+ *
+ * 3. for every MCD, the slot of each head variable of the view (-1 if the
+ * head variable is not part of the mapping)
+ *
+ * 4. for every MCD, the ids of the query variables mapped to existential view
+ * variables
+ */
+public class MCDTable {
+
+	/** MCDs of the table */
+	private List<MCD> mcds;
+
+	/** query the MCDs were formed for */
+	private DatalogQuery query;
+
+	/** position of every MCD in the table, MCDs are compared by reference */
+	private IdentityHashMap<MCD, Integer> positions;
+
+	/** query elements, the position in the list is the id */
+	private List<PredicateElement> elements;
+
+	/** id of every query element name */
+	private Hashtable<String, Integer> elementIds;
+
+	/** per MCD and per pair of the variable mapping: id of the query element */
+	private int[][] queryIds;
+
+	/** per MCD and per pair of the variable mapping: slot of the view variable */
+	private int[][] viewSlots;
+
+	/** per MCD and per head variable of the view: slot of the variable or -1 */
+	private int[][] headSlots;
+
+	/** per MCD: ids of the query variables mapped to existential view variables */
+	private int[][] existentialIds;
+
+	/**
+	 * MCDTable constructor
+	 *
+	 * @param mcds
+	 *            MCDs formed for the query
+	 * @param query
+	 *            query provided by the user
+	 */
+	public MCDTable(List<MCD> mcds, DatalogQuery query) {
+		this.mcds = new ArrayList<MCD>(mcds);
+		this.query = query;
+		this.positions = new IdentityHashMap<MCD, Integer>();
+		this.elements = new ArrayList<PredicateElement>();
+		this.elementIds = new Hashtable<String, Integer>();
+
+		for (Predicate subgoal : query.getPredicates()) {
+			for (PredicateElement elem : subgoal.getElements()) {
+				if (elem instanceof Constant) {
+					addElement(elem);
+				}
+			}
+		}
+		for (Variable headVar : query.getHeadVariables()) {
+			addElement(headVar);
+		}
+		for (Predicate subgoal : query.getPredicates()) {
+			for (PredicateElement elem : subgoal.getElements()) {
+				addElement(elem);
+			}
+		}
+
+		queryIds = new int[mcds.size()][];
+		viewSlots = new int[mcds.size()][];
+		headSlots = new int[mcds.size()][];
+		existentialIds = new int[mcds.size()][];
+		for (int i = 0; i < mcds.size(); i++) {
+			positions.put(mcds.get(i), i);
+			compile(i, mcds.get(i));
+		}
+	}
+
+	/**
+	 * Gives an id to the query element if it has none yet.
+	 *
+	 * @param elem
+	 *            query element
+	 */
+	private void addElement(PredicateElement elem) {
+		if (!elementIds.containsKey(elem.name)) {
+			elementIds.put(elem.name, elements.size());
+			elements.add(elem);
+		}
+	}
+
+	/**
+	 * Compiles the mappings of the MCD at the given position.
+	 *
+	 * @param position
+	 *            position of the MCD in the table
+	 * @param mcd
+	 *            MCD to compile
+	 */
+	private void compile(int position, MCD mcd) {
+		MCDMappings mappings = mcd.mappings;
+		int size = mappings.varMapSize();
+
+		// view variable name -> slot
+		Hashtable<String, Integer> slots = new Hashtable<String, Integer>();
+
+		int[] ids = new int[size];
+		int[] slotOf = new int[size];
+		for (int i = 0; i < size; i++) {
+			addElement(mappings.getVarMapArgument(i));
+			ids[i] = elementIds.get(mappings.getVarMapArgument(i).name);
+
+			String viewVar = mappings.getVarMapValue(i).name;
+			Integer slot = slots.get(viewVar);
+			if (slot == null) {
+				slot = i;
+				slots.put(viewVar, slot);
+			}
+			slotOf[i] = slot;
+		}
+		queryIds[position] = ids;
+		viewSlots[position] = slotOf;
+
+		List<Variable> viewHead = mcd.view.getHeadVariables();
+		int[] head = new int[viewHead.size()];
+		for (int i = 0; i < head.length; i++) {
+			Integer slot = slots.get(viewHead.get(i).name);
+			head[i] = slot == null ? -1 : slot;
+		}
+		headSlots[position] = head;
+
+		List<PredicateElement> existential = mcd.findExistentialMappings();
+		int[] existentialVars = new int[existential.size()];
+		for (int i = 0; i < existentialVars.length; i++) {
+			existentialVars[i] = elementIds.get(existential.get(i).name);
+		}
+		existentialIds[position] = existentialVars;
+	}
+
+	/**
+	 * Returns the position of the MCD in the table.
+	 *
+	 * @param mcd
+	 *            MCD of the table
+	 * @return position of the MCD, -1 if it is not part of the table
+	 */
+	public int indexOf(MCD mcd) {
+		Integer position = positions.get(mcd);
+		return position == null ? -1 : position;
+	}
+
+	/**
+	 * Returns the MCD at the given position.
+	 *
+	 * @param index
+	 *            position of the MCD
+	 * @return MCD object
+	 */
+	public MCD getMCD(int index) {
+		return mcds.get(index);
+	}
+
+	/**
+	 * Returns the number of MCDs of the table.
+	 *
+	 * @return number of MCDs
+	 */
+	public int size() {
+		return mcds.size();
+	}
+
+	/**
+	 * Returns the query the MCDs were formed for.
+	 *
+	 * @return query object
+	 */
+	public DatalogQuery getQuery() {
+		return query;
+	}
+
+	/**
+	 * Returns the number of query elements.
+	 *
+	 * @return number of ids
+	 */
+	public int numberOfElements() {
+		return elements.size();
+	}
+
+	/**
+	 * Returns the query element with the given id.
+	 *
+	 * @param id
+	 *            element id
+	 * @return variable or constant of the query
+	 */
+	public PredicateElement getElement(int id) {
+		return elements.get(id);
+	}
+
+	/**
+	 * Returns the id of the query element with the given name.
+	 *
+	 * @param name
+	 *            name of the element
+	 * @return element id, -1 if the name is not an element of the query
+	 */
+	public int getElementId(String name) {
+		Integer id = elementIds.get(name);
+		return id == null ? -1 : id;
+	}
+
+	/**
+	 * Returns, for each pair of the variable mapping of the MCD, the id of the
+	 * query element.
+	 *
+	 * @param index
+	 *            position of the MCD
+	 * @return ids of the query elements
+	 */
+	public int[] getQueryIds(int index) {
+		return queryIds[index];
+	}
+
+	/**
+	 * Returns, for each pair of the variable mapping of the MCD, the slot of
+	 * the view variable.
+	 *
+	 * @param index
+	 *            position of the MCD
+	 * @return slots of the view variables
+	 */
+	public int[] getViewSlots(int index) {
+		return viewSlots[index];
+	}
+
+	/**
+	 * Returns, for each head variable of the view of the MCD, its slot in the
+	 * variable mapping (-1 if it is not mapped).
+	 *
+	 * @param index
+	 *            position of the MCD
+	 * @return slots of the head variables
+	 */
+	public int[] getHeadSlots(int index) {
+		return headSlots[index];
+	}
+
+	/**
+	 * Returns the ids of the query variables that the MCD maps to existential
+	 * view variables.
+	 *
+	 * @param index
+	 *            position of the MCD
+	 * @return ids of the query variables
+	 */
+	public int[] getExistentialIds(int index) {
+		return existentialIds[index];
+	}
+}
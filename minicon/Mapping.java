@@ -176,11 +176,12 @@ public class Mapping {
 	 * Return String that every argument-value pair.
 	 */
 	public String toString() {
-		String output = "";
+		StringBuilder output = new StringBuilder();
 		for (int i = 0; i < arguments.size(); i++) {
-			output += arguments.get(i) + " -> " + values.get(i) + "; ";
+			output.append(arguments.get(i)).append(" -> ")
+					.append(values.get(i)).append("; ");
 		}
-		return output;
+		return output.toString();
 	}
 
 }
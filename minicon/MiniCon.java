@@ -91,6 +91,8 @@ public class MiniCon {
 	 * -sql : SQL input mode;
 	 * 
 	 * -r : remove redundancies
+	 * 
+	 * -u : remove rewritings contained in another rewriting
 	 */
 	public static void main(String[] args) {
 		System.out.println("MiniCon Algorithm");
@@ -121,7 +123,8 @@ public class MiniCon {
 	 * The method will execute the actual algorithm. Three method calls will be
 	 * performed regarding to the three parts of the algorithm. 1. forming MCDs,
 	 * 2. combining MCDs, 3. remove redundancies; the last call depends on
-	 * whether argument -r is provided
+	 * whether argument -r is provided. With argument -u, the rewritings
+	 * contained in another rewriting are removed from the union.
 	 */
 	public void startMiniCon() {
 		formMCDs();		
@@ -129,6 +132,9 @@ public class MiniCon {
 		if (InputHandler.removeRedundant) {
 			removeRedundancies();
 		}
+		if (InputHandler.minimiseUnion) {
+			rewritings = ContainmentMinimiser.removeContainedRewritings(rewritings);
+		}
 	}
 
 	/**
@@ -203,9 +209,10 @@ public class MiniCon {
 	private void combineMCDs() {		
 		
 		List<List<MCD>> subsetList = findMCDSubset(mcds) ;
+		MCDTable table = new MCDTable(mcds, query);
 		for (List<MCD> mcdList : subsetList) {
 			if (isRewriting(mcdList)) {
-				rewritings.add(new Rewriting(mcdList, query));
+				rewritings.add(new Rewriting(mcdList, table));
 			}
 		}
 	}
@@ -28,13 +28,33 @@
  */
 package minicon;
 
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
 import java.lang.management.ManagementFactory;
 import java.util.ArrayList;
+import java.util.Hashtable;
 import java.util.List;
+import preference.Aggregation;
 import preference.Organiser;
 import preference.PreferencesFileParser;
+import statistics.CostModel;
+import statistics.JoinOrderOptimizer;
+import statistics.StatisticsCatalog;
+import statistics.StatisticsFileParser;
+import writer.DatalogWriter;
+import writer.RewritingWriter;
+import writer.SQLWriter;
 import datalog.DatalogQuery;
 import datalog.Predicate;
+import execution.Cursor;
+import execution.ExtensionCatalog;
+import execution.QueryEngine;
+import execution.Values;
 
 /**
  * 
@@ -51,6 +71,46 @@ public class MiniConPref {
 	
 	private static int testID;	
 	private static long numberOfRequiredRewritings;
+	
+	/** aggregation of the MCD ranks, null for the prioritisation semantics */
+	private static Aggregation aggregation;
+	
+	/**
+	 * maximum number of views a returned rewriting may share with each
+	 * rewriting returned before it, negative if the rewritings need not be
+	 * diverse
+	 */
+	private static int maxSharedViews = -1;
+
+	/** true to order the selected rewritings by estimated cost */
+	private static boolean orderByCost = false;
+
+	/** true to join the views of the executed or SQL rewritings in their best order */
+	private static boolean optimizeJoinOrder = false;
+
+	/** greatest estimated cost of a returned rewriting */
+	private static double maxCost = Double.POSITIVE_INFINITY;
+
+	/** format (datalog, ndjson or sql) of the output file, null to print */
+	private static String outputFormat;
+
+	/** file the rewritings are written to */
+	private static String outputFile;
+
+	/** directory of the view extensions, null not to execute the rewritings */
+	private static String extensionDirectory;
+
+	/** true to execute acyclic rewritings with semi-join reduction */
+	private static boolean semiJoinReduction = false;
+
+	/** number of threads of the joins of the executed rewritings */
+	private static int joinThreads = 1;
+
+	/** maximum number of answers of the executed rewritings, -1 for all */
+	private static long answerLimit = -1;
+
+	/** memory budget of the joins and of the answers in MB, 0 for none */
+	private static long memoryBudget = 0;
 
 	/** query Object used by algorithm */
 	private DatalogQuery query;
@@ -64,6 +124,18 @@ public class MiniConPref {
 	/** list of rewritings created by the algorithm */ 
 	private List<Rewriting> rewritings;
 
+	/** coverage domain of every query subgoal, computed from the MCDs */
+	private Hashtable<Predicate, List<MCD>> coverageDomains;
+
+	/**
+	 * identifier of the set of views, used together with the query to find
+	 * already formed MCDs in the MCDCache
+	 */
+	private String catalogVersion;
+
+	/** statistics of the views, used to order the rewritings by cost */
+	private StatisticsCatalog statistics;
+
 	/**
 	 * MiniCon constructor
 	 * 
@@ -77,6 +149,34 @@ public class MiniConPref {
 		this.views = views;
 		this.mcds = new ArrayList<MCD>();
 		this.rewritings = new ArrayList<Rewriting>();
+		this.catalogVersion = computeCatalogVersion(views);
+	}
+
+	/**
+	 * Computes a default catalog identifier from the view definitions, so
+	 * that a changed set of views never uses MCDs formed for another one.
+	 * 
+	 * @param views
+	 *            list of views
+	 * @return definitions of the views, one per line
+	 */
+	private static String computeCatalogVersion(List<DatalogQuery> views) {
+		StringBuilder definitions = new StringBuilder("views:");
+		for (DatalogQuery view : views) {
+			definitions.append('\n').append(view);
+		}
+		return definitions.toString();
+	}
+
+	/**
+	 * Sets the version of the set of views. The MCDs formed for the query are
+	 * reused as long as the catalog version does not change.
+	 * 
+	 * @param catalogVersion
+	 *            version of the set of views
+	 */
+	public void setCatalogVersion(long catalogVersion) {
+		this.catalogVersion = "version:" + catalogVersion;
 	}
 
 	/**
@@ -93,6 +193,8 @@ public class MiniConPref {
 	 * -sql : SQL input mode;
 	 * 
 	 * -r : remove redundancies
+	 * 
+	 * -u : remove rewritings contained in another rewriting
 	 */
 	public static void main(String[] args) throws Exception {
 		System.out.println("MiniCon WALO Algorithm");
@@ -100,16 +202,48 @@ public class MiniConPref {
 		//testID = 5;
 		//numberOfRequiredRewritings = 4;
 		
-		if (args.length < 1 || args.length > 2){
-			System.out.println("USAGE: java minicon.MiniConPref testId [numberOfRequiredRewritings]");
-			System.exit(1);
+		if (args.length < 1){
+			printUsage();
 		}
-		if (args.length == 1){
-			testID = Integer.valueOf(args[0]).intValue();
-			numberOfRequiredRewritings = 999999999999999999L; // all rewritings are desired !
-		} else {
-			testID = Integer.valueOf(args[0]).intValue();
-			numberOfRequiredRewritings = Long.valueOf(args[1]).longValue();
+		testID = Integer.valueOf(args[0]).intValue();
+		numberOfRequiredRewritings = 999999999999999999L; // all rewritings are desired !
+		for (int i = 1; i < args.length; i++){
+			if (Aggregation.fromName(args[i]) != null)
+				aggregation = Aggregation.fromName(args[i]);
+			else if (args[i].equals("-d") && i + 1 < args.length)
+				maxSharedViews = Integer.valueOf(args[++i]).intValue();
+			else if (args[i].equals("-u"))
+				InputHandlerPref.minimiseUnion = true;
+			else if (args[i].equals("-cost"))
+				orderByCost = true;
+			else if (args[i].equals("-o") && i + 2 < args.length){
+				outputFormat = args[++i];
+				outputFile = args[++i];
+			}
+			else if (args[i].equals("-x") && i + 1 < args.length)
+				extensionDirectory = args[++i];
+			else if (args[i].equals("-joinorder"))
+				optimizeJoinOrder = true;
+			else if (args[i].equals("-semijoin"))
+				semiJoinReduction = true;
+			else if (args[i].equals("-threads") && i + 1 < args.length)
+				joinThreads = Integer.valueOf(args[++i]).intValue();
+			else if (args[i].equals("-limit") && i + 1 < args.length)
+				answerLimit = Long.valueOf(args[++i]).longValue();
+			else if (args[i].equals("-memory") && i + 1 < args.length)
+				memoryBudget = Long.valueOf(args[++i]).longValue();
+			else if (args[i].equals("-maxcost") && i + 1 < args.length){
+				orderByCost = true;
+				maxCost = Double.valueOf(args[++i]).doubleValue();
+			}
+			else
+				numberOfRequiredRewritings = Long.valueOf(args[i]).longValue();
+		}
+		if (outputFormat != null && !RewritingWriter.isFormat(outputFormat)){
+			printUsage();
+		}
+		if (aggregation != null && maxSharedViews >= 0){
+			printUsage(); // diversity only applies to the prioritisation semantics
 		}
 		
 		long start = ManagementFactory.getThreadMXBean().getCurrentThreadUserTime();
@@ -120,13 +254,26 @@ public class MiniConPref {
 			mc.printQuery(); 			// commented for time evaluation
 			mc.printViews();			// commented for time evaluation			
 			mc.startMiniCon();
-			mc.printRewritings();		// commented for time evaluation
+			if (outputFormat != null)
+				mc.writeRewritings(outputFormat, outputFile);
+			else
+				mc.printRewritings();		// commented for time evaluation
+			if (extensionDirectory != null)
+				mc.executeRewritings(extensionDirectory);
 			
 		}	
 		long time = ManagementFactory.getThreadMXBean().getCurrentThreadUserTime() - start;
 		System.out.println("Done in: " + time/1000000.0 + " ms");
 	}
 
+	/**
+	 * Print the command line usage and exit
+	 */
+	private static void printUsage() {
+		System.out.println("USAGE: java minicon.MiniConPref testId [numberOfRequiredRewritings] [sum|product|min | -d maxSharedViews] [-u] [-cost | -maxcost maxCost] [-joinorder] [-o datalog|ndjson|sql file] [-x extensionDir [-semijoin] [-threads n] [-limit n] [-memory mb]]");
+		System.exit(1);
+	}
+
 	/**
 	 * The method will execute the actual algorithm. Three method calls will be
 	 * performed regarding to the three parts of the algorithm. 1. forming MCDs,
@@ -134,16 +281,28 @@ public class MiniConPref {
 	 * whether argument -r is provided
 	 */
 	public void startMiniCon() {
-				formMCDs();
+		MCDCache cached = MCDCache.lookup(query, catalogVersion);
+		if (cached != null) {
+			// MCDs were already formed for this query and these views
+			query = cached.getQuery();
+			mcds = cached.getMCDs();
+			coverageDomains = cached.getCoverageDomains();
+		} else {
+			formMCDs();
+			coverageDomains = Organiser.getCoverageDomains(mcds, query);
+			MCDCache.store(query, catalogVersion, mcds, coverageDomains);
+		}
+		
+		if ((orderByCost || optimizeJoinOrder) && statistics == null) {
+			statistics = StatisticsFileParser.readStatistics("statistics.xml", testID);
+		}
 		
 		/*C.BA*/ 
 		// set the MCD preferences ...
 		try {
 			
 			PreferencesFileParser.setMCDPreferences (mcds, "preferences.xml", testID); 
-			Organiser.createOrganiser(mcds, query); 
-				
-			rewritings = Organiser.getDesiredNumberOfRewritings(query, numberOfRequiredRewritings);	
+			selectRewritings();
 	
 		} catch (Exception e) {
 			e.printStackTrace();
@@ -154,6 +313,120 @@ public class MiniConPref {
 			
 	}
 
+	/**
+	 * Applies the preferences with the given id again and selects the
+	 * rewritings. The MCDs and the coverage domains computed by startMiniCon
+	 * are reused, only the ranking of the MCDs and the selection of the
+	 * rewritings are performed.
+	 * 
+	 * @param preferenceID
+	 *            id of the preference in the preferences file
+	 * @throws IllegalStateException
+	 *             if startMiniCon has not been called
+	 */
+	public void rerank(int preferenceID) throws Exception {
+		checkStarted();
+		PreferencesFileParser.setMCDPreferences(mcds, "preferences.xml", preferenceID);
+		selectRewritings();
+	}
+
+	/**
+	 * Applies the given ranks <view name, rank> and selects the rewritings
+	 * again, without parsing the preferences file.
+	 * 
+	 * @param ranks
+	 *            rank of every view
+	 * @throws IllegalStateException
+	 *             if startMiniCon has not been called
+	 */
+	public void rerank(Hashtable<String, String> ranks) {
+		checkStarted();
+		PreferencesFileParser.setMCDPreferences(mcds, ranks);
+		selectRewritings();
+	}
+
+	/**
+	 * Fails if the MCDs and the coverage domains have not been computed yet,
+	 * rather than passing null coverage domains to the Organiser.
+	 */
+	private void checkStarted() {
+		if (coverageDomains == null) {
+			throw new IllegalStateException(
+					"startMiniCon must be called before rerank");
+		}
+	}
+
+	/**
+	 * Ranks the coverage domains with the current ranks of the MCDs and
+	 * selects the desired number of rewritings, either with the prioritisation
+	 * semantics or, if an aggregation is set, by aggregated score. With
+	 * option -u, the selected rewritings contained in another selected
+	 * rewriting are removed afterwards, so fewer rewritings than desired may
+	 * be returned. With option -cost, the selected rewritings are finally
+	 * ordered by estimated cost (see CostModel), the preferences deciding
+	 * between rewritings of the same cost.
+	 */
+	private void selectRewritings() {
+		Organiser.createOrganiser(coverageDomains, query);
+		if (aggregation != null)
+			rewritings = Organiser.getBestRewritings(query, numberOfRequiredRewritings, aggregation);
+		else if (maxSharedViews >= 0)
+			rewritings = Organiser.getDiverseRewritings(query, numberOfRequiredRewritings, maxSharedViews);
+		else
+			rewritings = Organiser.getDesiredNumberOfRewritings(query, numberOfRequiredRewritings);
+		if (InputHandlerPref.minimiseUnion)
+			rewritings = ContainmentMinimiser.removeContainedRewritings(rewritings);
+		if (orderByCost)
+			rewritings = new CostModel(statistics).orderByCost(rewritings, maxCost);
+	}
+
+	/**
+	 * Requires the returned rewritings to be diverse: each rewriting shares at
+	 * most maxShared views with every rewriting returned before it.
+	 * 
+	 * @param maxShared
+	 *            maximum number of shared views, negative to disable
+	 */
+	public static void setMaxSharedViews(int maxShared) {
+		maxSharedViews = maxShared;
+	}
+
+	/**
+	 * Orders the selected rewritings by estimated cost.
+	 * 
+	 * @param order
+	 *            true to order the rewritings by cost
+	 * @param max
+	 *            greatest estimated cost of a returned rewriting,
+	 *            Double.POSITIVE_INFINITY to return all of them
+	 */
+	public static void setOrderByCost(boolean order, double max) {
+		orderByCost = order;
+		maxCost = max;
+	}
+
+	/**
+	 * Sets the statistics of the views used to estimate the cost of the
+	 * rewritings, instead of reading them from statistics.xml.
+	 * 
+	 * @param stats
+	 *            statistics of the views
+	 */
+	public void setStatistics(StatisticsCatalog stats) {
+		statistics = stats;
+	}
+
+	/**
+	 * Sets the aggregation of the MCD ranks used to select the rewritings.
+	 * 
+	 * @param aggr
+	 *            sum, product or min of the ranks; null to use the
+	 *            prioritisation semantics
+	 */
+	public static void setAggregation(Aggregation aggr) {
+		aggregation = aggr;
+	}
+
 	/**
 	 * The method will create the MCDs that are possible for the given query and
 	 * views. Every subgoal of the query will be considered separately. For each
@@ -251,8 +524,109 @@ public class MiniConPref {
 	private void printRewritings() {
 		if (!rewritings.isEmpty()) {
 			System.out.println("\nRewriting(s):");
-			for (Rewriting rw : rewritings) {
-				System.out.println(rw);
+			try {
+				RewritingWriter writer = new DatalogWriter((Appendable) System.out);
+				writer.writeAll(rewritings);
+				writer.flush();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * Executes the union of the rewritings over the view extensions read from
+	 * a directory (see ExtensionCatalog) and prints the answers.
+	 * 
+	 * @param directory
+	 *            directory of the view extensions
+	 */
+	public void executeRewritings(String directory) {
+		try {
+			QueryEngine engine = new QueryEngine(ExtensionCatalog.load(directory));
+			engine.setSemiJoinReduction(semiJoinReduction);
+			engine.setThreads(joinThreads);
+			engine.setMemoryBudget(memoryBudget << 20);
+			if (optimizeJoinOrder)
+				engine.setJoinOrderOptimizer(new JoinOrderOptimizer(statistics));
+			Cursor answers = engine.openUnion(rewritings, answerLimit >= 0);
+			if (answers != null) {
+				printAnswers(answers, rewritings.get(0).getRewriting()
+						.getHeadVariables().size());
+			}
+		} catch (IOException e) {
+			System.out.println("Extensions cannot be read from " + directory + ": " + e.getMessage());
+		} catch (IllegalArgumentException e) {
+			System.out.println("Rewritings cannot be executed: " + e.getMessage());
+		} catch (UncheckedIOException e) {
+			System.out.println("Rewritings cannot be executed: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Prints the answers as they are pulled from the cursor, one per line,
+	 * followed by their number; with option -limit, only the first ones are
+	 * pulled.
+	 * 
+	 * @param answers
+	 *            cursor over the distinct answers
+	 * @param arity
+	 *            number of head variables
+	 */
+	private void printAnswers(Cursor answers, int arity) {
+		PrintWriter out = new PrintWriter(new BufferedWriter(
+				new OutputStreamWriter(System.out)));
+		out.println("\nAnswers:");
+		long count = 0;
+		StringBuilder answer = new StringBuilder();
+		try {
+			while ((answerLimit < 0 || count < answerLimit) && answers.next()) {
+				answer.setLength(0);
+				answer.append('(');
+				for (int c = 0; c < arity; c++) {
+					if (c > 0) {
+						answer.append(',');
+					}
+					answer.append(Values.toString(answers.get(c)));
+				}
+				out.println(answer.append(')'));
+				count++;
+			}
+		} finally {
+			// deletes the temporary files of the answers not pulled
+			answers.close();
+		}
+		out.println(count + " answer(s)");
+		out.flush();
+	}
+
+	/**
+	 * Writes the rewritings to a file.
+	 * 
+	 * @param format
+	 *            datalog, ndjson or sql
+	 * @param fileName
+	 *            name of the file
+	 */
+	public void writeRewritings(String format, String fileName) {
+		OutputStream out = null;
+		try {
+			out = new FileOutputStream(fileName);
+			RewritingWriter writer = RewritingWriter.forFormat(format, out);
+			if (optimizeJoinOrder && writer instanceof SQLWriter)
+				((SQLWriter) writer).setJoinOrderOptimizer(new JoinOrderOptimizer(statistics));
+			writer.writeAll(rewritings);
+			writer.flush();
+			System.out.println("\n" + rewritings.size() + " rewriting(s) written to " + fileName);
+		} catch (IOException e) {
+			e.printStackTrace();
+		} finally {
+			if (out != null) {
+				try {
+					out.close();
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
 			}
 		}
 	}
@@ -1,12 +1,18 @@
 package minicon;
 
 import java.util.ArrayList;
+import java.util.Hashtable;
 import java.util.List;
 
+import preference.Aggregation;
+import converter.Converter;
+import converter.SQLQuery;
+import datalog.Constant;
 import datalog.DatalogQuery;
 import datalog.InterpretedPredicate;
 import datalog.Predicate;
 import datalog.PredicateElement;
+import datalog.SymbolTable;
 import datalog.Variable;
 
 /**
@@ -21,30 +27,37 @@ import datalog.Variable;
 
 public class Rewriting {
 
-	/** list of MCDs that form the rewriting */
-	private List<MCD> mcds; 
-
 	/** starting query that will be expressed by the rewriting */
 	private DatalogQuery query;
 
+	/** table shared by the rewritings built from the same set of MCDs */
+	private MCDTable table;
+
+	/** position of each MCD of the rewriting in the MCD table */
+	private int[] mcdIndexes;
+
+	/**
+	 * per MCD of the rewriting and per slot of its variable mapping: id of the
+	 * query element the view variable is mapped to (before taking the
+	 * representatives)
+	 */
+	private int[][] slotElements;
+
+	/** representatives of the query elements equated by the rewriting */
+	private VariableUnionFind representatives;
+
 	/** interpreted predicates that contain variable mapped to view head variable */
 	private List<InterpretedPredicate> interpretedPreds;
 
-	/** final rewriting of the query */
+	/** final rewriting of the query, null until it is materialised */
 	private DatalogQuery rewriting;
 
 	/**
 	 * Rewriting constructor
 	 * 
-	 * When creating a new Rewriting object the method setRewritingMapping will
-	 * be called. This method will determine a mapping from head variables of
-	 * the views, contained in the rewriting, to variables of the query.
-	 * 
-	 * Then, the method addInterpretedPredicates will add necessary interpreted
-	 * predicates to the list interpredPreds.
-	 * 
-	 * Finally, setRewritingQuery will be called in order to create an object of
-	 * type DatalogQuery that represents the final rewriting of the query.
+	 * Builds an MCDTable for the given MCDs only. When several rewritings are
+	 * built from the same set of MCDs, the constructor taking the shared
+	 * MCDTable should be used instead.
 	 * 
 	 * @param mcds
 	 *            MCDs that form the rewriting
@@ -52,98 +65,189 @@ public class Rewriting {
 	 *            represented by the rewriting
 	 */
 	public Rewriting(List<MCD> mcds, DatalogQuery query) {
-		this.mcds = new ArrayList<MCD>();
-		this.interpretedPreds = new ArrayList<InterpretedPredicate>();
-		this.mcds.addAll(mcds);
-		this.query = query;
-
-		setRewritingMapping();
-		addInterpretedPredicates();
-		setRewritingQuery();
+		this(mcds, new MCDTable(mcds, query));
 	}
 
 	/**
-	 * Called by the contructor. This method will map head variables of the
-	 * views contained in the rewriting to variables or constants of the query.
+	 * Rewriting constructor
 	 * 
-	 * A temporary mapping will be maintained (named 'represents'). It is a
-	 * mapping from a query variable or constant to its representativ. In most
-	 * cases the variable or constant is mapped to itself.
+	 * @param mcds
+	 *            MCDs that form the rewriting
+	 * @param table
+	 *            MCD table containing the MCDs, shared by the rewritings built
+	 *            from the same set of MCDs
+	 */
+	public Rewriting(List<MCD> mcds, MCDTable table) {
+		this(indexesOf(mcds, table), table);
+	}
+
+	/**
+	 * Rewriting constructor
 	 * 
-	 * For each MCD part of the rewriting, the following will be performed:
+	 * The rewriting is only a handle on the MCDs of the table: nothing but the
+	 * positions of the MCDs is stored. The DatalogQuery representing the
+	 * rewriting is materialised when it is first needed (getRewriting,
+	 * toString, removeRedundancies or the conversion to SQL):
 	 * 
-	 * For every "query element - view variable" pair, test if view variable was
-	 * already mapped in the current MCD.
+	 * The method setRewritingMapping will determine a mapping from head
+	 * variables of the views, contained in the rewriting, to variables of the
+	 * query.
 	 * 
-	 * 1. case - view variable has not been mapped before: if representative
-	 * mapping does not contain the current query element, add the mapping
-	 * "query element -> query element". Add "view variable -> query elem" to
-	 * the rewriting mapping. On the other hand, if there is already a
-	 * representative for the current query variable, add "view variable ->
-	 * representative" to the rewriting mapping.
+	 * Then, the method addInterpretedPredicates will add necessary interpreted
+	 * predicates to the list interpredPreds.
 	 * 
-	 * 2. case - view variable has been mapped before: Obtain the mapping value
-	 * (represent) to that the view variable has been mapped before from the
-	 * rewriting mapping. Add to representative mapping "query elem ->
-	 * represent". Also add "view variable -> represent" to rewriting mapping.
+	 * Finally, setRewritingQuery will be called in order to create an object of
+	 * type DatalogQuery that represents the final rewriting of the query.
+	 * 
+	 * @param mcdIndexes
+	 *            positions in the table of the MCDs that form the rewriting,
+	 *            the array is not copied
+	 * @param table
+	 *            MCD table containing the MCDs, shared by the rewritings built
+	 *            from the same set of MCDs
 	 */
-	private void setRewritingMapping() {
+	public Rewriting(int[] mcdIndexes, MCDTable table) {
+		this.query = table.getQuery();
+		this.table = table;
+		this.mcdIndexes = mcdIndexes;
+	}
 
-		// temporary mapping to have a representatives for each query variable
-		Mapping represents = new Mapping();
+	/**
+	 * Returns the positions of the given MCDs in the table.
+	 * 
+	 * @param mcds
+	 *            MCDs of the table
+	 * @param table
+	 *            MCD table
+	 * @return positions of the MCDs
+	 */
+	private static int[] indexesOf(List<MCD> mcds, MCDTable table) {
+		int[] indexes = new int[mcds.size()];
+		for (int i = 0; i < indexes.length; i++) {
+			indexes[i] = table.indexOf(mcds.get(i));
+		}
+		return indexes;
+	}
 
-		for (MCD mcd : mcds) {
+	/**
+	 * Builds the DatalogQuery representing the rewriting, if not done yet.
+	 */
+	private void materialise() {
+		if (rewriting == null) {
+			interpretedPreds = new ArrayList<InterpretedPredicate>();
+			setRewritingMapping();
+			addInterpretedPredicates();
+			setRewritingQuery();
+			// only needed to build the query
+			slotElements = null;
+			representatives = null;
+		}
+	}
 
-			// get reference for rewritingMapping from mappings object of class
-			// MCD
-			Mapping rewritingMap = mcd.mappings.rewritingMap;
+	/**
+	 * Returns the number of MCDs of the rewriting.
+	 * 
+	 * @return number of MCDs
+	 */
+	public int numberOfMCDs() {
+		return mcdIndexes.length;
+	}
 
-			// list of variables that are already mapped
-			List<Variable> alreadyMapped = new ArrayList<Variable>();
+	/**
+	 * Returns the MCD at the given position of the rewriting.
+	 * 
+	 * @param i
+	 *            position of the MCD in the rewriting
+	 * @return MCD object
+	 */
+	public MCD getMCD(int i) {
+		return table.getMCD(mcdIndexes[i]);
+	}
 
-			for (int i = 0; i < mcd.mappings.varMapSize(); i++) {
+	/**
+	 * Returns the positions of the MCDs of the rewriting in the MCD table.
+	 * 
+	 * @return positions of the MCDs, must not be modified
+	 */
+	public int[] getMCDIndexes() {
+		return mcdIndexes;
+	}
 
-				PredicateElement queryElem = mcd.mappings.getVarMapArgument(i);
-				Variable viewVar = mcd.mappings.getVarMapValue(i);
+	/**
+	 * Returns the MCD table the rewriting refers to.
+	 * 
+	 * @return MCD table
+	 */
+	public MCDTable getTable() {
+		return table;
+	}
 
-				// view variable has not been mapped before
-				if (!alreadyMapped.contains(viewVar)) {
-					alreadyMapped.add(viewVar);
+	/**
+	 * Aggregates the ranks of the MCDs of the rewriting. The rewriting is not
+	 * materialised.
+	 * 
+	 * @param aggregation
+	 *            sum, product or min of the ranks
+	 * @return score of the rewriting
+	 */
+	public double getScore(Aggregation aggregation) {
+		double score = aggregation.identity();
+		for (int i = 0; i < mcdIndexes.length; i++) {
+			score = aggregation.combine(score, getMCD(i).getRank());
+		}
+		return score;
+	}
+
+	/**
+	 * Called by materialise. This method will map head variables of the
+	 * views contained in the rewriting to variables or constants of the query.
+	 * 
+	 * The query elements are identified by their id in the MCD table. A
+	 * union-find structure over these ids maintains a representative for each
+	 * query element; at the beginning every element represents itself.
+	 * 
+	 * For each MCD part of the rewriting, the compiled variable mapping of the
+	 * table is traversed. Every "query element - view variable" pair belongs to
+	 * the slot of the view variable, i.e. the first pair of the MCD mapping to
+	 * the same view variable:
+	 * 
+	 * 1. case - the pair is the first one of its slot: the view variable is
+	 * mapped to the query element.
+	 * 
+	 * 2. case - the view variable has been mapped before in the MCD: the query
+	 * element and the element the view variable is mapped to are equated, i.e.
+	 * their sets are merged in the union-find structure.
+	 * 
+	 * The representatives are only taken when the rewriting query is built,
+	 * so that every view variable gets the final representative of its query
+	 * element. The representative of a set is its element with the smallest
+	 * id: constants of the query are preferred, then its head variables (see
+	 * VariableUnionFind).
+	 */
+	private void setRewritingMapping() {
 
-					// there is no yet a representative for the query variable
-					if (!represents.containsArgument(queryElem)) {
+		representatives = new VariableUnionFind(table.numberOfElements());
+		slotElements = new int[mcdIndexes.length][];
 
-						represents.map(queryElem, queryElem);
+		for (int m = 0; m < mcdIndexes.length; m++) {
 
-						// add mapping from view variable to query element
-						rewritingMap.map(viewVar, queryElem);
+			int[] queryIds = table.getQueryIds(mcdIndexes[m]);
+			int[] viewSlots = table.getViewSlots(mcdIndexes[m]);
+			int[] elements = new int[queryIds.length];
 
-						// there is already a representative for the query
-						// variable
-					} else {
-						PredicateElement represent = represents
-								.getFirstMatchingValue(queryElem);
+			for (int i = 0; i < queryIds.length; i++) {
+				int slot = viewSlots[i];
 
-						// add mapping from view variable to reprentative of
-						// query variable
-						rewritingMap.map(viewVar, represent);
-					}
+				// view variable has not been mapped before
+				if (slot == i) {
+					elements[i] = queryIds[i];
 
 					// same view variable has been mapped before
 				} else {
-					PredicateElement represent = rewritingMap
-							.getFirstMatchingValue(viewVar);
-					// this query element gets same represantative as
-					// the one that was relevant when the view variable
-					// was mapped before
-					represents.map(queryElem, represent);
-
-					// add mapping from view variable to reprentative of
-					// query variable
-					rewritingMap.map(viewVar, represent);
+					representatives.union(elements[slot], queryIds[i]);
 				}
-
 			}
+			slotElements[m] = elements;
 		}
 	}
 
@@ -154,19 +258,18 @@ public class Rewriting {
 	 */
 	private void addInterpretedPredicates() {
 
+		// query variables mapped to an existential variable by one of the mcds
+		boolean[] existential = new boolean[table.numberOfElements()];
+		for (int m = 0; m < mcdIndexes.length; m++) {
+			for (int id : table.getExistentialIds(mcdIndexes[m])) {
+				existential[id] = true;
+			}
+		}
+
 		// iterate through interpreted predicates of the query
 		for (InterpretedPredicate pred : query.getInterpretedPredicates()) {
-			Variable var = pred.getVariable();
-
-			boolean containsExistentVar = false;
-			// if one of the mcd contains a mapping from Variable var
-			// to an existential variable set boolean value to true
-			for (MCD mcd : mcds) {
-				List existentVars = mcd.findExistentialMappings();
-				if (existentVars.contains(var)) {
-					containsExistentVar = true;
-				}
-			}
+			int id = table.getElementId(pred.getVariable().name);
+			boolean containsExistentVar = id >= 0 && existential[id];
 
 			// only add interpreted predicate if its variable is not mapped to
 			// an existential variable and if not already included in the list
@@ -177,15 +280,17 @@ public class Rewriting {
 	}
 
 	/**
-	 * Called by the constructor. This method will create an object of type
+	 * Called by materialise. This method will create an object of type
 	 * DatalogQuery that represents the actual rewriting of the query.
 	 * 
-	 * 1. Use the same head variables
+	 * 1. Use the same head variables. A head variable whose representative is
+	 * a constant is not bound by the views: the predicate "variable =
+	 * constant" is added, e.g. Q(X) :- V1('c'), X = 'c'.
 	 * 
-	 * 2. Add views contained in the MCDs to the rewriting. Use rewriting
-	 * mapping to obtain a mapping from view head variables to variables or
-	 * constants of the query. If a head variable of the view is not covered by
-	 * the rewriting mapping, use "_" instead.
+	 * 2. Add views contained in the MCDs to the rewriting. Use the rewriting
+	 * mapping and the representatives to obtain a mapping from view head
+	 * variables to variables or constants of the query. If a head variable of
+	 * the view is not covered by the rewriting mapping, use "_" instead.
 	 * 
 	 * 3. Add interpreted predicates to the rewriting.
 	 * 
@@ -196,20 +301,25 @@ public class Rewriting {
 
 		for (Variable headVar : query.getHeadVariables()) {
 			rewriting.addHeadVariable(headVar);
+			int id = table.getElementId(headVar.name);
+			PredicateElement represent = table.getElement(representatives
+					.find(id));
+			if (represent instanceof Constant) {
+				rewriting.addInterpretedPredicate(new InterpretedPredicate(
+						headVar, represent, "="));
+			}
 		}
 
-		for (MCD mcd : mcds) {
+		for (int m = 0; m < mcdIndexes.length; m++) {
 
+			MCD mcd = getMCD(m);
 			Predicate view = new Predicate(mcd.view.getName());
 			rewriting.addPredicate(view);
-			Mapping rewritingMap = mcd.mappings.rewritingMap;
-			for (Variable var : mcd.view.getHeadVariables()) {
-
-				PredicateElement rwVar = rewritingMap
-						.getFirstMatchingValue(var);
 
-				if (rwVar != null) {
-					view.addElement(rwVar);
+			for (int slot : table.getHeadSlots(mcdIndexes[m])) {
+				if (slot >= 0) {
+					int id = representatives.find(slotElements[m][slot]);
+					view.addElement(table.getElement(id));
 				} else {
 					view.addVariable(new Variable("_"));
 				}
@@ -226,82 +336,75 @@ public class Rewriting {
 	/**
 	 * This is one approach to remove reduntant views (subgoals) from a
 	 * rewriting. The method iterates through the list of subgoals of the
-	 * rewriting and uses method insertNonRedundant(List <Predicate) to add non
-	 * redundant subgoals to a list. In the end, the list will not contain
-	 * redundant subgoals. Note, the subgoals are not redundant regarding to the
-	 * approach of reducing redundancies used here, however, further reductions
-	 * may still be possible.
+	 * rewriting and adds each of them to a list of non redundant subgoals:
+	 * 
+	 * 1. if the subgoal can substitute a subgoal of the list (see
+	 * canSubstitutePred), the first such subgoal is removed and the unifier of
+	 * both subgoals (see findUnifer) is added at the end of the list
+	 * 
+	 * 2. otherwise the subgoal is added at the end of the list
+	 * 
+	 * Only subgoals with the same name and number of elements can substitute
+	 * each other, so the subgoals of the list are grouped by (name, arity) in
+	 * a hash table, and only the group of the subgoal is searched. Removed
+	 * subgoals are left as null in the list and skipped at the end.
+	 * 
+	 * In the end, the list will not contain redundant subgoals. Note, the
+	 * subgoals are not redundant regarding to the approach of reducing
+	 * redundancies used here, however, further reductions may still be
+	 * possible.
 	 */
 	public void removeRedundancies() {
 
+		materialise();
 		List<Predicate> preds = rewriting.getPredicates();
-		List<Predicate> noRedundant = new ArrayList<Predicate>();
 
-		for (Predicate pred : preds) {
-			noRedundant = insertNonRedundant(pred, noRedundant);
-		}
-		rewriting.setPredicates(noRedundant);
-	}
-
-	/**
-	 * The method gets a predicate and a list of predicates as arguments. It
-	 * iterates through the list and checks whether it is possible to substitute
-	 * an element of the list with the given predicate. This is tested by using
-	 * method canSubstitutePred. If that is the case, method findUnifer will be
-	 * called to obtain the unifer between the new predicate and the predicate
-	 * in the list. In the other case, if predicate cannot subsititute one of
-	 * the elements in the list, it will be added as new element to the list.
-	 * 
-	 * @param pred
-	 *            Predicate to be added to the list as substitude or new element
-	 * @param list
-	 *            list of non redundant subgoals
-	 * @return list of non redundant subgoals
-	 */
-	private List<Predicate> insertNonRedundant(Predicate pred,
-			List<Predicate> list) {
+		// subgoals in the order of insertion, null if removed
+		List<Predicate> inserted = new ArrayList<Predicate>(preds.size());
 
-		List<Predicate> newList = new ArrayList<Predicate>();
+		// positions in 'inserted' of the kept subgoals of each (name, arity)
+		Hashtable<Long, List<Integer>> groups = new Hashtable<Long, List<Integer>>();
 
-		// make copy of list
-		newList.addAll(list);
-
-		// first time method is called
-		if (newList.isEmpty()) {
-			newList.add(pred);
+		for (Predicate pred : preds) {
+			Long key = ((long) pred.getSymbol() << 32) | pred.numberOfElements();
+			List<Integer> group = groups.get(key);
+			if (group == null) {
+				group = new ArrayList<Integer>();
+				groups.put(key, group);
+			}
 
-		} else {
-			// iterate through list with non redundant subgoals
-			for (Predicate oldPred : list) {
+			Predicate newPred = pred;
+			for (int i = 0; i < group.size(); i++) {
+				Predicate oldPred = inserted.get(group.get(i));
 
-				// predicate can substitude on of the elements of the list
+				// predicate can substitude one of the kept subgoals
 				if (canSubstitutePred(pred, oldPred)) {
-					newList.remove(oldPred);
-
-					// get unifer
-					Predicate newPred = findUnifer(pred, oldPred);
-
-					// add unifer to list
-					newList.add(newPred);
-					return newList; // don't add any other predicate and return
+					inserted.set(group.get(i), null);
+					group.remove(i);
+					newPred = findUnifer(pred, oldPred);
+					break;
 				}
 			}
-			// no subsitute has been found -> add predicate to list
-			newList.add(pred);
+			group.add(inserted.size());
+			inserted.add(newPred);
 		}
-		return newList;
+
+		List<Predicate> noRedundant = new ArrayList<Predicate>();
+		for (Predicate pred : inserted) {
+			if (pred != null) {
+				noRedundant.add(pred);
+			}
+		}
+		rewriting.setPredicates(noRedundant);
 	}
 
 	/**
-	 * This method determines equality of two Rewriting subgoals.
-	 * 
+	 * This method determines equality of two Rewriting subgoals with the same
+	 * name and the same number of elements.
 	 * 
-	 * It gets two Predicate objects as arguments which are compared with each
-	 * other. If the predicates' names don't equal and the number of predicate
-	 * elements is not the same, false will be returned immediately. Otherwise,
-	 * the elements of each predicate are tested. False will be return if the
-	 * predicate elements don't equal and the element of the second predicate is
-	 * not '_'.
+	 * The elements of each predicate are compared by their interned symbols.
+	 * False will be return if the predicate elements don't equal and none of
+	 * them is '_'.
 	 * 
 	 * 1. Example: pred1(x,y,z) - pred2(x,y,_)
 	 * 
@@ -320,22 +423,17 @@ public class Rewriting {
 	 */
 	private boolean canSubstitutePred(Predicate pred, Predicate oldPred) {
 
-		if (!(pred.name.equals(oldPred.name) && (pred.numberOfElements() == oldPred
-				.numberOfElements()))) {
-			return false;
-		} else {
-
-			for (int i = 0; i < pred.numberOfElements(); i++) {
+		for (int i = 0; i < pred.numberOfElements(); i++) {
 
-				String name1 = pred.getElement(i).name;
-				String name2 = oldPred.getElement(i).name;
+			int symbol1 = pred.getElement(i).getSymbol();
+			int symbol2 = oldPred.getElement(i).getSymbol();
 
-				if (!name1.equals(name2) && !name2.equals("_") && !name1.equals("_")) {
-					return false;
-				}
+			if (symbol1 != symbol2 && symbol2 != SymbolTable.UNDERSCORE
+					&& symbol1 != SymbolTable.UNDERSCORE) {
+				return false;
 			}
-			return true;
 		}
+		return true;
 	}
 
 	/**
@@ -358,10 +456,7 @@ public class Rewriting {
 
 		for (int i = 0; i < oldPred.numberOfElements(); i++) {
 
-			String name1 = pred.getElement(i).name;
-			String name2 = oldPred.getElement(i).name;
-
-			if (name2.equals("_")) {
+			if (oldPred.getElement(i).getSymbol() == SymbolTable.UNDERSCORE) {
 				newPred.addElement(pred.getElement(i));
 			} else {
 				newPred.addElement(oldPred.getElement(i));
@@ -376,6 +471,7 @@ public class Rewriting {
 	 * @return rewriting
 	 */
 	public DatalogQuery getRewriting() {
+		materialise();
 		return rewriting;
 	}
 
@@ -383,7 +479,16 @@ public class Rewriting {
 	 * Overwrites Object method. Prints out the DatalogQuery object rewriting.
 	 */
 	public String toString() {
-		return rewriting.toString();
+		return getRewriting().toString();
+	}
+
+	/**
+	 * Converts the rewriting to an SQL statement.
+	 * 
+	 * @return SQLQuery object
+	 */
+	public SQLQuery toSQL() {
+		return new Converter().convertToSQL(this);
 	}
 
 }
@@ -0,0 +1,86 @@
+/*
+ *   Copyright 2015 Cheikh BA <cheikh.ba.sn@gmail.com>
+ *
+ *   This file is part of WALO.
+ *
+ *   WALO is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Lesser General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   WALO is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Lesser General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Lesser General Public License,
+ *   along with WALO.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package minicon;
+
+/**
+ * Class VariableUnionFind is a union-find (disjoint sets) structure over the
+ * ids of the query elements (see MCDTable). It is used to equate query
+ * variables that are mapped to the same view variable.
+ *
+ * The representative of a set is always its smallest id. As the MCDTable
+ * numbers the constants of the query first, then its head variables, a
+ * constant is preferred as representative over a variable, and a head
+ * variable over an existential one. E.g. for the query Q(X) :- p('c', X) and
+ * the view V1(A) :- p(A, A), 'c' and X are equated and the rewriting is
+ * Q(X) :- V1('c'): taking X as representative would drop the constant and
+ * return tuples of V1 other than 'c'.
+ */
+public class VariableUnionFind {
+
+	/** parent of every id, an id is a representative if it is its own parent */
+	private int[] parent;
+
+	/**
+	 * VariableUnionFind constructor. Every id is initially in its own set.
+	 *
+	 * @param size
+	 *            number of ids
+	 */
+	public VariableUnionFind(int size) {
+		parent = new int[size];
+		for (int i = 0; i < size; i++) {
+			parent[i] = i;
+		}
+	}
+
+	/**
+	 * Returns the representative of the set containing the given id. Paths are
+	 * halved on the way up.
+	 *
+	 * @param id
+	 *            element id
+	 * @return id of the representative
+	 */
+	public int find(int id) {
+		while (parent[id] != id) {
+			parent[id] = parent[parent[id]];
+			id = parent[id];
+		}
+		return id;
+	}
+
+	/**
+	 * Merges the sets containing the given ids.
+	 *
+	 * @param id1
+	 *            first element id
+	 * @param id2
+	 *            second element id
+	 */
+	public void union(int id1, int id2) {
+		int root1 = find(id1);
+		int root2 = find(id2);
+		if (root1 < root2) {
+			parent[root2] = root1;
+		} else if (root2 < root1) {
+			parent[root1] = root2;
+		}
+	}
+}
@@ -0,0 +1,141 @@
+/*
+ *   Copyright 2015 Cheikh BA <cheikh.ba.sn@gmail.com>
+ *
+ *   This file is part of WALO.
+ *
+ *   WALO is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Lesser General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   WALO is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Lesser General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Lesser General Public License,
+ *   along with WALO.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package preference;
+
+/**
+ * Aggregation of the ranks of the MCDs of a rewriting into a single score.
+ * A rewriting with a higher score is preferred.
+ *
+ * Besides combining the ranks, every aggregation gives an optimistic bound of
+ * the score of the rewritings that extend a partial cover, from the best rank
+ * available for each subgoal that is not covered yet. Every remaining MCD
+ * covers at least one of these subgoals, and its rank is at most the best rank
+ * of that subgoal. The bounds of PRODUCT assume that ranks are not negative.
+ */
+public enum Aggregation {
+
+	/** sum of the ranks */
+	SUM,
+
+	/** product of the ranks */
+	PRODUCT,
+
+	/** rank of the worst MCD */
+	MIN;
+
+	/**
+	 * Returns the score of an empty partial cover.
+	 *
+	 * @return neutral element of the aggregation
+	 */
+	public double identity() {
+		switch (this) {
+		case SUM:
+			return 0;
+		case PRODUCT:
+			return 1;
+		default:
+			return Double.POSITIVE_INFINITY;
+		}
+	}
+
+	/**
+	 * Adds the rank of an MCD to the score of a partial cover.
+	 *
+	 * @param score
+	 *            score of the partial cover
+	 * @param rank
+	 *            rank of the added MCD
+	 * @return score of the extended partial cover
+	 */
+	public double combine(double score, double rank) {
+		switch (this) {
+		case SUM:
+			return score + rank;
+		case PRODUCT:
+			return score * rank;
+		default:
+			return Math.min(score, rank);
+		}
+	}
+
+	/**
+	 * Returns an upper bound of the score of every rewriting that extends a
+	 * partial cover.
+	 *
+	 * @param score
+	 *            score of the partial cover
+	 * @param bestRanks
+	 *            best rank of the coverage domain of every uncovered subgoal
+	 * @param numberOfUncovered
+	 *            number of valid entries in bestRanks
+	 * @return optimistic score
+	 */
+	public double bound(double score, double[] bestRanks, int numberOfUncovered) {
+		if (numberOfUncovered == 0)
+			return score;
+
+		switch (this) {
+		case SUM: {
+			// at most one MCD per uncovered subgoal, negative ranks can be avoided
+			double bound = score;
+			for (int i = 0; i < numberOfUncovered; i++)
+				bound += Math.max(bestRanks[i], 0);
+			return bound;
+		}
+		case PRODUCT: {
+			// if no rank exceeds 1 the product cannot exceed any single factor,
+			// otherwise at most one factor per uncovered subgoal
+			double min = Double.POSITIVE_INFINITY;
+			double product = 1;
+			boolean greaterThanOne = false;
+			for (int i = 0; i < numberOfUncovered; i++) {
+				min = Math.min(min, bestRanks[i]);
+				if (bestRanks[i] > 1) {
+					greaterThanOne = true;
+					product *= bestRanks[i];
+				}
+			}
+			return score * (greaterThanOne ? product : min);
+		}
+		default: {
+			double bound = score;
+			for (int i = 0; i < numberOfUncovered; i++)
+				bound = Math.min(bound, bestRanks[i]);
+			return bound;
+		}
+		}
+	}
+
+	/**
+	 * Returns the aggregation with the given name (sum, product or min).
+	 *
+	 * @param name
+	 *            name of the aggregation, case is ignored
+	 * @return aggregation, null if the name is unknown
+	 */
+	public static Aggregation fromName(String name) {
+		for (Aggregation aggregation : values()) {
+			if (aggregation.name().equalsIgnoreCase(name))
+				return aggregation;
+		}
+		return null;
+	}
+}
@@ -29,38 +29,110 @@
 package preference;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.Hashtable;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.PriorityQueue;
 import datalog.DatalogQuery;
 import datalog.Predicate;
 import datalog.PredicateElement;
 import minicon.MCD;
+import minicon.MCDTable;
 import minicon.Mapping;
 import minicon.Rewriting;
 
 public class Organiser {
 	
 private static Hashtable<Predicate, LinkedHashMap <String, List<MCD>>> organiser;
+
+	/** table of the MCDs of the organiser, shared by all the rewritings built */
+	private static MCDTable mcdTable;
 	
 	public static void createOrganiser (List<MCD> mcds, DatalogQuery query){
+		createOrganiser(getCoverageDomains(mcds, query), query);
+	}
+	
+	/**
+	 * Ranks the given coverage domains according to the current ranks of the
+	 * MCDs. Only the ranking is done here, so the method can be called again
+	 * on the same coverage domains when the user preferences change.
+	 */
+	public static void createOrganiser (Hashtable<Predicate, List<MCD>> coverageDomains, DatalogQuery query){
 		LinkedHashMap <String, List<MCD>> abstractService; 
-		List<MCD> coverageDomain;
 		
 		organiser = new  Hashtable<Predicate, LinkedHashMap <String, List<MCD>>>();
-		
-		
+		IdentityHashMap<MCD, MCD> mcds = new IdentityHashMap<MCD, MCD>();
+		List<MCD> mcdList = new ArrayList<MCD>();
 		
 		for (int i = 0; i < query.getPredicates().size(); i++){ 
 			Predicate subGoal = query.getPredicates().get(i); 			
-			coverageDomain = getCoverageDomain(subGoal, mcds); 			
 			abstractService = new LinkedHashMap<String, List<MCD>>(); 
-			abstractService.putAll(rankMCDS(coverageDomain)); 
+			abstractService.putAll(rankMCDS(coverageDomains.get(subGoal))); 
 			organiser.put(subGoal, abstractService);
+			subGoal.setSortedCoverageDomain(null); // the ranks may have changed since the last sort
+			
+			for (MCD mcd : coverageDomains.get(subGoal)){
+				if (mcds.put(mcd, mcd) == null)
+					mcdList.add(mcd);
+			}
 		}		
 		
+		mcdTable = new MCDTable(mcdList, query);
+	}
+	
+	/**
+	 * Computes the (unranked) coverage domain of every subgoal of the query.
+	 * It does not depend on the user preferences and can be kept as long as
+	 * the MCDs do not change.
+	 * 
+	 * The coverage domains are built in a single pass over the MCDs: every MCD
+	 * is posted to the coverage domain of each subgoal it covers. In the same
+	 * pass, the set of subgoals covered by the MCD is stored in the MCD as a
+	 * bitmask over the positions of the subgoals in the query, or as a BitSet
+	 * if the query has more than 64 subgoals.
+	 */
+	public static Hashtable<Predicate, List<MCD>> getCoverageDomains (List<MCD> mcds, DatalogQuery query){
+		List<Predicate> subGoals = query.getPredicates();
+		boolean wide = subGoals.size() > MAX_SUBGOALS;
+		
+		// subgoals are compared by reference
+		IdentityHashMap<Predicate, Integer> positions = new IdentityHashMap<Predicate, Integer>();
+		List<List<MCD>> postings = new ArrayList<List<MCD>>(subGoals.size());
+		for (int i = 0; i < subGoals.size(); i++){
+			positions.put(subGoals.get(i), i);
+			postings.add(new ArrayList<MCD>());
+		}
+		
+		for (int i = 0; i < mcds.size(); i++){
+			MCD mcd = mcds.get(i);
+			long mask = 0;
+			BitSet set = wide ? new BitSet(subGoals.size()) : null;
+			List<Predicate> coveredSubGoals = mcd.getSubgoals();
+			for (int j = 0; j < coveredSubGoals.size(); j++){
+				int position = positions.get(coveredSubGoals.get(j));
+				if (wide ? !set.get(position) : (mask & (1L << position)) == 0){
+					if (wide)
+						set.set(position);
+					else
+						mask |= 1L << position;
+					postings.get(position).add(mcd);
+				}
+			}
+			mcd.setSubgoalMask(mask);
+			mcd.setSubgoalSet(set);
+		}
+		
+		Hashtable<Predicate, List<MCD>> coverageDomains = new Hashtable<Predicate, List<MCD>>();
+		for (int i = 0; i < subGoals.size(); i++)
+			coverageDomains.put(subGoals.get(i), postings.get(i));
+		
+		return coverageDomains;
 	}
 	
 	public static Hashtable<Predicate, LinkedHashMap <String, List<MCD>>> getOrganiser (){
@@ -71,7 +143,7 @@ private static Hashtable<Predicate, LinkedHashMap <String, List<MCD>>> organiser
 		List<Rewriting> rewritings = new ArrayList<Rewriting>();
 				
 		try {
-			setDesiredNumberOfRewriting(rewritings, new ArrayList<MCD>(), query.getPredicates(), query, desiredNumberOfRewritings);
+			setDesiredNumberOfRewriting(rewritings, new int[query.getPredicates().size()], 0, new RemainingSubGoals(query), query, desiredNumberOfRewritings);
 		} catch (Exception e) {
 			// The desired number of rewriting is reached
 		}
@@ -79,33 +151,159 @@ private static Hashtable<Predicate, LinkedHashMap <String, List<MCD>>> organiser
 		return rewritings;	
 	}
 	
-	private static void setDesiredNumberOfRewriting(List<Rewriting> rewritings, List<MCD> rewritingPrefix, List<Predicate> subGoals, DatalogQuery query, long desiredNumberOfRewritings) throws Exception{
+	/**
+	 * Recursively extends the rewriting prefix with the MCDs of the first
+	 * subgoal that is not covered yet. The subgoals that remain to be covered
+	 * are given at the depth prefixLength of remaining (see
+	 * RemainingSubGoals); MCDs covering a subgoal that is already covered are
+	 * skipped, as they can never lead to a rewriting.
+	 * 
+	 * The prefix is given as the positions of its MCDs in the MCD table (the
+	 * first prefixLength entries of rewritingPrefix). A rewriting found only
+	 * keeps a copy of these positions, the rewriting query is built when the
+	 * rewriting is first printed.
+	 */
+	private static void setDesiredNumberOfRewriting(List<Rewriting> rewritings, int[] rewritingPrefix, int prefixLength, RemainingSubGoals remaining, DatalogQuery query, long desiredNumberOfRewritings) throws Exception{
 		if (rewritings.size() >= desiredNumberOfRewritings)
 			throw new Exception("The desired number of rewriting is reached ...");
 		
-		if (subGoals.size() == 0){
-			if (isRewriting(rewritingPrefix, query))
-				rewritings.add(new Rewriting(rewritingPrefix, query));
+		if (remaining.isEmpty(prefixLength)){
+			if (isRewriting(rewritingPrefix, prefixLength))
+				rewritings.add(new Rewriting(Arrays.copyOf(rewritingPrefix, prefixLength), mcdTable));
 		} else {
-			List<MCD> sortedCoverageDomain = getSortedCoverageDomain(subGoals.get(0));
+			List<MCD> sortedCoverageDomain = getSortedCoverageDomain(query.getPredicates().get(remaining.next(prefixLength, 0)));
 			for (int i = 0 ; i < sortedCoverageDomain.size(); i++){
 				MCD mcd = sortedCoverageDomain.get(i);
-				List<MCD> newRewritingPrefix = new ArrayList<MCD>(rewritingPrefix);
-				newRewritingPrefix.add(mcd);
-				List<Predicate> remainingPredicatesToCover = getRemainingPredicatesToCover(mcd, subGoals);
-				setDesiredNumberOfRewriting(rewritings, newRewritingPrefix, remainingPredicatesToCover, query, desiredNumberOfRewritings);
+				if (!remaining.cover(prefixLength, mcd))
+					continue; // covers a subgoal that is already covered
+				rewritingPrefix[prefixLength] = mcdTable.indexOf(mcd);
+				setDesiredNumberOfRewriting(rewritings, rewritingPrefix, prefixLength + 1, remaining, query, desiredNumberOfRewritings);
+			}
+		}
+	}
+	
+	/**
+	 * Returns at most k rewritings, in the order of the prioritisation
+	 * semantics, such that a returned rewriting shares at most maxSharedViews
+	 * views with each rewriting returned before it. With maxSharedViews = 0
+	 * the returned rewritings use pairwise disjoint sets of views.
+	 * 
+	 * The cap is enforced during the search: the number of views a rewriting
+	 * prefix shares with an accepted rewriting can only grow when the prefix
+	 * is extended, so a prefix is abandoned as soon as it exceeds the cap.
+	 */
+	public static List<Rewriting> getDiverseRewritings (DatalogQuery query, long k, int maxSharedViews){
+		List<Rewriting> rewritings = new ArrayList<Rewriting>();
+		if (k <= 0)
+			return rewritings;
+		
+		DiversityState state = new DiversityState(k, maxSharedViews);
+		setDiverseRewritings(rewritings, new int[query.getPredicates().size()], 0, new RemainingSubGoals(query), query, state);
+		
+		return rewritings;
+	}
+	
+	/**
+	 * Same search as setDesiredNumberOfRewriting, restricted to the prefixes
+	 * that respect the cap of shared views.
+	 * 
+	 * @return true if the desired number of rewritings is reached
+	 */
+	private static boolean setDiverseRewritings(List<Rewriting> rewritings, int[] rewritingPrefix, int prefixLength, RemainingSubGoals remaining, DatalogQuery query, DiversityState state){
+		if (remaining.isEmpty(prefixLength)){
+			if (isRewriting(rewritingPrefix, prefixLength)){
+				rewritings.add(new Rewriting(Arrays.copyOf(rewritingPrefix, prefixLength), mcdTable));
+				state.accept();
 			}
+			return rewritings.size() >= state.k;
+		}
+		
+		List<MCD> sortedCoverageDomain = getSortedCoverageDomain(query.getPredicates().get(remaining.next(prefixLength, 0)));
+		for (int i = 0 ; i < sortedCoverageDomain.size(); i++){
+			MCD mcd = sortedCoverageDomain.get(i);
+			if (!remaining.cover(prefixLength, mcd))
+				continue; // covers a subgoal that is already covered
+			
+			int view = state.viewId(mcd);
+			boolean valid = state.addView(view);
+			if (valid){
+				rewritingPrefix[prefixLength] = mcdTable.indexOf(mcd);
+				if (setDiverseRewritings(rewritings, rewritingPrefix, prefixLength + 1, remaining, query, state))
+					return true;
+			}
+			state.removeView(view);
+			
+			// a rewriting accepted below may share too many views with the
+			// prefix itself, then no other MCD can complete it
+			if (state.exceedsCap())
+				return false;
 		}
+		return false;
 	}
 	
-	private static List<Predicate> getRemainingPredicatesToCover(MCD mcd, List<Predicate> subGoals){
-		List<Predicate> remainingPredicatesToCover = new ArrayList<Predicate>();
+	/**
+	 * Returns the k rewritings with the best aggregated score, the score of a
+	 * rewriting being the aggregation (sum, product or min) of the ranks of
+	 * its MCDs. Rewritings are returned by decreasing score; rewritings with
+	 * the same score keep the order of the prioritisation semantics.
+	 * 
+	 * The search is a branch and bound: a partial cover is not extended when
+	 * its optimistic score, computed from the best MCD of every uncovered
+	 * subgoal, cannot beat the k-th best rewriting found so far.
+	 */
+	public static List<Rewriting> getBestRewritings (DatalogQuery query, long k, Aggregation aggregation){
+		List<Rewriting> rewritings = new ArrayList<Rewriting>();
+		if (k <= 0)
+			return rewritings;
+		List<Predicate> subGoals = query.getPredicates();
+		
 		for (int i = 0; i < subGoals.size(); i++){
-			if (! mcd.getSubgoals().contains(subGoals.get(i)))
-				remainingPredicatesToCover.add(subGoals.get(i));
+			if (getSortedCoverageDomain(subGoals.get(i)).isEmpty())
+				return rewritings; // a subgoal cannot be covered
+		}
+		
+		PriorityQueue<ScoredCover> best = new PriorityQueue<ScoredCover>();
+		coverCount = 0;
+		branchAndBound(best, new int[subGoals.size()], 0, new RemainingSubGoals(query), aggregation.identity(), query, k, aggregation, new double[subGoals.size()]);
+		
+		List<ScoredCover> sortedCovers = new ArrayList<ScoredCover>(best);
+		Collections.sort(sortedCovers, Collections.reverseOrder());
+		for (ScoredCover cover : sortedCovers)
+			rewritings.add(new Rewriting(cover.mcdIndexes, mcdTable));
+		
+		return rewritings;
+	}
+	
+	private static void branchAndBound(PriorityQueue<ScoredCover> best, int[] rewritingPrefix, int prefixLength, RemainingSubGoals remaining, double score, DatalogQuery query, long k, Aggregation aggregation, double[] bestRanks){
+		if (remaining.isEmpty(prefixLength)){
+			if (isRewriting(rewritingPrefix, prefixLength)){
+				if (best.size() < k){
+					best.add(new ScoredCover(Arrays.copyOf(rewritingPrefix, prefixLength), score, coverCount++));
+				} else if (score > best.peek().score){
+					best.poll();
+					best.add(new ScoredCover(Arrays.copyOf(rewritingPrefix, prefixLength), score, coverCount++));
+				}
+			}
+			return;
 		}
 		
-		return remainingPredicatesToCover;
+		if (best.size() >= k){
+			// sorted coverage domains are in decreasing order of rank
+			int numberOfUncovered = 0;
+			for (int position = remaining.next(prefixLength, 0); position >= 0; position = remaining.next(prefixLength, position + 1))
+				bestRanks[numberOfUncovered++] = getSortedCoverageDomain(query.getPredicates().get(position)).get(0).getRank();
+			if (aggregation.bound(score, bestRanks, numberOfUncovered) <= best.peek().score)
+				return; // cannot beat the k-th best rewriting
+		}
+		
+		List<MCD> sortedCoverageDomain = getSortedCoverageDomain(query.getPredicates().get(remaining.next(prefixLength, 0)));
+		for (int i = 0 ; i < sortedCoverageDomain.size(); i++){
+			MCD mcd = sortedCoverageDomain.get(i);
+			if (!remaining.cover(prefixLength, mcd))
+				continue; // covers a subgoal that is already covered
+			rewritingPrefix[prefixLength] = mcdTable.indexOf(mcd);
+			branchAndBound(best, rewritingPrefix, prefixLength + 1, remaining, aggregation.combine(score, mcd.getRank()), query, k, aggregation, bestRanks);
+		}
 	}
 	
 	private static List<MCD> getSortedCoverageDomain (Predicate abstractService){
@@ -126,24 +324,6 @@ private static Hashtable<Predicate, LinkedHashMap <String, List<MCD>>> organiser
 		return result;
 	}
 		
-	private static List<MCD> getCoverageDomain(Predicate abstractService, List<MCD> mcds){
-		List<MCD> coverageDomain = new LinkedList<MCD>();
-		
-		for (int i = 0; i < mcds.size(); i++){
-			MCD mcd = mcds.get(i);
-			List<Predicate> coveredSubGoals = mcd.getSubgoals();
-			for (int j = 0; j < coveredSubGoals.size(); j++ ){
-				
-				if (coveredSubGoals.get(j).equals(abstractService)){
-					coverageDomain.add(mcd);
-					j = coveredSubGoals.size();
-				}
-			}			
-		}
-
-		return coverageDomain;
-	}
-	
 	private static LinkedHashMap <String, List<MCD>> rankMCDS (List<MCD> mcds){
 		LinkedHashMap <String, List<MCD>> rank = new LinkedHashMap <String, List<MCD>>();
 		
@@ -205,38 +385,206 @@ private static Hashtable<Predicate, LinkedHashMap <String, List<MCD>>> organiser
 		} while (exchange);
 	}
 	
-	private static boolean isRewriting(List<MCD> mcds, DatalogQuery query) {
-		int countPredicates = 0;
-
-		for (MCD mcd : mcds) {
-			countPredicates += mcd.numberOfSubgoals();
+	/** maximum number of subgoals of a query tracked by a long bitmask */
+	private static final int MAX_SUBGOALS = 64;
+	
+	/**
+	 * Subgoals remaining to be covered at every depth of a search, i.e. after
+	 * every number of MCDs of the rewriting prefix, the subgoals being
+	 * identified by their positions in the query. They are a long bitmask
+	 * per depth (see MCD.getSubgoalMask), or a BitSet per depth for the
+	 * queries of more than MAX_SUBGOALS subgoals (see MCD.getSubgoalSet).
+	 * Every depth is allocated once, so the search creates no object.
+	 */
+	private static class RemainingSubGoals {
+		
+		/** bitmask of every depth, null for a wide query */
+		private long[] masks;
+		
+		/** BitSet of every depth, null for a query of at most 64 subgoals */
+		private BitSet[] sets;
+		
+		private RemainingSubGoals(DatalogQuery query){
+			int n = query.getPredicates().size();
+			if (n <= MAX_SUBGOALS){
+				masks = new long[n + 1];
+				masks[0] = n == MAX_SUBGOALS ? -1L : (1L << n) - 1;
+			} else {
+				sets = new BitSet[n + 1];
+				for (int depth = 0; depth <= n; depth++)
+					sets[depth] = new BitSet(n);
+				sets[0].set(0, n);
+			}
 		}
-
-		// compare total number of predicates with number of query subgoals
-		if (countPredicates != query.numberOfPredicates()) {
-			return false;
+		
+		private boolean isEmpty(int depth){
+			return masks != null ? masks[depth] == 0 : sets[depth].isEmpty();
 		}
-
-		// test pairwise disjoint
-		for (int i = 0; i < mcds.size(); i++) {
-			for (int j = 0; j < mcds.size(); j++) {
-				if (i != j) {
-					MCD mcd1 = mcds.get(i);
-					MCD mcd2 = mcds.get(j);
-					if (!mcd1.isDisjoint(mcd2)) {
-						return false;
-					}
+		
+		/** returns the first remaining subgoal from a position, -1 if none */
+		private int next(int depth, int from){
+			if (masks == null)
+				return sets[depth].nextSetBit(from);
+			long mask = from >= MAX_SUBGOALS ? 0 : masks[depth] & (-1L << from);
+			return mask == 0 ? -1 : Long.numberOfTrailingZeros(mask);
+		}
+		
+		/**
+		 * Removes the subgoals of an MCD from those of a depth, giving those
+		 * of the next depth.
+		 * 
+		 * @return false if the MCD covers a subgoal that is already covered
+		 */
+		private boolean cover(int depth, MCD mcd){
+			if (masks != null){
+				long mask = mcd.getSubgoalMask();
+				if ((mask & ~masks[depth]) != 0)
+					return false;
+				masks[depth + 1] = masks[depth] & ~mask;
+				return true;
+			}
+			BitSet set = mcd.getSubgoalSet();
+			BitSet next = sets[depth + 1];
+			next.clear();
+			next.or(set);
+			next.andNot(sets[depth]);
+			if (!next.isEmpty())
+				return false;
+			next.or(sets[depth]);
+			next.andNot(set);
+			return true;
+		}
+	}
+	
+	/** number of covers found by the current branch and bound search */
+	private static long coverCount;
+	
+	/**
+	 * A complete cover found by the branch and bound search, with its score.
+	 * The natural order puts the worst cover first: lower score, or same
+	 * score but found later.
+	 */
+	private static class ScoredCover implements Comparable<ScoredCover> {
+		
+		/** positions of the MCDs of the cover in the MCD table */
+		private int[] mcdIndexes;
+		private double score;
+		private long order;
+		
+		private ScoredCover(int[] mcdIndexes, double score, long order){
+			this.mcdIndexes = mcdIndexes;
+			this.score = score;
+			this.order = order;
+		}
+		
+		public int compareTo(ScoredCover other){
+			if (score != other.score)
+				return score < other.score ? -1 : 1;
+			return order > other.order ? -1 : (order < other.order ? 1 : 0);
+		}
+	}
+	
+	/**
+	 * Views of the current rewriting prefix and of the accepted rewritings,
+	 * used by the diversified search. Views are identified by an index.
+	 * For every accepted rewriting, the number of distinct views it shares
+	 * with the prefix is maintained incrementally.
+	 */
+	private static class DiversityState {
+		
+		private long k;
+		private int maxSharedViews;
+		
+		/** index of every view name */
+		private Hashtable<String, Integer> viewIds = new Hashtable<String, Integer>();
+		
+		/** number of MCDs of the prefix using each view */
+		private int[] viewCount = new int[16];
+		
+		/** accepted rewritings (their indexes) that use each view */
+		private List<List<Integer>> acceptedByView = new ArrayList<List<Integer>>();
+		
+		/** number of views shared by each accepted rewriting with the prefix */
+		private int[] shared = new int[16];
+		
+		/** number of accepted rewritings */
+		private int accepted;
+		
+		/** number of distinct views of the prefix */
+		private int distinctViews;
+		
+		private DiversityState(long k, int maxSharedViews){
+			this.k = k;
+			this.maxSharedViews = maxSharedViews;
+		}
+		
+		private int viewId(MCD mcd){
+			String name = mcd.getView().getName();
+			Integer id = viewIds.get(name);
+			if (id == null){
+				id = viewIds.size();
+				viewIds.put(name, id);
+				acceptedByView.add(new ArrayList<Integer>());
+				if (id == viewCount.length)
+					viewCount = Arrays.copyOf(viewCount, 2 * id);
+			}
+			return id;
+		}
+		
+		/** adds a view to the prefix, returns false if the cap is exceeded */
+		private boolean addView(int view){
+			boolean valid = true;
+			if (viewCount[view]++ == 0){
+				distinctViews++;
+				for (int rewriting : acceptedByView.get(view)){
+					if (++shared[rewriting] > maxSharedViews)
+						valid = false;
 				}
 			}
+			return valid;
 		}
-
+		
+		private void removeView(int view){
+			if (--viewCount[view] == 0){
+				distinctViews--;
+				for (int rewriting : acceptedByView.get(view))
+					shared[rewriting]--;
+			}
+		}
+		
+		/** registers the current prefix as an accepted rewriting */
+		private void accept(){
+			if (accepted == shared.length)
+				shared = Arrays.copyOf(shared, 2 * accepted);
+			for (int view = 0; view < viewIds.size(); view++){
+				if (viewCount[view] > 0)
+					acceptedByView.get(view).add(accepted);
+			}
+			shared[accepted++] = distinctViews;
+		}
+		
+		private boolean exceedsCap(){
+			for (int i = 0; i < accepted; i++){
+				if (shared[i] > maxSharedViews)
+					return true;
+			}
+			return false;
+		}
+	}
+	
+	/**
+	 * Tests whether a complete cover is a rewriting. The MCDs are pairwise
+	 * disjoint and cover every subgoal by construction of the search (see the
+	 * subgoal masks), so only the mappings to constants have to be checked.
+	 */
+	private static boolean isRewriting(int[] mcdIndexes, int numberOfMCDs) {
 		// x exists in C1 and C2 ==> it must be mapped to the same constant
-		for (int i = 0; i < mcds.size(); i++) {
-			MCD mcd1 = mcds.get(i);
+		for (int i = 0; i < numberOfMCDs; i++) {
+			MCD mcd1 = mcdTable.getMCD(mcdIndexes[i]);
 			Mapping constMap1 = mcd1.mappings.constMap;
-			for (int j = 0; j < mcds.size(); j++) {
+			for (int j = 0; j < numberOfMCDs; j++) {
 				if (i != j) {
-					MCD mcd2 = mcds.get(j);
+					MCD mcd2 = mcdTable.getMCD(mcdIndexes[j]);
 					Mapping constMap2 = mcd2.mappings.constMap;
 					for (PredicateElement elem : constMap1.arguments) {
 						if ((constMap2.containsArgument(elem) && !(constMap1
@@ -68,8 +68,17 @@ public class PreferencesFileParser extends DefaultHandler {
 			e.printStackTrace();
 		}	
 		
+		setMCDPreferences(mcds, MCDRanks);
+	}
+	
+	/**
+	 * Sets the rank of every MCD from the given table <view name, rank>.
+	 * Used when the ranks are already known (e.g. edited by the user) and the
+	 * preferences file does not have to be parsed again.
+	 */
+	public static void setMCDPreferences (List<MCD> mcds, Hashtable<String, String> ranks){
 		for (int i = 0 ; i < mcds.size(); i++){
-			mcds.get(i).setRank(Double.parseDouble(MCDRanks.get(mcds.get(i).getView().getName())));
+			mcds.get(i).setRank(Double.parseDouble(ranks.get(mcds.get(i).getView().getName())));
 		}
 	}
 
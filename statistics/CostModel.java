@@ -0,0 +1,274 @@
+/*
+ *   Copyright 2015 Cheikh BA <cheikh.ba.sn@gmail.com>
+ *
+ *   This file is part of WALO.
+ *
+ *   WALO is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Lesser General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   WALO is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Lesser General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Lesser General Public License,
+ *   along with WALO.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package statistics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Hashtable;
+import java.util.List;
+
+import minicon.Rewriting;
+import datalog.Constant;
+import datalog.DatalogQuery;
+import datalog.InterpretedPredicate;
+import datalog.NumericalConstant;
+import datalog.Predicate;
+import datalog.PredicateElement;
+
+/**
+ * Class CostModel estimates the cost of executing a rewriting from the
+ * statistics of its views. The views of the rewriting are joined from left to
+ * right in the order of the body, and the cost is the number of tuples read
+ * from the views plus the number of tuples of every intermediate result.
+ *
+ * Estimations follow the usual independence and containment assumptions:
+ *
+ * 1. a constant at a column keeps 1 / distinct(column) of the tuples, or the
+ * fraction given by the histogram of the column
+ *
+ * 2. a variable repeated in a view atom keeps 1 / max of the distinct counts
+ * of its columns
+ *
+ * 3. an interpreted predicate keeps the fraction given by the histogram of a
+ * column of its variable, DEFAULT_RANGE_SELECTIVITY without histogram
+ *
+ * 4. joining on a variable divides the product of the cardinalities by the
+ * max of the distinct counts of the variable on both sides
+ */
+public class CostModel {
+
+	/** selectivity of a comparison without histogram */
+	public static final double DEFAULT_RANGE_SELECTIVITY = 1.0 / 3;
+
+	/** statistics of the views */
+	private StatisticsCatalog catalog;
+
+	/**
+	 * CostModel constructor
+	 *
+	 * @param catalog
+	 *            statistics of the views
+	 */
+	public CostModel(StatisticsCatalog catalog) {
+		this.catalog = catalog;
+	}
+
+	/**
+	 * Estimates the cost of executing the rewriting.
+	 *
+	 * @param rewriting
+	 *            rewriting of the query
+	 * @return estimated cost
+	 */
+	public double estimateCost(Rewriting rewriting) {
+		return estimate(rewriting.getRewriting(), false);
+	}
+
+	/**
+	 * Estimates the cost of executing a conjunctive query over the views.
+	 *
+	 * @param query
+	 *            query whose body predicates are views
+	 * @return estimated cost
+	 */
+	public double estimateCost(DatalogQuery query) {
+		return estimate(query, false);
+	}
+
+	/**
+	 * Estimates the number of answers of a conjunctive query over the views,
+	 * before projection.
+	 *
+	 * @param query
+	 *            query whose body predicates are views
+	 * @return estimated cardinality
+	 */
+	public double estimateCardinality(DatalogQuery query) {
+		return estimate(query, true);
+	}
+
+	/**
+	 * Returns the rewritings ordered by increasing estimated cost, dropping
+	 * the rewritings whose cost exceeds maxCost. Rewritings with the same cost
+	 * keep their order, i.e. the order of the preferences.
+	 *
+	 * @param rewritings
+	 *            rewritings to order
+	 * @param maxCost
+	 *            greatest accepted cost, Double.POSITIVE_INFINITY to keep all
+	 *            the rewritings
+	 * @return ordered rewritings
+	 */
+	public List<Rewriting> orderByCost(List<Rewriting> rewritings,
+			double maxCost) {
+		final double[] costs = new double[rewritings.size()];
+		Integer[] order = new Integer[rewritings.size()];
+		for (int i = 0; i < costs.length; i++) {
+			costs[i] = estimateCost(rewritings.get(i));
+			order[i] = i;
+		}
+
+		// stable sort of the positions
+		Arrays.sort(order, new Comparator<Integer>() {
+			public int compare(Integer i1, Integer i2) {
+				return Double.compare(costs[i1], costs[i2]);
+			}
+		});
+
+		List<Rewriting> result = new ArrayList<Rewriting>();
+		for (int i : order) {
+			if (costs[i] <= maxCost) {
+				result.add(rewritings.get(i));
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Left-deep estimation over the body of the query.
+	 *
+	 * @param query
+	 *            query whose body predicates are views
+	 * @param cardinalityOnly
+	 *            true to return the cardinality of the result instead of the
+	 *            cost
+	 * @return estimated cost or cardinality
+	 */
+	private double estimate(DatalogQuery query, boolean cardinalityOnly) {
+		double cost = 0;
+		double cardinality = 1;
+
+		// distinct values of every variable bound by the joined views
+		Hashtable<String, Double> bound = new Hashtable<String, Double>();
+
+		for (Predicate atom : query.getPredicates()) {
+			ViewStatistics stats = catalog.getStatistics(atom.name);
+			double atomCardinality = stats.getCardinality();
+			cost += atomCardinality;
+
+			// distinct values of every variable of the atom
+			Hashtable<String, Double> local = new Hashtable<String, Double>();
+			Hashtable<String, Integer> firstColumn = new Hashtable<String, Integer>();
+
+			for (int i = 0; i < atom.numberOfElements(); i++) {
+				PredicateElement elem = atom.getElement(i);
+				if (elem instanceof Constant) {
+					atomCardinality *= equalSelectivity(stats, i, elem);
+				} else if (!elem.name.equals("_")) {
+					Double values = local.get(elem.name);
+					if (values == null) {
+						local.put(elem.name, stats.getDistinct(i));
+						firstColumn.put(elem.name, i);
+					} else {
+						// same variable at two columns of the view
+						double max = Math.max(values, stats.getDistinct(i));
+						atomCardinality /= max;
+						local.put(elem.name, Math.min(values, stats.getDistinct(i)));
+					}
+				}
+			}
+
+			// comparisons on variables that appear for the first time
+			for (InterpretedPredicate pred : query.getInterpretedPredicates()) {
+				String var = pred.getVariable().name;
+				if (firstColumn.containsKey(var) && !bound.containsKey(var)) {
+					atomCardinality *= rangeSelectivity(stats,
+							firstColumn.get(var), pred);
+				}
+			}
+
+			// join with the views on the left
+			double joined = cardinality * atomCardinality;
+			for (String var : local.keySet()) {
+				Double values = bound.get(var);
+				if (values != null) {
+					joined /= Math.max(1, Math.max(values, local.get(var)));
+					bound.put(var, Math.min(values, local.get(var)));
+				} else {
+					bound.put(var, local.get(var));
+				}
+			}
+			cardinality = joined;
+			cost += cardinality;
+
+			// a variable has at most as many values as there are tuples
+			for (String var : bound.keySet()) {
+				bound.put(var, Math.max(1, Math.min(bound.get(var), cardinality)));
+			}
+		}
+		return cardinalityOnly ? cardinality : cost;
+	}
+
+	/**
+	 * Fraction of the tuples of a view with the given constant at a column.
+	 */
+	static double equalSelectivity(ViewStatistics stats, int column,
+			PredicateElement constant) {
+		Histogram histogram = stats.getHistogram(column);
+		if (histogram != null && constant instanceof NumericalConstant) {
+			return histogram.selectivity("=",
+					Double.parseDouble(constant.name));
+		}
+		return 1 / stats.getDistinct(column);
+	}
+
+	/**
+	 * Fraction of the tuples of a view satisfying an interpreted predicate on
+	 * the variable at the given column.
+	 */
+	static double rangeSelectivity(ViewStatistics stats, int column,
+			InterpretedPredicate pred) {
+		Histogram histogram = stats.getHistogram(column);
+		if (histogram == null) {
+			return DEFAULT_RANGE_SELECTIVITY;
+		}
+
+		PredicateElement constant;
+		String comparator = pred.getComparator();
+		if (pred.getLeft() == pred.getVariable()) {
+			constant = pred.getRight();
+		} else {
+			// constant on the left: "c < x" is "x > c"
+			constant = pred.getLeft();
+			comparator = flip(comparator);
+		}
+		if (!(constant instanceof NumericalConstant)) {
+			return DEFAULT_RANGE_SELECTIVITY;
+		}
+		return histogram.selectivity(comparator,
+				Double.parseDouble(constant.name));
+	}
+
+	/**
+	 * Returns the comparator obtained by exchanging both sides.
+	 */
+	private static String flip(String comparator) {
+		if (comparator.equals("<"))
+			return ">";
+		if (comparator.equals(">"))
+			return "<";
+		if (comparator.equals("<="))
+			return ">=";
+		if (comparator.equals(">="))
+			return "<=";
+		return comparator;
+	}
+}
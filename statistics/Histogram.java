@@ -0,0 +1,144 @@
+/*
+ *   Copyright 2015 Cheikh BA <cheikh.ba.sn@gmail.com>
+ *
+ *   This file is part of WALO.
+ *
+ *   WALO is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Lesser General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   WALO is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Lesser General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Lesser General Public License,
+ *   along with WALO.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package statistics;
+
+import java.util.Arrays;
+
+/**
+ * Class Histogram describes the distribution of the numerical values of a view
+ * column. It consists of buckets [low, high] with the number of tuples and the
+ * number of distinct values in each bucket. Values are assumed uniformly
+ * distributed inside a bucket.
+ */
+public class Histogram {
+
+	/** lower bound of every bucket */
+	private double[] low = new double[4];
+
+	/** upper bound of every bucket */
+	private double[] high = new double[4];
+
+	/** number of tuples of every bucket */
+	private double[] count = new double[4];
+
+	/** number of distinct values of every bucket */
+	private double[] distinct = new double[4];
+
+	/** number of buckets */
+	private int size;
+
+	/** number of tuples of all buckets */
+	private double total;
+
+	/**
+	 * Adds a bucket to the histogram. Buckets must not overlap.
+	 *
+	 * @param lowBound
+	 *            smallest value of the bucket
+	 * @param highBound
+	 *            greatest value of the bucket
+	 * @param tuples
+	 *            number of tuples with a value in the bucket
+	 * @param values
+	 *            number of distinct values in the bucket
+	 */
+	public void addBucket(double lowBound, double highBound, double tuples,
+			double values) {
+		if (size == low.length) {
+			low = Arrays.copyOf(low, 2 * size);
+			high = Arrays.copyOf(high, 2 * size);
+			count = Arrays.copyOf(count, 2 * size);
+			distinct = Arrays.copyOf(distinct, 2 * size);
+		}
+		low[size] = lowBound;
+		high[size] = highBound;
+		count[size] = tuples;
+		distinct[size] = Math.max(values, 1);
+		total += tuples;
+		size++;
+	}
+
+	/**
+	 * Returns the number of buckets.
+	 *
+	 * @return number of buckets
+	 */
+	public int numberOfBuckets() {
+		return size;
+	}
+
+	/**
+	 * Estimates the fraction of the tuples whose value v satisfies "v
+	 * comparator value".
+	 *
+	 * @param comparator
+	 *            one of =, !=, <>, <, <=, >, >=
+	 * @param value
+	 *            compared value
+	 * @return selectivity between 0 and 1
+	 */
+	public double selectivity(String comparator, double value) {
+		if (total <= 0) {
+			return 0;
+		}
+		if (comparator.equals("=")) {
+			return equal(value);
+		} else if (comparator.equals("!=") || comparator.equals("<>")) {
+			return 1 - equal(value);
+		} else if (comparator.equals("<")) {
+			return less(value);
+		} else if (comparator.equals("<=")) {
+			return Math.min(1, less(value) + equal(value));
+		} else if (comparator.equals(">")) {
+			return Math.max(0, 1 - less(value) - equal(value));
+		} else if (comparator.equals(">=")) {
+			return 1 - less(value);
+		}
+		return 1;
+	}
+
+	/**
+	 * Fraction of the tuples equal to the value.
+	 */
+	private double equal(double value) {
+		for (int i = 0; i < size; i++) {
+			if (low[i] <= value && value <= high[i]) {
+				return count[i] / distinct[i] / total;
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Fraction of the tuples smaller than the value.
+	 */
+	private double less(double value) {
+		double tuples = 0;
+		for (int i = 0; i < size; i++) {
+			if (high[i] < value) {
+				tuples += count[i];
+			} else if (low[i] < value) {
+				// part of the bucket below the value
+				tuples += count[i] * (value - low[i]) / (high[i] - low[i] + 1);
+			}
+		}
+		return Math.min(1, tuples / total);
+	}
+}
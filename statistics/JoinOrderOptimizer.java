@@ -0,0 +1,324 @@
+/*
+ *   Copyright 2015 Cheikh BA <cheikh.ba.sn@gmail.com>
+ *
+ *   This file is part of WALO.
+ *
+ *   WALO is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Lesser General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   WALO is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Lesser General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Lesser General Public License,
+ *   along with WALO.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package statistics;
+
+import java.util.ArrayList;
+import java.util.Hashtable;
+import java.util.List;
+
+import datalog.Constant;
+import datalog.DatalogQuery;
+import datalog.InterpretedPredicate;
+import datalog.Predicate;
+import datalog.PredicateElement;
+
+/**
+ * Class JoinOrderOptimizer chooses the join plan of a rewriting from the
+ * statistics of its views, with the estimations of the CostModel: the cost
+ * of a plan is the number of tuples read from the views plus the number of
+ * tuples of every intermediate result, and the plan of least cost is
+ * returned as a JoinTree (possibly bushy).
+ *
+ * Up to DP_LIMIT atoms, the best plan is found by dynamic programming over
+ * the subsets of atoms (DPsub): every subset is split into every pair of
+ * complementary subsets, O(3^n) splits in all, and its best plan is the best
+ * join of the best plans of the two parts. A split is skipped if one part has
+ * no plan or if no variable joins the parts in the join graph (atoms sharing
+ * a variable are adjacent), so that only connected subsets get a plan and
+ * cross products are never considered if the join graph is connected. Larger
+ * rewritings are planned greedily, by repeatedly joining the two plans whose
+ * join is the smallest.
+ *
+ * The estimation of a subset is independent of its plan: interpreted
+ * predicates are applied to every atom binding their variable, reducing the
+ * distinct values of the variable in the same proportion, so that they are
+ * counted once in the joins.
+ */
+public class JoinOrderOptimizer {
+
+	/** greatest number of atoms planned by dynamic programming */
+	public static final int DP_LIMIT = 12;
+
+	/** statistics of the views */
+	private StatisticsCatalog catalog;
+
+	/**
+	 * JoinOrderOptimizer constructor
+	 *
+	 * @param catalog
+	 *            statistics of the views
+	 */
+	public JoinOrderOptimizer(StatisticsCatalog catalog) {
+		this.catalog = catalog;
+	}
+
+	/**
+	 * Returns the join plan of least estimated cost of a query.
+	 *
+	 * @param query
+	 *            query whose body predicates are views
+	 * @return join plan of all the atoms of the body
+	 */
+	public JoinTree optimize(DatalogQuery query) {
+		List<Predicate> atoms = query.getPredicates();
+		if (atoms.isEmpty()) {
+			throw new IllegalArgumentException("Query " + query.getName()
+					+ " has no view in its body");
+		}
+		JoinTree[] leaves = new JoinTree[atoms.size()];
+		for (int i = 0; i < leaves.length; i++) {
+			leaves[i] = leaf(query, i);
+		}
+		if (leaves.length <= DP_LIMIT) {
+			return dynamicProgramming(leaves);
+		}
+		return greedy(leaves);
+	}
+
+	/**
+	 * Returns a copy of a query whose atoms are in the order of the leaves of
+	 * its best join plan (see JoinTree.getAtoms), e.g. for the FROM clause of
+	 * a SQL statement or for left-deep evaluation.
+	 *
+	 * @param query
+	 *            query whose body predicates are views
+	 * @return query with the same head, atoms and interpreted predicates
+	 */
+	public DatalogQuery reorder(DatalogQuery query) {
+		DatalogQuery result = new DatalogQuery(query.getName());
+		result.getHeadVariables().addAll(query.getHeadVariables());
+		result.getInterpretedPredicates().addAll(
+				query.getInterpretedPredicates());
+		if (query.getPredicates().size() < 2) {
+			result.getPredicates().addAll(query.getPredicates());
+			return result;
+		}
+		for (int atom : optimize(query).getAtoms()) {
+			result.addPredicate(query.getPredicates().get(atom));
+		}
+		return result;
+	}
+
+	/**
+	 * Estimates the tuples of an atom after its constants, its repeated
+	 * variables and the interpreted predicates on its variables.
+	 */
+	private JoinTree leaf(DatalogQuery query, int position) {
+		Predicate atom = query.getPredicates().get(position);
+		ViewStatistics stats = catalog.getStatistics(atom.name);
+		double cardinality = stats.getCardinality();
+		Hashtable<String, Double> distinct = new Hashtable<String, Double>();
+		Hashtable<String, Integer> firstColumn = new Hashtable<String, Integer>();
+
+		for (int i = 0; i < atom.numberOfElements(); i++) {
+			PredicateElement elem = atom.getElement(i);
+			if (elem instanceof Constant) {
+				cardinality *= CostModel.equalSelectivity(stats, i, elem);
+			} else if (!elem.name.equals("_")) {
+				Double values = distinct.get(elem.name);
+				if (values == null) {
+					distinct.put(elem.name, stats.getDistinct(i));
+					firstColumn.put(elem.name, i);
+				} else {
+					cardinality /= Math.max(values, stats.getDistinct(i));
+					distinct.put(elem.name,
+							Math.min(values, stats.getDistinct(i)));
+				}
+			}
+		}
+
+		for (InterpretedPredicate pred : query.getInterpretedPredicates()) {
+			String var = pred.getVariable().name;
+			if (firstColumn.containsKey(var)) {
+				double selectivity = CostModel.rangeSelectivity(stats,
+						firstColumn.get(var), pred);
+				cardinality *= selectivity;
+				distinct.put(var, distinct.get(var) * selectivity);
+			}
+		}
+		cap(distinct, cardinality);
+		return new JoinTree(position, cardinality, stats.getCardinality(),
+				distinct);
+	}
+
+	/**
+	 * Returns the join of two plans, the smaller one on the build side.
+	 */
+	private static JoinTree join(JoinTree first, JoinTree second) {
+		double cardinality = first.getCardinality() * second.getCardinality();
+		Hashtable<String, Double> distinct = new Hashtable<String, Double>(
+				first.getDistinct());
+		for (String var : second.getDistinct().keySet()) {
+			Double values = distinct.get(var);
+			double other = second.getDistinct(var);
+			if (values == null) {
+				distinct.put(var, other);
+			} else {
+				cardinality /= Math.max(1, Math.max(values, other));
+				distinct.put(var, Math.min(values, other));
+			}
+		}
+		cap(distinct, cardinality);
+		if (second.getCardinality() > first.getCardinality()) {
+			return new JoinTree(second, first, cardinality, distinct);
+		}
+		return new JoinTree(first, second, cardinality, distinct);
+	}
+
+	/**
+	 * A variable has at least one value, and at most as many values as there
+	 * are tuples.
+	 */
+	private static void cap(Hashtable<String, Double> distinct,
+			double cardinality) {
+		for (String var : distinct.keySet()) {
+			distinct.put(var, Math.max(1, Math.min(distinct.get(var),
+					cardinality)));
+		}
+	}
+
+	/**
+	 * Tests whether two plans share a variable.
+	 */
+	private static boolean joined(JoinTree first, JoinTree second) {
+		for (String var : second.getDistinct().keySet()) {
+			if (first.getDistinct(var) != null) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Best plan by dynamic programming over the subsets of atoms, in
+	 * increasing order so that the subsets of a subset are planned before
+	 * it. A subset keeps the best join of two complementary subsets that
+	 * have a plan and share a variable; if the join graph is not connected,
+	 * cross products are allowed.
+	 */
+	private static JoinTree dynamicProgramming(JoinTree[] leaves) {
+		int n = leaves.length;
+		int[] neighbours = new int[n];
+		for (int i = 0; i < n; i++) {
+			for (int j = 0; j < n; j++) {
+				if (i != j && joined(leaves[i], leaves[j])) {
+					neighbours[i] |= 1 << j;
+				}
+			}
+		}
+		int all = (1 << n) - 1;
+		boolean crossProducts = !connected(all, neighbours);
+
+		JoinTree[] best = new JoinTree[all + 1];
+		for (int i = 0; i < n; i++) {
+			best[1 << i] = leaves[i];
+		}
+		for (int set = 1; set <= all; set++) {
+			if (Integer.bitCount(set) < 2) {
+				continue;
+			}
+			int lowest = set & -set;
+			// first part holds the lowest atom, so that a split is seen once
+			for (int first = (set - 1) & set; first > 0; first = (first - 1)
+					& set) {
+				if ((first & lowest) == 0) {
+					continue;
+				}
+				int second = set ^ first;
+				if (best[first] == null || best[second] == null) {
+					continue;
+				}
+				if (!crossProducts
+						&& (neighbourhood(first, neighbours) & second) == 0) {
+					continue;
+				}
+				JoinTree plan = join(best[first], best[second]);
+				if (best[set] == null || plan.getCost() < best[set].getCost()) {
+					best[set] = plan;
+				}
+			}
+		}
+		return best[all];
+	}
+
+	/**
+	 * Returns the atoms adjacent to some atom of a set.
+	 */
+	private static int neighbourhood(int set, int[] neighbours) {
+		int result = 0;
+		for (int i = 0; i < neighbours.length; i++) {
+			if ((set & (1 << i)) != 0) {
+				result |= neighbours[i];
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Tests whether a set of atoms is connected in the join graph.
+	 */
+	private static boolean connected(int set, int[] neighbours) {
+		int reached = set & -set;
+		int previous = 0;
+		while (reached != previous) {
+			previous = reached;
+			reached |= neighbourhood(reached, neighbours) & set;
+		}
+		return reached == set;
+	}
+
+	/**
+	 * Greedy plan: joins the two plans sharing a variable whose join is the
+	 * smallest, or the two smallest plans if no plans share a variable,
+	 * until a single plan is left.
+	 */
+	private static JoinTree greedy(JoinTree[] leaves) {
+		List<JoinTree> plans = new ArrayList<JoinTree>();
+		for (JoinTree leaf : leaves) {
+			plans.add(leaf);
+		}
+		while (plans.size() > 1) {
+			JoinTree best = null;
+			int bestFirst = -1;
+			int bestSecond = -1;
+			boolean bestJoined = false;
+			for (int i = 0; i < plans.size(); i++) {
+				for (int j = i + 1; j < plans.size(); j++) {
+					boolean isJoined = joined(plans.get(i), plans.get(j));
+					if (bestJoined && !isJoined) {
+						continue;
+					}
+					JoinTree plan = join(plans.get(i), plans.get(j));
+					if (best == null || (isJoined && !bestJoined)
+							|| plan.getCardinality() < best.getCardinality()) {
+						best = plan;
+						bestFirst = i;
+						bestSecond = j;
+						bestJoined = isJoined;
+					}
+				}
+			}
+			plans.remove(bestSecond);
+			plans.remove(bestFirst);
+			plans.add(best);
+		}
+		return plans.get(0);
+	}
+}
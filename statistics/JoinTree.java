@@ -0,0 +1,202 @@
+/*
+ *   Copyright 2015 Cheikh BA <cheikh.ba.sn@gmail.com>
+ *
+ *   This file is part of WALO.
+ *
+ *   WALO is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Lesser General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   WALO is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Lesser General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Lesser General Public License,
+ *   along with WALO.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package statistics;
+
+import java.util.ArrayList;
+import java.util.Hashtable;
+import java.util.List;
+
+/**
+ * Class JoinTree is a join plan of the atoms of a query chosen by the
+ * JoinOrderOptimizer: a leaf reads an atom, an inner node joins its two
+ * subtrees. The right subtree is the smaller one, i.e. the side a hash join
+ * loads into its hash table. Every node carries the estimations it was
+ * chosen with.
+ */
+public class JoinTree {
+
+	/** position of the atom in the body of the query, -1 for a join */
+	private int atom;
+
+	/** probe side of a join */
+	private JoinTree left;
+
+	/** build side of a join */
+	private JoinTree right;
+
+	/** estimated number of tuples of the result */
+	private double cardinality;
+
+	/** estimated cost: tuples read plus tuples of every intermediate result */
+	private double cost;
+
+	/** estimated number of distinct values of every variable of the result */
+	private Hashtable<String, Double> distinct;
+
+	/** atoms of the tree, as a set of positions (trees of at most 31 atoms) */
+	int mask;
+
+	/**
+	 * JoinTree constructor of a leaf
+	 *
+	 * @param atom
+	 *            position of the atom in the body
+	 * @param cardinality
+	 *            estimated number of tuples of the atom, after its selections
+	 * @param cost
+	 *            estimated cost of reading the atom
+	 * @param distinct
+	 *            estimated distinct values of every variable of the atom
+	 */
+	JoinTree(int atom, double cardinality, double cost,
+			Hashtable<String, Double> distinct) {
+		this.atom = atom;
+		this.cardinality = cardinality;
+		this.cost = cost;
+		this.distinct = distinct;
+		this.mask = atom < 31 ? 1 << atom : 0;
+	}
+
+	/**
+	 * JoinTree constructor of a join
+	 *
+	 * @param left
+	 *            probe side
+	 * @param right
+	 *            build side
+	 * @param cardinality
+	 *            estimated number of tuples of the join
+	 * @param distinct
+	 *            estimated distinct values of every variable of the join
+	 */
+	JoinTree(JoinTree left, JoinTree right, double cardinality,
+			Hashtable<String, Double> distinct) {
+		this.atom = -1;
+		this.left = left;
+		this.right = right;
+		this.cardinality = cardinality;
+		this.cost = left.cost + right.cost + cardinality;
+		this.distinct = distinct;
+		this.mask = left.mask | right.mask;
+	}
+
+	/**
+	 * Tests whether the tree is a single atom.
+	 *
+	 * @return true for a leaf
+	 */
+	public boolean isLeaf() {
+		return atom >= 0;
+	}
+
+	/**
+	 * Returns the atom of a leaf.
+	 *
+	 * @return position of the atom in the body of the query, -1 for a join
+	 */
+	public int getAtom() {
+		return atom;
+	}
+
+	/**
+	 * Returns the probe side of a join.
+	 *
+	 * @return left subtree, null for a leaf
+	 */
+	public JoinTree getLeft() {
+		return left;
+	}
+
+	/**
+	 * Returns the build side of a join.
+	 *
+	 * @return right subtree, null for a leaf
+	 */
+	public JoinTree getRight() {
+		return right;
+	}
+
+	/**
+	 * Returns the estimated number of tuples of the result of the tree.
+	 *
+	 * @return estimated cardinality
+	 */
+	public double getCardinality() {
+		return cardinality;
+	}
+
+	/**
+	 * Returns the estimated cost of the tree.
+	 *
+	 * @return tuples read plus tuples of every intermediate result
+	 */
+	public double getCost() {
+		return cost;
+	}
+
+	/**
+	 * Returns the estimated number of distinct values of a variable.
+	 *
+	 * @param variable
+	 *            name of a variable of the tree
+	 * @return estimated distinct values, null if the variable is not bound
+	 */
+	Double getDistinct(String variable) {
+		return distinct.get(variable);
+	}
+
+	/**
+	 * Returns the estimated distinct values of the variables of the tree.
+	 */
+	Hashtable<String, Double> getDistinct() {
+		return distinct;
+	}
+
+	/**
+	 * Returns the atoms of the tree from left to right, i.e. the probe sides
+	 * first.
+	 *
+	 * @return positions of the atoms in the body of the query
+	 */
+	public List<Integer> getAtoms() {
+		List<Integer> atoms = new ArrayList<Integer>();
+		addAtoms(atoms);
+		return atoms;
+	}
+
+	private void addAtoms(List<Integer> atoms) {
+		if (isLeaf()) {
+			atoms.add(atom);
+		} else {
+			left.addAtoms(atoms);
+			right.addAtoms(atoms);
+		}
+	}
+
+	/**
+	 * Returns the tree as nested joins of atom positions, e.g. "((0 2) 1)".
+	 */
+	public String toString() {
+		if (isLeaf()) {
+			return Integer.toString(atom);
+		}
+		return "(" + left + " " + right + ")";
+	}
+}
@@ -0,0 +1,81 @@
+/*
+ *   Copyright 2015 Cheikh BA <cheikh.ba.sn@gmail.com>
+ *
+ *   This file is part of WALO.
+ *
+ *   WALO is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Lesser General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   WALO is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Lesser General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Lesser General Public License,
+ *   along with WALO.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package statistics;
+
+import java.util.Hashtable;
+
+/**
+ * Class StatisticsCatalog holds the statistics of the views, by view name.
+ * Views without statistics get default ones (see getStatistics).
+ */
+public class StatisticsCatalog {
+
+	/** cardinality of a view without statistics */
+	public static final double DEFAULT_CARDINALITY = 1000;
+
+	/** statistics of every view */
+	private Hashtable<String, ViewStatistics> views = new Hashtable<String, ViewStatistics>();
+
+	/**
+	 * Adds (or replaces) the statistics of a view.
+	 *
+	 * @param stats
+	 *            statistics of the view
+	 */
+	public void addStatistics(ViewStatistics stats) {
+		views.put(stats.getName(), stats);
+	}
+
+	/**
+	 * Returns the statistics of the view with the given name. A view without
+	 * statistics is given DEFAULT_CARDINALITY tuples.
+	 *
+	 * @param viewName
+	 *            name of the view
+	 * @return statistics of the view
+	 */
+	public ViewStatistics getStatistics(String viewName) {
+		ViewStatistics stats = views.get(viewName);
+		if (stats == null) {
+			stats = new ViewStatistics(viewName, DEFAULT_CARDINALITY);
+		}
+		return stats;
+	}
+
+	/**
+	 * Tests whether statistics are known for the view.
+	 *
+	 * @param viewName
+	 *            name of the view
+	 * @return true if the statistics of the view have been added
+	 */
+	public boolean hasStatistics(String viewName) {
+		return views.containsKey(viewName);
+	}
+
+	/**
+	 * Returns the number of views with statistics.
+	 *
+	 * @return number of views
+	 */
+	public int size() {
+		return views.size();
+	}
+}
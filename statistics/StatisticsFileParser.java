@@ -0,0 +1,144 @@
+/*
+ *   Copyright 2015 Cheikh BA <cheikh.ba.sn@gmail.com>
+ *
+ *   This file is part of WALO.
+ *
+ *   WALO is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Lesser General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   WALO is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Lesser General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Lesser General Public License,
+ *   along with WALO.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package statistics;
+
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Class StatisticsFileParser reads the statistics of the views from an XML
+ * file. Like the preferences, the statistics are grouped by test id:
+ *
+ * <pre>
+ * &lt;statistics&gt;
+ *   &lt;catalog id = "1"&gt;
+ *     &lt;view name = "V1" cardinality = "10000"&gt;
+ *       &lt;column position = "1" distinct = "1000"/&gt;
+ *       &lt;column position = "2" distinct = "50"&gt;
+ *         &lt;bucket low = "0" high = "9" count = "8000" distinct = "10"/&gt;
+ *       &lt;/column&gt;
+ *     &lt;/view&gt;
+ *   &lt;/catalog&gt;
+ * &lt;/statistics&gt;
+ * </pre>
+ *
+ * Column positions start at 1 and correspond to the head variables of the
+ * view. A column may have a histogram made of buckets of numerical values.
+ */
+public class StatisticsFileParser extends DefaultHandler {
+
+	/** id of the catalog to read */
+	private int catalogID;
+
+	/** catalog being read */
+	private StatisticsCatalog catalog = new StatisticsCatalog();
+
+	/** true inside the catalog with the desired id */
+	private boolean isCorrespondingCatalogID = false;
+
+	/** view being read */
+	private ViewStatistics view;
+
+	/** position (from 0) of the column being read */
+	private int column;
+
+	/** histogram of the column being read, null if no bucket was read */
+	private Histogram histogram;
+
+	/**
+	 * StatisticsFileParser constructor
+	 *
+	 * @param catalogID
+	 *            id of the catalog to read
+	 */
+	private StatisticsFileParser(int catalogID) {
+		this.catalogID = catalogID;
+	}
+
+	/**
+	 * Reads the statistics with the given id from a file. If the file cannot
+	 * be read, the returned catalog is empty and default statistics are used
+	 * for every view.
+	 *
+	 * @param statisticsFile
+	 *            name of the XML file
+	 * @param catalogID
+	 *            id of the catalog in the file
+	 * @return statistics of the views
+	 */
+	public static StatisticsCatalog readStatistics(String statisticsFile,
+			int catalogID) {
+		StatisticsFileParser handler = new StatisticsFileParser(catalogID);
+
+		SAXParserFactory sfactory = SAXParserFactory.newInstance();
+		try {
+			SAXParser parser = sfactory.newSAXParser();
+			XMLReader xmlparser = parser.getXMLReader();
+			xmlparser.setContentHandler(handler);
+			xmlparser.parse(statisticsFile);
+
+		} catch (Exception e) {
+			System.out.println("Statistics cannot be read from " + statisticsFile + ": " + e);
+		}
+		return handler.catalog;
+	}
+
+	public void startElement(String uri, String localName, String qName,
+			Attributes attributes) {
+		if (qName.equalsIgnoreCase("catalog")) {
+			if (attributes.getValue("id").equalsIgnoreCase("" + catalogID))
+				isCorrespondingCatalogID = true;
+		}
+
+		if (!isCorrespondingCatalogID)
+			return;
+
+		if (qName.equalsIgnoreCase("view")) {
+			view = new ViewStatistics(attributes.getValue("name"),
+					Double.parseDouble(attributes.getValue("cardinality")));
+			catalog.addStatistics(view);
+		} else if (qName.equalsIgnoreCase("column") && view != null) {
+			column = Integer.parseInt(attributes.getValue("position")) - 1;
+			if (attributes.getValue("distinct") != null)
+				view.setDistinct(column, Double.parseDouble(attributes.getValue("distinct")));
+			histogram = null;
+		} else if (qName.equalsIgnoreCase("bucket") && view != null) {
+			if (histogram == null) {
+				histogram = new Histogram();
+				view.setHistogram(column, histogram);
+			}
+			histogram.addBucket(Double.parseDouble(attributes.getValue("low")),
+					Double.parseDouble(attributes.getValue("high")),
+					Double.parseDouble(attributes.getValue("count")),
+					Double.parseDouble(attributes.getValue("distinct")));
+		}
+	}
+
+	public void endElement(String uri, String localName, String qName) {
+		if (qName.equalsIgnoreCase("catalog"))
+			isCorrespondingCatalogID = false;
+		else if (qName.equalsIgnoreCase("view"))
+			view = null;
+	}
+}
@@ -0,0 +1,143 @@
+/*
+ *   Copyright 2015 Cheikh BA <cheikh.ba.sn@gmail.com>
+ *
+ *   This file is part of WALO.
+ *
+ *   WALO is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Lesser General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   WALO is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Lesser General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Lesser General Public License,
+ *   along with WALO.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package statistics;
+
+import java.util.Arrays;
+
+/**
+ * Class ViewStatistics holds the statistics of the extension of a view: its
+ * cardinality and, for each column (head variable of the view), the number of
+ * distinct values and optionally a histogram of the values. Columns are
+ * numbered from 0.
+ *
+ * Statistics that are not known are estimated: a column has cardinality / 10
+ * distinct values by default.
+ */
+public class ViewStatistics {
+
+	/** number of distinct values of a column relative to the cardinality */
+	public static final double DEFAULT_DISTINCT_RATIO = 0.1;
+
+	/** name of the view */
+	private String name;
+
+	/** number of tuples of the view */
+	private double cardinality;
+
+	/** number of distinct values of every column, 0 if unknown */
+	private double[] distinct = new double[0];
+
+	/** histogram of every column, null if unknown */
+	private Histogram[] histograms = new Histogram[0];
+
+	/**
+	 * ViewStatistics constructor
+	 *
+	 * @param name
+	 *            name of the view
+	 * @param cardinality
+	 *            number of tuples of the view
+	 */
+	public ViewStatistics(String name, double cardinality) {
+		this.name = name;
+		this.cardinality = cardinality;
+	}
+
+	/**
+	 * Returns the name of the view.
+	 *
+	 * @return view name
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Returns the number of tuples of the view.
+	 *
+	 * @return cardinality
+	 */
+	public double getCardinality() {
+		return cardinality;
+	}
+
+	/**
+	 * Sets the number of distinct values of a column.
+	 *
+	 * @param column
+	 *            position of the column
+	 * @param values
+	 *            number of distinct values
+	 */
+	public void setDistinct(int column, double values) {
+		ensureColumn(column);
+		distinct[column] = values;
+	}
+
+	/**
+	 * Returns the number of distinct values of a column, estimated if it is
+	 * unknown. The result is between 1 and the cardinality.
+	 *
+	 * @param column
+	 *            position of the column
+	 * @return number of distinct values
+	 */
+	public double getDistinct(int column) {
+		double values = column < distinct.length ? distinct[column] : 0;
+		if (values <= 0) {
+			values = cardinality * DEFAULT_DISTINCT_RATIO;
+		}
+		return Math.max(1, Math.min(values, cardinality));
+	}
+
+	/**
+	 * Sets the histogram of a column.
+	 *
+	 * @param column
+	 *            position of the column
+	 * @param histogram
+	 *            histogram of the values of the column
+	 */
+	public void setHistogram(int column, Histogram histogram) {
+		ensureColumn(column);
+		histograms[column] = histogram;
+	}
+
+	/**
+	 * Returns the histogram of a column.
+	 *
+	 * @param column
+	 *            position of the column
+	 * @return histogram, null if unknown
+	 */
+	public Histogram getHistogram(int column) {
+		return column < histograms.length ? histograms[column] : null;
+	}
+
+	/**
+	 * Grows the arrays of the columns up to the given column.
+	 */
+	private void ensureColumn(int column) {
+		if (column >= distinct.length) {
+			distinct = Arrays.copyOf(distinct, column + 1);
+			histograms = Arrays.copyOf(histograms, column + 1);
+		}
+	}
+}
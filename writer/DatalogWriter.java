@@ -0,0 +1,43 @@
+/*
+ *   Copyright 2015 Cheikh BA <cheikh.ba.sn@gmail.com>
+ *
+ *   This file is part of WALO.
+ *
+ *   WALO is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Lesser General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   WALO is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Lesser General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Lesser General Public License,
+ *   along with WALO.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package writer;
+
+import minicon.Rewriting;
+
+/**
+ * Class DatalogWriter writes rewritings as Datalog rules, in the format of
+ * DatalogQuery.toString.
+ */
+public class DatalogWriter extends RewritingWriter {
+
+	/**
+	 * DatalogWriter constructor
+	 * 
+	 * @param out
+	 *            destination of the rewritings
+	 */
+	public DatalogWriter(Appendable out) {
+		super(out);
+	}
+
+	protected void format(Rewriting rewriting) {
+		rewriting.getRewriting().appendTo(buffer);
+	}
+}
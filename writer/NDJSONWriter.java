@@ -0,0 +1,136 @@
+/*
+ *   Copyright 2015 Cheikh BA <cheikh.ba.sn@gmail.com>
+ *
+ *   This file is part of WALO.
+ *
+ *   WALO is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Lesser General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   WALO is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Lesser General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Lesser General Public License,
+ *   along with WALO.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package writer;
+
+import java.util.List;
+
+import minicon.Rewriting;
+import datalog.DatalogQuery;
+import datalog.InterpretedPredicate;
+import datalog.Predicate;
+import datalog.Variable;
+
+/**
+ * Class NDJSONWriter writes rewritings as newline delimited JSON, one object
+ * per rewriting:
+ * 
+ * <pre>
+ * {"name":"Q","head":["X","Y"],
+ *  "body":[{"view":"V1","args":["X","X3"]},...],
+ *  "conditions":[{"left":"X3","comparator":"&gt;","right":"5"},...]}
+ * </pre>
+ */
+public class NDJSONWriter extends RewritingWriter {
+
+	/**
+	 * NDJSONWriter constructor
+	 * 
+	 * @param out
+	 *            destination of the rewritings
+	 */
+	public NDJSONWriter(Appendable out) {
+		super(out);
+	}
+
+	protected void format(Rewriting rewriting) {
+		DatalogQuery query = rewriting.getRewriting();
+
+		buffer.append("{\"name\":");
+		appendString(query.getName());
+
+		buffer.append(",\"head\":[");
+		List<Variable> head = query.getHeadVariables();
+		for (int i = 0; i < head.size(); i++) {
+			if (i > 0)
+				buffer.append(',');
+			appendString(head.get(i).name);
+		}
+
+		buffer.append("],\"body\":[");
+		List<Predicate> body = query.getPredicates();
+		for (int i = 0; i < body.size(); i++) {
+			Predicate view = body.get(i);
+			if (i > 0)
+				buffer.append(',');
+			buffer.append("{\"view\":");
+			appendString(view.name);
+			buffer.append(",\"args\":[");
+			for (int j = 0; j < view.numberOfElements(); j++) {
+				if (j > 0)
+					buffer.append(',');
+				appendString(view.getElement(j).name);
+			}
+			buffer.append("]}");
+		}
+
+		buffer.append("],\"conditions\":[");
+		List<InterpretedPredicate> conditions = query.getInterpretedPredicates();
+		for (int i = 0; i < conditions.size(); i++) {
+			InterpretedPredicate condition = conditions.get(i);
+			if (i > 0)
+				buffer.append(',');
+			buffer.append("{\"left\":");
+			appendString(condition.getLeft().name);
+			buffer.append(",\"comparator\":");
+			appendString(condition.getComparator());
+			buffer.append(",\"right\":");
+			appendString(condition.getRight().name);
+			buffer.append('}');
+		}
+		buffer.append("]}");
+	}
+
+	/**
+	 * Appends a JSON string literal to the buffer.
+	 * 
+	 * @param s
+	 *            value of the string
+	 */
+	private void appendString(String s) {
+		buffer.append('"');
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			switch (c) {
+			case '"':
+				buffer.append("\\\"");
+				break;
+			case '\\':
+				buffer.append("\\\\");
+				break;
+			case '\n':
+				buffer.append("\\n");
+				break;
+			case '\r':
+				buffer.append("\\r");
+				break;
+			case '\t':
+				buffer.append("\\t");
+				break;
+			default:
+				if (c < 0x20) {
+					buffer.append(String.format("\\u%04x", (int) c));
+				} else {
+					buffer.append(c);
+				}
+			}
+		}
+		buffer.append('"');
+	}
+}
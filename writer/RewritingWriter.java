@@ -0,0 +1,161 @@
+/*
+ *   Copyright 2015 Cheikh BA <cheikh.ba.sn@gmail.com>
+ *
+ *   This file is part of WALO.
+ *
+ *   WALO is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Lesser General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   WALO is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Lesser General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Lesser General Public License,
+ *   along with WALO.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package writer;
+
+import java.io.BufferedWriter;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.Charset;
+import java.util.List;
+
+import minicon.Rewriting;
+
+/**
+ * Class RewritingWriter streams rewritings to an Appendable (a Writer, a
+ * PrintStream, a StringBuilder, ...), one rewriting per line. The rewritings
+ * are formatted into a buffer that is reused for all the rewritings and handed
+ * to the Appendable when it exceeds FLUSH_THRESHOLD characters, so no String
+ * is built per rewriting.
+ *
+ * Subclasses define the format of a rewriting.
+ */
+public abstract class RewritingWriter {
+
+	/** size of the buffer above which it is written to the output */
+	public static final int FLUSH_THRESHOLD = 8192;
+
+	/** destination of the rewritings */
+	private Appendable out;
+
+	/** buffer reused for all the rewritings */
+	protected StringBuilder buffer = new StringBuilder(2 * FLUSH_THRESHOLD);
+
+	/**
+	 * RewritingWriter constructor
+	 * 
+	 * @param out
+	 *            destination of the rewritings
+	 */
+	protected RewritingWriter(Appendable out) {
+		this.out = out;
+	}
+
+	/**
+	 * Returns a writer for the given format.
+	 * 
+	 * @param format
+	 *            datalog, ndjson or sql (case is ignored)
+	 * @param out
+	 *            destination of the rewritings
+	 * @return writer, null if the format is unknown
+	 */
+	public static RewritingWriter forFormat(String format, Appendable out) {
+		if (format.equalsIgnoreCase("datalog"))
+			return new DatalogWriter(out);
+		if (format.equalsIgnoreCase("ndjson"))
+			return new NDJSONWriter(out);
+		if (format.equalsIgnoreCase("sql"))
+			return new SQLWriter(out);
+		return null;
+	}
+
+	/**
+	 * Returns a writer for the given format, writing to a stream in UTF-8.
+	 * 
+	 * @param format
+	 *            datalog, ndjson or sql (case is ignored)
+	 * @param out
+	 *            destination of the rewritings
+	 * @return writer, null if the format is unknown
+	 */
+	public static RewritingWriter forFormat(String format, OutputStream out) {
+		return forFormat(format, new BufferedWriter(new OutputStreamWriter(
+				out, Charset.forName("UTF-8"))));
+	}
+
+	/**
+	 * Tests whether a writer exists for the given format.
+	 * 
+	 * @param format
+	 *            name of the format
+	 * @return true for datalog, ndjson and sql (case is ignored)
+	 */
+	public static boolean isFormat(String format) {
+		return format.equalsIgnoreCase("datalog")
+				|| format.equalsIgnoreCase("ndjson")
+				|| format.equalsIgnoreCase("sql");
+	}
+
+	/**
+	 * Formats the rewriting into the buffer, without line separator.
+	 * 
+	 * @param rewriting
+	 *            rewriting to format
+	 */
+	protected abstract void format(Rewriting rewriting);
+
+	/**
+	 * Writes a rewriting followed by a line separator.
+	 * 
+	 * @param rewriting
+	 *            rewriting to write
+	 */
+	public void write(Rewriting rewriting) throws IOException {
+		format(rewriting);
+		buffer.append('\n');
+		if (buffer.length() >= FLUSH_THRESHOLD) {
+			writeBuffer();
+		}
+	}
+
+	/**
+	 * Writes all the rewritings of the list.
+	 * 
+	 * @param rewritings
+	 *            rewritings to write
+	 */
+	public void writeAll(List<Rewriting> rewritings) throws IOException {
+		for (Rewriting rewriting : rewritings) {
+			write(rewriting);
+		}
+	}
+
+	/**
+	 * Writes the buffer to the output and flushes the output if possible.
+	 */
+	public void flush() throws IOException {
+		writeBuffer();
+		if (out instanceof Flushable) {
+			((Flushable) out).flush();
+		}
+	}
+
+	/**
+	 * Hands the content of the buffer to the output and empties the buffer.
+	 */
+	private void writeBuffer() throws IOException {
+		if (buffer.length() > 0) {
+			out.append(buffer);
+			buffer.setLength(0);
+		}
+	}
+}
@@ -0,0 +1,61 @@
+/*
+ *   Copyright 2015 Cheikh BA <cheikh.ba.sn@gmail.com>
+ *
+ *   This file is part of WALO.
+ *
+ *   WALO is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU Lesser General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   WALO is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Lesser General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Lesser General Public License,
+ *   along with WALO.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package writer;
+
+import minicon.Rewriting;
+import converter.Converter;
+import statistics.JoinOrderOptimizer;
+
+/**
+ * Class SQLWriter writes rewritings as SQL statements (see
+ * Converter.convertToSQL), each statement being terminated by ";".
+ */
+public class SQLWriter extends RewritingWriter {
+
+	/** converter reused for all the rewritings */
+	private Converter converter = new Converter();
+
+	/**
+	 * SQLWriter constructor
+	 * 
+	 * @param out
+	 *            destination of the rewritings
+	 */
+	public SQLWriter(Appendable out) {
+		super(out);
+	}
+
+	/**
+	 * Sets the optimizer ordering the views of the FROM clauses (see
+	 * Converter.setJoinOrderOptimizer).
+	 * 
+	 * @param optimizer
+	 *            optimizer over the statistics of the views, null to keep the
+	 *            order of the rewritings
+	 */
+	public void setJoinOrderOptimizer(JoinOrderOptimizer optimizer) {
+		converter.setJoinOrderOptimizer(optimizer);
+	}
+
+	protected void format(Rewriting rewriting) {
+		converter.convertToSQL(rewriting).appendTo(buffer);
+		buffer.append(';');
+	}
+}